@@ -11,6 +11,7 @@ import nl.tudelft.cornul11.thesis.corpus.database.DatabaseManager;
 import nl.tudelft.cornul11.thesis.corpus.database.MongoDbClient;
 import nl.tudelft.cornul11.thesis.corpus.database.SignatureDAO;
 import nl.tudelft.cornul11.thesis.corpus.database.SignatureDAOImpl.LibraryCandidate;
+import nl.tudelft.cornul11.thesis.corpus.file.SignaturePayload;
 import nl.tudelft.cornul11.thesis.corpus.jarfile.JarSignatureMapper;
 import nl.tudelft.cornul11.thesis.corpus.util.ConfigurationLoader;
 import org.bson.Document;
@@ -46,7 +47,7 @@ public class FatJarServer extends AbstractHandler {
     ConfigurationLoader config = new ConfigurationLoader();
     DatabaseConfig databaseConfig = config.getDatabaseConfig();
     DatabaseManager databaseManager = DatabaseManager.getInstance(databaseConfig);
-    SignatureDAO signatureDao = databaseManager.getSignatureDao(config.getDatabaseMode());
+    SignatureDAO signatureDao = databaseManager.getSignatureDao(config.getDatabaseMode(), config.getSignatureIndexPath());
     JarSignatureMapper jarSignatureMapper = new JarSignatureMapper(signatureDao);
 
     MongoDbClient mongoDbClient = new MongoDbClient(config);
@@ -55,6 +56,9 @@ public class FatJarServer extends AbstractHandler {
 
     public FatJarServer() {
         super();
+        databaseManager.startClassHashFilter(config.getClassHashFilterBitsPerKey(), config.getClassHashFilterRefreshMinutes());
+        databaseManager.configureHashFrequencies(config.getMaxHashLibraries(), config.getIdfWeighting());
+        databaseManager.configureLibraryGraph(config.getUseLibraryGraph());
     }
 
     private void handleUpload(HttpServletRequest request, HttpServletResponse response, Path outputDir) throws ServletException, IOException {
@@ -81,29 +85,7 @@ public class FatJarServer extends AbstractHandler {
                         inferJarFile = jarSignatureMapper.inferJarFile(inputStream);
                     }
 
-                    // Sort in decreasing order of count
-                    inferJarFile.sort((data1, data2) -> {
-                        int compare = Double.compare(data2.getIncludedRatio(), data1.getIncludedRatio());
-                        if (compare == 0) {
-                            return data2.getHashes().size() - data1.getHashes().size();
-                        }
-                        return compare;
-                    });
-
-                    response.getWriter().append("[");
-                    boolean isFirst = true;
-                    for (LibraryCandidate lib : inferJarFile) {
-                        if (lib.getIncludedRatio() < threshold && !lib.isPerfectMatch()) {
-                            continue;
-                        }
-                        if (!isFirst) {
-                            response.getWriter().append(",");
-                        } else {
-                            isFirst = false;
-                        }
-                        response.getWriter().append(lib.toJSON());
-                    }
-                    response.getWriter().append("]");
+                    writeCandidates(response, inferJarFile, threshold);
                 }
             }
         }
@@ -111,6 +93,53 @@ public class FatJarServer extends AbstractHandler {
         response.getWriter().flush();
     }
 
+    private void handleSignatures(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setCharacterEncoding("utf-8");
+        response.setContentType("application/json");
+
+        double threshold = 0.85;
+        if (request.getParameter("threshold") != null) {
+            threshold = Double.parseDouble(request.getParameter("threshold"));
+        }
+
+        SignaturePayload payload;
+        try {
+            String contentType = request.getContentType();
+            if (contentType != null && contentType.contains("ndjson")) {
+                payload = SignaturePayload.readNdjson(request.getReader());
+            } else {
+                payload = SignaturePayload.read(request.getInputStream());
+            }
+        } catch (IOException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            response.getWriter().write("{\"error\": \"Invalid signature payload\"}");
+            response.getWriter().flush();
+            return;
+        }
+
+        writeCandidates(response, jarSignatureMapper.inferSignatures(payload), threshold);
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.getWriter().flush();
+    }
+
+    private void writeCandidates(HttpServletResponse response, List<LibraryCandidate> candidates, double threshold) throws IOException {
+        // already ranked by the matcher, best matches first
+        response.getWriter().append("[");
+        boolean isFirst = true;
+        for (LibraryCandidate lib : candidates) {
+            if (lib.getIncludedRatio() < threshold && !lib.isPerfectMatch()) {
+                continue;
+            }
+            if (!isFirst) {
+                response.getWriter().append(",");
+            } else {
+                isFirst = false;
+            }
+            response.getWriter().append(lib.toJSON());
+        }
+        response.getWriter().append("]");
+    }
+
     @Override
     public void handle(String target, Request jettyRequest, HttpServletRequest request, HttpServletResponse response) {
         System.out.println("Handling request for target: " + target);
@@ -122,6 +151,12 @@ public class FatJarServer extends AbstractHandler {
             } catch (ServletException | IOException e) {
                 e.printStackTrace();
             }
+        } else if (target.equals("/signatures")) {
+            try {
+                handleSignatures(request, response);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
         } else if (target.equals("/vulnerabilities")) {
             String library = request.getParameter("library");
             String version = request.getParameter("version");
@@ -1,7 +1,21 @@
 package nl.tudelft.cornul11.thesis.app;
 
+import nl.tudelft.cornul11.thesis.corpus.jarfile.ClassSignatureCache;
+import nl.tudelft.cornul11.thesis.corpus.jarfile.InferenceExecutor;
+import nl.tudelft.cornul11.thesis.corpus.jarfile.JarProcessingUtils;
+import nl.tudelft.cornul11.thesis.corpus.util.ConfigurationLoader;
+
 public class MainServer {
     public static void main(String[] args) throws Exception {
+        ConfigurationLoader config = new ConfigurationLoader();
+        ClassSignatureCache signatureCache = ClassSignatureCache.fromConfig(config);
+        JarProcessingUtils.setSignatureCache(signatureCache);
+        if (signatureCache != null) {
+            Runtime.getRuntime().addShutdownHook(new Thread(signatureCache::logStatistics));
+        }
+        InferenceExecutor.configure(config);
+        Runtime.getRuntime().addShutdownHook(new Thread(InferenceExecutor::shutdown));
+
         FatJarServer server = new FatJarServer();
         server.run();
     }
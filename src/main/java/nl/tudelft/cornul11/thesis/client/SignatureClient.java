@@ -0,0 +1,74 @@
+package nl.tudelft.cornul11.thesis.client;
+
+import nl.tudelft.cornul11.thesis.corpus.file.ClassFileInfo;
+import nl.tudelft.cornul11.thesis.corpus.file.SignaturePayload;
+import nl.tudelft.cornul11.thesis.corpus.jarfile.JarSignatureMapper;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * Extracts the class signatures of a JAR locally and either writes them to a file or sends them to the /api/signatures
+ * endpoint of the server, so that the JAR itself never has to be uploaded.
+ * <p>
+ * Usage: SignatureClient &lt;jar&gt; &lt;output file | server url&gt; [threshold]
+ */
+public class SignatureClient {
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: SignatureClient <jar> <output file | server url> [threshold]");
+            System.exit(1);
+        }
+
+        SignaturePayload payload = extract(Path.of(args[0]));
+        String target = args[1];
+        if (target.startsWith("http://") || target.startsWith("https://")) {
+            String threshold = args.length > 2 ? "?threshold=" + Double.parseDouble(args[2]) : "";
+            System.out.println(send(payload, URI.create(target.replaceAll("/+$", "") + "/api/signatures" + threshold)));
+        } else {
+            try (OutputStream outputStream = Files.newOutputStream(Path.of(target))) {
+                payload.write(outputStream);
+            }
+            System.out.println("Wrote the signatures of " + payload.getClassFileInfos().size() + " classes to " + target);
+        }
+    }
+
+    /**
+     * Returns the signatures of the classes of the JAR (including nested JARs) in the order of its entries, along with
+     * the CRC of the file, which lets the server recognise known artifacts.
+     */
+    public static SignaturePayload extract(Path jarFilePath) throws IOException {
+        try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(jarFilePath))) {
+            CheckedInputStream checkedInputStream = new CheckedInputStream(inputStream, new CRC32());
+            List<ClassFileInfo> classFileInfos = JarSignatureMapper.getFileSignatures(checkedInputStream, true);
+            return new SignaturePayload(classFileInfos, checkedInputStream.getChecksum().getValue());
+        }
+    }
+
+    private static String send(SignaturePayload payload, URI uri) throws IOException, InterruptedException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        payload.write(body);
+
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .header("Content-Type", "application/octet-stream")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                .build();
+        HttpResponse<String> response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("Server responded with status " + response.statusCode() + ": " + response.body());
+        }
+        return response.body();
+    }
+}
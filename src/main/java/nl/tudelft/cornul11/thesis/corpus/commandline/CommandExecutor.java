@@ -3,9 +3,14 @@ package nl.tudelft.cornul11.thesis.corpus.commandline;
 import nl.tudelft.cornul11.thesis.corpus.database.DatabaseConfig;
 import nl.tudelft.cornul11.thesis.corpus.database.DatabaseManager;
 import nl.tudelft.cornul11.thesis.corpus.database.SignatureDAO;
+import nl.tudelft.cornul11.thesis.corpus.database.SignatureIndexBuilder;
+import nl.tudelft.cornul11.thesis.corpus.file.ArtifactBundle;
+import nl.tudelft.cornul11.thesis.corpus.jarfile.ClassSignatureCache;
+import nl.tudelft.cornul11.thesis.corpus.jarfile.InferenceExecutor;
 import nl.tudelft.cornul11.thesis.corpus.jarfile.JarEvaluator;
 import nl.tudelft.cornul11.thesis.corpus.jarfile.JarFileExplorer;
 import nl.tudelft.cornul11.thesis.corpus.jarfile.JarFrequencyAnalyzer;
+import nl.tudelft.cornul11.thesis.corpus.jarfile.JarProcessingUtils;
 import nl.tudelft.cornul11.thesis.corpus.service.VulnerabilityAnalyzer;
 import nl.tudelft.cornul11.thesis.corpus.util.ConfigurationLoader;
 import org.slf4j.Logger;
@@ -15,6 +20,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.sql.SQLException;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -43,10 +49,25 @@ public class CommandExecutor {
         }
 
         String mode = options.getMode();
+        if ("BUILD_INDEX".equals(mode)) {
+            // runs on the signature dumps alone, no database is needed
+            buildIndex();
+            return;
+        }
         if (mode != null) {
             DatabaseConfig databaseConfig = config.getDatabaseConfig();
             DatabaseManager databaseManager = DatabaseManager.getInstance(databaseConfig);
-            SignatureDAO signatureDao = databaseManager.getSignatureDao(config.getDatabaseMode());
+            // the index does not exist yet when it is being exported
+            String databaseMode = mode.equals("EXPORT_INDEX") ? "file" : config.getDatabaseMode();
+            SignatureDAO signatureDao = databaseManager.getSignatureDao(databaseMode, config.getSignatureIndexPath());
+            // the ingestion maintains the counts of the class hashes that the queries use
+            databaseManager.configureHashFrequencies(config.getMaxHashLibraries(), config.getIdfWeighting());
+            if (mode.equals("IDENTIFICATION_MODE") || mode.equals("EVALUATION_MODE")) {
+                databaseManager.startClassHashFilter(config.getClassHashFilterBitsPerKey(), config.getClassHashFilterRefreshMinutes());
+                databaseManager.configureLibraryGraph(config.getUseLibraryGraph());
+            }
+            JarProcessingUtils.setSignatureCache(ClassSignatureCache.fromConfig(config));
+            InferenceExecutor.configure(config);
 
             switch (mode) {
                 case "CORPUS_GEN_MODE":
@@ -54,7 +75,9 @@ public class CommandExecutor {
                     logger.info("Starting CORPUS_GEN_MODE; ignoring uber JARs: " + config.getIgnoreUberJarSignatures());
                     String directoryPath = options.getDirectory();
                     String filePaths = options.getFilePaths();
-                    if (directoryPath != null) {
+                    if (directoryPath != null && ArtifactBundle.isBundle(Paths.get(directoryPath))) {
+                        jarFileExplorer.processBundle(directoryPath);
+                    } else if (directoryPath != null) {
                         jarFileExplorer.processFiles(directoryPath, options.getLastPath());
                     } else if (filePaths != null) {
                         jarFileExplorer.processFilesFromPathListFile(filePaths, options.getLastPath());
@@ -63,6 +86,18 @@ public class CommandExecutor {
                         printHelpMessage();
                     }
                     break;
+                case "CORPUS_BULK_LOAD_MODE":
+                    String pathsFileForBulkLoad = options.getFilePaths();
+                    String segmentDirectory = options.getOutput();
+                    if (pathsFileForBulkLoad == null || segmentDirectory == null) {
+                        System.out.println("File path(s) and output segment directory are required for CORPUS_BULK_LOAD_MODE");
+                        printHelpMessage();
+                    } else {
+                        JarFileExplorer bulkLoadExplorer = new JarFileExplorer(signatureDao, config, null);
+                        logger.info("Starting CORPUS_BULK_LOAD_MODE; ignoring uber JARs: " + config.getIgnoreUberJarSignatures());
+                        bulkLoadExplorer.bulkLoadFilesFromPathListFile(pathsFileForBulkLoad, Paths.get(segmentDirectory), databaseManager);
+                    }
+                    break;
                 case "IDENTIFICATION_MODE":
                     String fileName = options.getFilename();
                     Double threshold = options.getThreshold();
@@ -71,7 +106,7 @@ public class CommandExecutor {
                         Map<String, Map<String, Object>> frequencyMap = jarFrequencyAnalyzer.processJar(fileName);
                         if (frequencyMap == null) {
                             logger.error("Error in processing jar file, ignoring it");
-                            return;
+                            break;
                         }
                         int totalClassCount = jarFrequencyAnalyzer.getTotalClassCount();
 
@@ -113,25 +148,89 @@ public class CommandExecutor {
 
                         if (jarFilePaths == null) {
                             System.out.println("No jar file paths found in the file: " + filePathsForSignatures);
-                            return;
+                            break;
                         }
                         JarFileExplorer jarFileExplorerForSignatures = new JarFileExplorer(signatureDao, config, directoryPathForSignatures);
 
-                        jarFileExplorerForSignatures.processFilesToFiles(jarFilePaths, basePath);
+                        if ("segment".equals(config.getSignatureOutputFormat())) {
+                            jarFileExplorerForSignatures.processFilesToSegments(jarFilePaths, basePath);
+                        } else {
+                            jarFileExplorerForSignatures.processFilesToFiles(jarFilePaths, basePath);
+                        }
 
                     }
                     break;
+                case "REBUILD_HASH_FREQUENCIES":
+                    // for corpora created before the counts were maintained during the ingestion
+                    databaseManager.rebuildHashFrequencies();
+                    break;
+                case "BUILD_LIBRARY_GRAPH":
+                    // only the libraries ingested since the last run are visited
+                    databaseManager.buildLibraryGraph();
+                    break;
+                case "BUILD_SIGNATURE_DELTAS":
+                    // only the libraries ingested since the last run are encoded
+                    databaseManager.buildSignatureDeltas(config.getSignatureDeltaMaxRatio());
+                    break;
+                case "MIGRATE_CLASS_DICTIONARY":
+                    databaseManager.migrateClassDictionary(config.getClassDictionaryMigrationChunk());
+                    break;
+                case "EXPORT_INDEX":
+                    String indexPath = options.getOutput() != null ? options.getOutput() : config.getSignatureIndexPath();
+                    if (indexPath == null) {
+                        System.out.println("Output index path (or signatureIndexPath in the config) is required for EXPORT_INDEX");
+                        printHelpMessage();
+                    } else {
+                        try {
+                            databaseManager.getSignatureIndexExporter().export(Paths.get(indexPath));
+                        } catch (IOException | SQLException e) {
+                            logger.error("Error while exporting the signature index to " + indexPath, e);
+                        }
+                    }
+                    break;
                 default:
                     System.out.println("Invalid mode specified: " + mode);
                     printHelpMessage();
                     break;
             }
+            InferenceExecutor.shutdown();
+            closeSignatureCache();
         } else {
             System.out.println("No mode specified");
             printHelpMessage();
         }
     }
 
+    private void buildIndex() {
+        String dumpPath = options.getDirectory();
+        String indexPath = options.getOutput() != null ? options.getOutput() : config.getSignatureIndexPath();
+        if (dumpPath == null || indexPath == null) {
+            System.out.println("Signature dump directory and output index path (or signatureIndexPath in the config) are required for BUILD_INDEX");
+            printHelpMessage();
+            return;
+        }
+        try (SignatureIndexBuilder builder = new SignatureIndexBuilder(Paths.get(indexPath), config.getIndexBuilderRunPairs())) {
+            builder.addDumps(Paths.get(dumpPath));
+            builder.finish();
+        } catch (IOException e) {
+            logger.error("Error while building the signature index " + indexPath + " from " + dumpPath, e);
+        }
+    }
+
+    private void closeSignatureCache() {
+        ClassSignatureCache signatureCache = JarProcessingUtils.getSignatureCache();
+        if (signatureCache == null) {
+            return;
+        }
+        signatureCache.logStatistics();
+        try {
+            signatureCache.close();
+        } catch (IOException e) {
+            logger.error("Error while closing the signature cache", e);
+        }
+        JarProcessingUtils.setSignatureCache(null);
+    }
+
     private void printHelpMessage() {
         System.out.println("Help message");
         // TODO: Implement the logic for printing the help message
@@ -94,21 +94,21 @@ public class OptionsBuilder {
                 .longOpt("directory")
                 .hasArg()
                 .argName("directory")
-                .desc("Specify the directory path for corpus generation mode")
+                .desc("Specify the directory path, or a .tar(.gz/.zst) or .zip bundle of it, for corpus generation mode, or the signature dumps for BUILD_INDEX")
                 .build());
 
         options.addOption(Option.builder("m")
                 .longOpt("mode")
                 .hasArg()
                 .argName("mode")
-                .desc("Specify the operation mode: CORPUS_GEN_MODE, IDENTIFICATION_MODE or EVALUATION_MODE")
+                .desc("Specify the operation mode: CORPUS_GEN_MODE, CORPUS_BULK_LOAD_MODE, IDENTIFICATION_MODE, EVALUATION_MODE, EXTRACT_SIGNATURES, EXPORT_INDEX, BUILD_INDEX, REBUILD_HASH_FREQUENCIES, BUILD_LIBRARY_GRAPH, BUILD_SIGNATURE_DELTAS or MIGRATE_CLASS_DICTIONARY")
                 .build());
 
         options.addOption(Option.builder("p")
                 .longOpt("lastPath")
                 .hasArg()
                 .argName("path")
-                .desc("Specify the last path to continue from")
+                .desc("Specify the last path to continue from (corpus generation also skips the JARs in the ingestion journal)")
                 .build());
 
         options.addOption(Option.builder("fp")
@@ -136,7 +136,7 @@ public class OptionsBuilder {
                 .longOpt("output")
                 .hasArg()
                 .argName("file")
-                .desc("Specify the path to inference output file")
+                .desc("Specify the path to inference output file, the segment directory for CORPUS_BULK_LOAD_MODE, or the index file for EXPORT_INDEX and BUILD_INDEX")
                 .build());
 
         options.addOption(Option.builder("t")
@@ -0,0 +1,71 @@
+package nl.tudelft.cornul11.thesis.corpus.database;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Loads segment files of library and signature rows with {@code LOAD DATA LOCAL INFILE}. Loading a segment is
+ * idempotent: library rows carry their client-assigned id and are replaced, and when a segment is reloaded the signature
+ * rows of its library id range are deleted before being loaded again, all in one transaction.
+ */
+public class BulkLoader {
+    private static final Logger logger = LoggerFactory.getLogger(BulkLoader.class);
+    private final HikariDataSource ds;
+
+    public BulkLoader(HikariDataSource ds) {
+        this.ds = ds;
+    }
+
+    public int getMaxLibraryId() throws SQLException {
+        try (Connection connection = ds.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COALESCE(MAX(id), 0) FROM libraries")) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+
+    /**
+     * Loads a segment in one transaction. The signatures table has no index on the library id during the bulk load, so
+     * deleting the rows of a previous attempt scans the whole table: only pass {@code reload} for a segment that may
+     * have been loaded before, its fresh library ids have no rows otherwise.
+     */
+    public void loadSegment(Path librariesFile, Path signaturesFile, int firstLibraryId, int lastLibraryId, boolean reload) throws SQLException {
+        String deleteSignaturesQuery = "DELETE FROM signatures WHERE library_id BETWEEN " + firstLibraryId + " AND " + lastLibraryId;
+        String loadLibrariesQuery = "LOAD DATA LOCAL INFILE " + toSqlLiteral(librariesFile) + " REPLACE INTO TABLE libraries "
+                + "FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\' LINES TERMINATED BY '\\n' "
+                + "(id, group_id, artifact_id, version, jar_hash, jar_crc, is_uber_jar, total_class_files, disk_size, unique_signatures, creation_date, fingerprint)";
+        String loadSignaturesQuery = "LOAD DATA LOCAL INFILE " + toSqlLiteral(signaturesFile) + " INTO TABLE signatures "
+                + "FIELDS TERMINATED BY '\\t' LINES TERMINATED BY '\\n' "
+                + "(library_id, class_hash, class_crc)";
+
+        try (Connection connection = ds.getConnection()) {
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                if (reload) {
+                    statement.executeUpdate(deleteSignaturesQuery);
+                }
+                int libraryRows = statement.executeUpdate(loadLibrariesQuery);
+                int signatureRows = statement.executeUpdate(loadSignaturesQuery);
+                connection.commit();
+                logger.info("Loaded " + libraryRows + " library row(s) and " + signatureRows + " signature row(s) from " + librariesFile.getFileName());
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    private static String toSqlLiteral(Path path) {
+        return "'" + path.toAbsolutePath().toString().replace("\\", "\\\\").replace("'", "\\'") + "'";
+    }
+}
@@ -0,0 +1,215 @@
+package nl.tudelft.cornul11.thesis.corpus.database;
+
+import com.zaxxer.hikari.HikariDataSource;
+import nl.tudelft.cornul11.thesis.corpus.util.SortedArrays;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Normalised signatures, read by the "dictionary" database mode: the {@code classes} table gives every class hash an
+ * int id and counts its libraries, and {@code library_classes} has one (class id, library id) row per class of a
+ * library, clustered by class and indexed by library, so both lookup directions only read the index. The rows are a
+ * third of the width of the signatures rows and the joins compare ints.
+ * <p>
+ * The tables are filled from the {@code signatures} table by {@link #migrate(HikariDataSource, int)}, and kept up to
+ * date by the DAO when libraries are inserted in the "dictionary" mode.
+ */
+public class ClassDictionary {
+    private static final Logger logger = LoggerFactory.getLogger(ClassDictionary.class);
+    private static final int BATCH_SIZE = 1000;
+
+    public static void createTables(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS classes ("
+                    + "class_id INT NOT NULL AUTO_INCREMENT PRIMARY KEY, "
+                    + "class_hash BIGINT NOT NULL, "
+                    + "library_count INT NOT NULL DEFAULT 0, "
+                    + "UNIQUE INDEX idx_classes_class_hash (class_hash))");
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS library_classes ("
+                    + "class_id INT NOT NULL, "
+                    + "library_id INT NOT NULL, "
+                    + "PRIMARY KEY (class_id, library_id), "
+                    + "INDEX idx_library_classes_library_id (library_id, class_id))");
+        }
+    }
+
+    /**
+     * Returns the query of the (class hash, library id) pairs of the libraries containing the hashes of
+     * {@code hashTable}, only for the libraries in {@code temp_candidates} if {@code candidatesOnly}.
+     */
+    public static String matchesQuery(String hashTable, boolean candidatesOnly) {
+        return "SELECT c.class_hash, lc.library_id FROM " + hashTable + " t "
+                + "JOIN classes c ON c.class_hash = t.class_hash "
+                + "JOIN library_classes lc ON lc.class_id = c.class_id"
+                + (candidatesOnly ? " JOIN temp_candidates tc ON tc.library_id = lc.library_id" : "");
+    }
+
+    /**
+     * Adds the given libraries, each given by its class hashes, on the connection of the transaction that inserts
+     * them. Only the missing hashes are inserted, so that the ids of the existing ones are not used up, and the counts
+     * are updated through the ids, in hash order.
+     */
+    public static void addLibraries(Connection connection, List<Integer> libraryIds, List<long[]> libraryHashes) throws SQLException {
+        long[][] uniqueHashes = new long[libraryHashes.size()][];
+        int total = 0;
+        for (int i = 0; i < uniqueHashes.length; i++) {
+            long[] unique = libraryHashes.get(i).clone();
+            uniqueHashes[i] = Arrays.copyOf(unique, SortedArrays.sortUnique(unique, unique.length));
+            total += uniqueHashes[i].length;
+        }
+        long[] allHashes = new long[total];
+        int length = 0;
+        for (long[] hashes : uniqueHashes) {
+            System.arraycopy(hashes, 0, allHashes, length, hashes.length);
+            length += hashes.length;
+        }
+        Arrays.sort(allHashes);
+
+        // sorted distinct hashes and the number of new libraries of each
+        long[] hashes = new long[length];
+        int[] counts = new int[length];
+        int numHashes = 0;
+        for (int i = 0; i < length; i++) {
+            if (numHashes > 0 && hashes[numHashes - 1] == allHashes[i]) {
+                counts[numHashes - 1]++;
+            } else {
+                hashes[numHashes] = allHashes[i];
+                counts[numHashes++] = 1;
+            }
+        }
+
+        int[] classIds = getClassIds(connection, hashes, numHashes);
+        try (PreparedStatement statement = connection.prepareStatement("INSERT IGNORE INTO classes (class_hash) VALUES (?)")) {
+            int pendingRows = 0;
+            for (int i = 0; i < numHashes; i++) {
+                if (classIds[i] == 0) {
+                    statement.setLong(1, hashes[i]);
+                    statement.addBatch();
+                    pendingRows++;
+                }
+            }
+            if (pendingRows > 0) {
+                statement.executeBatch();
+                classIds = getClassIds(connection, hashes, numHashes);
+            }
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement(
+                "UPDATE classes SET library_count = library_count + ? WHERE class_id = ?")) {
+            for (int i = 0; i < numHashes; i++) {
+                statement.setInt(1, counts[i]);
+                statement.setInt(2, classIds[i]);
+                statement.addBatch();
+                if ((i + 1) % BATCH_SIZE == 0) {
+                    statement.executeBatch();
+                }
+            }
+            statement.executeBatch();
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT IGNORE INTO library_classes (class_id, library_id) VALUES (?, ?)")) {
+            int pendingRows = 0;
+            for (int i = 0; i < uniqueHashes.length; i++) {
+                for (long hash : uniqueHashes[i]) {
+                    statement.setInt(1, classIds[Arrays.binarySearch(hashes, 0, numHashes, hash)]);
+                    statement.setInt(2, libraryIds.get(i));
+                    statement.addBatch();
+                    if (++pendingRows % BATCH_SIZE == 0) {
+                        statement.executeBatch();
+                    }
+                }
+            }
+            statement.executeBatch();
+        }
+    }
+
+    /**
+     * Returns the id of each of the first {@code length} sorted hashes, 0 for the hashes that are not in the table.
+     */
+    private static int[] getClassIds(Connection connection, long[] hashes, int length) throws SQLException {
+        int[] classIds = new int[length];
+        for (int start = 0; start < length; start += BATCH_SIZE) {
+            int end = Math.min(length, start + BATCH_SIZE);
+            String hashList = Arrays.stream(hashes, start, end).mapToObj(String::valueOf).collect(Collectors.joining(", "));
+            try (Statement statement = connection.createStatement();
+                 ResultSet resultSet = statement.executeQuery("SELECT class_hash, class_id FROM classes WHERE class_hash IN ("
+                         + hashList + ")")) {
+                while (resultSet.next()) {
+                    classIds[Arrays.binarySearch(hashes, start, end, resultSet.getLong(1))] = resultSet.getInt(2);
+                }
+            }
+        }
+        return classIds;
+    }
+
+    /**
+     * Fills the dictionary from the signatures table, {@code chunkSize} library ids at a time, each chunk in its own
+     * transaction, then recounts the libraries of every class. Chunks that were already migrated are skipped by the
+     * keys, so an interrupted migration can be run again. The libraries must not be inserted at the same time.
+     */
+    public static void migrate(HikariDataSource ds, int chunkSize) {
+        long startTime = System.currentTimeMillis();
+        String insertClassesQuery = "INSERT IGNORE INTO classes (class_hash) "
+                + "SELECT s.class_hash FROM (SELECT DISTINCT class_hash FROM signatures WHERE library_id BETWEEN ? AND ?) s "
+                + "LEFT JOIN classes c ON c.class_hash = s.class_hash WHERE c.class_id IS NULL";
+        String insertLibraryClassesQuery = "INSERT IGNORE INTO library_classes (class_id, library_id) "
+                + "SELECT DISTINCT c.class_id, s.library_id FROM signatures s JOIN classes c ON c.class_hash = s.class_hash "
+                + "WHERE s.library_id BETWEEN ? AND ?";
+        String recountQuery = "UPDATE classes c JOIN (SELECT class_id, COUNT(*) AS library_count FROM library_classes "
+                + "GROUP BY class_id) lc ON lc.class_id = c.class_id SET c.library_count = lc.library_count";
+
+        try (Connection connection = ds.getConnection()) {
+            int minLibraryId;
+            int maxLibraryId;
+            try (Statement statement = connection.createStatement();
+                 ResultSet resultSet = statement.executeQuery("SELECT COALESCE(MIN(library_id), 0), COALESCE(MAX(library_id), -1) FROM signatures")) {
+                resultSet.next();
+                minLibraryId = resultSet.getInt(1);
+                maxLibraryId = resultSet.getInt(2);
+            }
+
+            long numRows = 0;
+            try (PreparedStatement classesStatement = connection.prepareStatement(insertClassesQuery);
+                 PreparedStatement libraryClassesStatement = connection.prepareStatement(insertLibraryClassesQuery)) {
+                for (long first = minLibraryId; first <= maxLibraryId; first += chunkSize) {
+                    int last = (int) Math.min(maxLibraryId, first + chunkSize - 1);
+                    connection.setAutoCommit(false);
+                    try {
+                        classesStatement.setInt(1, (int) first);
+                        classesStatement.setInt(2, last);
+                        classesStatement.executeUpdate();
+                        libraryClassesStatement.setInt(1, (int) first);
+                        libraryClassesStatement.setInt(2, last);
+                        numRows += libraryClassesStatement.executeUpdate();
+                        connection.commit();
+                    } catch (SQLException e) {
+                        connection.rollback();
+                        throw e;
+                    } finally {
+                        connection.setAutoCommit(true);
+                    }
+                    logger.info("Migrated the libraries " + first + " to " + last + " of " + maxLibraryId + ", "
+                            + numRows + " library class rows");
+                }
+            }
+
+            try (Statement statement = connection.createStatement()) {
+                int numClasses = statement.executeUpdate(recountQuery);
+                logger.info("Migrated " + numRows + " library class rows and updated the library count of " + numClasses
+                        + " classes in " + (System.currentTimeMillis() - startTime) / 1000 + " seconds");
+            }
+        } catch (SQLException e) {
+            logger.error("Error while migrating the signatures to the class dictionary", e);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package nl.tudelft.cornul11.thesis.corpus.database;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * In-memory Bloom filter of the class hashes in the signatures table, used to drop the classes of a JAR that are
+ * certainly not in the corpus (typically the application's own classes) before they are sent to the database.
+ * <p>
+ * The filter is blocked: all the bits of a key are in one 512-bit block, i.e. one cache line, chosen by the high bits
+ * of the mixed hash, and the bit positions are 9-bit slices of a second mix. With 10 bits per key about 1% of the
+ * unknown hashes pass. A filter never rejects a hash that was in the table when it was built; hashes inserted later
+ * are only known after the next rebuild.
+ */
+public class ClassHashFilter {
+    private static final Logger logger = LoggerFactory.getLogger(ClassHashFilter.class);
+    private static final int FETCH_SIZE = 100000;
+    private static final int BLOCK_WORDS = 8;
+    private static final int MAX_PROBES = 7;
+
+    private final long[] words;
+    private final int blockMask;
+    private final int numProbes;
+
+    public ClassHashFilter(long expectedKeys, int bitsPerKey) {
+        long numBlocks = Math.max(1, (Math.max(1, expectedKeys) * bitsPerKey + 511) / 512);
+        // a power of two, at most 2^27 blocks of 64 bytes (8 GB), the limit of an array
+        int blocks = (int) Math.min(1L << 27, Long.highestOneBit(numBlocks * 2 - 1));
+        this.words = new long[blocks * BLOCK_WORDS];
+        this.blockMask = blocks - 1;
+        this.numProbes = (int) Math.max(1, Math.min(MAX_PROBES, Math.round(bitsPerKey * Math.log(2))));
+    }
+
+    /**
+     * Builds the filter from all the class hashes of the signatures table.
+     */
+    public static ClassHashFilter load(HikariDataSource ds, int bitsPerKey) throws SQLException {
+        long startTime = System.currentTimeMillis();
+        try (Connection connection = ds.getConnection();
+             Statement statement = connection.createStatement()) {
+            long numRows;
+            try (ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM signatures")) {
+                resultSet.next();
+                numRows = resultSet.getLong(1);
+            }
+            // duplicate hashes are counted too, which only lowers the false positive rate
+            ClassHashFilter filter = new ClassHashFilter(numRows, bitsPerKey);
+            statement.setFetchSize(FETCH_SIZE);
+            try (ResultSet resultSet = statement.executeQuery("SELECT class_hash FROM signatures")) {
+                while (resultSet.next()) {
+                    filter.add(resultSet.getLong(1));
+                }
+            }
+            logger.info("Built the class hash filter of " + numRows + " signatures (" + filter.getSizeInBytes() / (1024 * 1024)
+                    + " MB) in " + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds");
+            return filter;
+        }
+    }
+
+    public void add(long classHash) {
+        long hash = SignatureIndex.mix(classHash);
+        int block = (int) (hash >>> 36) & blockMask;
+        long probes = SignatureIndex.mix(hash);
+        for (int i = 0; i < numProbes; i++) {
+            int bit = (int) (probes >>> (9 * i)) & 511;
+            words[block * BLOCK_WORDS + (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Returns false if the hash is certainly not in the signatures table, true if it may be.
+     */
+    public boolean mightContain(long classHash) {
+        long hash = SignatureIndex.mix(classHash);
+        int block = (int) (hash >>> 36) & blockMask;
+        long probes = SignatureIndex.mix(hash);
+        for (int i = 0; i < numProbes; i++) {
+            int bit = (int) (probes >>> (9 * i)) & 511;
+            if ((words[block * BLOCK_WORDS + (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getSizeInBytes() {
+        return 8L * words.length;
+    }
+}
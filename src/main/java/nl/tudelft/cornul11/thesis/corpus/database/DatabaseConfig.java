@@ -16,8 +16,9 @@ public class DatabaseConfig {
     private final String maintainTimeStats;
     private final String maximumPoolSize;
     private final String connectionTimeout;
+    private final String allowLocalInfile;
 
-    public DatabaseConfig(String url, String username, String password, String cachePrepStmts, String prepStmtCacheSize, String prepStmtCacheSqlLimit, String useServerPrepStmts, String useLocalSessionState, String rewriteBatchedStatements, String cacheResultSetMetadata, String cacheServerConfiguration, String elideSetAutoCommits, String maintainTimeStats, String maximumPoolSize, String connectionTimeout) {
+    public DatabaseConfig(String url, String username, String password, String cachePrepStmts, String prepStmtCacheSize, String prepStmtCacheSqlLimit, String useServerPrepStmts, String useLocalSessionState, String rewriteBatchedStatements, String cacheResultSetMetadata, String cacheServerConfiguration, String elideSetAutoCommits, String maintainTimeStats, String maximumPoolSize, String connectionTimeout, String allowLocalInfile) {
         this.url = url;
         this.username = username;
         this.password = password;
@@ -33,6 +34,7 @@ public class DatabaseConfig {
         this.maintainTimeStats = maintainTimeStats;
         this.maximumPoolSize = maximumPoolSize;
         this.connectionTimeout = connectionTimeout;
+        this.allowLocalInfile = allowLocalInfile;
     }
 
     public String getCachePrepStmts() {
@@ -83,6 +85,10 @@ public class DatabaseConfig {
         return connectionTimeout;
     }
 
+    public String getAllowLocalInfile() {
+        return allowLocalInfile;
+    }
+
     public String getUrl() {
         return url;
     }
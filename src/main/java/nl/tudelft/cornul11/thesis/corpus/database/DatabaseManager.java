@@ -5,12 +5,23 @@ import com.zaxxer.hikari.HikariDataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class DatabaseManager {
     private final HikariDataSource ds;
+    private SignatureIndex signatureIndex;
+    private volatile ClassHashFilter classHashFilter;
+    private final HashFrequencies hashFrequencies = new HashFrequencies();
+    private final LibraryGraph libraryGraph = new LibraryGraph();
+    private ScheduledExecutorService classHashFilterRefresher;
     private static final Logger logger = LoggerFactory.getLogger(DatabaseManager.class);
 
     private DatabaseManager(DatabaseConfig config) {
@@ -38,6 +49,8 @@ public class DatabaseManager {
         hikariConfig.addDataSourceProperty("cacheServerConfiguration", config.getCacheServerConfiguration());
         hikariConfig.addDataSourceProperty("elideSetAutoCommits", config.getElideSetAutoCommits());
         hikariConfig.addDataSourceProperty("maintainTimeStats", config.getMaintainTimeStats());
+        // required by LOAD DATA LOCAL INFILE in the bulk-load corpus mode
+        hikariConfig.addDataSourceProperty("allowLocalInfile", config.getAllowLocalInfile());
         hikariConfig.setMaximumPoolSize(Integer.parseInt(config.getMaximumPoolSize()));
         hikariConfig.setConnectionTimeout(Long.parseLong(config.getConnectionTimeout()));
         hikariConfig.setIdleTimeout(60000);
@@ -58,25 +71,143 @@ public class DatabaseManager {
     }
 
     public SignatureDAO getSignatureDao(String dbmode) {
-        return new SignatureDAOImpl(ds, dbmode);
+        return getSignatureDao(dbmode, null);
+    }
+
+    /**
+     * Returns the DAO for the given database mode. In "index" mode, the top library matches are served from the
+     * signature index at {@code indexPath}, which is mapped once and shared by all the DAOs.
+     */
+    public SignatureDAO getSignatureDao(String dbmode, String indexPath) {
+        if (!"index".equals(dbmode)) {
+            return new SignatureDAOImpl(ds, dbmode, this::getClassHashFilter, hashFrequencies, libraryGraph);
+        }
+        if (indexPath == null) {
+            throw new IllegalArgumentException("signatureIndexPath is required when databaseMode is index");
+        }
+        return new IndexedSignatureDAO(getSignatureIndex(indexPath), new SignatureDAOImpl(ds, "file"));
+    }
+
+    private synchronized SignatureIndex getSignatureIndex(String indexPath) {
+        if (signatureIndex == null) {
+            try {
+                signatureIndex = new SignatureIndex(Paths.get(indexPath));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not open signature index " + indexPath, e);
+            }
+        }
+        return signatureIndex;
+    }
+
+    /**
+     * Builds the filter of the class hashes in the database, used by the DAOs of this manager to skip unknown classes,
+     * and rebuilds it every {@code refreshMinutes} minutes (never when 0) so that new libraries become visible. Until
+     * the first build is done, no class is filtered. Does nothing when {@code bitsPerKey} is 0.
+     */
+    public synchronized void startClassHashFilter(int bitsPerKey, long refreshMinutes) {
+        if (bitsPerKey <= 0 || classHashFilterRefresher != null) {
+            return;
+        }
+        classHashFilterRefresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "class-hash-filter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Runnable rebuild = () -> {
+            try {
+                classHashFilter = ClassHashFilter.load(ds, bitsPerKey);
+            } catch (SQLException e) {
+                logger.error("Error while building the class hash filter", e);
+            }
+        };
+        if (refreshMinutes > 0) {
+            classHashFilterRefresher.scheduleWithFixedDelay(rebuild, 0, refreshMinutes, TimeUnit.MINUTES);
+        } else {
+            classHashFilterRefresher.execute(rebuild);
+        }
+    }
+
+    /**
+     * Sets how the DAOs of this manager use the number of libraries of each class hash, see {@link HashFrequencies}.
+     */
+    public void configureHashFrequencies(int maxHashLibraries, boolean idfWeighting) {
+        hashFrequencies.configure(maxHashLibraries, idfWeighting);
+    }
+
+    /**
+     * Recomputes the number of libraries of each class hash, after the signatures were bulk loaded.
+     */
+    public void rebuildHashFrequencies() {
+        HashFrequencies.rebuild(ds);
+    }
+
+    /**
+     * Sets whether the DAOs of this manager look up the equivalence and containment of the candidates, see
+     * {@link LibraryGraph}.
+     */
+    public void configureLibraryGraph(boolean enabled) {
+        libraryGraph.configure(enabled);
+    }
+
+    /**
+     * Records the missing class sets and links the new ones, after libraries were ingested.
+     */
+    public void buildLibraryGraph() {
+        LibraryGraph.build(ds);
+    }
+
+    /**
+     * Encodes the signatures of the libraries that are not encoded yet as deltas, read by the "delta" database mode.
+     */
+    public void buildSignatureDeltas(double maxDeltaRatio) {
+        SignatureDeltas.build(ds, maxDeltaRatio);
+    }
+
+    /**
+     * Fills the class dictionary read by the "dictionary" database mode from the signatures table.
+     */
+    public void migrateClassDictionary(int chunkSize) {
+        ClassDictionary.migrate(ds, chunkSize);
+    }
+
+    public ClassHashFilter getClassHashFilter() {
+        return classHashFilter;
+    }
+
+    public SignatureIndexExporter getSignatureIndexExporter() {
+        return new SignatureIndexExporter(ds);
+    }
+
+    public BulkLoader getBulkLoader() {
+        return new BulkLoader(ds);
     }
 
     private void createSchema() {
         createLibrariesTable();
         createSignaturesTable();
-//        addIndexes();
+        createHashFrequencyTable();
+        createLibraryGraphTables();
+        createSignatureDeltaTables();
+        createClassDictionaryTables();
+        // indexes are only created after a bulk load, see addIndexes()
     }
 
-    private void addIndexes() {
-        String createLibraryIdIndexQuery = "CREATE INDEX idx_library_id ON libraries (id)";
-        String createSignatureIdIndexQuery = "CREATE INDEX idx_signature_library_id ON signatures (library_id)";
-        String createSignatureHashIndexQuery = "CREATE INDEX idx_signature_class_hash ON signatures (class_hash)";
+    /**
+     * Creates the lookup indexes of the signatures table. Building them once after loading all rows is much faster
+     * than maintaining them during the inserts.
+     */
+    public void addIndexes() {
+        String createLibraryIdIndexQuery = "CREATE INDEX IF NOT EXISTS idx_library_id ON libraries (id)";
+        String createSignatureIdIndexQuery = "CREATE INDEX IF NOT EXISTS idx_signature_library_id ON signatures (library_id)";
+        String createSignatureHashIndexQuery = "CREATE INDEX IF NOT EXISTS idx_signature_class_hash ON signatures (class_hash)";
+        String createLibraryJarHashIndexQuery = "CREATE INDEX IF NOT EXISTS idx_library_jar_hash ON libraries (jar_hash)";
 
         try (Connection connection = ds.getConnection();
              Statement statement = connection.createStatement()) {
             statement.executeUpdate(createLibraryIdIndexQuery);
             statement.executeUpdate(createSignatureIdIndexQuery);
             statement.executeUpdate(createSignatureHashIndexQuery);
+            statement.executeUpdate(createLibraryJarHashIndexQuery);
             logger.info("Indexes created on signatures table.");
         } catch (SQLException e) {
             logger.error("Error while creating indexes on signatures table.", e);
@@ -95,17 +226,57 @@ public class DatabaseManager {
                 + "disk_size INT NOT NULL,"
                 + "total_class_files INT NOT NULL,"
                 + "unique_signatures INT NOT NULL,"
-                + "creation_date DATETIME)";
+                + "creation_date DATETIME,"
+                + "fingerprint BIGINT NOT NULL DEFAULT 0)";
+        // tables created before the artifact fingerprints were recorded
+        String addFingerprintColumnQuery = "ALTER TABLE libraries ADD COLUMN IF NOT EXISTS fingerprint BIGINT NOT NULL DEFAULT 0";
 
         try (Connection connection = ds.getConnection();
              Statement statement = connection.createStatement()) {
             statement.executeUpdate(createTableQuery);
+            statement.executeUpdate(addFingerprintColumnQuery);
             logger.info("Libraries table created or already exists.");
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
 
+    private void createHashFrequencyTable() {
+        try (Connection connection = ds.getConnection()) {
+            HashFrequencies.createTable(connection);
+            logger.info("Class hash frequency table created or already exists.");
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void createLibraryGraphTables() {
+        try (Connection connection = ds.getConnection()) {
+            LibraryGraph.createTables(connection);
+            logger.info("Library graph tables created or already exist.");
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void createSignatureDeltaTables() {
+        try (Connection connection = ds.getConnection()) {
+            SignatureDeltas.createTables(connection);
+            logger.info("Signature delta tables created or already exist.");
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void createClassDictionaryTables() {
+        try (Connection connection = ds.getConnection()) {
+            ClassDictionary.createTables(connection);
+            logger.info("Class dictionary tables created or already exist.");
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
     private void createSignaturesTable() {
         String createTableQuery = "CREATE TABLE IF NOT EXISTS signatures (" +
                 "id INT PRIMARY KEY AUTO_INCREMENT, " +
@@ -0,0 +1,165 @@
+package nl.tudelft.cornul11.thesis.corpus.database;
+
+import com.zaxxer.hikari.HikariDataSource;
+import nl.tudelft.cornul11.thesis.corpus.util.SortedArrays;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Number of libraries that contain each class hash, kept in the {@code class_hash_frequency} table. When they are used,
+ * the counts are updated in the transaction that inserts the libraries; otherwise these hot rows are not touched by the
+ * ingestion, and the counts are recomputed from the signatures table by {@link #rebuild(HikariDataSource)}, as after a
+ * bulk load, before they are enabled.
+ * <p>
+ * They are used by the top matches query in two ways, both disabled by default:
+ * <ul>
+ *     <li>the hashes contained in more than {@code maxLibraries} libraries (shaded Guava, generated classes) are left
+ *     out of the aggregation that selects the candidates, which would otherwise return thousands of rows per hash.
+ *     They are only fetched for the candidates, so the ratios of the candidates are unchanged. A library is then only
+ *     selected through its other classes;</li>
+ *     <li>the inverse document frequency {@code log(N / count)} of the matched hashes ranks candidates with the same
+ *     included ratio, so that the one matched by rarer classes comes first.</li>
+ * </ul>
+ */
+public class HashFrequencies {
+    private static final Logger logger = LoggerFactory.getLogger(HashFrequencies.class);
+    private static final int BATCH_SIZE = 1000;
+
+    private volatile int maxLibraries = 0;
+    private volatile boolean idfWeighting = false;
+
+    /**
+     * Sets the number of libraries above which a hash is left out of the candidate selection (0 for no limit), and
+     * whether candidates are ranked by IDF.
+     */
+    public void configure(int maxLibraries, boolean idfWeighting) {
+        this.maxLibraries = maxLibraries;
+        this.idfWeighting = idfWeighting;
+    }
+
+    public int getMaxLibraries() {
+        return maxLibraries;
+    }
+
+    public boolean isIdfWeighting() {
+        return idfWeighting;
+    }
+
+    /**
+     * Returns whether the counts are used by the top matches query, and thus must be kept up to date on insertion.
+     */
+    public boolean isEnabled() {
+        return maxLibraries > 0 || idfWeighting;
+    }
+
+    public static void createTable(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS class_hash_frequency ("
+                    + "class_hash BIGINT NOT NULL PRIMARY KEY, "
+                    + "library_count INT NOT NULL)");
+        }
+    }
+
+    /**
+     * Counts the given libraries, each given by its class hashes, on the connection of the transaction that inserts
+     * them. The rows are upserted in hash order, so that concurrent writers lock them in the same order.
+     */
+    public static void addLibraries(Connection connection, List<long[]> libraryHashes) throws SQLException {
+        int total = 0;
+        for (long[] hashes : libraryHashes) {
+            total += hashes.length;
+        }
+        // every library contributes each of its hashes once
+        long[] allHashes = new long[total];
+        int length = 0;
+        for (long[] hashes : libraryHashes) {
+            long[] unique = hashes.clone();
+            int numUnique = SortedArrays.sortUnique(unique, unique.length);
+            System.arraycopy(unique, 0, allHashes, length, numUnique);
+            length += numUnique;
+        }
+        Arrays.sort(allHashes, 0, length);
+
+        String upsertQuery = "INSERT INTO class_hash_frequency (class_hash, library_count) VALUES (?, ?) "
+                + "ON DUPLICATE KEY UPDATE library_count = library_count + VALUES(library_count)";
+        try (PreparedStatement statement = connection.prepareStatement(upsertQuery)) {
+            int pendingRows = 0;
+            for (int i = 0; i < length; ) {
+                int end = i + 1;
+                while (end < length && allHashes[end] == allHashes[i]) {
+                    end++;
+                }
+                statement.setLong(1, allHashes[i]);
+                statement.setInt(2, end - i);
+                statement.addBatch();
+                if (++pendingRows % BATCH_SIZE == 0) {
+                    statement.executeBatch();
+                }
+                i = end;
+            }
+            statement.executeBatch();
+        }
+    }
+
+    /**
+     * Recomputes all the counts from the signatures table into a new table, which then replaces the previous one
+     * atomically, so that the queries never see missing counts. The counts upserted meanwhile are lost, rebuild them
+     * when nothing is ingested.
+     */
+    public static void rebuild(HikariDataSource ds) {
+        long startTime = System.currentTimeMillis();
+        try (Connection connection = ds.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DROP TABLE IF EXISTS class_hash_frequency_new, class_hash_frequency_old");
+            statement.executeUpdate("CREATE TABLE class_hash_frequency_new LIKE class_hash_frequency");
+            int rows = statement.executeUpdate("INSERT INTO class_hash_frequency_new (class_hash, library_count) "
+                    + "SELECT class_hash, COUNT(DISTINCT library_id) FROM signatures GROUP BY class_hash");
+            statement.executeUpdate("RENAME TABLE class_hash_frequency TO class_hash_frequency_old, "
+                    + "class_hash_frequency_new TO class_hash_frequency");
+            statement.executeUpdate("DROP TABLE class_hash_frequency_old");
+            logger.info("Counted the libraries of " + rows + " class hashes in "
+                    + (System.currentTimeMillis() - startTime) / 1000 + " seconds");
+        } catch (SQLException e) {
+            logger.error("Error while counting the libraries of the class hashes", e);
+        }
+    }
+
+    /**
+     * Returns the number of libraries of each of the sorted hashes that are in {@code temp_hashes}, 0 for the hashes
+     * that are not in the table. The counts are read from {@code frequencyTable}, {@code class_hash_frequency} or the
+     * {@link ClassDictionary} {@code classes}, which have the same columns.
+     */
+    static int[] getLibraryCounts(Connection connection, String frequencyTable, long[] sortedHashes) throws SQLException {
+        int[] counts = new int[sortedHashes.length];
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT f.class_hash, f.library_count FROM " + frequencyTable + " f "
+                     + "JOIN temp_hashes t ON f.class_hash = t.class_hash")) {
+            while (resultSet.next()) {
+                int position = Arrays.binarySearch(sortedHashes, resultSet.getLong(1));
+                if (position >= 0) {
+                    counts[position] = resultSet.getInt(2);
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the number of libraries with signatures, the N of the IDF.
+     */
+    static long getNumLibraries(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM libraries WHERE unique_signatures > 0")) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+}
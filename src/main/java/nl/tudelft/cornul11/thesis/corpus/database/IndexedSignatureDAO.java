@@ -0,0 +1,103 @@
+package nl.tudelft.cornul11.thesis.corpus.database;
+
+import nl.tudelft.cornul11.thesis.corpus.database.SignatureDAOImpl.LibraryCandidate;
+import nl.tudelft.cornul11.thesis.corpus.file.ClassFileInfo;
+import nl.tudelft.cornul11.thesis.corpus.file.JarAndPomInfoExtractor;
+import nl.tudelft.cornul11.thesis.corpus.model.Dependency;
+import nl.tudelft.cornul11.thesis.corpus.model.ExtractedLibrary;
+import nl.tudelft.cornul11.thesis.corpus.model.Signature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * {@link SignatureDAO} that serves {@link #returnTopLibraryMatches(List)} from a memory-mapped {@link SignatureIndex},
+ * without any database round-trip. All other operations are forwarded to the database-backed DAO.
+ */
+public class IndexedSignatureDAO implements SignatureDAO {
+    private static final Logger logger = LoggerFactory.getLogger(IndexedSignatureDAO.class);
+
+    private final SignatureIndex index;
+    private final SignatureDAO delegate;
+
+    public IndexedSignatureDAO(SignatureIndex index, SignatureDAO delegate) {
+        this.index = index;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public List<LibraryCandidate> returnTopLibraryMatches(List<ClassFileInfo> signatures) {
+        long startTime = System.currentTimeMillis();
+
+        // the matcher works on library indexes, which are mapped back to library ids at the end
+        LibraryMatcher matcher = new LibraryMatcher(signatures);
+        for (long hash : matcher.getHashes()) {
+            index.forEachLibrary(hash, libraryIndex -> matcher.addMatch(hash, libraryIndex));
+        }
+
+        List<LibraryCandidate> candidates = matcher.selectCandidates();
+        for (LibraryCandidate candidate : candidates) {
+            String[] gav = index.getGAV(candidate.getLibraryId());
+            candidate.setGroupId(gav[0])
+                    .setArtifactId(gav[1])
+                    .setVersion(gav[2])
+                    .setExpectedNumberOfTotalClasses(index.getUniqueSignatures(candidate.getLibraryId()));
+        }
+
+        List<LibraryCandidate> output = matcher.rankCandidates(candidates);
+        for (LibraryCandidate candidate : candidates) {
+            candidate.setLibraryId(index.getLibraryId(candidate.getLibraryId()));
+        }
+
+        logger.info("Top matches lookup took " + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds.");
+        return output;
+    }
+
+    @Override
+    public List<LibraryCandidate> findLibrariesByJarHash(long jarHash, long jarCrc) {
+        // the index does not contain the jar hashes, it is a single lookup on the libraries table anyway
+        return delegate.findLibrariesByJarHash(jarHash, jarCrc);
+    }
+
+    @Override
+    public int insertLibrary(JarAndPomInfoExtractor jarAndPomInfoExtractor, long jarHash, long jarCrc, long fingerprint, boolean isBrokenJar, long jarCreationDate) {
+        return delegate.insertLibrary(jarAndPomInfoExtractor, jarHash, jarCrc, fingerprint, isBrokenJar, jarCreationDate);
+    }
+
+    @Override
+    public int insertSignatures(List<Signature> signatures, long jarHash, long jarCrc, long fingerprint, boolean isUberJar, long jarCreationDate) {
+        return delegate.insertSignatures(signatures, jarHash, jarCrc, fingerprint, isUberJar, jarCreationDate);
+    }
+
+    @Override
+    public int insertLibraries(List<ExtractedLibrary> libraries) {
+        return delegate.insertLibraries(libraries);
+    }
+
+    @Override
+    public void closeConnection() {
+        delegate.closeConnection();
+    }
+
+    @Override
+    public boolean isLibraryInDB(String library) {
+        return delegate.isLibraryInDB(library);
+    }
+
+    @Override
+    public boolean isLibraryInDBWithSignatures(String library) {
+        return delegate.isLibraryInDBWithSignatures(library);
+    }
+
+    @Override
+    public Iterator<Dependency> getAllPossibleLibraries() {
+        return delegate.getAllPossibleLibraries();
+    }
+
+    @Override
+    public void forEachIndexedArtifact(IndexedArtifactConsumer consumer) {
+        delegate.forEachIndexedArtifact(consumer);
+    }
+}
@@ -0,0 +1,270 @@
+package nl.tudelft.cornul11.thesis.corpus.database;
+
+import com.zaxxer.hikari.HikariDataSource;
+import nl.tudelft.cornul11.thesis.corpus.util.SortedArrays;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Equivalence classes and containment edges of the libraries, which are properties of the corpus rather than of the
+ * JAR being matched:
+ * <ul>
+ *     <li>{@code library_class_sets} maps every library with signatures to the hash of its set of unique class hashes.
+ *     Libraries with the same set hash (typically versions that only changed their POM) are equivalent: they match the
+ *     same classes of any JAR. The row is written in the transaction that inserts the library;</li>
+ *     <li>{@code library_containment} has an edge from a class set to each class set it strictly contains. The edges
+ *     of new class sets are computed by {@link #build(HikariDataSource)}, which only visits the class sets that were
+ *     not linked yet, so it can be run again after every ingestion.</li>
+ * </ul>
+ * The top matches query uses them, when enabled, to fetch the matches of only one library per equivalence class and
+ * to fill in which candidates include others.
+ */
+public class LibraryGraph {
+    private static final Logger logger = LoggerFactory.getLogger(LibraryGraph.class);
+    private static final int BATCH_SIZE = 1000;
+    private static final int FETCH_SIZE = 100000;
+
+    private volatile boolean enabled = false;
+
+    public void configure(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void createTables(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS library_class_sets ("
+                    + "library_id INT NOT NULL PRIMARY KEY, "
+                    + "set_hash BIGINT NOT NULL, "
+                    + "linked BOOLEAN NOT NULL DEFAULT FALSE, "
+                    + "INDEX idx_class_set_hash (set_hash))");
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS library_containment ("
+                    + "container_hash BIGINT NOT NULL, "
+                    + "contained_hash BIGINT NOT NULL, "
+                    + "PRIMARY KEY (container_hash, contained_hash), "
+                    + "INDEX idx_contained_hash (contained_hash))");
+        }
+    }
+
+    /**
+     * Returns the hash of the set of class hashes, which does not depend on their order or duplicates.
+     */
+    public static long classSetHash(long[] classHashes) {
+        long[] unique = classHashes.clone();
+        int numUnique = SortedArrays.sortUnique(unique, unique.length);
+        long hash = SignatureIndex.mix(numUnique);
+        for (int i = 0; i < numUnique; i++) {
+            hash = SignatureIndex.mix(hash ^ unique[i]) + i;
+        }
+        // 0 stands for an unknown class set
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * Records the class sets of the given libraries, on the connection of the transaction that inserts them.
+     */
+    public static void addLibraries(Connection connection, List<Integer> libraryIds, List<long[]> libraryHashes) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT IGNORE INTO library_class_sets (library_id, set_hash) VALUES (?, ?)")) {
+            for (int i = 0; i < libraryIds.size(); i++) {
+                statement.setInt(1, libraryIds.get(i));
+                statement.setLong(2, classSetHash(libraryHashes.get(i)));
+                statement.addBatch();
+                if ((i + 1) % BATCH_SIZE == 0) {
+                    statement.executeBatch();
+                }
+            }
+            statement.executeBatch();
+        }
+    }
+
+    /**
+     * Records the class sets of the libraries that have none (bulk loaded, or inserted before the table existed), then
+     * computes the containment edges of the class sets that were not linked yet.
+     */
+    public static void build(HikariDataSource ds) {
+        long startTime = System.currentTimeMillis();
+        try {
+            int numLibraries = addMissingClassSets(ds);
+            logger.info("Recorded the class sets of " + numLibraries + " libraries in "
+                    + (System.currentTimeMillis() - startTime) / 1000 + " seconds");
+            int numSets = linkClassSets(ds);
+            logger.info("Linked " + numSets + " class sets in " + (System.currentTimeMillis() - startTime) / 1000 + " seconds");
+        } catch (SQLException e) {
+            logger.error("Error while building the library graph", e);
+        }
+    }
+
+    private static int addMissingClassSets(HikariDataSource ds) throws SQLException {
+        String missingQuery = "SELECT s.library_id, s.class_hash FROM signatures s "
+                + "LEFT JOIN library_class_sets cs ON cs.library_id = s.library_id "
+                + "WHERE cs.library_id IS NULL ORDER BY s.library_id";
+        int numLibraries = 0;
+        // the rows are streamed on one connection and inserted on another
+        try (Connection readConnection = ds.getConnection();
+             Connection writeConnection = ds.getConnection();
+             Statement statement = readConnection.createStatement()) {
+            statement.setFetchSize(FETCH_SIZE);
+            List<Integer> libraryIds = new ArrayList<>();
+            List<long[]> libraryHashes = new ArrayList<>();
+            long[] classHashes = new long[64];
+            int numHashes = 0;
+            int libraryId = -1;
+            try (ResultSet resultSet = statement.executeQuery(missingQuery)) {
+                while (resultSet.next()) {
+                    int rowLibraryId = resultSet.getInt(1);
+                    if (rowLibraryId != libraryId && numHashes > 0) {
+                        libraryIds.add(libraryId);
+                        libraryHashes.add(Arrays.copyOf(classHashes, numHashes));
+                        numHashes = 0;
+                        if (libraryIds.size() == BATCH_SIZE) {
+                            addLibraries(writeConnection, libraryIds, libraryHashes);
+                            numLibraries += libraryIds.size();
+                            libraryIds.clear();
+                            libraryHashes.clear();
+                        }
+                    }
+                    libraryId = rowLibraryId;
+                    if (numHashes == classHashes.length) {
+                        classHashes = Arrays.copyOf(classHashes, numHashes * 2);
+                    }
+                    classHashes[numHashes++] = resultSet.getLong(2);
+                }
+            }
+            if (numHashes > 0) {
+                libraryIds.add(libraryId);
+                libraryHashes.add(Arrays.copyOf(classHashes, numHashes));
+            }
+            addLibraries(writeConnection, libraryIds, libraryHashes);
+            numLibraries += libraryIds.size();
+        }
+        return numLibraries;
+    }
+
+    private static int linkClassSets(HikariDataSource ds) throws SQLException {
+        // the libraries of a class set are linked together, a new library of a linked class set has no new edges
+        String markLinkedQuery = "UPDATE library_class_sets u JOIN library_class_sets l ON u.set_hash = l.set_hash AND l.linked "
+                + "SET u.linked = TRUE WHERE NOT u.linked";
+        String unlinkedQuery = "SELECT set_hash, MIN(library_id) FROM library_class_sets WHERE NOT linked GROUP BY set_hash";
+        // number of classes that every other library shares with one library of the class set
+        String sharedQuery = "SELECT cs.set_hash, l.unique_signatures, COUNT(DISTINCT s.class_hash) AS shared FROM signatures t "
+                + "JOIN signatures s ON s.class_hash = t.class_hash "
+                + "JOIN library_class_sets cs ON cs.library_id = s.library_id "
+                + "JOIN libraries l ON l.id = s.library_id "
+                + "WHERE t.library_id = ? AND cs.set_hash <> ? "
+                + "GROUP BY s.library_id, cs.set_hash, l.unique_signatures";
+        String uniqueSignaturesQuery = "SELECT unique_signatures FROM libraries WHERE id = ?";
+        String insertEdgeQuery = "INSERT IGNORE INTO library_containment (container_hash, contained_hash) VALUES (?, ?)";
+        String setLinkedQuery = "UPDATE library_class_sets SET linked = TRUE WHERE set_hash = ?";
+
+        try (Connection connection = ds.getConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate(markLinkedQuery);
+            }
+            List<long[]> unlinkedSets = new ArrayList<>();
+            try (Statement statement = connection.createStatement();
+                 ResultSet resultSet = statement.executeQuery(unlinkedQuery)) {
+                while (resultSet.next()) {
+                    unlinkedSets.add(new long[]{resultSet.getLong(1), resultSet.getInt(2)});
+                }
+            }
+
+            long numEdges = 0;
+            try (PreparedStatement sharedStatement = connection.prepareStatement(sharedQuery);
+                 PreparedStatement uniqueSignaturesStatement = connection.prepareStatement(uniqueSignaturesQuery);
+                 PreparedStatement insertEdgeStatement = connection.prepareStatement(insertEdgeQuery);
+                 PreparedStatement setLinkedStatement = connection.prepareStatement(setLinkedQuery)) {
+                for (int i = 0; i < unlinkedSets.size(); i++) {
+                    long setHash = unlinkedSets.get(i)[0];
+                    int libraryId = (int) unlinkedSets.get(i)[1];
+                    uniqueSignaturesStatement.setInt(1, libraryId);
+                    int uniqueSignatures;
+                    try (ResultSet resultSet = uniqueSignaturesStatement.executeQuery()) {
+                        if (!resultSet.next()) {
+                            continue;
+                        }
+                        uniqueSignatures = resultSet.getInt(1);
+                    }
+
+                    sharedStatement.setInt(1, libraryId);
+                    sharedStatement.setLong(2, setHash);
+                    try (ResultSet resultSet = sharedStatement.executeQuery()) {
+                        while (resultSet.next()) {
+                            long otherSetHash = resultSet.getLong(1);
+                            int otherUniqueSignatures = resultSet.getInt(2);
+                            int shared = resultSet.getInt(3);
+                            if (shared == otherUniqueSignatures) {
+                                insertEdgeStatement.setLong(1, setHash);
+                                insertEdgeStatement.setLong(2, otherSetHash);
+                                insertEdgeStatement.addBatch();
+                                numEdges++;
+                            } else if (shared == uniqueSignatures) {
+                                insertEdgeStatement.setLong(1, otherSetHash);
+                                insertEdgeStatement.setLong(2, setHash);
+                                insertEdgeStatement.addBatch();
+                                numEdges++;
+                            }
+                        }
+                    }
+                    insertEdgeStatement.executeBatch();
+                    setLinkedStatement.setLong(1, setHash);
+                    setLinkedStatement.executeUpdate();
+
+                    if ((i + 1) % 10000 == 0) {
+                        logger.info("Linked " + (i + 1) + "/" + unlinkedSets.size() + " class sets, " + numEdges + " edges");
+                    }
+                }
+            }
+            return unlinkedSets.size();
+        }
+    }
+
+    /**
+     * Returns the class set hash of each candidate in {@code temp_candidates} that has one, as (library id, set hash)
+     * pairs.
+     */
+    static List<long[]> getCandidateClassSets(Connection connection) throws SQLException {
+        List<long[]> classSets = new ArrayList<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT cs.library_id, cs.set_hash FROM library_class_sets cs "
+                     + "JOIN temp_candidates c ON cs.library_id = c.library_id")) {
+            while (resultSet.next()) {
+                classSets.add(new long[]{resultSet.getInt(1), resultSet.getLong(2)});
+            }
+        }
+        return classSets;
+    }
+
+    /**
+     * Returns the (container, contained) edges between the given class sets.
+     */
+    static List<long[]> getContainment(Connection connection, Collection<Long> setHashes) throws SQLException {
+        List<long[]> edges = new ArrayList<>();
+        if (setHashes.size() < 2) {
+            return edges;
+        }
+        String hashList = setHashes.stream().map(String::valueOf).collect(Collectors.joining(", "));
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT container_hash, contained_hash FROM library_containment "
+                     + "WHERE container_hash IN (" + hashList + ") AND contained_hash IN (" + hashList + ")")) {
+            while (resultSet.next()) {
+                edges.add(new long[]{resultSet.getLong(1), resultSet.getLong(2)});
+            }
+        }
+        return edges;
+    }
+}
@@ -0,0 +1,620 @@
+package nl.tudelft.cornul11.thesis.corpus.database;
+
+import nl.tudelft.cornul11.thesis.corpus.database.SignatureDAOImpl.LibraryCandidate;
+import nl.tudelft.cornul11.thesis.corpus.file.ClassFileInfo;
+import nl.tudelft.cornul11.thesis.corpus.util.IntIntHashMap;
+import nl.tudelft.cornul11.thesis.corpus.util.SortedArrays;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Turns the (class hash, library id) matches of the classes of a JAR into library candidates. Looking up the matches
+ * and the metadata of the candidates is left to the {@link SignatureDAO} implementation:
+ * <ol>
+ *     <li>report every library containing one of {@link #getHashes()} through {@link #addMatch(long, int)}. An
+ *     implementation that already pruned the libraries that cannot be candidates only reports the candidates, and
+ *     reports the packages that also occur in other libraries through {@link #addSharedPackage(int)},</li>
+ *     <li>fill in the GAV and number of unique classes of the libraries returned by {@link #selectCandidates()},</li>
+ *     <li>call {@link #rankCandidates(List)} to identify alternatives and perfect matches.</li>
+ * </ol>
+ * Fat JARs have tens of thousands of classes matched by thousands of libraries, so everything is kept in primitive
+ * arrays: a class hash is referred to by its position in the sorted hashes of the JAR, a library by the order in which
+ * it was first reported, and the hashes of a library or a package are sorted arrays of positions.
+ */
+public class LibraryMatcher {
+    private static final Logger logger = LoggerFactory.getLogger(LibraryMatcher.class);
+    private static final int[] NO_VALUES = new int[0];
+
+    private final long startTime = System.currentTimeMillis();
+
+    // unique class hashes of the JAR, sorted
+    private final long[] hashes;
+    private final List<String> packageNames = new ArrayList<>();
+    // sorted hash positions of each package, classes in the root package are not part of any package
+    private final int[][] packageHashes;
+    // packages of each hash position
+    private final int[][] hashPackages;
+    private final BitSet sharedPackages = new BitSet();
+
+    private final IntIntHashMap librarySlots = new IntIntHashMap(128);
+    private int[] libraryIds = new int[128];
+    private int[][] libraryHashes = new int[128][];
+    private int[] libraryHashCounts = new int[128];
+    private int numLibraries = 0;
+    private boolean librariesSorted = false;
+
+    private final Set<LibraryCandidate> selfCandidates = new HashSet<>();
+    // IDF of each hash position, null when the candidates are not weighted
+    private double[] hashWeights;
+    // (container, contained) class set hashes, null when the containment of the candidates is not known
+    private List<long[]> containment;
+
+    public LibraryMatcher(List<ClassFileInfo> signatures) {
+        long[] allHashes = new long[signatures.size()];
+        for (int i = 0; i < allHashes.length; i++) {
+            allHashes[i] = signatures.get(i).getHashCode();
+        }
+        hashes = Arrays.copyOf(allHashes, SortedArrays.sortUnique(allHashes, allHashes.length));
+
+        Map<String, Integer> packageIds = new HashMap<>();
+        int[] classPackages = new int[signatures.size()];
+        int[] classHashes = new int[signatures.size()];
+        int numPackageClasses = 0;
+        for (ClassFileInfo s : signatures) {
+            String path = s.getClassName();
+
+            boolean rootClass = path.lastIndexOf("/") == -1;
+
+            if (rootClass) {
+                continue;
+            }
+
+            String folder = path.substring(0, path.lastIndexOf("/"));
+            Integer packageId = packageIds.get(folder);
+            if (packageId == null) {
+                packageId = packageNames.size();
+                packageIds.put(folder, packageId);
+                packageNames.add(folder);
+            }
+            classPackages[numPackageClasses] = packageId;
+            classHashes[numPackageClasses] = Arrays.binarySearch(hashes, s.getHashCode());
+            numPackageClasses++;
+        }
+        // class hashes per package, and packages per class hash
+        packageHashes = groupBy(classPackages, classHashes, numPackageClasses, packageNames.size());
+        hashPackages = groupBy(classHashes, classPackages, numPackageClasses, hashes.length);
+    }
+
+    /**
+     * Returns, for each key in [0, numKeys), the sorted unique values paired with it.
+     */
+    private static int[][] groupBy(int[] keys, int[] values, int length, int numKeys) {
+        int[] counts = new int[numKeys];
+        for (int i = 0; i < length; i++) {
+            counts[keys[i]]++;
+        }
+        int[][] groups = new int[numKeys][];
+        for (int key = 0; key < numKeys; key++) {
+            groups[key] = counts[key] == 0 ? NO_VALUES : new int[counts[key]];
+            counts[key] = 0;
+        }
+        for (int i = 0; i < length; i++) {
+            groups[keys[i]][counts[keys[i]]++] = values[i];
+        }
+        for (int key = 0; key < numKeys; key++) {
+            int unique = SortedArrays.sortUnique(groups[key], groups[key].length);
+            if (unique < groups[key].length) {
+                groups[key] = Arrays.copyOf(groups[key], unique);
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * Returns the unique class hashes of the JAR, sorted.
+     */
+    public long[] getHashes() {
+        return hashes;
+    }
+
+    /**
+     * Sets the IDF of the hashes, in the order of {@link #getHashes()}, which ranks the candidates with the same
+     * included ratio.
+     */
+    public void setHashWeights(double[] hashWeights) {
+        this.hashWeights = hashWeights;
+    }
+
+    /**
+     * Sets the (container, contained) class set hashes of the candidates, from which {@link #rankCandidates(List)}
+     * fills in which candidates include others.
+     */
+    public void setContainment(List<long[]> containment) {
+        this.containment = containment;
+    }
+
+    public int getPackageCount() {
+        return packageNames.size();
+    }
+
+    /**
+     * Returns the class hashes of the package, packages are numbered from 0 to {@link #getPackageCount()}.
+     */
+    public long[] getPackageHashes(int packageId) {
+        return toHashes(packageHashes[packageId], packageHashes[packageId].length);
+    }
+
+    /**
+     * Marks a package of which some classes occur in a library that was not reported through
+     * {@link #addMatch(long, int)}, such a package cannot make a candidate a perfect match.
+     */
+    public void addSharedPackage(int packageId) {
+        sharedPackages.set(packageId);
+    }
+
+    public void addMatch(long classHash, int libraryId) {
+        int hash = Arrays.binarySearch(hashes, classHash);
+        if (hash < 0) {
+            return;
+        }
+        int slot = librarySlots.get(libraryId, -1);
+        if (slot == -1) {
+            slot = numLibraries++;
+            if (slot == libraryIds.length) {
+                libraryIds = Arrays.copyOf(libraryIds, slot * 2);
+                libraryHashes = Arrays.copyOf(libraryHashes, slot * 2);
+                libraryHashCounts = Arrays.copyOf(libraryHashCounts, slot * 2);
+            }
+            libraryIds[slot] = libraryId;
+            libraryHashes[slot] = new int[4];
+            librarySlots.put(libraryId, slot);
+        }
+        // keep track of the hashes contained in each library
+        int count = libraryHashCounts[slot];
+        if (count == libraryHashes[slot].length) {
+            libraryHashes[slot] = Arrays.copyOf(libraryHashes[slot], count * 2);
+        }
+        libraryHashes[slot][count] = hash;
+        libraryHashCounts[slot] = count + 1;
+        librariesSorted = false;
+    }
+
+    /**
+     * Reports a library with the same class set as a library already reported through {@link #addMatch(long, int)},
+     * so that it has the same matches without fetching them. Does nothing when the representative has no matches.
+     */
+    public void addEquivalentLibrary(int libraryId, int representativeId) {
+        int representativeSlot = librarySlots.get(representativeId, -1);
+        if (representativeSlot == -1 || librarySlots.get(libraryId, -1) != -1) {
+            return;
+        }
+        int slot = numLibraries++;
+        if (slot == libraryIds.length) {
+            libraryIds = Arrays.copyOf(libraryIds, slot * 2);
+            libraryHashes = Arrays.copyOf(libraryHashes, slot * 2);
+            libraryHashCounts = Arrays.copyOf(libraryHashCounts, slot * 2);
+        }
+        libraryIds[slot] = libraryId;
+        libraryHashes[slot] = Arrays.copyOf(libraryHashes[representativeSlot], Math.max(4, libraryHashCounts[representativeSlot]));
+        libraryHashCounts[slot] = libraryHashCounts[representativeSlot];
+        librarySlots.put(libraryId, slot);
+    }
+
+    private void sortLibraryHashes() {
+        if (!librariesSorted) {
+            for (int slot = 0; slot < numLibraries; slot++) {
+                libraryHashCounts[slot] = SortedArrays.sortUnique(libraryHashes[slot], libraryHashCounts[slot]);
+            }
+            librariesSorted = true;
+        }
+    }
+
+    private long[] toHashes(int[] hashPositions, int length) {
+        long[] result = new long[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = hashes[hashPositions[i]];
+        }
+        return result;
+    }
+
+    /**
+     * Selects the libraries that contain most of the JAR, or all the classes of one of its packages. The candidates
+     * are sorted by decreasing library id and only have their id and matched hashes set.
+     */
+    public List<LibraryCandidate> selectCandidates() {
+        sortLibraryHashes();
+        int numUniqueHashes = hashes.length;
+
+        BitSet matchedHashes = new BitSet(numUniqueHashes);
+        for (int slot = 0; slot < numLibraries; slot++) {
+            for (int i = 0; i < libraryHashCounts[slot]; i++) {
+                matchedHashes.set(libraryHashes[slot][i]);
+            }
+        }
+        // TODO: examine these files
+        logger.info("# file not found in DB: " + (numUniqueHashes - matchedHashes.cardinality()) + " "
+                + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds.");
+
+        List<LibraryCandidate> candidates = new ArrayList<>();
+        // last library that checked a package, so that every package is only checked once per library
+        int[] packageCheckedBy = new int[packageNames.size()];
+        Arrays.fill(packageCheckedBy, -1);
+
+        // for each detected library
+        for (int slot = 0; slot < numLibraries; slot++) {
+            int[] hashesInLib = libraryHashes[slot]; // get all of its hashes
+            int numHashesInLib = libraryHashCounts[slot];
+
+            if (numHashesInLib < 2) { // if a lib has only one hash, we don't consider it
+                continue;
+            }
+
+            if (numHashesInLib * 1.0 / numUniqueHashes > 0.5) {
+                // if the lib includes more than 50% of the hashes in the input jar we consider it as a candidate
+                LibraryCandidate libraryCandidate = new LibraryCandidate()
+                        .setLibraryId(libraryIds[slot])
+                        .setHashes(toHashes(hashesInLib, numHashesInLib))
+                        .setIdfScore(idfScore(hashesInLib, numHashesInLib));
+
+                // check if we matched itself
+                if (numHashesInLib * 1.0 / numUniqueHashes > 0.99) {
+                    selfCandidates.add(libraryCandidate);
+                    libraryCandidate.setSelf(true);
+                }
+                candidates.add(libraryCandidate);
+                continue;
+            }
+            if (containsPackage(slot, hashesInLib, numHashesInLib, packageCheckedBy)) {
+                candidates.add(new LibraryCandidate().setLibraryId(libraryIds[slot])
+                        .setHashes(toHashes(hashesInLib, numHashesInLib))
+                        .setIdfScore(idfScore(hashesInLib, numHashesInLib)));
+            }
+        }
+
+        logger.info("# Library Candidate: " + candidates.size() + "/" + numLibraries + " "
+                + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds.");
+
+        candidates.sort((data1, data2) -> data2.getLibraryId() - data1.getLibraryId());
+        return candidates;
+    }
+
+    private double idfScore(int[] hashesInLib, int numHashesInLib) {
+        if (hashWeights == null) {
+            return 0;
+        }
+        double score = 0;
+        for (int i = 0; i < numHashesInLib; i++) {
+            score += hashWeights[hashesInLib[i]];
+        }
+        return score;
+    }
+
+    /**
+     * Returns true if the library includes all the hashes of one of the packages it has classes of, ignoring
+     * single-class packages.
+     */
+    private boolean containsPackage(int slot, int[] hashesInLib, int numHashesInLib, int[] packageCheckedBy) {
+        for (int i = 0; i < numHashesInLib; i++) {
+            for (int pack : hashPackages[hashesInLib[i]]) {
+                if (packageCheckedBy[pack] == slot) {
+                    continue;
+                }
+                packageCheckedBy[pack] = slot;
+                int[] hashInPackage = packageHashes[pack];
+                if (hashInPackage.length == 1) {
+                    continue;
+                }
+                if (SortedArrays.containsAll(hashesInLib, numHashesInLib, hashInPackage, hashInPackage.length)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Groups the candidates with their alternatives, flags perfect matches (and inclusions, when the containment is
+     * set) and returns the candidates that are not an alternative of another one, best matches first. The metadata of
+     * the candidates must have been filled in.
+     */
+    public List<LibraryCandidate> rankCandidates(List<LibraryCandidate> candidates) {
+        // Sort in decreasing order of count
+        candidates.sort((data1, data2) -> {
+            int compare = Double.compare(data2.getIncludedRatio(), data1.getIncludedRatio());
+            if (compare == 0) {
+                // rarer matched classes first, all scores are 0 without weights
+                compare = Double.compare(data2.getIdfScore(), data1.getIdfScore());
+            }
+            if (compare == 0) {
+                compare = data2.getHashCount() - data1.getHashCount();
+                if (compare == 0) {
+                    compare = data1.getExpectedNumberOfClasses() - data2.getExpectedNumberOfClasses();
+                    if (compare == 0) {
+                        compare = data1.getGAV().compareTo(data2.getGAV());
+                    }
+                }
+            }
+            return compare;
+        });
+
+        int nbAlternative = identifyAlternatives(candidates);
+        logger.info("# Identify alternative: " + nbAlternative + " "
+                + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds.");
+
+        int numPerfectMatch = identifyPerfectMatches(candidates);
+
+        logger.info("# Identify perfect match: " + numPerfectMatch + " "
+                + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds.");
+
+        if (containment != null) {
+            identifyInclusions(candidates);
+        }
+
+        // ignore libraries that don't have any hashes, i.e., are alternatives
+        return candidates.stream().filter(lib -> lib.getHashes() != null)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Walks the candidates from best to worst match, and makes every later candidate an alternative of the current one
+     * when it is another version of one of the libraries grouped so far, or has the same matched hashes and the same
+     * number of classes. The current candidate also becomes a self candidate when it is another version of one of the
+     * initial self candidates.
+     * <p>
+     * Instead of comparing every pair of candidates, the later candidates are looked up by (group id, artifact id) and by
+     * a fingerprint of their matched hashes and number of classes, and visited in rank order through a heap, so that
+     * the growing set of grouped libraries is applied exactly as in a pairwise scan.
+     */
+    private int identifyAlternatives(List<LibraryCandidate> candidates) {
+        int nbAlternative = 0;
+        int numTopCandidates = candidates.size();
+
+        // positions of the candidates, in rank order
+        Map<String, List<Integer>> positionsByGA = new HashMap<>();
+        Map<Long, List<Integer>> positionsByFingerprint = new HashMap<>();
+        for (int i = 0; i < numTopCandidates; i++) {
+            LibraryCandidate lib = candidates.get(i);
+            String ga = getGA(lib);
+            if (ga != null) {
+                positionsByGA.computeIfAbsent(ga, key -> new ArrayList<>()).add(i);
+            }
+            positionsByFingerprint.computeIfAbsent(fingerprint(lib), key -> new ArrayList<>()).add(i);
+        }
+
+        // initial self candidates per (group id, artifact id) they group
+        Set<LibraryCandidate> initialSelfCandidates = new HashSet<>(selfCandidates);
+        Map<String, List<LibraryCandidate>> selfsByGA = new HashMap<>();
+        for (LibraryCandidate self : initialSelfCandidates) {
+            String ga = getGA(self);
+            if (ga != null) {
+                selfsByGA.computeIfAbsent(ga, key -> new ArrayList<>()).add(self);
+            }
+        }
+
+        PriorityQueue<Integer> nextPositions = new PriorityQueue<>();
+        for (int i = 0; i < numTopCandidates; i++) {
+            LibraryCandidate lib = candidates.get(i);
+            if (lib.getHashes() == null) {
+                continue;
+            }
+            String ga = getGA(lib);
+            if (ga != null) {
+                for (LibraryCandidate self : selfsByGA.getOrDefault(ga, Collections.emptyList())) {
+                    if (self != lib) {
+                        lib.setSelf(true);
+                        selfCandidates.add(lib);
+                        break;
+                    }
+                }
+                addPositionsAfter(nextPositions, positionsByGA.get(ga), i);
+            }
+            addPositionsAfter(nextPositions, positionsByFingerprint.get(fingerprint(lib)), i);
+
+            int lastPosition = i;
+            while (!nextPositions.isEmpty()) {
+                int j = nextPositions.poll();
+                LibraryCandidate lib2 = candidates.get(j);
+                if (j <= lastPosition || lib2.getHashes() == null) {
+                    continue;
+                }
+                lastPosition = j;
+                // libraries with the same class set match the same classes of any JAR
+                boolean sameHashes = (lib.getClassSetHash() != 0 && lib.getClassSetHash() == lib2.getClassSetHash())
+                        || (lib.getExpectedNumberOfClasses() == lib2.getExpectedNumberOfClasses()
+                        && lib.getHashCount() == lib2.getHashCount()
+                        && lib.contains(lib2));
+                // consider different version of the same lib as alternative
+                boolean differentVersion = lib.isDifferentVersion(lib2);
+                if (!differentVersion && !sameHashes) {
+                    // fingerprint collision
+                    continue;
+                }
+                if (sameHashes) {
+                    lib.addAlternativeVersion(lib2);
+                    logger.info("Adding alternative version to " + lib.getGAV() + ": " + lib2.getGAV());
+                }
+                lib.addAlternative(lib2);
+                nbAlternative++;
+
+                String ga2 = getGA(lib2);
+                if (ga != null && ga2 != null && !differentVersion) {
+                    // the library of lib2 is now grouped with lib, so are its later versions
+                    addPositionsAfter(nextPositions, positionsByGA.get(ga2), j);
+                    if (initialSelfCandidates.contains(lib)) {
+                        selfsByGA.computeIfAbsent(ga2, key -> new ArrayList<>()).add(lib);
+                    }
+                }
+            }
+        }
+        return nbAlternative;
+    }
+
+    private static void addPositionsAfter(PriorityQueue<Integer> queue, List<Integer> positions, int position) {
+        if (positions == null) {
+            return;
+        }
+        int start = Collections.binarySearch(positions, position + 1);
+        for (int k = start < 0 ? -start - 1 : start; k < positions.size(); k++) {
+            queue.add(positions.get(k));
+        }
+    }
+
+    private static String getGA(LibraryCandidate lib) {
+        if (lib.getGroupId() == null || lib.getArtifactId() == null) {
+            return null;
+        }
+        return lib.getGroupId() + ":" + lib.getArtifactId();
+    }
+
+    /**
+     * Hash of the matched hashes and the number of classes of the candidate, equal for candidates that are alternative
+     * versions of each other.
+     */
+    private static long fingerprint(LibraryCandidate lib) {
+        long fingerprint = lib.getExpectedNumberOfClasses();
+        for (long hash : lib.getHashes()) {
+            fingerprint = (fingerprint ^ hash) * 0x9E3779B97F4A7C15L;
+            fingerprint ^= fingerprint >>> 29;
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Makes every candidate that is not an alternative include the others whose library, or one of its alternatives,
+     * has a class set strictly contained in its own or in one of its alternatives'.
+     */
+    private void identifyInclusions(List<LibraryCandidate> candidates) {
+        Map<Long, List<LibraryCandidate>> candidatesByClassSet = new HashMap<>();
+        for (LibraryCandidate lib : candidates) {
+            if (lib.getHashes() == null) {
+                continue;
+            }
+            List<LibraryCandidate> group = new ArrayList<>(lib.getAlternatives());
+            group.add(lib);
+            for (LibraryCandidate member : group) {
+                if (member.getClassSetHash() != 0) {
+                    candidatesByClassSet.computeIfAbsent(member.getClassSetHash(), key -> new ArrayList<>()).add(lib);
+                }
+            }
+        }
+        for (long[] edge : containment) {
+            for (LibraryCandidate container : candidatesByClassSet.getOrDefault(edge[0], Collections.emptyList())) {
+                for (LibraryCandidate contained : candidatesByClassSet.getOrDefault(edge[1], Collections.emptyList())) {
+                    if (container != contained) {
+                        container.addIncludes(contained);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Flags the candidates that, with their alternatives, are the only libraries containing the classes of one of the
+     * packages of the JAR, not counting the self candidates and their alternatives.
+     */
+    private int identifyPerfectMatches(List<LibraryCandidate> candidates) {
+        // libraries of each hash position
+        int numMatches = 0;
+        for (int slot = 0; slot < numLibraries; slot++) {
+            numMatches += libraryHashCounts[slot];
+        }
+        int[] matchHashes = new int[numMatches];
+        int[] matchLibraries = new int[numMatches];
+        int match = 0;
+        for (int slot = 0; slot < numLibraries; slot++) {
+            for (int i = 0; i < libraryHashCounts[slot]; i++) {
+                matchHashes[match] = libraryHashes[slot][i];
+                matchLibraries[match++] = slot;
+            }
+        }
+        int[][] hashLibraries = groupBy(matchHashes, matchLibraries, numMatches, hashes.length);
+
+        BitSet excluded = new BitSet(numLibraries);
+        for (LibraryCandidate self : selfCandidates) {
+            excluded.set(librarySlots.get(self.getLibraryId(), -1));
+            for (LibraryCandidate alternative : self.getAlternatives()) {
+                excluded.set(librarySlots.get(alternative.getLibraryId(), -1));
+            }
+        }
+
+        // sorted library slots of each candidate and its alternatives, and the candidates covering each library
+        List<LibraryCandidate> perfectMatchCandidates = new ArrayList<>();
+        List<int[]> coveredLibraries = new ArrayList<>();
+        int numCovered = 0;
+        for (LibraryCandidate lib : candidates) {
+            if (lib.getHashes() == null || lib.isSelf()) {
+                continue;
+            }
+            int[] covered = new int[lib.getAlternatives().size() + 1];
+            covered[0] = librarySlots.get(lib.getLibraryId(), -1);
+            for (int i = 0; i < lib.getAlternatives().size(); i++) {
+                covered[i + 1] = librarySlots.get(lib.getAlternatives().get(i).getLibraryId(), -1);
+            }
+            covered = Arrays.copyOf(covered, SortedArrays.sortUnique(covered, covered.length));
+            perfectMatchCandidates.add(lib);
+            coveredLibraries.add(covered);
+            numCovered += covered.length;
+        }
+        int[] coveredSlots = new int[numCovered];
+        int[] coveringCandidates = new int[numCovered];
+        int entry = 0;
+        for (int i = 0; i < coveredLibraries.size(); i++) {
+            for (int slot : coveredLibraries.get(i)) {
+                coveredSlots[entry] = slot;
+                coveringCandidates[entry++] = i;
+            }
+        }
+        int[][] candidatesCoveringLibrary = groupBy(coveredSlots, coveringCandidates, numCovered, numLibraries);
+
+        int numPerfectMatch = 0;
+        // package for which each library was last collected, so that the collection only touches the matched libraries
+        int[] collectedFor = new int[numLibraries];
+        Arrays.fill(collectedFor, -1);
+        int[] packageLibraries = new int[16];
+        // look for files that are only in one lib
+        for (int pack = 0; pack < packageNames.size(); pack++) {
+            if (sharedPackages.get(pack)) {
+                // also in a library that is not a candidate, so not covered by any candidate and its alternatives
+                continue;
+            }
+            // identify all the lib of a package
+            int numPackageLibraries = 0;
+            for (int hash : packageHashes[pack]) {
+                for (int slot : hashLibraries[hash]) {
+                    if (collectedFor[slot] == pack || excluded.get(slot)) {
+                        continue;
+                    }
+                    collectedFor[slot] = pack;
+                    if (numPackageLibraries == packageLibraries.length) {
+                        packageLibraries = Arrays.copyOf(packageLibraries, numPackageLibraries * 2);
+                    }
+                    packageLibraries[numPackageLibraries++] = slot;
+                }
+            }
+            if (numPackageLibraries == 0) {
+                continue;
+            }
+            Arrays.sort(packageLibraries, 0, numPackageLibraries);
+
+            // check if the package is only in one lib, only the candidates covering one of its libraries can be
+            for (int i : candidatesCoveringLibrary[packageLibraries[0]]) {
+                LibraryCandidate lib = perfectMatchCandidates.get(i);
+                if (lib.isPerfectMatch()) {
+                    continue;
+                }
+                if (lib.getPaths() != null && !lib.getPaths().contains(packageNames.get(pack))) {
+                    continue;
+                }
+                int[] libAndAlternatives = coveredLibraries.get(i);
+                if (SortedArrays.containsAll(libAndAlternatives, libAndAlternatives.length, packageLibraries, numPackageLibraries)) {
+                    lib.setPerfectMatch(true);
+                    numPerfectMatch++;
+                }
+            }
+        }
+        return numPerfectMatch;
+    }
+}
@@ -4,18 +4,31 @@ import nl.tudelft.cornul11.thesis.corpus.database.SignatureDAOImpl.LibraryCandid
 import nl.tudelft.cornul11.thesis.corpus.file.ClassFileInfo;
 import nl.tudelft.cornul11.thesis.corpus.file.JarAndPomInfoExtractor;
 import nl.tudelft.cornul11.thesis.corpus.model.Dependency;
+import nl.tudelft.cornul11.thesis.corpus.model.ExtractedLibrary;
 import nl.tudelft.cornul11.thesis.corpus.model.Signature;
 
 import java.util.Iterator;
 import java.util.List;
 
 public interface SignatureDAO {
-    int insertLibrary(JarAndPomInfoExtractor jarAndPomInfoExtractor, long jarHash, long jarCrc, boolean isBrokenJar, long jarCreationDate);
+    /**
+     * The insert methods commit their rows in one transaction, retried on deadlocks, and throw a RuntimeException when
+     * it could not be committed.
+     */
+    int insertLibrary(JarAndPomInfoExtractor jarAndPomInfoExtractor, long jarHash, long jarCrc, long fingerprint, boolean isBrokenJar, long jarCreationDate);
 
-    int insertSignatures(List<Signature> signatures, long jarHash, long jarCrc, long jarCreationDate);
+    int insertSignatures(List<Signature> signatures, long jarHash, long jarCrc, long fingerprint, boolean isUberJar, long jarCreationDate);
+
+    int insertLibraries(List<ExtractedLibrary> libraries);
 
     List<LibraryCandidate> returnTopLibraryMatches(List<ClassFileInfo> signatures);
 
+    /**
+     * Returns the libraries with signatures whose JAR has exactly the given jar hash and CRC, ordered by id; empty
+     * when the JAR is not a known artifact. Uber JARs are left out, the libraries they bundle must be matched.
+     */
+    List<LibraryCandidate> findLibrariesByJarHash(long jarHash, long jarCrc);
+
     void closeConnection();
 
     boolean isLibraryInDB(String library);
@@ -23,4 +36,15 @@ public interface SignatureDAO {
     boolean isLibraryInDBWithSignatures(String library);
 
     Iterator<Dependency> getAllPossibleLibraries();
+
+    /**
+     * Passes the coordinates and the artifact fingerprint of every library row to the consumer; the fingerprint is 0
+     * for rows inserted before fingerprints were recorded.
+     */
+    void forEachIndexedArtifact(IndexedArtifactConsumer consumer);
+
+    @FunctionalInterface
+    interface IndexedArtifactConsumer {
+        void accept(String groupId, String artifactId, String version, long fingerprint);
+    }
 }
\ No newline at end of file
@@ -3,7 +3,9 @@ package nl.tudelft.cornul11.thesis.corpus.database;
 import com.zaxxer.hikari.HikariDataSource;
 import nl.tudelft.cornul11.thesis.corpus.file.ClassFileInfo;
 import nl.tudelft.cornul11.thesis.corpus.file.JarAndPomInfoExtractor;
+import nl.tudelft.cornul11.thesis.corpus.model.ExtractedLibrary;
 import nl.tudelft.cornul11.thesis.corpus.model.Signature;
+import nl.tudelft.cornul11.thesis.corpus.util.SortedArrays;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -12,27 +14,46 @@ import java.sql.*;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class SignatureDAOImpl implements SignatureDAO {
     private final HikariDataSource ds;
     private static final Logger logger = LoggerFactory.getLogger(SignatureDAOImpl.class);
     private final long startTime = System.currentTimeMillis();
     private final String dbMode;
+    private final Supplier<ClassHashFilter> classHashFilter;
+    private final HashFrequencies hashFrequencies;
+    private final LibraryGraph libraryGraph;
+    // number of libraries for the IDF of the hashes, counted once
+    private volatile long numIndexedLibraries = -1;
 
     public SignatureDAOImpl(HikariDataSource ds) {
-        this.ds = ds;
-        this.dbMode = "file";
+        this(ds, "file");
     }
 
     public SignatureDAOImpl(HikariDataSource ds, String dbMode) {
+        this(ds, dbMode, () -> null, new HashFrequencies(), new LibraryGraph());
+    }
+
+    /**
+     * The class hash filter, when the supplier returns one, drops the unknown classes before the top matches query,
+     * the hash frequencies limit the hashes used to select the candidates and weight them, and the library graph, when
+     * enabled, replaces the comparisons of the candidates that are properties of the corpus.
+     */
+    public SignatureDAOImpl(HikariDataSource ds, String dbMode, Supplier<ClassHashFilter> classHashFilter,
+                            HashFrequencies hashFrequencies, LibraryGraph libraryGraph) {
         this.ds = ds;
         this.dbMode = Objects.requireNonNullElse(dbMode, "file");
+        this.classHashFilter = classHashFilter;
+        this.hashFrequencies = hashFrequencies;
+        this.libraryGraph = libraryGraph;
     }
 
     @Override
-    public int insertLibrary(JarAndPomInfoExtractor jarAndPomInfoExtractor, long jarHash, long jarCrc, boolean isBrokenJar, long jarCreationDate) {
-        String insertLibraryQuery = "INSERT INTO libraries (group_id, artifact_id, version, jar_hash, jar_crc, is_uber_jar, total_class_files, disk_size, unique_signatures, creation_date) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    public int insertLibrary(JarAndPomInfoExtractor jarAndPomInfoExtractor, long jarHash, long jarCrc, long fingerprint, boolean isBrokenJar, long jarCreationDate) {
+        String insertLibraryQuery = "INSERT INTO libraries (group_id, artifact_id, version, jar_hash, jar_crc, is_uber_jar, total_class_files, disk_size, unique_signatures, creation_date, fingerprint) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
         executeWithDeadlockRetry(connection -> {
             try (PreparedStatement libraryStatement = connection.prepareStatement(insertLibraryQuery,
@@ -49,11 +70,14 @@ public class SignatureDAOImpl implements SignatureDAO {
                 libraryStatement.setInt(8, 0); // disk_size
                 libraryStatement.setInt(9, 0); // unique_signatures
                 libraryStatement.setDate(10, new Date(jarCreationDate));
+                libraryStatement.setLong(11, fingerprint);
                 libraryStatement.executeUpdate();
 
                 logger.info("Library row inserted.");
             } catch (SQLException e) {
-                e.printStackTrace();
+                // rethrow so that the transaction is not committed and the caller does not record the JAR as committed
+                throw new RuntimeException("Error while inserting library " + jarAndPomInfoExtractor.getGroupId() + ":"
+                        + jarAndPomInfoExtractor.getArtifactId() + ":" + jarAndPomInfoExtractor.getVersion(), e);
             }
         });
 
@@ -61,12 +85,13 @@ public class SignatureDAOImpl implements SignatureDAO {
     }
 
     @Override
-    public int insertSignatures(List<Signature> signatures, long jarHash, long jarCrc, long jarCreationDate) {
-        String insertLibraryQuery = "INSERT INTO libraries (group_id, artifact_id, version, jar_hash, jar_crc, is_uber_jar, total_class_files, disk_size, unique_signatures, creation_date) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    public int insertSignatures(List<Signature> signatures, long jarHash, long jarCrc, long fingerprint, boolean isUberJar, long jarCreationDate) {
+        String insertLibraryQuery = "INSERT INTO libraries (group_id, artifact_id, version, jar_hash, jar_crc, is_uber_jar, total_class_files, disk_size, unique_signatures, creation_date, fingerprint) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
         String insertSignatureQuery = "INSERT INTO signatures (library_id, class_hash, class_crc) VALUES (?, ?, ?)"; // library_id is added here.
 
         AtomicInteger totalRowsInserted = new AtomicInteger();
         executeWithDeadlockRetry(connection -> {
+            totalRowsInserted.set(0);
             try {
                 PreparedStatement libraryStatement = connection.prepareStatement(insertLibraryQuery,
                         Statement.RETURN_GENERATED_KEYS);
@@ -76,11 +101,12 @@ public class SignatureDAOImpl implements SignatureDAO {
                 libraryStatement.setString(3, firstSignature.getVersion());
                 libraryStatement.setLong(4, jarHash);
                 libraryStatement.setLong(5, jarCrc);
-                libraryStatement.setBoolean(6, false);
+                libraryStatement.setBoolean(6, isUberJar);
                 libraryStatement.setInt(7, signatures.size());
                 libraryStatement.setInt(8, 0);
                 libraryStatement.setInt(9, signatures.stream().map(Signature::getHash).collect(Collectors.toSet()).size());
                 libraryStatement.setDate(10, new Date(jarCreationDate));
+                libraryStatement.setLong(11, fingerprint);
                 libraryStatement.executeUpdate();
 
                 ResultSet generatedKeys = libraryStatement.getGeneratedKeys();
@@ -106,18 +132,133 @@ public class SignatureDAOImpl implements SignatureDAO {
 
                         totalRowsInserted.getAndIncrement();
                     }
+                    long[] classHashes = signatures.stream().mapToLong(Signature::getHash).toArray();
+                    if (updateHashFrequencies()) {
+                        HashFrequencies.addLibraries(connection, List.of(classHashes));
+                    }
+                    LibraryGraph.addLibraries(connection, List.of(libraryId), List.of(classHashes));
+                    if (Objects.equals(dbMode, "dictionary")) {
+                        ClassDictionary.addLibraries(connection, List.of(libraryId), List.of(classHashes));
+                    }
                 }
 
                 String rowsInserted = "\033[0;32m" + totalRowsInserted + "\033[0m";
                 logger.info(rowsInserted + " signature row(s) inserted.");
             } catch (SQLException e) {
-                e.printStackTrace();
+                // rethrow so that the transaction is not committed and the caller does not record the JAR as committed
+                throw new RuntimeException("Error while inserting the signatures of " + signatures.get(0).getGroupID() + ":"
+                        + signatures.get(0).getArtifactId() + ":" + signatures.get(0).getVersion(), e);
             }
         });
 
         return totalRowsInserted.get();
     }
 
+    @Override
+    public int insertLibraries(List<ExtractedLibrary> libraries) {
+        String insertLibraryQuery = "INSERT INTO libraries (group_id, artifact_id, version, jar_hash, jar_crc, is_uber_jar, total_class_files, disk_size, unique_signatures, creation_date, fingerprint) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        String insertSignatureQuery = "INSERT INTO signatures (library_id, class_hash, class_crc) VALUES (?, ?, ?)";
+
+        AtomicInteger totalRowsInserted = new AtomicInteger();
+        executeWithDeadlockRetry(connection -> {
+            totalRowsInserted.set(0);
+            try (PreparedStatement libraryStatement = connection.prepareStatement(insertLibraryQuery, Statement.RETURN_GENERATED_KEYS);
+                 PreparedStatement insertStatement = connection.prepareStatement(insertSignatureQuery)) {
+                int pendingRows = 0;
+                List<Integer> libraryIds = new ArrayList<>();
+                List<long[]> libraryHashes = new ArrayList<>();
+                for (ExtractedLibrary library : libraries) {
+                    List<ClassFileInfo> classFileInfos = library.getClassFileInfos();
+                    libraryStatement.setString(1, library.getGroupId());
+                    libraryStatement.setString(2, library.getArtifactId());
+                    libraryStatement.setString(3, library.getVersion());
+                    libraryStatement.setLong(4, library.getJarHash());
+                    libraryStatement.setLong(5, library.getJarCrc());
+                    if (library.hasSignatures()) {
+                        libraryStatement.setBoolean(6, library.isUberJar());
+                        libraryStatement.setInt(7, classFileInfos.size());
+                        libraryStatement.setInt(8, 0);
+                        libraryStatement.setInt(9, (int) classFileInfos.stream().mapToLong(ClassFileInfo::getHashCode).distinct().count());
+                    } else {
+                        // same values as insertLibrary, there won't be any matches with this lib
+                        libraryStatement.setBoolean(6, !library.isBrokenJar());
+                        libraryStatement.setInt(7, -1);
+                        libraryStatement.setInt(8, 0);
+                        libraryStatement.setInt(9, 0);
+                    }
+                    libraryStatement.setDate(10, new Date(library.getJarCreationDate()));
+                    libraryStatement.setLong(11, library.getFingerprint());
+                    libraryStatement.executeUpdate();
+
+                    if (!library.hasSignatures()) {
+                        continue;
+                    }
+                    int libraryId;
+                    try (ResultSet generatedKeys = libraryStatement.getGeneratedKeys()) {
+                        if (!generatedKeys.next()) {
+                            logger.error("No id generated for library " + library.getGAV());
+                            continue;
+                        }
+                        libraryId = generatedKeys.getInt(1);
+                    }
+                    libraryIds.add(libraryId);
+                    libraryHashes.add(classFileInfos.stream().mapToLong(ClassFileInfo::getHashCode).toArray());
+
+                    // signature rows of all libraries in the batch share the same JDBC batches
+                    for (ClassFileInfo classFileInfo : classFileInfos) {
+                        insertStatement.setInt(1, libraryId);
+                        insertStatement.setLong(2, classFileInfo.getHashCode());
+                        insertStatement.setLong(3, classFileInfo.getCrc());
+                        insertStatement.addBatch();
+
+                        if (++pendingRows % 1000 == 0) {
+                            totalRowsInserted.addAndGet(insertStatement.executeBatch().length);
+                        }
+                    }
+                }
+                totalRowsInserted.addAndGet(insertStatement.executeBatch().length);
+                if (updateHashFrequencies()) {
+                    HashFrequencies.addLibraries(connection, libraryHashes);
+                }
+                LibraryGraph.addLibraries(connection, libraryIds, libraryHashes);
+                if (Objects.equals(dbMode, "dictionary")) {
+                    ClassDictionary.addLibraries(connection, libraryIds, libraryHashes);
+                }
+            } catch (SQLException e) {
+                // rethrow so that the transaction is not committed
+                throw new RuntimeException("Error while inserting a batch of " + libraries.size() + " libraries", e);
+            }
+        });
+
+        return totalRowsInserted.get();
+    }
+
+    @Override
+    public List<LibraryCandidate> findLibrariesByJarHash(long jarHash, long jarCrc) {
+        String selectLibraryQuery = "SELECT id, group_id, artifact_id, version, unique_signatures FROM libraries "
+                + "WHERE jar_hash = ? AND jar_crc = ? AND unique_signatures > 0 AND NOT is_uber_jar ORDER BY id";
+
+        List<LibraryCandidate> libraries = new ArrayList<>();
+        try (Connection connection = ds.getConnection();
+             PreparedStatement statement = connection.prepareStatement(selectLibraryQuery)) {
+            statement.setLong(1, jarHash);
+            statement.setLong(2, jarCrc);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    libraries.add(new LibraryCandidate()
+                            .setLibraryId(resultSet.getInt("id"))
+                            .setGroupId(resultSet.getString("group_id"))
+                            .setArtifactId(resultSet.getString("artifact_id"))
+                            .setVersion(resultSet.getString("version"))
+                            .setExpectedNumberOfTotalClasses(resultSet.getInt("unique_signatures")));
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Error while looking up the JAR with hash " + jarHash, e);
+        }
+        return libraries;
+    }
+
     @Override
     public Iterator<nl.tudelft.cornul11.thesis.corpus.model.Dependency> getAllPossibleLibraries() {
         return new LibraryIterator(ds);
@@ -169,7 +310,9 @@ public class SignatureDAOImpl implements SignatureDAO {
 
     @Override
     public boolean isLibraryInDBWithSignatures(String library) {
-        String signaturesTable = Objects.equals(this.dbMode, "file") ? "signatures" : "signatures_memory";
+        String signaturesTable = Objects.equals(this.dbMode, "file") ? "signatures"
+                : Objects.equals(this.dbMode, "delta") ? "delta_libraries"
+                : Objects.equals(this.dbMode, "dictionary") ? "library_classes" : "signatures_memory";
 
         String selectLibraryQuery = "SELECT id FROM libraries WHERE CONCAT(group_id, ':', artifact_id, ':', version) = ? AND unique_signatures > 0";
         try (Connection connection = ds.getConnection();
@@ -195,11 +338,29 @@ public class SignatureDAOImpl implements SignatureDAO {
         }
     }
 
+    @Override
+    public void forEachIndexedArtifact(IndexedArtifactConsumer consumer) {
+        String selectArtifactsQuery = "SELECT group_id, artifact_id, version, fingerprint FROM libraries";
+
+        try (Connection connection = ds.getConnection();
+             PreparedStatement statement = connection.prepareStatement(selectArtifactsQuery, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            statement.setFetchSize(1000);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    consumer.accept(resultSet.getString(1), resultSet.getString(2), resultSet.getString(3), resultSet.getLong(4));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
 
 
-    public class LibraryCandidate {
+    public static class LibraryCandidate {
         private Integer libraryId;
-        private Set<Long> hashes;
+        // sorted class hashes of the JAR found in this library
+        private long[] hashes;
         private Set<String> paths;
         private String groupId;
         private String artifactId;
@@ -213,6 +374,10 @@ public class SignatureDAOImpl implements SignatureDAO {
         private List<LibraryCandidate> includedIn;
         private int expectedNumberOfClasses;
         private boolean perfectMatch;
+        // sum of the IDF of the matched hashes, 0 unless the hashes are weighted
+        private double idfScore;
+        // hash of the class set of the library, 0 when it is not known
+        private long classSetHash;
 
         public Integer getLibraryId() {
             return libraryId;
@@ -288,11 +453,15 @@ public class SignatureDAOImpl implements SignatureDAO {
             return this;
         }
 
-        public LibraryCandidate setHashes(Set<Long> hashes) {
+        public LibraryCandidate setHashes(long[] hashes) {
             this.hashes = hashes;
             return this;
         }
 
+        public Set<String> getPaths() {
+            return paths;
+        }
+
         public LibraryCandidate setPaths(Set<String> paths) {
             this.paths = paths;
             return this;
@@ -347,7 +516,7 @@ public class SignatureDAOImpl implements SignatureDAO {
         }
 
         public boolean contains(LibraryCandidate candidate) {
-            return this.hashes.size() >= candidate.hashes.size() && this.hashes.containsAll(candidate.hashes);
+            return SortedArrays.containsAll(this.hashes, candidate.hashes);
         }
 
         public boolean equals(LibraryCandidate other) {
@@ -355,24 +524,46 @@ public class SignatureDAOImpl implements SignatureDAO {
                     || (this.getAlternatives().stream().anyMatch(other::equals));
         }
 
-        public Set<Long> getHashes() {
+        public long[] getHashes() {
             return this.hashes;
         }
 
+        public int getHashCount() {
+            return this.hashes.length;
+        }
+
         public LibraryCandidate setExpectedNumberOfTotalClasses(int nbUniqueLibClass) {
             this.expectedNumberOfClasses = nbUniqueLibClass;
             return this;
         }
 
+        public double getIdfScore() {
+            return idfScore;
+        }
+
+        public LibraryCandidate setIdfScore(double idfScore) {
+            this.idfScore = idfScore;
+            return this;
+        }
+
+        public long getClassSetHash() {
+            return classSetHash;
+        }
+
+        public LibraryCandidate setClassSetHash(long classSetHash) {
+            this.classSetHash = classSetHash;
+            return this;
+        }
+
         public double getIncludedRatio() {
-            return this.getHashes().size() * 1.0 / this.expectedNumberOfClasses;
+            return this.getHashCount() * 1.0 / this.expectedNumberOfClasses;
         }
 
         public String toJSON() {
             StringBuilder sb = new StringBuilder();
             sb.append("{\"id\": \"" + this.getGAV() + "\",");
             sb.append("\"ratio\": " + this.getIncludedRatio() + ",");
-            sb.append("\"count\": " + this.getHashes().size() + ",");
+            sb.append("\"count\": " + this.getHashCount() + ",");
             sb.append("\"total\": " + this.getExpectedNumberOfClasses() + ",");
             sb.append("\"self\": " + this.isSelf() + ",");
             sb.append("\"perfect\": " + this.perfectMatch + ",");
@@ -391,7 +582,7 @@ public class SignatureDAOImpl implements SignatureDAO {
             sb.append("\"hashes\": [");
             if (this.hashes != null) {
                 isFirst = true;
-                for (Long hash : this.getHashes()) {
+                for (long hash : this.getHashes()) {
                     if (!isFirst) {
                         sb.append(",");
                     } else {
@@ -458,297 +649,316 @@ public class SignatureDAOImpl implements SignatureDAO {
         }
     }
 
+    /**
+     * Finds the candidate libraries of a JAR in two phases, so that only the rows of the candidates are sent back:
+     * <ol>
+     *     <li>the matched classes are aggregated per library (and per library and package) on the server, keeping the
+     *     libraries that contain more than half of the JAR or all the classes of one of its packages,</li>
+     *     <li>the (class hash, library id) pairs are only fetched for these candidates.</li>
+     * </ol>
+     * The classes of too many libraries are only fetched for the candidates, so the aggregation counts them as matched by
+     * every library and the matcher applies the exact majority. The packages that also occur in other libraries are
+     * fetched separately, as they cannot be perfect matches. With the library graph enabled, the pairs are only fetched
+     * for one candidate per class set and copied to the others. In the "delta" and "dictionary" modes, the pairs of the
+     * JAR are first expanded from the {@link SignatureDeltas} or the {@link ClassDictionary} into a temporary table.
+     */
     @Override
     public List<LibraryCandidate> returnTopLibraryMatches(List<ClassFileInfo> signatures) {
         long startTime = System.currentTimeMillis();
 
-        String createTempTable = "CREATE TEMPORARY TABLE IF NOT EXISTS temp_hashes (class_hash BIGINT NOT NULL)";
-        String dropTempTable = "DROP TABLE temp_hashes";
-        String insertIntoTempTable = "INSERT INTO temp_hashes (class_hash) VALUES (?)";
-
-        String signaturesTable = Objects.equals(this.dbMode, "file") ? "signatures" : "signatures_memory";
-        String classHashField = signaturesTable + ".class_hash";
-
-        String mainQuery = String.format("SELECT temp_hashes.class_hash, library_id FROM %s " +
-                "JOIN temp_hashes ON %s = temp_hashes.class_hash", signaturesTable, classHashField);
-
-        List<LibraryCandidate> candidates = new ArrayList<>();
-
-        Map<String, Set<Long>> packagesToHashes = new HashMap<>();
-        Map<Long, Set<String>> hashToPackage = new HashMap<>();
-        Set<Long> hashes = new HashSet<>();
-        Set<String> paths = new HashSet<>();
-
-        for (ClassFileInfo s : signatures) {
-            hashes.add(s.getHashCode());
-            String path = s.getClassName();
-
-            boolean rootClass = path.lastIndexOf("/") == -1;
-
-            if (rootClass) {
-                continue;
-            }
-
-            String folder = path.substring(0, path.lastIndexOf("/"));
-            // paths are unused for now
-            paths.add(folder);
-
-            // we want to also keep track of the packages that contain the same hash
-            if (!packagesToHashes.containsKey(folder)) {
-                packagesToHashes.put(folder, new HashSet<>());
-            }
-
-            // class hashes per package
-            packagesToHashes.get(folder).add(s.getHashCode());
-
-            // we want to keep track of the packages that contain the same hash
-            if (!hashToPackage.containsKey(s.getHashCode())) {
-                hashToPackage.put(s.getHashCode(), new HashSet<>());
-            }
-
-            // packages per class hash
-            hashToPackage.get(s.getHashCode()).add(folder);
+        // the delta encoded and the normalised signatures are first expanded into the matches of the JAR
+        boolean expandMatches = Objects.equals(this.dbMode, "delta") || Objects.equals(this.dbMode, "dictionary");
+        String signaturesTable = Objects.equals(this.dbMode, "file") ? "signatures"
+                : expandMatches ? "temp_matches" : "signatures_memory";
+
+        String majorityQuery = String.format("SELECT s.library_id, COUNT(DISTINCT s.class_hash) AS matched FROM %s s " +
+                "JOIN temp_hashes t ON s.class_hash = t.class_hash " +
+                "GROUP BY s.library_id HAVING matched >= ?", signaturesTable);
+        String packageQuery = String.format("SELECT DISTINCT p.library_id FROM (" +
+                "SELECT s.library_id, COUNT(DISTINCT s.class_hash) AS matched, tp.package_size FROM %s s " +
+                "JOIN temp_packages tp ON s.class_hash = tp.class_hash WHERE tp.package_size >= 2 " +
+                "GROUP BY s.library_id, tp.package_id, tp.package_size HAVING matched = tp.package_size) p", signaturesTable);
+        String detailQuery = String.format("SELECT s.class_hash, s.library_id FROM %s s " +
+                "JOIN temp_hashes t ON s.class_hash = t.class_hash " +
+                "JOIN temp_candidates c ON s.library_id = c.library_id WHERE NOT c.duplicate", signaturesTable);
+        String commonDetailQuery = String.format("SELECT s.class_hash, s.library_id FROM %s s " +
+                "JOIN temp_common_hashes t ON s.class_hash = t.class_hash " +
+                "JOIN temp_candidates c ON s.library_id = c.library_id WHERE NOT c.duplicate", signaturesTable);
+        String sharedPackagesQuery = String.format("SELECT DISTINCT tp.package_id FROM temp_packages tp " +
+                "JOIN %s s ON s.class_hash = tp.class_hash " +
+                "LEFT JOIN temp_candidates c ON s.library_id = c.library_id WHERE c.library_id IS NULL", signaturesTable);
+
+        LibraryMatcher matcher = new LibraryMatcher(signatures);
+        List<LibraryCandidate> output = new ArrayList<>();
+        // unknown classes cannot match anything, the majority threshold is still relative to all the classes
+        ClassHashFilter filter = classHashFilter.get();
+        long[] knownHashes = matcher.getHashes();
+        if (filter != null) {
+            knownHashes = Arrays.stream(knownHashes).filter(filter::mightContain).toArray();
+            logger.info("# Classes dropped by the class hash filter: " + (matcher.getHashes().length - knownHashes.length));
         }
+        int maxHashLibraries = hashFrequencies.getMaxLibraries();
+        boolean idfWeighting = hashFrequencies.isIdfWeighting();
+        boolean useLibraryGraph = libraryGraph.isEnabled();
 
         try (Connection connection = ds.getConnection()) {
             try (Statement statement = connection.createStatement()) {
-                statement.execute(createTempTable);
+                // pooled connections keep their temporary tables, start from empty ones
+                statement.execute("DROP TEMPORARY TABLE IF EXISTS temp_hashes, temp_common_hashes, temp_packages, temp_candidates, temp_matches");
+                statement.execute("CREATE TEMPORARY TABLE temp_hashes (class_hash BIGINT NOT NULL PRIMARY KEY)");
+                statement.execute("CREATE TEMPORARY TABLE temp_common_hashes (class_hash BIGINT NOT NULL PRIMARY KEY)");
+                statement.execute("CREATE TEMPORARY TABLE temp_packages (class_hash BIGINT NOT NULL, " +
+                        "package_id INT NOT NULL, package_size INT NOT NULL)");
+                statement.execute("CREATE TEMPORARY TABLE temp_candidates (library_id INT NOT NULL PRIMARY KEY, " +
+                        "duplicate BOOLEAN NOT NULL DEFAULT FALSE)");
+                if (expandMatches) {
+                    statement.execute("CREATE TEMPORARY TABLE temp_matches (class_hash BIGINT NOT NULL, " +
+                            "library_id INT NOT NULL, INDEX (class_hash))");
+                }
             }
 
-            try (PreparedStatement statement = connection.prepareStatement(insertIntoTempTable)) {
-                for (Long hash : hashes) {
+            try (PreparedStatement statement = connection.prepareStatement("INSERT INTO temp_hashes (class_hash) VALUES (?)")) {
+                for (long hash : knownHashes) {
                     statement.setLong(1, hash);
                     statement.addBatch();
                 }
                 statement.executeBatch();
             }
 
-            int numUniqueHashes = hashes.size();
-            Map<Long, Set<Integer>> hashToLib = new HashMap<>(numUniqueHashes);
-            Map<Integer, Set<Long>> libToHash = new HashMap<>(100);
-            Map<Integer, Set<String>> libToPackages = new HashMap<>(100);
-
-            try (PreparedStatement statement = connection.prepareStatement(mainQuery)) {
-                ResultSet resultSet = statement.executeQuery();
-                while (resultSet.next()) {
-                    Long classHash = resultSet.getLong("temp_hashes.class_hash");
-                    int libraryId = resultSet.getInt("library_id");
-
-                    // keep track of the hashes that are in many libraries
-                    if (!hashToLib.containsKey(classHash)) {
-                        hashToLib.put(classHash, new HashSet<>());
-                    }
-                    hashToLib.get(classHash).add(libraryId);
-
-                    // keep track of the hashes contained in each library
-                    if (!libToHash.containsKey(libraryId)) {
-                        libToHash.put(libraryId, new HashSet<>());
-                        libToPackages.put(libraryId, new HashSet<>());
+            long[] hashes = matcher.getHashes();
+            // the class dictionary counts the libraries of its classes itself
+            String frequencyTable = Objects.equals(this.dbMode, "dictionary") ? "classes" : "class_hash_frequency";
+            int[] libraryCounts = maxHashLibraries > 0 || idfWeighting
+                    ? HashFrequencies.getLibraryCounts(connection, frequencyTable, hashes) : null;
+            if (idfWeighting) {
+                matcher.setHashWeights(idfWeights(connection, libraryCounts));
+            }
+            // the hashes of too many libraries are only joined with the candidates
+            long[] commonHashes = new long[0];
+            if (maxHashLibraries > 0) {
+                commonHashes = IntStream.range(0, hashes.length).filter(i -> libraryCounts[i] > maxHashLibraries)
+                        .mapToLong(i -> hashes[i]).toArray();
+                try (PreparedStatement statement = connection.prepareStatement("INSERT INTO temp_common_hashes (class_hash) VALUES (?)")) {
+                    for (long hash : commonHashes) {
+                        statement.setLong(1, hash);
+                        statement.addBatch();
                     }
-                    libToHash.get(libraryId).add(classHash);
-                    libToPackages.get(libraryId).addAll(hashToPackage.getOrDefault(classHash, Collections.emptySet()));
+                    statement.executeBatch();
                 }
-            }
-            try (Statement statement = connection.createStatement()) {
-                statement.execute(dropTempTable);
-            }
-            // TODO: examine these files
-            logger.info("# file not found in DB: " + (numUniqueHashes - hashToLib.size()) + " "
-                    + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds.");
-
-            Set<LibraryCandidate> selfCandidates = new HashSet<>();
-            lib:
-
-            // for each detected library
-            for (Integer lib : libToHash.keySet()) {
-                Set<Long> hashesInLib = libToHash.get(lib); // get all of its hashes
-                int numHashesInLib = hashesInLib.size();
-
-                if (numHashesInLib < 2) { // if a lib has only one hash, we don't consider it
-                    continue;
+                try (Statement statement = connection.createStatement()) {
+                    statement.executeUpdate("DELETE t FROM temp_hashes t JOIN temp_common_hashes c ON t.class_hash = c.class_hash");
                 }
+                logger.info("# Classes of more than " + maxHashLibraries + " libraries: " + commonHashes.length);
+            }
 
-                if (numHashesInLib * 1.0 / numUniqueHashes > 0.5) {
-                    // if the lib includes more than 50% of the hashes in the input jar we consider it as a candidate
-                    LibraryCandidate libraryCandidate = new LibraryCandidate()
-                            .setLibraryId(lib)
-                            .setHashes(hashesInLib);
-
-                    // check if we matched itself
-                    if (numHashesInLib * 1.0 / numUniqueHashes > 0.99) {
-                        selfCandidates.add(libraryCandidate);
-                        libraryCandidate.setSelf(true);
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "INSERT INTO temp_packages (class_hash, package_id, package_size) VALUES (?, ?, ?)")) {
+                for (int packageId = 0; packageId < matcher.getPackageCount(); packageId++) {
+                    long[] packageHashes = matcher.getPackageHashes(packageId);
+                    int numCommon = 0;
+                    for (long hash : packageHashes) {
+                        if (Arrays.binarySearch(commonHashes, hash) >= 0) {
+                            numCommon++;
+                        }
                     }
-                    candidates.add(libraryCandidate);
-                    continue;
-                }
-                for (String path : libToPackages.get(lib)) {
-                    Set<Long> hashInPackage = packagesToHashes.get(path);
-                    if (hashInPackage.size() == 1) {
-                        continue;
+                    if (numCommon > 0) {
+                        // a class of so many libraries is also in libraries that are not candidates
+                        matcher.addSharedPackage(packageId);
                     }
-                    // if the lib includes all the hashes of a package we do consider it
-                    if (numHashesInLib >= hashInPackage.size() && hashesInLib.containsAll(hashInPackage)) {
-                        candidates.add(new LibraryCandidate().setLibraryId(lib)
-                                .setHashes(hashesInLib));
-                        continue lib;
+                    for (long hash : packageHashes) {
+                        if (filter != null && !filter.mightContain(hash)) {
+                            // the package cannot be complete, but its known classes can still be shared
+                            continue;
+                        }
+                        if (numCommon > 0 && Arrays.binarySearch(commonHashes, hash) >= 0) {
+                            continue;
+                        }
+                        statement.setLong(1, hash);
+                        statement.setInt(2, packageId);
+                        statement.setInt(3, packageHashes.length - numCommon);
+                        statement.addBatch();
                     }
                 }
+                statement.executeBatch();
             }
 
-            logger.info("# Library Candidate: " + candidates.size() + "/" + libToHash.size() + " "
-                    + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds.");
+            if (expandMatches) {
+                try (Statement statement = connection.createStatement()) {
+                    int matches = statement.executeUpdate("INSERT INTO temp_matches (class_hash, library_id) "
+                            + matchesQuery("temp_hashes", false));
+                    logger.info("# Matches expanded from the " + dbMode + " tables: " + matches);
+                }
+            }
 
-            candidates.sort((data1, data2) -> data2.getLibraryId() - data1.getLibraryId());
-
-            List<String> libIds = candidates.stream().map(entry -> "" + entry.getLibraryId())
-                    .collect(Collectors.toList());
-            try (PreparedStatement statement = connection
-                    .prepareStatement("SELECT id, group_id, artifact_id, version, unique_signatures FROM libraries where id in ("
-                            + String.join(", ", libIds) + ") ORDER BY id DESC")) {
-                statement.execute();
-                ResultSet result = statement.getResultSet();
-                int index = 0;
-                while (result.next()) {
-                    int libraryId = result.getInt("id");
-                    String resultGroupId = result.getString("group_id");
-                    String resultArtifactId = result.getString("artifact_id");
-                    String resultVersion = result.getString("version");
-                    int numUniqueClasses = result.getInt("unique_signatures");
-
-                    if (candidates.get(index).getLibraryId() != libraryId) {
-                        throw new RuntimeException("The library id does not match.");
-                    }
-                    candidates.get(index).setGroupId(resultGroupId)
-                            .setArtifactId(resultArtifactId)
-                            .setVersion(resultVersion)
-                            .setExpectedNumberOfTotalClasses(numUniqueClasses);
-                    index++;
+            Set<Integer> candidateIds = new HashSet<>();
+            try (PreparedStatement statement = connection.prepareStatement(majorityQuery)) {
+                // upper bound: the library may have all the common hashes, which are not joined yet
+                statement.setInt(1, Math.max(1, Math.max(2, hashes.length / 2 + 1) - commonHashes.length));
+                ResultSet resultSet = statement.executeQuery();
+                while (resultSet.next()) {
+                    candidateIds.add(resultSet.getInt("library_id"));
                 }
             }
-            logger.info("# Query for lib info: " + libIds.size() + " "
+            try (PreparedStatement statement = connection.prepareStatement(packageQuery)) {
+                ResultSet resultSet = statement.executeQuery();
+                while (resultSet.next()) {
+                    candidateIds.add(resultSet.getInt("library_id"));
+                }
+            }
+            logger.info("# Candidate libraries after aggregation: " + candidateIds.size() + " "
                     + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds.");
 
-            int nbAlternative = 0;
-
-            ArrayList<LibraryCandidate> selfList = new ArrayList<>(selfCandidates);
-
-            // Sort in decreasing order of count
-            candidates.sort((data1, data2) -> {
-                int compare = Double.compare(data2.getIncludedRatio(), data1.getIncludedRatio());
-                if (compare == 0) {
-                    compare = data2.getHashes().size() - data1.getHashes().size();
-                    if (compare == 0) {
-                        compare = data1.getExpectedNumberOfClasses() - data2.getExpectedNumberOfClasses();
-                        if (compare == 0) {
-                            compare = data1.getGAV().compareTo(data2.getGAV());
-                        }
-                    }
+            try (PreparedStatement statement = connection.prepareStatement("INSERT INTO temp_candidates (library_id) VALUES (?)")) {
+                for (Integer libraryId : candidateIds) {
+                    statement.setInt(1, libraryId);
+                    statement.addBatch();
                 }
-                return compare;
-            });
+                statement.executeBatch();
+            }
 
-            int numTopCandidates = candidates.size();
-            for (int i = 0; i < numTopCandidates; i++) {
-                LibraryCandidate lib = candidates.get(i);
-                if (lib.getHashes() == null) {
-                    continue;
-                }
-                int libHashSize = lib.getHashes().size();
-                for (LibraryCandidate self : selfList) {
-                    if (lib.equals(self)) {
-                        continue;
-                    }
-                    if (self.isDifferentVersion(lib)) {
-                        lib.setSelf(true);
-                        selfCandidates.add(lib);
+            // the matches of a class set are only fetched for its first candidate
+            Map<Integer, Long> classSets = new HashMap<>();
+            Map<Integer, Integer> representatives = new HashMap<>();
+            if (useLibraryGraph) {
+                List<long[]> candidateClassSets = LibraryGraph.getCandidateClassSets(connection);
+                candidateClassSets.sort(Comparator.comparingLong(classSet -> classSet[0]));
+                Map<Long, Integer> setRepresentatives = new HashMap<>();
+                for (long[] classSet : candidateClassSets) {
+                    int libraryId = (int) classSet[0];
+                    classSets.put(libraryId, classSet[1]);
+                    Integer representative = setRepresentatives.putIfAbsent(classSet[1], libraryId);
+                    if (representative != null) {
+                        representatives.put(libraryId, representative);
                     }
                 }
-                for (int j = i; j < numTopCandidates; j++) {
-                    LibraryCandidate lib2 = candidates.get(j);
-                    if (lib.equals(lib2) || lib2.getHashes() == null) {
-                        continue;
-                    }
-                    int lib2HashSize = lib2.getHashes().size();
-                    // consider different version of the same lib as alternative
-                    // list is sorted by best matches first
-                    if (lib.isDifferentVersion(lib2) ||
-                            // if the lib is included in another lib, we do consider it as alternative
-                            (lib.expectedNumberOfClasses == lib2.expectedNumberOfClasses
-                                    && libHashSize == lib2HashSize
-                                    && lib.contains(lib2))) {
-                        if ((lib.expectedNumberOfClasses == lib2.expectedNumberOfClasses
-                                && libHashSize == lib2HashSize
-                                && lib.contains(lib2))) {
-                            lib.addAlternativeVersion(lib2);
-                            logger.info("Adding alternative version to " + lib.getGAV() + ": " + lib2.getGAV());
-                        }
-                        lib.addAlternative(lib2);
-                        nbAlternative++;
+                try (PreparedStatement statement = connection.prepareStatement("UPDATE temp_candidates SET duplicate = TRUE WHERE library_id = ?")) {
+                    for (Integer libraryId : representatives.keySet()) {
+                        statement.setInt(1, libraryId);
+                        statement.addBatch();
                     }
+                    statement.executeBatch();
                 }
+                logger.info("# Candidates with the class set of another candidate: " + representatives.size());
             }
-            logger.info("# Identify alternative: " + nbAlternative + " "
-                    + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds.");
 
-            int numPerfectMatch = 0;
-            // look for files that are only in one lib
-            for (String pack : packagesToHashes.keySet()) {
-                // identify all the lib of a package
-                Set<Long> packHashes = packagesToHashes.get(pack);
-                Set<Integer> libOfHash = new HashSet<>();
-                for (Long hash : packHashes) {
-                    Set<Integer> c = hashToLib.get(hash);
-                    if (c != null)
-                        libOfHash.addAll(c);
-                }
-                for (LibraryCandidate self : selfCandidates) {
-                    libOfHash.remove(self.getLibraryId());
-                    for (LibraryCandidate alternative : self.getAlternatives()) {
-                        libOfHash.remove(alternative.getLibraryId());
-                    }
-                }
-                if (libOfHash.isEmpty()) {
-                    continue;
+            try (PreparedStatement statement = connection.prepareStatement(detailQuery)) {
+                ResultSet resultSet = statement.executeQuery();
+                while (resultSet.next()) {
+                    matcher.addMatch(resultSet.getLong("class_hash"), resultSet.getInt("library_id"));
                 }
-
-                // check if the package is only in one lib
-                for (LibraryCandidate lib : candidates) {
-                    if (lib.getHashes() == null || lib.isSelf() || lib.isPerfectMatch()) {
-                        continue;
-                    }
-                    if (lib.paths != null && !lib.paths.contains(pack)) {
-                        continue;
-                    }
-                    Set<Integer> libAndAlternativeIds = new HashSet<>();
-                    libAndAlternativeIds.add(lib.getLibraryId());
-                    for (LibraryCandidate alternative : lib.getAlternatives()) {
-                        libAndAlternativeIds.add(alternative.getLibraryId());
+            }
+            if (commonHashes.length > 0) {
+                if (expandMatches) {
+                    try (Statement statement = connection.createStatement()) {
+                        statement.executeUpdate("INSERT INTO temp_matches (class_hash, library_id) "
+                                + matchesQuery("temp_common_hashes", true));
                     }
-                    if (libOfHash.size() <= libAndAlternativeIds.size() &&
-                            libAndAlternativeIds.containsAll(libOfHash)) {
-                        lib.setPerfectMatch(true);
-                        numPerfectMatch++;
+                }
+                try (PreparedStatement statement = connection.prepareStatement(commonDetailQuery)) {
+                    ResultSet resultSet = statement.executeQuery();
+                    while (resultSet.next()) {
+                        matcher.addMatch(resultSet.getLong("class_hash"), resultSet.getInt("library_id"));
                     }
                 }
             }
+            representatives.forEach(matcher::addEquivalentLibrary);
+            try (PreparedStatement statement = connection.prepareStatement(sharedPackagesQuery)) {
+                ResultSet resultSet = statement.executeQuery();
+                while (resultSet.next()) {
+                    matcher.addSharedPackage(resultSet.getInt("package_id"));
+                }
+            }
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("DROP TEMPORARY TABLE IF EXISTS temp_hashes, temp_common_hashes, temp_packages, temp_candidates, temp_matches");
+            }
 
-            logger.info("# Identify perfect match: " + numPerfectMatch + " "
+            List<LibraryCandidate> candidates = matcher.selectCandidates();
+            if (!candidates.isEmpty()) {
+                fillLibraryInfo(connection, candidates);
+            }
+            if (useLibraryGraph) {
+                for (LibraryCandidate candidate : candidates) {
+                    candidate.setClassSetHash(classSets.getOrDefault(candidate.getLibraryId(), 0L));
+                }
+                Set<Long> candidateSets = candidates.stream().map(LibraryCandidate::getClassSetHash)
+                        .filter(setHash -> setHash != 0).collect(Collectors.toSet());
+                matcher.setContainment(LibraryGraph.getContainment(connection, candidateSets));
+            }
+            logger.info("# Query for lib info: " + candidates.size() + " "
                     + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds.");
 
+            output = matcher.rankCandidates(candidates);
         } catch (SQLException e) {
             e.printStackTrace();
         }
 
-        // ignore libraries that don't have any hashes, i.e., are alternatives
-        List<LibraryCandidate> output = candidates.stream().filter(lib -> lib.getHashes() != null)
-                .collect(Collectors.toList());
-
         long endTime = System.currentTimeMillis();
         logger.info("Top matches query took " + (endTime - startTime) / 1000.0 + " seconds.");
         return output;
     }
 
+    /**
+     * Returns the query of the matches of the hashes of {@code hashTable} in the delta or dictionary tables.
+     */
+    private String matchesQuery(String hashTable, boolean candidatesOnly) {
+        return Objects.equals(this.dbMode, "delta") ? SignatureDeltas.matchesQuery(hashTable, candidatesOnly)
+                : ClassDictionary.matchesQuery(hashTable, candidatesOnly);
+    }
+
+    /**
+     * Returns the IDF of each hash, {@code log(N / count)}; the hashes that are not counted yet weigh as if they were in
+     * one library.
+     */
+    private double[] idfWeights(Connection connection, int[] libraryCounts) throws SQLException {
+        if (numIndexedLibraries < 0) {
+            numIndexedLibraries = HashFrequencies.getNumLibraries(connection);
+        }
+        double[] weights = new double[libraryCounts.length];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = Math.log(Math.max(1.0, numIndexedLibraries) / Math.max(1, libraryCounts[i]));
+        }
+        return weights;
+    }
+
+    /**
+     * Sets the GAV and number of unique classes of the candidates, which must be sorted by decreasing library id.
+     */
+    private void fillLibraryInfo(Connection connection, List<LibraryCandidate> candidates) throws SQLException {
+        List<String> libIds = candidates.stream().map(entry -> "" + entry.getLibraryId())
+                .collect(Collectors.toList());
+        try (PreparedStatement statement = connection
+                .prepareStatement("SELECT id, group_id, artifact_id, version, unique_signatures FROM libraries where id in ("
+                        + String.join(", ", libIds) + ") ORDER BY id DESC")) {
+            statement.execute();
+            ResultSet result = statement.getResultSet();
+            int index = 0;
+            while (result.next()) {
+                int libraryId = result.getInt("id");
+                String resultGroupId = result.getString("group_id");
+                String resultArtifactId = result.getString("artifact_id");
+                String resultVersion = result.getString("version");
+                int numUniqueClasses = result.getInt("unique_signatures");
+
+                if (candidates.get(index).getLibraryId() != libraryId) {
+                    throw new RuntimeException("The library id does not match.");
+                }
+                candidates.get(index).setGroupId(resultGroupId)
+                        .setArtifactId(resultArtifactId)
+                        .setVersion(resultVersion)
+                        .setExpectedNumberOfTotalClasses(numUniqueClasses);
+                index++;
+            }
+        }
+    }
+
+    /**
+     * Returns whether the insertions must count the libraries of each class hash: only when the counts are used, and
+     * not in the "dictionary" mode, which counts them in its classes table.
+     */
+    private boolean updateHashFrequencies() {
+        return hashFrequencies.isEnabled() && !Objects.equals(dbMode, "dictionary");
+    }
+
     private void executeWithDeadlockRetry(Consumer<Connection> action) {
         boolean success = false;
         while (!success) {
@@ -762,8 +972,15 @@ public class SignatureDAOImpl implements SignatureDAO {
                 if (e.getErrorCode() == 1213) { // 1213 = ER_LOCK_DEADLOCK
                     handleDeadlock();
                 } else {
-                    e.printStackTrace();
-                    break;
+                    // the transaction was not committed
+                    throw new RuntimeException(e);
+                }
+            } catch (RuntimeException e) {
+                // actions that need their transaction rolled back wrap the SQLException
+                if (e.getCause() instanceof SQLException && ((SQLException) e.getCause()).getErrorCode() == 1213) {
+                    handleDeadlock();
+                } else {
+                    throw e;
                 }
             }
         }
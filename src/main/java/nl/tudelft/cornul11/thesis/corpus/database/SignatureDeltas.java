@@ -0,0 +1,254 @@
+package nl.tudelft.cornul11.thesis.corpus.database;
+
+import com.zaxxer.hikari.HikariDataSource;
+import nl.tudelft.cornul11.thesis.corpus.util.SortedArrays;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Signatures stored as deltas between the versions of an artifact, read by the "delta" database mode. Consecutive
+ * versions share most of their classes, so only some versions of an artifact, the bases, have all their classes
+ * stored; every other version references the base closest to it and stores the classes it adds and removes:
+ * <ul>
+ *     <li>{@code delta_libraries} maps a source to the libraries that get its rows: a base to itself and to the
+ *     versions that reference it, and a delta version to itself;</li>
+ *     <li>{@code delta_signatures} has one row per (class hash, library) with a {@code delta} of 0 for the classes of
+ *     a base, 1 for the classes added by a version and -1 for the classes of its base that it removed.</li>
+ * </ul>
+ * The rows are clustered by class hash and have no CRC nor surrogate id. The layout is derived from the
+ * {@code signatures} table by {@link #build(HikariDataSource, double)}, which only encodes the libraries that are not
+ * encoded yet, so libraries ingested since the last run are not matched in the "delta" mode until it runs again.
+ */
+public class SignatureDeltas {
+    private static final Logger logger = LoggerFactory.getLogger(SignatureDeltas.class);
+    private static final int BATCH_SIZE = 1000;
+
+    public static void createTables(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS delta_libraries ("
+                    + "source_id INT NOT NULL, "
+                    + "library_id INT NOT NULL, "
+                    + "PRIMARY KEY (source_id, library_id), "
+                    + "INDEX idx_delta_libraries_library_id (library_id))");
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS delta_signatures ("
+                    + "class_hash BIGINT NOT NULL, "
+                    + "library_id INT NOT NULL, "
+                    + "delta TINYINT NOT NULL, "
+                    + "PRIMARY KEY (class_hash, library_id), "
+                    + "INDEX idx_delta_signatures_library_id (library_id))");
+        }
+    }
+
+    /**
+     * Returns the query of the (class hash, library id) pairs of the libraries containing the hashes of
+     * {@code hashTable}, only for the libraries in {@code temp_candidates} if {@code candidatesOnly}. The hash table is
+     * only referenced once, as temporary tables cannot be opened twice in a query.
+     */
+    static String matchesQuery(String hashTable, boolean candidatesOnly) {
+        return "SELECT ds.class_hash, dl.library_id FROM " + hashTable + " t "
+                + "JOIN delta_signatures ds ON ds.class_hash = t.class_hash AND ds.delta >= 0 "
+                + "JOIN delta_libraries dl ON dl.source_id = ds.library_id "
+                + (candidatesOnly ? "JOIN temp_candidates c ON c.library_id = dl.library_id " : "")
+                + "LEFT JOIN delta_signatures r ON r.class_hash = ds.class_hash AND r.library_id = dl.library_id AND r.delta < 0 "
+                + "WHERE r.library_id IS NULL";
+    }
+
+    /**
+     * Encoding of a library against the bases of its artifact.
+     */
+    public static class Encoding {
+        // index of the base in the given bases, -1 if the library becomes a base
+        private final int base;
+        private final long[] added;
+        private final long[] removed;
+
+        Encoding(int base, long[] added, long[] removed) {
+            this.base = base;
+            this.added = added;
+            this.removed = removed;
+        }
+
+        public int getBase() {
+            return base;
+        }
+
+        public long[] getAdded() {
+            return added;
+        }
+
+        public long[] getRemoved() {
+            return removed;
+        }
+    }
+
+    /**
+     * Encodes the sorted unique class hashes of a library against the base with the smallest delta, or as a new base
+     * when that delta has more than {@code maxDeltaRatio} times as many rows as the library has classes.
+     */
+    public static Encoding encode(long[] classHashes, List<long[]> bases, double maxDeltaRatio) {
+        Encoding best = null;
+        for (int i = 0; i < bases.size(); i++) {
+            long[] added = SortedArrays.difference(classHashes, bases.get(i));
+            long[] removed = SortedArrays.difference(bases.get(i), classHashes);
+            if (best == null || added.length + removed.length < best.added.length + best.removed.length) {
+                best = new Encoding(i, added, removed);
+            }
+        }
+        if (best == null || best.added.length + best.removed.length > maxDeltaRatio * classHashes.length) {
+            return new Encoding(-1, classHashes, new long[0]);
+        }
+        return best;
+    }
+
+    /**
+     * Encodes the libraries with signatures that are not encoded yet, artifact by artifact. A library is committed
+     * with all its rows, so the encoding can be interrupted and resumed.
+     */
+    public static void build(HikariDataSource ds, double maxDeltaRatio) {
+        long startTime = System.currentTimeMillis();
+        String unencodedQuery = "SELECT l.id, l.group_id, l.artifact_id FROM libraries l WHERE l.unique_signatures > 0 "
+                + "AND NOT EXISTS (SELECT 1 FROM delta_libraries d WHERE d.library_id = l.id) "
+                + "ORDER BY l.group_id, l.artifact_id, l.id";
+        String basesQuery = "SELECT d.source_id FROM delta_libraries d JOIN libraries l ON l.id = d.library_id "
+                + "WHERE d.source_id = d.library_id AND l.group_id = ? AND l.artifact_id = ? "
+                + "AND EXISTS (SELECT 1 FROM delta_signatures s WHERE s.library_id = d.source_id AND s.delta = 0) ORDER BY d.source_id";
+        String baseHashesQuery = "SELECT class_hash FROM delta_signatures WHERE library_id = ? AND delta = 0 ORDER BY class_hash";
+        String libraryHashesQuery = "SELECT class_hash FROM signatures WHERE library_id = ?";
+
+        try (Connection connection = ds.getConnection()) {
+            List<Object[]> libraries = new ArrayList<>();
+            try (Statement statement = connection.createStatement();
+                 ResultSet resultSet = statement.executeQuery(unencodedQuery)) {
+                while (resultSet.next()) {
+                    libraries.add(new Object[]{resultSet.getInt(1), resultSet.getString(2), resultSet.getString(3)});
+                }
+            }
+            logger.info("Encoding the signatures of " + libraries.size() + " libraries as deltas");
+
+            int numBases = 0;
+            long fullRows = 0;
+            long deltaRows = 0;
+            String ga = null;
+            List<long[]> bases = new ArrayList<>();
+            List<Integer> baseIds = new ArrayList<>();
+            for (int i = 0; i < libraries.size(); i++) {
+                int libraryId = (int) libraries.get(i)[0];
+                String groupId = (String) libraries.get(i)[1];
+                String artifactId = (String) libraries.get(i)[2];
+                if (!(groupId + ":" + artifactId).equals(ga)) {
+                    // the bases encoded by a previous run
+                    ga = groupId + ":" + artifactId;
+                    bases.clear();
+                    baseIds.clear();
+                    try (PreparedStatement statement = connection.prepareStatement(basesQuery)) {
+                        statement.setString(1, groupId);
+                        statement.setString(2, artifactId);
+                        try (ResultSet resultSet = statement.executeQuery()) {
+                            while (resultSet.next()) {
+                                baseIds.add(resultSet.getInt(1));
+                            }
+                        }
+                    }
+                    for (int baseId : baseIds) {
+                        bases.add(readHashes(connection, baseHashesQuery, baseId));
+                    }
+                }
+
+                long[] classHashes = readHashes(connection, libraryHashesQuery, libraryId);
+                if (classHashes.length == 0) {
+                    continue;
+                }
+                Encoding encoding = encode(classHashes, bases, maxDeltaRatio);
+                writeLibrary(connection, libraryId, encoding.base == -1 ? libraryId : baseIds.get(encoding.base), encoding);
+                if (encoding.base == -1) {
+                    bases.add(classHashes);
+                    baseIds.add(libraryId);
+                    numBases++;
+                }
+                fullRows += classHashes.length;
+                deltaRows += encoding.added.length + encoding.removed.length;
+
+                if ((i + 1) % 10000 == 0) {
+                    logger.info("Encoded " + (i + 1) + "/" + libraries.size() + " libraries, " + deltaRows + " rows for "
+                            + fullRows + " signatures");
+                }
+            }
+            logger.info("Encoded " + libraries.size() + " libraries (" + numBases + " bases) with " + deltaRows
+                    + " rows for " + fullRows + " signatures in " + (System.currentTimeMillis() - startTime) / 1000 + " seconds");
+        } catch (SQLException e) {
+            logger.error("Error while encoding the signatures as deltas", e);
+        }
+    }
+
+    private static long[] readHashes(Connection connection, String query, int libraryId) throws SQLException {
+        long[] hashes = new long[64];
+        int length = 0;
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setInt(1, libraryId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    if (length == hashes.length) {
+                        hashes = Arrays.copyOf(hashes, length * 2);
+                    }
+                    hashes[length++] = resultSet.getLong(1);
+                }
+            }
+        }
+        return Arrays.copyOf(hashes, SortedArrays.sortUnique(hashes, length));
+    }
+
+    private static void writeLibrary(Connection connection, int libraryId, int baseId, Encoding encoding) throws SQLException {
+        connection.setAutoCommit(false);
+        try (PreparedStatement librariesStatement = connection.prepareStatement(
+                "INSERT IGNORE INTO delta_libraries (source_id, library_id) VALUES (?, ?)");
+             PreparedStatement signaturesStatement = connection.prepareStatement(
+                     "INSERT IGNORE INTO delta_signatures (class_hash, library_id, delta) VALUES (?, ?, ?)")) {
+            librariesStatement.setInt(1, libraryId);
+            librariesStatement.setInt(2, libraryId);
+            librariesStatement.addBatch();
+            if (baseId != libraryId) {
+                librariesStatement.setInt(1, baseId);
+                librariesStatement.setInt(2, libraryId);
+                librariesStatement.addBatch();
+            }
+            librariesStatement.executeBatch();
+
+            int pendingRows = 0;
+            int addedDelta = baseId == libraryId ? 0 : 1;
+            for (long classHash : encoding.added) {
+                signaturesStatement.setLong(1, classHash);
+                signaturesStatement.setInt(2, libraryId);
+                signaturesStatement.setInt(3, addedDelta);
+                signaturesStatement.addBatch();
+                if (++pendingRows % BATCH_SIZE == 0) {
+                    signaturesStatement.executeBatch();
+                }
+            }
+            for (long classHash : encoding.removed) {
+                signaturesStatement.setLong(1, classHash);
+                signaturesStatement.setInt(2, libraryId);
+                signaturesStatement.setInt(3, -1);
+                signaturesStatement.addBatch();
+                if (++pendingRows % BATCH_SIZE == 0) {
+                    signaturesStatement.executeBatch();
+                }
+            }
+            signaturesStatement.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+}
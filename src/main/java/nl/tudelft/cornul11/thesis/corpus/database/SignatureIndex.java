@@ -0,0 +1,179 @@
+package nl.tudelft.cornul11.thesis.corpus.database;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntConsumer;
+
+/**
+ * Read-only, memory-mapped inverted index from class hash to the libraries containing the class, written by
+ * {@link SignatureIndexExporter}. Opening the index only maps the file, the pages are loaded by the OS on demand.
+ * <p>
+ * Layout (little endian, every section 8-byte aligned):
+ * <pre>
+ * header      magic, format version, number of libraries, section offsets, table capacity, number of hashes
+ * libraries   one 16-byte record per library: id, unique signatures, offset of its strings
+ * strings     length-prefixed UTF-8 group id, artifact id and version of each library
+ * postings    per class hash: the number of libraries, followed by their library indexes
+ * table       open-addressing table of (class hash, postings offset + 1) slots, 0 marks an empty slot
+ * </pre>
+ * Library indexes are positions in the libraries section, not database ids, so resolving a posting is a direct read.
+ */
+public class SignatureIndex implements Closeable {
+    static final long MAGIC = 0x4A41525349465449L; // "JARSIFTI"
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int LIBRARY_RECORD_SIZE = 16;
+    static final int SLOT_SIZE = 16;
+
+    // the file is mapped in chunks, no aligned value straddles two chunks
+    private static final int CHUNK_BITS = 30;
+    private static final long CHUNK_SIZE = 1L << CHUNK_BITS;
+    private static final long CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private static final Logger logger = LoggerFactory.getLogger(SignatureIndex.class);
+
+    private final FileChannel channel;
+    private final ByteBuffer[] chunks;
+    private final int numLibraries;
+    private final long librariesOffset;
+    private final long stringsOffset;
+    private final long postingsOffset;
+    private final long tableOffset;
+    private final long tableMask;
+    private final long numHashes;
+
+    public SignatureIndex(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        long size = channel.size();
+        int numChunks = (int) ((size + CHUNK_SIZE - 1) >>> CHUNK_BITS);
+        this.chunks = new ByteBuffer[numChunks];
+        for (int i = 0; i < numChunks; i++) {
+            long position = i * CHUNK_SIZE;
+            chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(CHUNK_SIZE, size - position))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        if (size < HEADER_SIZE || getLong(0) != MAGIC) {
+            channel.close();
+            throw new IOException(path + " is not a signature index");
+        }
+        if (getInt(8) != FORMAT_VERSION) {
+            channel.close();
+            throw new IOException(path + " was written with another index format version: " + getInt(8));
+        }
+        this.numLibraries = getInt(12);
+        this.librariesOffset = getLong(16);
+        this.stringsOffset = getLong(24);
+        this.postingsOffset = getLong(32);
+        this.tableOffset = getLong(40);
+        this.tableMask = getLong(48) - 1;
+        this.numHashes = getLong(56);
+        logger.info("Mapped signature index " + path + " with " + numLibraries + " libraries and " + numHashes + " class hashes");
+    }
+
+    /**
+     * Calls {@code consumer} with the index of every library that contains the given class hash.
+     */
+    public void forEachLibrary(long classHash, IntConsumer consumer) {
+        long postings = findPostings(classHash);
+        if (postings < 0) {
+            return;
+        }
+        int count = getInt(postings);
+        for (int i = 0; i < count; i++) {
+            consumer.accept(getInt(postings + 4 + 4L * i));
+        }
+    }
+
+    private long findPostings(long classHash) {
+        long slot = mix(classHash) & tableMask;
+        while (true) {
+            long position = tableOffset + slot * SLOT_SIZE;
+            long postings = getLong(position + 8);
+            if (postings == 0) {
+                return -1;
+            }
+            if (getLong(position) == classHash) {
+                return postingsOffset + postings - 1;
+            }
+            slot = (slot + 1) & tableMask;
+        }
+    }
+
+    static long mix(long key) {
+        // murmur3 finalizer, class hashes are already well distributed but this is cheap
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    public int getNumLibraries() {
+        return numLibraries;
+    }
+
+    public int getLibraryId(int libraryIndex) {
+        return getInt(libraryRecord(libraryIndex));
+    }
+
+    public int getUniqueSignatures(int libraryIndex) {
+        return getInt(libraryRecord(libraryIndex) + 4);
+    }
+
+    /**
+     * Returns the group id, artifact id and version of the library.
+     */
+    public String[] getGAV(int libraryIndex) {
+        long position = stringsOffset + getLong(libraryRecord(libraryIndex) + 8);
+        String[] gav = new String[3];
+        for (int i = 0; i < gav.length; i++) {
+            int length = getInt(position);
+            byte[] bytes = new byte[length];
+            for (int j = 0; j < length; j++) {
+                bytes[j] = getByte(position + 4 + j);
+            }
+            gav[i] = new String(bytes, StandardCharsets.UTF_8);
+            position += align4(4 + length);
+        }
+        return gav;
+    }
+
+    private long libraryRecord(int libraryIndex) {
+        if (libraryIndex < 0 || libraryIndex >= numLibraries) {
+            throw new IndexOutOfBoundsException("Library index " + libraryIndex + " out of " + numLibraries);
+        }
+        return librariesOffset + (long) libraryIndex * LIBRARY_RECORD_SIZE;
+    }
+
+    static int align4(int length) {
+        return (length + 3) & ~3;
+    }
+
+    private byte getByte(long position) {
+        return chunks[(int) (position >>> CHUNK_BITS)].get((int) (position & CHUNK_MASK));
+    }
+
+    private int getInt(long position) {
+        return chunks[(int) (position >>> CHUNK_BITS)].getInt((int) (position & CHUNK_MASK));
+    }
+
+    private long getLong(long position) {
+        return chunks[(int) (position >>> CHUNK_BITS)].getLong((int) (position & CHUNK_MASK));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
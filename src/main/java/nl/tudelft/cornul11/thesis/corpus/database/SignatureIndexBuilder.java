@@ -0,0 +1,286 @@
+package nl.tudelft.cornul11.thesis.corpus.database;
+
+import nl.tudelft.cornul11.thesis.corpus.file.SignatureSegment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Builds a {@link SignatureIndex} from the output of EXTRACT_SIGNATURES, without a database. The dumps are streamed
+ * once: the library metadata is kept on the heap (as by {@link SignatureIndexWriter}), the (class hash, library id)
+ * pairs are sorted in runs of at most {@code runPairs} pairs which are spilled to temporary files next to the index,
+ * and the runs are merged into the index writer. Memory use is therefore bounded by the run size, whatever the size of
+ * the corpus.
+ * <p>
+ * Both dump formats are read: {@link SignatureSegment} files ({@code .seg}) and per-artifact text files
+ * ({@code .jar.txt}), whose GAV is derived from their path ({@code group/path/artifactId/version/...}). Library ids are
+ * assigned in the order the dumps are read, libraries without classes are left out as in the exported index.
+ */
+public class SignatureIndexBuilder implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(SignatureIndexBuilder.class);
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String TEXT_SUFFIX = ".jar.txt";
+
+    private final Path indexFile;
+    private final SignatureIndexWriter writer;
+    private final List<Path> runFiles = new ArrayList<>();
+    private long[] runHashes;
+    private int[] runLibraryIds;
+    private int runSize = 0;
+    private int numLibraries = 0;
+    private long numPairs = 0;
+
+    public SignatureIndexBuilder(Path indexFile, int runPairs) {
+        this.indexFile = indexFile;
+        this.writer = new SignatureIndexWriter(indexFile);
+        this.runHashes = new long[runPairs];
+        this.runLibraryIds = new int[runPairs];
+    }
+
+    /**
+     * Reads a dump file, or all the dump files below a directory.
+     */
+    public void addDumps(Path inputPath) throws IOException {
+        if (!Files.isDirectory(inputPath)) {
+            addDumpFile(inputPath, inputPath.getParent());
+            return;
+        }
+        Files.walkFileTree(inputPath, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                addDumpFile(file, inputPath);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void addDumpFile(Path file, Path rootPath) throws IOException {
+        String name = file.getFileName().toString();
+        if (name.endsWith(SEGMENT_SUFFIX)) {
+            try (SignatureSegment segment = new SignatureSegment(file)) {
+                segment.forEach(library -> addLibrary(library.getGroupId(), library.getArtifactId(),
+                        library.getVersion(), library.getClassHashes()));
+            }
+        } else if (name.endsWith(TEXT_SUFFIX)) {
+            Path relativePath = rootPath.relativize(file);
+            int depth = relativePath.getNameCount();
+            if (depth < 4) {
+                logger.warn("Skipping " + file + ", its path does not contain the GAV");
+                return;
+            }
+            String groupId = relativePath.subpath(0, depth - 3).toString().replace(file.getFileSystem().getSeparator(), ".");
+            String artifactId = relativePath.getName(depth - 3).toString();
+            String version = relativePath.getName(depth - 2).toString();
+            addLibrary(groupId, artifactId, version, readTextDump(file));
+        }
+    }
+
+    private static long[] readTextDump(Path file) throws IOException {
+        long[] classHashes = new long[64];
+        int count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.US_ASCII)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (count == classHashes.length) {
+                    classHashes = Arrays.copyOf(classHashes, count * 2);
+                }
+                classHashes[count++] = Long.parseLong(line.trim());
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed signature dump " + file, e);
+        }
+        return Arrays.copyOf(classHashes, count);
+    }
+
+    public void addLibrary(String groupId, String artifactId, String version, long[] classHashes) throws IOException {
+        if (classHashes.length == 0) {
+            return;
+        }
+        int libraryId = ++numLibraries;
+        long[] sortedHashes = classHashes.clone();
+        Arrays.sort(sortedHashes);
+        int uniqueSignatures = 0;
+        for (int i = 0; i < sortedHashes.length; i++) {
+            if (i == 0 || sortedHashes[i] != sortedHashes[i - 1]) {
+                uniqueSignatures++;
+            }
+        }
+        writer.addLibrary(libraryId, groupId, artifactId, version, uniqueSignatures);
+
+        for (long classHash : sortedHashes) {
+            if (runSize == runHashes.length) {
+                spillRun();
+            }
+            runHashes[runSize] = classHash;
+            runLibraryIds[runSize] = libraryId;
+            runSize++;
+        }
+        numPairs += sortedHashes.length;
+        if (numLibraries % 100000 == 0) {
+            logger.info("Read " + numLibraries + " libraries with " + numPairs + " signatures");
+        }
+    }
+
+    private void spillRun() throws IOException {
+        if (runSize == 0) {
+            return;
+        }
+        // pairs are added in increasing library id order, the stable sort keeps it within a class hash
+        radixSort(runHashes, runLibraryIds, runSize);
+        Path runFile = indexFile.resolveSibling(indexFile.getFileName() + ".run" + runFiles.size() + ".tmp");
+        runFiles.add(runFile);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(runFile), 1 << 20))) {
+            for (int i = 0; i < runSize; i++) {
+                out.writeLong(runHashes[i]);
+                out.writeInt(runLibraryIds[i]);
+            }
+        }
+        logger.info("Spilled run " + runFiles.size() + " of " + runSize + " signatures");
+        runSize = 0;
+    }
+
+    /**
+     * Sorts the first {@code size} pairs by signed class hash, keeping the order of equal hashes. Sorts by one byte at
+     * a time, least significant first, skipping the bytes that are the same for all pairs.
+     */
+    static void radixSort(long[] hashes, int[] libraryIds, int size) {
+        long[] hashBuffer = new long[size];
+        int[] idBuffer = new int[size];
+        long[] sourceHashes = hashes;
+        int[] sourceIds = libraryIds;
+        long[] targetHashes = hashBuffer;
+        int[] targetIds = idBuffer;
+        int[] counts = new int[257];
+        for (int shift = 0; shift < 64; shift += 8) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < size; i++) {
+                counts[digit(sourceHashes[i], shift) + 1]++;
+            }
+            if (counts[digit(sourceHashes[0], shift) + 1] == size) {
+                continue;
+            }
+            for (int i = 0; i < 256; i++) {
+                counts[i + 1] += counts[i];
+            }
+            for (int i = 0; i < size; i++) {
+                int position = counts[digit(sourceHashes[i], shift)]++;
+                targetHashes[position] = sourceHashes[i];
+                targetIds[position] = sourceIds[i];
+            }
+            long[] swapHashes = sourceHashes;
+            sourceHashes = targetHashes;
+            targetHashes = swapHashes;
+            int[] swapIds = sourceIds;
+            sourceIds = targetIds;
+            targetIds = swapIds;
+        }
+        if (sourceHashes != hashes) {
+            System.arraycopy(sourceHashes, 0, hashes, 0, size);
+            System.arraycopy(sourceIds, 0, libraryIds, 0, size);
+        }
+    }
+
+    private static int digit(long hash, int shift) {
+        // flipping the sign bit orders negative hashes first
+        return (int) (((hash ^ Long.MIN_VALUE) >>> shift) & 0xFF);
+    }
+
+    /**
+     * Merges the sorted runs into the index and writes it.
+     */
+    public void finish() throws IOException {
+        long startTime = System.currentTimeMillis();
+        spillRun();
+        // the last run is not needed on the heap anymore
+        runHashes = null;
+        runLibraryIds = null;
+
+        PriorityQueue<RunReader> readers = new PriorityQueue<>(Comparator.comparingLong((RunReader reader) -> reader.classHash)
+                .thenComparingInt(reader -> reader.libraryId));
+        try {
+            for (Path runFile : runFiles) {
+                RunReader reader = new RunReader(runFile);
+                if (reader.next()) {
+                    readers.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+            while (!readers.isEmpty()) {
+                RunReader reader = readers.poll();
+                writer.addSignature(reader.classHash, reader.libraryId);
+                if (reader.next()) {
+                    readers.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+        writer.finish();
+        logger.info("Built " + indexFile + " from " + numLibraries + " libraries and " + numPairs + " signatures, merged "
+                + runFiles.size() + " run(s) in " + (System.currentTimeMillis() - startTime) / 1000 + " seconds");
+    }
+
+    public int getNumLibraries() {
+        return numLibraries;
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+        for (Path runFile : runFiles) {
+            Files.deleteIfExists(runFile);
+        }
+    }
+
+    private static class RunReader implements Closeable {
+        private final DataInputStream in;
+        private long classHash;
+        private int libraryId;
+
+        RunReader(Path runFile) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(runFile), 1 << 16));
+        }
+
+        boolean next() throws IOException {
+            try {
+                classHash = in.readLong();
+            } catch (EOFException e) {
+                return false;
+            }
+            libraryId = in.readInt();
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
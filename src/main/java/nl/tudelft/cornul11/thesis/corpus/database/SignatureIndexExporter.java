@@ -0,0 +1,69 @@
+package nl.tudelft.cornul11.thesis.corpus.database;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Exports the libraries and signatures tables to a {@link SignatureIndex} file, which can then be served by
+ * {@link IndexedSignatureDAO} without querying the database.
+ */
+public class SignatureIndexExporter {
+    private static final Logger logger = LoggerFactory.getLogger(SignatureIndexExporter.class);
+    private static final int FETCH_SIZE = 100000;
+
+    private final HikariDataSource ds;
+
+    public SignatureIndexExporter(HikariDataSource ds) {
+        this.ds = ds;
+    }
+
+    public void export(Path indexFile) throws SQLException, IOException {
+        long startTime = System.currentTimeMillis();
+        // only libraries with signatures can be matched
+        String librariesQuery = "SELECT id, group_id, artifact_id, version, unique_signatures FROM libraries " +
+                "WHERE total_class_files >= 0 ORDER BY id";
+        String signaturesQuery = "SELECT class_hash, library_id FROM signatures ORDER BY class_hash, library_id";
+
+        try (Connection connection = ds.getConnection();
+             SignatureIndexWriter writer = new SignatureIndexWriter(indexFile)) {
+            int numLibraries = 0;
+            try (Statement statement = connection.createStatement()) {
+                statement.setFetchSize(FETCH_SIZE);
+                ResultSet resultSet = statement.executeQuery(librariesQuery);
+                while (resultSet.next()) {
+                    writer.addLibrary(resultSet.getInt("id"),
+                            resultSet.getString("group_id"),
+                            resultSet.getString("artifact_id"),
+                            resultSet.getString("version"),
+                            resultSet.getInt("unique_signatures"));
+                    numLibraries++;
+                }
+            }
+            logger.info("Exported " + numLibraries + " libraries in " + (System.currentTimeMillis() - startTime) / 1000 + " seconds");
+
+            long numSignatures = 0;
+            try (Statement statement = connection.createStatement()) {
+                // stream the rows instead of loading the whole table
+                statement.setFetchSize(FETCH_SIZE);
+                ResultSet resultSet = statement.executeQuery(signaturesQuery);
+                while (resultSet.next()) {
+                    writer.addSignature(resultSet.getLong(1), resultSet.getInt(2));
+                    if (++numSignatures % 10000000 == 0) {
+                        logger.info("Exported " + numSignatures + " signatures");
+                    }
+                }
+            }
+            writer.finish();
+            logger.info("Exported " + numSignatures + " signatures to " + indexFile + " in "
+                    + (System.currentTimeMillis() - startTime) / 1000 + " seconds");
+        }
+    }
+}
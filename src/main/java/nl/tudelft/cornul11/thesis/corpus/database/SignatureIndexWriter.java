@@ -0,0 +1,270 @@
+package nl.tudelft.cornul11.thesis.corpus.database;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes a {@link SignatureIndex} file. All libraries are added first, then the (class hash, library id) pairs in
+ * increasing class hash order. The postings and the table keys are spilled to temporary files next to the index, so
+ * only the library metadata is kept on the heap.
+ */
+public class SignatureIndexWriter implements Closeable {
+    private static final int CHUNK_BITS = 30;
+    private static final long CHUNK_SIZE = 1L << CHUNK_BITS;
+    private static final long CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final Path indexFile;
+    private final Path postingsFile;
+    private final Path keysFile;
+
+    private final ByteArrayOutputStream libraryRecords = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream strings = new ByteArrayOutputStream();
+    private final Map<Integer, Integer> libraryIndexes = new HashMap<>();
+
+    private SpillWriter postings;
+    private SpillWriter keys;
+    private long postingsSize = 0;
+    private long numHashes = 0;
+
+    private long currentHash;
+    private int[] currentLibraries = new int[16];
+    private int currentCount = 0;
+    private int lastLibraryId;
+
+    public SignatureIndexWriter(Path indexFile) {
+        this.indexFile = indexFile;
+        this.postingsFile = indexFile.resolveSibling(indexFile.getFileName() + ".postings.tmp");
+        this.keysFile = indexFile.resolveSibling(indexFile.getFileName() + ".keys.tmp");
+    }
+
+    public void addLibrary(int libraryId, String groupId, String artifactId, String version, int uniqueSignatures) {
+        if (postings != null) {
+            throw new IllegalStateException("Libraries must be added before the signatures");
+        }
+        ByteBuffer record = ByteBuffer.allocate(SignatureIndex.LIBRARY_RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        record.putInt(libraryId).putInt(uniqueSignatures).putLong(strings.size());
+        libraryRecords.writeBytes(record.array());
+        writeString(groupId);
+        writeString(artifactId);
+        writeString(version);
+        libraryIndexes.put(libraryId, libraryIndexes.size());
+    }
+
+    private void writeString(String value) {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        ByteBuffer length = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(bytes.length);
+        strings.writeBytes(length.array());
+        strings.writeBytes(bytes);
+        strings.writeBytes(new byte[SignatureIndex.align4(bytes.length) - bytes.length]);
+    }
+
+    /**
+     * Adds a class of a library. Calls must be ordered by class hash, signatures of unknown libraries are ignored.
+     */
+    public void addSignature(long classHash, int libraryId) throws IOException {
+        if (postings == null) {
+            postings = new SpillWriter(postingsFile);
+            keys = new SpillWriter(keysFile);
+        }
+        Integer libraryIndex = libraryIndexes.get(libraryId);
+        if (libraryIndex == null) {
+            return;
+        }
+        if (currentCount > 0 && classHash != currentHash) {
+            flushPostings();
+        } else if (currentCount > 0 && libraryId == lastLibraryId) {
+            // the same class twice in a library
+            return;
+        }
+        currentHash = classHash;
+        lastLibraryId = libraryId;
+        if (currentCount == currentLibraries.length) {
+            currentLibraries = Arrays.copyOf(currentLibraries, currentCount * 2);
+        }
+        currentLibraries[currentCount++] = libraryIndex;
+    }
+
+    private void flushPostings() throws IOException {
+        keys.putLong(currentHash);
+        keys.putLong(postingsSize + 1);
+        postings.putInt(currentCount);
+        for (int i = 0; i < currentCount; i++) {
+            postings.putInt(currentLibraries[i]);
+        }
+        postingsSize += 4 + 4L * currentCount;
+        numHashes++;
+        currentCount = 0;
+    }
+
+    /**
+     * Writes the index file and removes the temporary files.
+     */
+    public void finish() throws IOException {
+        if (postings == null) {
+            postings = new SpillWriter(postingsFile);
+            keys = new SpillWriter(keysFile);
+        }
+        if (currentCount > 0) {
+            flushPostings();
+        }
+        postings.close();
+        keys.close();
+
+        int numLibraries = libraryIndexes.size();
+        long librariesOffset = SignatureIndex.HEADER_SIZE;
+        long stringsOffset = align8(librariesOffset + libraryRecords.size());
+        long postingsOffset = align8(stringsOffset + strings.size());
+        long tableOffset = align8(postingsOffset + postingsSize);
+        long tableCapacity = Math.max(2, Long.highestOneBit(Math.max(1, numHashes * 2 - 1)) << 1);
+        long fileSize = tableOffset + tableCapacity * SignatureIndex.SLOT_SIZE;
+
+        Path tmpFile = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmpFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(SignatureIndex.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putLong(SignatureIndex.MAGIC)
+                    .putInt(SignatureIndex.FORMAT_VERSION)
+                    .putInt(numLibraries)
+                    .putLong(librariesOffset)
+                    .putLong(stringsOffset)
+                    .putLong(postingsOffset)
+                    .putLong(tableOffset)
+                    .putLong(tableCapacity)
+                    .putLong(numHashes)
+                    .flip();
+            writeFully(channel, header, 0);
+            writeFully(channel, ByteBuffer.wrap(libraryRecords.toByteArray()), librariesOffset);
+            writeFully(channel, ByteBuffer.wrap(strings.toByteArray()), stringsOffset);
+            try (FileChannel postingsChannel = FileChannel.open(postingsFile, StandardOpenOption.READ)) {
+                long transferred = 0;
+                while (transferred < postingsSize) {
+                    transferred += postingsChannel.transferTo(transferred, postingsSize - transferred,
+                            channel.position(postingsOffset + transferred));
+                }
+            }
+            // extend the file, the table slots are zero-filled, i.e. empty
+            writeFully(channel, ByteBuffer.allocate(1), fileSize - 1);
+            writeTable(channel, tableOffset, tableCapacity);
+        }
+        Files.move(tmpFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(postingsFile);
+        Files.deleteIfExists(keysFile);
+    }
+
+    private void writeTable(FileChannel channel, long tableOffset, long tableCapacity) throws IOException {
+        long tableSize = tableCapacity * SignatureIndex.SLOT_SIZE;
+        int numChunks = (int) ((tableSize + CHUNK_SIZE - 1) >>> CHUNK_BITS);
+        MappedByteBuffer[] chunks = new MappedByteBuffer[numChunks];
+        for (int i = 0; i < numChunks; i++) {
+            long position = i * CHUNK_SIZE;
+            chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, tableOffset + position, Math.min(CHUNK_SIZE, tableSize - position));
+            chunks[i].order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        long mask = tableCapacity - 1;
+        try (FileChannel keysChannel = FileChannel.open(keysFile, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+            while (keysChannel.read(buffer) > 0) {
+                buffer.flip();
+                while (buffer.remaining() >= SignatureIndex.SLOT_SIZE) {
+                    long classHash = buffer.getLong();
+                    long postings = buffer.getLong();
+                    long slot = SignatureIndex.mix(classHash) & mask;
+                    while (true) {
+                        long position = slot * SignatureIndex.SLOT_SIZE;
+                        MappedByteBuffer chunk = chunks[(int) (position >>> CHUNK_BITS)];
+                        int offset = (int) (position & CHUNK_MASK);
+                        if (chunk.getLong(offset + 8) == 0) {
+                            chunk.putLong(offset, classHash);
+                            chunk.putLong(offset + 8, postings);
+                            break;
+                        }
+                        slot = (slot + 1) & mask;
+                    }
+                }
+                buffer.compact();
+            }
+        }
+        for (MappedByteBuffer chunk : chunks) {
+            chunk.force();
+        }
+    }
+
+    private static long align8(long position) {
+        return (position + 7) & ~7L;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (postings != null) {
+            postings.close();
+            keys.close();
+        }
+        Files.deleteIfExists(postingsFile);
+        Files.deleteIfExists(keysFile);
+    }
+
+    /**
+     * Buffered little-endian writer of a temporary file.
+     */
+    private static class SpillWriter implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        private boolean closed = false;
+
+        SpillWriter(Path path) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+        }
+
+        void putInt(int value) throws IOException {
+            if (buffer.remaining() < 4) {
+                flush();
+            }
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            if (buffer.remaining() < 8) {
+                flush();
+            }
+            buffer.putLong(value);
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                flush();
+                channel.close();
+                closed = true;
+            }
+        }
+    }
+}
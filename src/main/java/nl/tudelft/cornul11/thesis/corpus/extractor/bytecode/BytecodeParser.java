@@ -29,4 +29,20 @@ public class BytecodeParser {
         }
         return bytecodeClassVisitor.getBytecodeClass();
     }
+
+    public static long extractSignatureHash(byte[] bytecode) throws RuntimeException {
+        try {
+            return SignatureHasher.hash(bytecode);
+        } catch (Exception e) {
+            throw new RuntimeException("Error while parsing bytecode", e);
+        }
+    }
+
+    public static long extractSignatureHash(byte[] bytecode, int offset, int length) throws RuntimeException {
+        try {
+            return SignatureHasher.hash(bytecode, offset, length);
+        } catch (Exception e) {
+            throw new RuntimeException("Error while parsing bytecode", e);
+        }
+    }
 }
\ No newline at end of file
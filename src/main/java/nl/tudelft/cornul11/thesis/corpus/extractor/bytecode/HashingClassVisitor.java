@@ -0,0 +1,126 @@
+package nl.tudelft.cornul11.thesis.corpus.extractor.bytecode;
+
+import nl.tudelft.cornul11.thesis.corpus.extractor.bytecode.members.AnnotationDetails;
+import org.objectweb.asm.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.objectweb.asm.Opcodes.ASM9;
+
+/**
+ * Class visitor that writes the canonical class signature straight into reusable buffers instead of building a
+ * {@link BytecodeDetails} object graph. The emitted chars are identical to {@link BytecodeUtils#getSignatureString},
+ * which concatenates the sections in the order: header, fields, methods, constructors, inner classes, annotations.
+ * ASM visits annotations and inner classes before fields and interleaves constructors with methods, hence the
+ * separate section buffers that are joined in {@link #finish()}.
+ */
+public class HashingClassVisitor extends ClassVisitor {
+    // header, fields and methods, in this order
+    private final SignatureBuffer signature = new SignatureBuffer();
+    private final SignatureBuffer constructors = new SignatureBuffer();
+    private final SignatureBuffer innerClasses = new SignatureBuffer();
+    private final List<AnnotationDetails> annotations = new ArrayList<>();
+    private final HashingFieldVisitor fieldVisitor = new HashingFieldVisitor(ASM9, signature);
+    private final HashingMethodVisitor methodVisitor = new HashingMethodVisitor(ASM9, signature);
+
+    public HashingClassVisitor() {
+        super(ASM9);
+    }
+
+    public void reset() {
+        signature.reset();
+        constructors.reset();
+        innerClasses.reset();
+        annotations.clear();
+    }
+
+    /**
+     * Joins the section buffers and returns the complete signature; only valid until the next {@link #reset()}.
+     */
+    public SignatureBuffer finish() {
+        signature.append(constructors);
+        signature.append(innerClasses);
+        for (AnnotationDetails annotation : annotations) {
+            signature.append(annotation.toSignaturePart());
+        }
+        return signature;
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+        int majorVersion = version & 0xFFFF;
+
+        this.signature.append(majorVersion);
+        this.signature.append(access);
+        this.signature.append(BytecodeUtils.getShortName(name));
+        this.signature.append(BytecodeUtils.getShortName(superName));
+        // interfaces are deliberately not part of the signature: BytecodeClassVisitor never adds them to the
+        // BytecodeDetails, and the hashes stored in the corpus were computed without them
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+        desc = BytecodeUtils.getShortDesc(desc);
+
+        AnnotationDetails annotationDetails = new AnnotationDetails(desc, visible);
+        annotations.add(annotationDetails);
+        return new BytecodeAnnotationVisitor(ASM9, null, annotationDetails);
+    }
+
+    @Override
+    public void visitInnerClass(String name, String outerName, String innerName, int access) {
+        innerClasses.append(BytecodeUtils.getShortName(name));
+        innerClasses.append(outerName != null ? BytecodeUtils.getShortName(outerName) : null);
+        innerClasses.append(innerName);
+        innerClasses.append(access);
+        innerClasses.append(inferNestedClassType(access));
+    }
+
+    @Override
+    public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+        this.signature.append(name);
+        this.signature.append(BytecodeUtils.getShortDesc(desc));
+        fieldVisitor.reset();
+        return fieldVisitor;
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+        desc = BytecodeUtils.getShortDesc(desc);
+
+        if ("<init>".equals(name)) {
+            constructors.append(name);
+            constructors.append(desc);
+            appendExceptions(constructors, exceptions);
+            return null;
+        }
+
+        this.signature.append(access);
+        this.signature.append(name);
+        this.signature.append(desc);
+        appendExceptions(this.signature, exceptions);
+        methodVisitor.reset(desc);
+        return methodVisitor;
+    }
+
+    private static void appendExceptions(SignatureBuffer buffer, String[] exceptions) {
+        if (exceptions != null) {
+            for (String exception : exceptions) {
+                buffer.append(BytecodeUtils.getShortName(exception));
+            }
+        }
+    }
+
+    // mirrors NestedClassDetails#inferType
+    private static String inferNestedClassType(int access) {
+        if ((access & Opcodes.ACC_INTERFACE) != 0) {
+            return "INTERFACE";
+        } else if ((access & Opcodes.ACC_ENUM) != 0) {
+            return "ENUM";
+        } else if ((access & Opcodes.ACC_STATIC) != 0) {
+            return "STATIC_CLASS";
+        }
+        return "INNER_CLASS";
+    }
+}
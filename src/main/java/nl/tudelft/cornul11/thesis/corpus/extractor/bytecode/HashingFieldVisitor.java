@@ -0,0 +1,40 @@
+package nl.tudelft.cornul11.thesis.corpus.extractor.bytecode;
+
+import nl.tudelft.cornul11.thesis.corpus.extractor.bytecode.members.AnnotationDetails;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.FieldVisitor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming counterpart of {@link BytecodeFieldVisitor}; appends the field annotations once the field has been visited.
+ */
+public class HashingFieldVisitor extends FieldVisitor {
+    private final SignatureBuffer signature;
+    private final List<AnnotationDetails> annotations = new ArrayList<>();
+
+    public HashingFieldVisitor(int api, SignatureBuffer signature) {
+        super(api);
+        this.signature = signature;
+    }
+
+    public void reset() {
+        annotations.clear();
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+        desc = BytecodeUtils.getShortDesc(desc);
+        AnnotationDetails annotation = new AnnotationDetails(desc, visible);
+        annotations.add(annotation);
+        return new BytecodeAnnotationVisitor(api, null, annotation);
+    }
+
+    @Override
+    public void visitEnd() {
+        for (AnnotationDetails annotation : annotations) {
+            signature.append(annotation.toSignaturePart());
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package nl.tudelft.cornul11.thesis.corpus.extractor.bytecode;
+
+import nl.tudelft.cornul11.thesis.corpus.extractor.bytecode.members.AnnotationDetails;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming counterpart of {@link BytecodeMethodVisitor}. Instructions are written to a reusable buffer as they are
+ * visited and flushed, followed by the annotations, argument types and return type, once the method ends.
+ */
+public class HashingMethodVisitor extends MethodVisitor {
+    private final SignatureBuffer signature;
+    private final SignatureBuffer instructions = new SignatureBuffer();
+    private final List<AnnotationDetails> annotations = new ArrayList<>();
+    private String desc;
+
+    public HashingMethodVisitor(int api, SignatureBuffer signature) {
+        super(api);
+        this.signature = signature;
+    }
+
+    public void reset(String desc) {
+        this.desc = desc;
+        instructions.reset();
+        annotations.clear();
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+        descriptor = BytecodeUtils.getShortDesc(descriptor);
+
+        AnnotationDetails annotation = new AnnotationDetails(descriptor, visible);
+        annotations.add(annotation);
+        return new BytecodeAnnotationVisitor(api, null, annotation);
+    }
+
+    @Override
+    public void visitInsn(int opcode) {
+        instructions.append(opcode);
+        instructions.append((String) null);
+    }
+
+    @Override
+    public void visitIntInsn(int opcode, int operand) {
+        instructions.append(opcode);
+        instructions.append(operand);
+    }
+
+    @Override
+    public void visitVarInsn(int opcode, int var) {
+        instructions.append(opcode);
+        instructions.append(var);
+    }
+
+    @Override
+    public void visitTypeInsn(int opcode, String type) {
+        instructions.append(opcode);
+        instructions.append(BytecodeUtils.getShortName(type));
+    }
+
+    @Override
+    public void visitEnd() {
+        signature.append(instructions);
+        for (AnnotationDetails annotation : annotations) {
+            signature.append(annotation.toSignaturePart());
+        }
+        Type methodType = Type.getMethodType(desc);
+        for (Type argType : methodType.getArgumentTypes()) {
+            signature.append(argType.getClassName());
+        }
+        signature.append(methodType.getReturnType().getClassName());
+    }
+}
@@ -0,0 +1,82 @@
+package nl.tudelft.cornul11.thesis.corpus.extractor.bytecode;
+
+import java.util.Arrays;
+
+/**
+ * Growable char buffer used to accumulate the canonical signature of a class without building intermediate strings.
+ * Appending follows the same textual conventions as {@link StringBuilder}, so that the resulting chars are identical
+ * to those produced by {@link BytecodeUtils#getSignatureString(BytecodeDetails)}.
+ */
+public class SignatureBuffer {
+    private static final int INITIAL_CAPACITY = 4096;
+
+    private char[] chars = new char[INITIAL_CAPACITY];
+    private int length = 0;
+
+    public SignatureBuffer append(String value) {
+        if (value == null) {
+            return append("null");
+        }
+        int valueLength = value.length();
+        ensureCapacity(length + valueLength);
+        value.getChars(0, valueLength, chars, length);
+        length += valueLength;
+        return this;
+    }
+
+    public SignatureBuffer append(int value) {
+        if (value == Integer.MIN_VALUE) {
+            return append("-2147483648");
+        }
+        ensureCapacity(length + 11);
+        if (value < 0) {
+            chars[length++] = '-';
+            value = -value;
+        }
+        int start = length;
+        do {
+            chars[length++] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        reverse(start, length - 1);
+        return this;
+    }
+
+    public SignatureBuffer append(SignatureBuffer other) {
+        ensureCapacity(length + other.length);
+        System.arraycopy(other.chars, 0, chars, length, other.length);
+        length += other.length;
+        return this;
+    }
+
+    public void reset() {
+        length = 0;
+    }
+
+    public char[] getChars() {
+        return chars;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+
+    private void reverse(int from, int to) {
+        while (from < to) {
+            char tmp = chars[from];
+            chars[from++] = chars[to];
+            chars[to--] = tmp;
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(capacity, chars.length * 2));
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package nl.tudelft.cornul11.thesis.corpus.extractor.bytecode;
+
+import net.openhft.hashing.LongHashFunction;
+import org.objectweb.asm.ClassReader;
+
+/**
+ * Computes class signature hashes without materialising a {@link BytecodeDetails} graph or the signature string.
+ * Each thread reuses its own visitor and buffers, and the hashes are bit-identical to
+ * {@link BytecodeUtils#getSignatureHash(BytecodeDetails)}.
+ */
+public class SignatureHasher {
+    private static final ThreadLocal<SignatureHasher> HASHERS = ThreadLocal.withInitial(SignatureHasher::new);
+
+    private final HashingClassVisitor classVisitor = new HashingClassVisitor();
+    private final LongHashFunction hashFunction = LongHashFunction.xx3();
+
+    private SignatureHasher() {
+    }
+
+    public static long hash(byte[] bytecode) {
+        return HASHERS.get().computeHash(bytecode, 0, bytecode.length);
+    }
+
+    public static long hash(byte[] bytecode, int offset, int length) {
+        return HASHERS.get().computeHash(bytecode, offset, length);
+    }
+
+    private long computeHash(byte[] bytecode, int offset, int length) {
+        ClassReader classReader = new ClassReader(bytecode, offset, length);
+        classVisitor.reset();
+        classReader.accept(classVisitor, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        SignatureBuffer signature = classVisitor.finish();
+        return hashFunction.hashChars(signature.getChars(), 0, signature.length());
+    }
+}
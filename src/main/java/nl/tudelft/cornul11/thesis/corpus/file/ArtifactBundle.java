@@ -0,0 +1,201 @@
+package nl.tudelft.cornul11.thesis.corpus.file;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.function.Predicate;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Source of the corpus pipeline that reads the JARs straight out of a tar (optionally gzip or zstd compressed) or zip
+ * bundle in Maven repository layout, so that a snapshot does not have to be unpacked to millions of files first.
+ * <p>
+ * Entries are passed on in archive order with their path inside the bundle and their bytes in memory. Hidden entries
+ * (a path component starting with a dot) and JARs larger than a byte array are skipped.
+ * <p>
+ * The GAV is derived from the path of the entry relative to the repository root of the bundle, see
+ * {@link #getRepositoryPath(String)}: the configured root, or else everything up to a {@code repository} directory,
+ * so that bundles of a {@code .m2/repository} or of a repository manager's storage do not get the directories above
+ * the root in their group id. A bundle with another top-level folder needs its root configured.
+ */
+public class ArtifactBundle implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ArtifactBundle.class);
+    private static final long MAX_JAR_SIZE = Integer.MAX_VALUE - 8;
+
+    private static final String REPOSITORY_DIRECTORY = "repository/";
+
+    private final Path bundlePath;
+    private Predicate<String> alreadyProcessed = entryName -> false;
+    private String root;
+    private ZipFile zipFile;
+    private TarArchiveInputStream tarInput;
+    private int jarCount = 0;
+    private int skippedCount = 0;
+
+    public interface BundledJarConsumer {
+        void accept(String entryName, byte[] data) throws InterruptedException;
+    }
+
+    public ArtifactBundle(Path bundlePath) throws IOException {
+        this.bundlePath = bundlePath;
+        String name = bundlePath.getFileName().toString();
+        if (name.endsWith(".zip")) {
+            zipFile = new ZipFile(bundlePath.toFile());
+        } else {
+            InputStream input = new BufferedInputStream(Files.newInputStream(bundlePath), 1 << 16);
+            if (name.endsWith(".tar.gz") || name.endsWith(".tgz")) {
+                input = new GzipCompressorInputStream(input, true);
+            } else if (name.endsWith(".tar.zst") || name.endsWith(".tzst")) {
+                input = new ZstdCompressorInputStream(input);
+            }
+            tarInput = new TarArchiveInputStream(input);
+        }
+    }
+
+    /**
+     * Returns true if the file is a bundle this class can read, judging by its name.
+     */
+    public static boolean isBundle(Path path) {
+        String name = path.getFileName().toString();
+        return name.endsWith(".zip") || name.endsWith(".tar") || name.endsWith(".tar.gz") || name.endsWith(".tgz")
+                || name.endsWith(".tar.zst") || name.endsWith(".tzst");
+    }
+
+    /**
+     * Sets the filter of the entries that were processed by a previous run, whose bytes are not even read.
+     */
+    public void setAlreadyProcessed(Predicate<String> alreadyProcessed) {
+        this.alreadyProcessed = alreadyProcessed;
+    }
+
+    /**
+     * Sets the path of the repository root inside the bundle; null detects it from each entry.
+     */
+    public void setRoot(String root) {
+        if (root == null || root.isEmpty()) {
+            this.root = null;
+            return;
+        }
+        root = normalize(root.replace('\\', '/'));
+        this.root = root.endsWith("/") ? root : root + "/";
+    }
+
+    /**
+     * Returns the path of the entry relative to the repository root, from which its GAV is derived. Without a
+     * configured root, the path is taken after the last {@code repository} directory that is followed by at least a
+     * group, an artifact and a version directory.
+     */
+    public String getRepositoryPath(String entryName) {
+        if (root != null) {
+            if (entryName.startsWith(root)) {
+                return entryName.substring(root.length());
+            }
+            logger.warn("Entry " + entryName + " is not under the repository root " + root);
+            return entryName;
+        }
+        int index = ("/" + entryName).lastIndexOf("/" + REPOSITORY_DIRECTORY);
+        if (index != -1) {
+            String repositoryPath = entryName.substring(index + REPOSITORY_DIRECTORY.length());
+            // a group, an artifact and a version directory are left, otherwise the directory is part of the group id
+            if (repositoryPath.split("/").length >= 4) {
+                return repositoryPath;
+            }
+        }
+        return entryName;
+    }
+
+    /**
+     * Returns the path under which a bundled JAR is reported, in the same notation as nested JARs.
+     */
+    public String getJarPath(String entryName) {
+        return bundlePath + "!/" + entryName;
+    }
+
+    public int getJarCount() {
+        return jarCount;
+    }
+
+    public int getSkippedCount() {
+        return skippedCount;
+    }
+
+    /**
+     * Reads the bundle from start to end, passing every JAR to the consumer on the calling thread.
+     */
+    public void forEachJar(BundledJarConsumer consumer) throws IOException, InterruptedException {
+        if (zipFile != null) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String entryName = normalize(entry.getName());
+                if (entry.isDirectory() || !isJar(entryName, entry.getSize())) {
+                    continue;
+                }
+                try (InputStream input = zipFile.getInputStream(entry)) {
+                    jarCount++;
+                    consumer.accept(entryName, input.readAllBytes());
+                }
+            }
+        } else {
+            TarArchiveEntry entry;
+            while ((entry = tarInput.getNextEntry()) != null) {
+                String entryName = normalize(entry.getName());
+                if (!entry.isFile() || !isJar(entryName, entry.getSize())) {
+                    // the rest of the entry is skipped by getNextEntry
+                    continue;
+                }
+                jarCount++;
+                consumer.accept(entryName, tarInput.readNBytes((int) entry.getSize()));
+            }
+        }
+    }
+
+    private boolean isJar(String entryName, long size) {
+        // only the path below the root, a bundle of a .m2 directory is not hidden
+        if (!entryName.endsWith(".jar") || isHidden(getRepositoryPath(entryName))) {
+            return false;
+        }
+        if (size > MAX_JAR_SIZE) {
+            logger.warn("Skipping " + getJarPath(entryName) + ", " + size + " bytes do not fit in memory");
+            return false;
+        }
+        if (alreadyProcessed.test(entryName)) {
+            skippedCount++;
+            return false;
+        }
+        return true;
+    }
+
+    private static String normalize(String entryName) {
+        while (entryName.startsWith("./")) {
+            entryName = entryName.substring(2);
+        }
+        return entryName;
+    }
+
+    private static boolean isHidden(String entryName) {
+        return entryName.startsWith(".") || entryName.contains("/.");
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (zipFile != null) {
+            zipFile.close();
+        }
+        if (tarInput != null) {
+            tarInput.close();
+        }
+    }
+}
@@ -4,11 +4,18 @@ public class ClassFileInfo {
     private final String className;
     private final long hashCode;
     private final long crc;
+    // path of the nested JAR the class was found in (e.g. BOOT-INF/lib/a.jar!/lib/b.jar), null for the outer JAR
+    private final String nestedPath;
 
     public ClassFileInfo(String className, long hashCode, long crc) {
+        this(className, hashCode, crc, null);
+    }
+
+    public ClassFileInfo(String className, long hashCode, long crc, String nestedPath) {
         this.className = className;
         this.hashCode = hashCode;
         this.crc = crc;
+        this.nestedPath = nestedPath;
     }
 
     public String getClassName() {
@@ -22,4 +29,8 @@ public class ClassFileInfo {
     public long getCrc() {
         return crc;
     }
-}
\ No newline at end of file
+
+    public String getNestedPath() {
+        return nestedPath;
+    }
+}
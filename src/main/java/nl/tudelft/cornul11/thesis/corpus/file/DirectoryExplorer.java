@@ -9,6 +9,7 @@ import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.concurrent.BlockingQueue;
+import java.util.function.Predicate;
 
 import static java.nio.file.Files.isHidden;
 
@@ -19,6 +20,8 @@ public class DirectoryExplorer extends SimpleFileVisitor<Path> {
     private Path lastVisitedPath = null;
     private boolean shouldProcess = false;
     private final BlockingQueue<Path> queue;
+    private Predicate<Path> alreadyProcessed = file -> false;
+    private int skippedFiles = 0;
 
     public DirectoryExplorer(BlockingQueue<Path> queue, Path rootPath) {
         this.queue = queue;
@@ -30,16 +33,37 @@ public class DirectoryExplorer extends SimpleFileVisitor<Path> {
         this.shouldProcess = lastVisitedPath == null;
     }
 
+    /**
+     * Sets the filter of the files that were processed by a previous run, which are not queued again.
+     */
+    public void setAlreadyProcessed(Predicate<Path> alreadyProcessed) {
+        this.alreadyProcessed = alreadyProcessed;
+    }
+
     public int getVisitedFilesCount() {
         return totalFiles;
     }
 
+    public int getSkippedFilesCount() {
+        return skippedFiles;
+    }
+
     @Override
     public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
         if (shouldProcess) {
             if (!isHidden(file) && file.toString().endsWith(".jar")) {
-                queue.offer(file);
-                logger.info("Added file to the queue: " + file + "; current queue size = " + queue.size());
+                if (alreadyProcessed.test(file)) {
+                    skippedFiles++;
+                    return FileVisitResult.CONTINUE;
+                }
+                try {
+                    // blocks while the queue is full
+                    queue.put(file);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return FileVisitResult.TERMINATE;
+                }
+                logger.debug("Added file to the queue: " + file + "; current queue size = " + queue.size());
 //                fileAnalyzer.processJarFile(file);
                 totalFiles++;
             }
@@ -0,0 +1,150 @@
+package nl.tudelft.cornul11.thesis.corpus.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Enumerates the JAR files of a directory tree with a fork/join pool, one task per directory, so that the subtrees of
+ * a large repository mirror are listed in parallel. This matters most on network storage, where every directory
+ * listing is a round-trip.
+ * <p>
+ * JARs are put into a bounded queue. When the consumers fall behind, the walker blocks instead of filling the heap.
+ * Entries are classified by name first:
+ * <ul>
+ *     <li>{@code .jar} names are queued without a stat call;</li>
+ *     <li>dot-names are hidden on Unix and are skipped;</li>
+ *     <li>the usual Maven repository files (checksums, POMs, metadata) are skipped without a stat call either.</li>
+ * </ul>
+ * Only the remaining names are checked for being a directory. Symbolic links to directories are not followed, as
+ * with {@link Files#walkFileTree}.
+ * <p>
+ * The enumeration order is not deterministic, so resuming from a last visited path needs {@link DirectoryExplorer}.
+ */
+public class ParallelDirectoryWalker {
+    private static final Logger logger = LoggerFactory.getLogger(ParallelDirectoryWalker.class);
+    // suffixes that no artifact id ends with, artifact directories such as jakarta.json must not match
+    private static final String[] FILE_SUFFIXES = {".pom", ".sha1", ".md5", ".sha256", ".sha512", ".asc",
+            ".repositories", ".lastUpdated"};
+
+    private final BlockingQueue<Path> queue;
+    private final Path rootPath;
+    private final int parallelism;
+    private final AtomicInteger totalFiles = new AtomicInteger(0);
+    private final AtomicInteger skippedFiles = new AtomicInteger(0);
+    private final AtomicInteger visitedDirectories = new AtomicInteger(0);
+    private Predicate<Path> alreadyProcessed = file -> false;
+
+    public ParallelDirectoryWalker(BlockingQueue<Path> queue, Path rootPath, int parallelism) {
+        this.queue = queue;
+        this.rootPath = rootPath;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Sets the filter of the files that were processed by a previous run, which are not queued again.
+     */
+    public void setAlreadyProcessed(Predicate<Path> alreadyProcessed) {
+        this.alreadyProcessed = alreadyProcessed;
+    }
+
+    /**
+     * Walks the whole tree, returning once every JAR has been queued.
+     */
+    public void walk() throws InterruptedException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new DirectoryTask(rootPath));
+        } catch (WalkInterruptedException e) {
+            throw new InterruptedException("Interrupted while queueing the jar files of " + rootPath);
+        } finally {
+            pool.shutdownNow();
+        }
+        logger.info("Listed " + visitedDirectories + " directories, queued " + totalFiles + " jar file(s)");
+    }
+
+    public int getVisitedFilesCount() {
+        return totalFiles.get();
+    }
+
+    public int getSkippedFilesCount() {
+        return skippedFiles.get();
+    }
+
+    static boolean isKnownFileName(String name) {
+        if (name.startsWith("maven-metadata")) {
+            return true;
+        }
+        for (String suffix : FILE_SUFFIXES) {
+            if (name.endsWith(suffix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void enqueue(Path file) {
+        if (alreadyProcessed.test(file)) {
+            skippedFiles.incrementAndGet();
+            return;
+        }
+        try {
+            // blocks while the queue is full
+            queue.put(file);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WalkInterruptedException(e);
+        }
+        totalFiles.incrementAndGet();
+        logger.debug("Added file to the queue: " + file);
+    }
+
+    private class DirectoryTask extends RecursiveAction {
+        private final Path directory;
+
+        DirectoryTask(Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected void compute() {
+            List<DirectoryTask> subdirectories = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    String name = entry.getFileName().toString();
+                    if (name.startsWith(".")) {
+                        continue;
+                    }
+                    if (name.endsWith(".jar")) {
+                        enqueue(entry);
+                    } else if (!isKnownFileName(name) && Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        subdirectories.add(new DirectoryTask(entry));
+                    }
+                }
+            } catch (IOException e) {
+                logger.error("Error while listing directory: " + directory, e);
+            }
+            visitedDirectories.incrementAndGet();
+            ForkJoinTask.invokeAll(subdirectories);
+        }
+    }
+
+    private static class WalkInterruptedException extends RuntimeException {
+        public WalkInterruptedException(Throwable cause) {
+            super(cause);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package nl.tudelft.cornul11.thesis.corpus.file;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class signatures of a JAR as sent by a client that extracted them itself, instead of uploading the JAR.
+ * <p>
+ * The binary format is a header (magic, version, CRC32 of the JAR or -1 when unknown, number of classes) followed by
+ * one record per class, in the order of the entries in the JAR: the length of the prefix shared with the previous class
+ * path, the rest of the path and the signature hash. Classes of the same package are next to each other in a JAR, so
+ * a record is usually the 8-byte hash plus the simple class name.
+ * <p>
+ * The NDJSON format has one {"path": ..., "hash": ...} object per line, optionally preceded by a {"jarCrc": ...} line.
+ */
+public class SignaturePayload {
+    public static final long UNKNOWN_CRC = -1;
+
+    private static final long MAGIC = 0x4A41525349465450L; // "JARSIFTP"
+    private static final int VERSION = 1;
+    private static final int MAX_PREFIX_LENGTH = 0xFFFF;
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final List<ClassFileInfo> classFileInfos;
+    private final long jarCrc;
+
+    public SignaturePayload(List<ClassFileInfo> classFileInfos, long jarCrc) {
+        this.classFileInfos = classFileInfos;
+        this.jarCrc = jarCrc;
+    }
+
+    public List<ClassFileInfo> getClassFileInfos() {
+        return classFileInfos;
+    }
+
+    public long getJarCrc() {
+        return jarCrc;
+    }
+
+    public void write(OutputStream outputStream) throws IOException {
+        DataOutputStream out = new DataOutputStream(outputStream);
+        out.writeLong(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(jarCrc);
+        out.writeInt(classFileInfos.size());
+
+        String previousPath = "";
+        for (ClassFileInfo classFileInfo : classFileInfos) {
+            String path = classFileInfo.getClassName();
+            int prefixLength = Math.min(sharedPrefixLength(previousPath, path), MAX_PREFIX_LENGTH);
+            out.writeShort(prefixLength);
+            out.writeUTF(path.substring(prefixLength));
+            out.writeLong(classFileInfo.getHashCode());
+            previousPath = path;
+        }
+        out.flush();
+    }
+
+    public static SignaturePayload read(InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(inputStream);
+        if (in.readLong() != MAGIC) {
+            throw new IOException("Not a signature payload");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported signature payload version " + version);
+        }
+        long jarCrc = in.readLong();
+        int numClasses = in.readInt();
+        if (numClasses < 0) {
+            throw new IOException("Invalid number of classes " + numClasses);
+        }
+
+        List<ClassFileInfo> classFileInfos = new ArrayList<>(Math.min(numClasses, 1 << 16));
+        String previousPath = "";
+        for (int i = 0; i < numClasses; i++) {
+            int prefixLength = in.readUnsignedShort();
+            if (prefixLength > previousPath.length()) {
+                throw new IOException("Invalid path prefix length " + prefixLength);
+            }
+            String path = previousPath.substring(0, prefixLength) + in.readUTF();
+            // the CRC of the class is not needed for the matching, so clients do not send it
+            classFileInfos.add(new ClassFileInfo(path, in.readLong(), 0));
+            previousPath = path;
+        }
+        return new SignaturePayload(classFileInfos, jarCrc);
+    }
+
+    public static SignaturePayload readNdjson(BufferedReader reader) throws IOException {
+        List<ClassFileInfo> classFileInfos = new ArrayList<>();
+        long jarCrc = UNKNOWN_CRC;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            JsonNode node = mapper.readTree(line);
+            if (node.has("jarCrc")) {
+                jarCrc = readLong(node, "jarCrc", line);
+                continue;
+            }
+            if (!node.hasNonNull("path") || !node.get("path").isTextual()) {
+                throw new IOException("Expected a path and a hash: " + line);
+            }
+            classFileInfos.add(new ClassFileInfo(node.get("path").asText(), readLong(node, "hash", line), 0));
+        }
+        return new SignaturePayload(classFileInfos, jarCrc);
+    }
+
+    /**
+     * Returns the given field as a long, asLong() would silently turn a missing, textual or fractional value into 0.
+     */
+    private static long readLong(JsonNode node, String field, String line) throws IOException {
+        JsonNode value = node.get(field);
+        if (value == null || !value.isIntegralNumber() || !value.canConvertToLong()) {
+            throw new IOException("Expected an integer " + field + ": " + line);
+        }
+        return value.asLong();
+    }
+
+    private static int sharedPrefixLength(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < length && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,188 @@
+package nl.tudelft.cornul11.thesis.corpus.file;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only file of the class signatures of many libraries, the compact alternative to one {@code .jar.txt} file per
+ * artifact written by the EXTRACT_SIGNATURES mode. A whole corpus can be scanned sequentially with
+ * {@link #forEach(LibraryConsumer)}, and a single library can be read by its position in the segment.
+ * <p>
+ * Layout (big-endian, as written by {@link java.io.DataOutputStream}):
+ * <pre>
+ * header   magic "JARSIFTS", format version
+ * library  group id, artifact id, version (modified UTF-8), jar hash, varint class count,
+ *          varint deltas of the sorted class hashes (the first one from Long.MIN_VALUE)
+ * footer   number of libraries, offset of every library record
+ * trailer  offset of the footer, magic
+ * </pre>
+ * The class hashes of a JAR are spread over the whole range, so a delta takes about 8 bytes for a library of a few
+ * hundred classes and less for larger ones; the hashes are in sorted order rather than in the order of the entries.
+ */
+public class SignatureSegment implements Closeable {
+    static final long MAGIC = 0x4A41525349465453L; // "JARSIFTS"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 12;
+    private static final int TRAILER_SIZE = 16;
+
+    private final Path segmentFile;
+    private final FileChannel channel;
+    private final long[] offsets;
+    private final long footerOffset;
+
+    public static class Library {
+        private final String groupId;
+        private final String artifactId;
+        private final String version;
+        private final long jarHash;
+        private final long[] classHashes;
+
+        public Library(String groupId, String artifactId, String version, long jarHash, long[] classHashes) {
+            this.groupId = groupId;
+            this.artifactId = artifactId;
+            this.version = version;
+            this.jarHash = jarHash;
+            this.classHashes = classHashes;
+        }
+
+        public String getGroupId() {
+            return groupId;
+        }
+
+        public String getArtifactId() {
+            return artifactId;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        public long getJarHash() {
+            return jarHash;
+        }
+
+        /**
+         * Returns the class hashes in increasing order.
+         */
+        public long[] getClassHashes() {
+            return classHashes;
+        }
+    }
+
+    public interface LibraryConsumer {
+        void accept(Library library) throws IOException;
+    }
+
+    public SignatureSegment(Path segmentFile) throws IOException {
+        this.segmentFile = segmentFile;
+        this.channel = FileChannel.open(segmentFile, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < HEADER_SIZE + TRAILER_SIZE) {
+                throw new IOException("Not a signature segment: " + segmentFile);
+            }
+            ByteBuffer header = readFully(0, HEADER_SIZE);
+            ByteBuffer trailer = readFully(size - TRAILER_SIZE, TRAILER_SIZE);
+            if (header.getLong() != MAGIC || trailer.getLong(8) != MAGIC) {
+                throw new IOException("Not a complete signature segment: " + segmentFile);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported signature segment version " + version + ": " + segmentFile);
+            }
+            this.footerOffset = trailer.getLong(0);
+            if (footerOffset < HEADER_SIZE || footerOffset + 4 > size - TRAILER_SIZE) {
+                throw new IOException("Invalid footer offset " + footerOffset + ": " + segmentFile);
+            }
+            int libraryCount = readFully(footerOffset, 4).getInt();
+            if (libraryCount < 0 || footerOffset + 4 + 8L * libraryCount != size - TRAILER_SIZE) {
+                throw new IOException("Invalid number of libraries " + libraryCount + ": " + segmentFile);
+            }
+            this.offsets = new long[libraryCount];
+            readFully(footerOffset + 4, 8 * libraryCount).asLongBuffer().get(offsets);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int getLibraryCount() {
+        return offsets.length;
+    }
+
+    /**
+     * Reads the library at the given position in the segment.
+     */
+    public Library getLibrary(int index) throws IOException {
+        long end = index + 1 < offsets.length ? offsets[index + 1] : footerOffset;
+        ByteBuffer record = readFully(offsets[index], (int) (end - offsets[index]));
+        return readLibrary(new DataInputStream(new ByteArrayInputStream(record.array())));
+    }
+
+    /**
+     * Reads all libraries in the order they were written, with one sequential pass over the file.
+     */
+    public void forEach(LibraryConsumer consumer) throws IOException {
+        // a stream of its own, the channel of the segment is only read with absolute positions
+        try (FileChannel scanChannel = FileChannel.open(segmentFile, StandardOpenOption.READ)) {
+            scanChannel.position(HEADER_SIZE);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(scanChannel), 1 << 16));
+            for (int i = 0; i < offsets.length; i++) {
+                consumer.accept(readLibrary(in));
+            }
+        }
+    }
+
+    private static Library readLibrary(DataInputStream in) throws IOException {
+        String groupId = in.readUTF();
+        String artifactId = in.readUTF();
+        String version = in.readUTF();
+        long jarHash = in.readLong();
+        long classCount = readVarLong(in);
+        if (classCount < 0 || classCount > Integer.MAX_VALUE - 8) {
+            throw new IOException("Invalid number of classes " + classCount);
+        }
+        long[] classHashes = new long[(int) classCount];
+        long hash = Long.MIN_VALUE;
+        for (int i = 0; i < classHashes.length; i++) {
+            hash += readVarLong(in);
+            classHashes[i] = hash;
+        }
+        return new Library(groupId, artifactId, version, jarHash, classHashes);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private ByteBuffer readFully(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of signature segment: " + segmentFile);
+            }
+        }
+        return buffer.flip();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,121 @@
+package nl.tudelft.cornul11.thesis.corpus.file;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Writes a {@link SignatureSegment} file. Libraries are appended one after the other by a single thread, the footer is
+ * written on {@link #close()}. The segment is written to a temporary file next to it and renamed into place once the
+ * footer is complete, so a segment file that exists is always readable.
+ */
+public class SignatureSegmentWriter implements Closeable {
+    private final Path segmentFile;
+    private final Path tmpFile;
+    private final CountingOutputStream counter;
+    private final DataOutputStream out;
+    private long[] offsets = new long[1024];
+    private int libraryCount = 0;
+    private boolean closed = false;
+
+    public SignatureSegmentWriter(Path segmentFile) throws IOException {
+        this.segmentFile = segmentFile;
+        this.tmpFile = segmentFile.resolveSibling(segmentFile.getFileName() + ".tmp");
+        this.counter = new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile), 1 << 16));
+        this.out = new DataOutputStream(counter);
+        out.writeLong(SignatureSegment.MAGIC);
+        out.writeInt(SignatureSegment.VERSION);
+    }
+
+    /**
+     * Appends a library. The hashes are sorted and delta-encoded, duplicates are kept so that the class count is that
+     * of the JAR.
+     */
+    public void addLibrary(String groupId, String artifactId, String version, long jarHash, long[] classHashes) throws IOException {
+        if (libraryCount == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[libraryCount++] = counter.count;
+
+        long[] sortedHashes = classHashes.clone();
+        Arrays.sort(sortedHashes);
+        out.writeUTF(groupId == null ? "" : groupId);
+        out.writeUTF(artifactId == null ? "" : artifactId);
+        out.writeUTF(version == null ? "" : version);
+        out.writeLong(jarHash);
+        writeVarLong(sortedHashes.length);
+        long previousHash = Long.MIN_VALUE;
+        for (long hash : sortedHashes) {
+            // the difference of two sorted signed longs always fits in an unsigned long
+            writeVarLong(hash - previousHash);
+            previousHash = hash;
+        }
+    }
+
+    public int getLibraryCount() {
+        return libraryCount;
+    }
+
+    /**
+     * Returns the number of bytes written so far, without the footer.
+     */
+    public long getSize() {
+        return counter.count;
+    }
+
+    public Path getSegmentFile() {
+        return segmentFile;
+    }
+
+    private void writeVarLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        long footerOffset = counter.count;
+        out.writeInt(libraryCount);
+        for (int i = 0; i < libraryCount; i++) {
+            out.writeLong(offsets[i]);
+        }
+        out.writeLong(footerOffset);
+        out.writeLong(SignatureSegment.MAGIC);
+        out.close();
+        Files.move(tmpFile, segmentFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package nl.tudelft.cornul11.thesis.corpus.jarfile;
+
+import nl.tudelft.cornul11.thesis.corpus.util.ConfigurationLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Persistent, memory-mapped cache of class signature hashes keyed by the (CRC32, uncompressed size) of the class file.
+ * Most classes are byte-identical across consecutive versions of an artifact, so a hit lets us skip the ASM parse.
+ * <p>
+ * The file is a fixed-size open-addressing table of (key, hash) slots behind a small header that records the
+ * signature scheme version; a file written with another scheme version or capacity is discarded and recreated.
+ * Slots are claimed with a CAS on the key and the hash is published afterwards, so concurrent readers either see
+ * the complete slot or treat it as a miss. A hash of 0 is used as the "missing" marker and is never stored.
+ */
+public class ClassSignatureCache implements Closeable {
+    // bump whenever the way class signatures are hashed changes, this invalidates existing cache files
+    public static final int SIGNATURE_SCHEME_VERSION = 1;
+    public static final long MISSING = 0L;
+
+    private static final Logger logger = LoggerFactory.getLogger(ClassSignatureCache.class);
+    private static final long MAGIC = 0x4A41525349465443L; // "JARSIFTC"
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 16;
+    private static final int MAX_PROBES = 32;
+    private static final int MAX_CAPACITY = 1 << 26; // 1 GB file, mapped as a single buffer
+    private static final int DEFAULT_CAPACITY = 1 << 24;
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int mask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public ClassSignatureCache(Path path, int capacity) throws IOException {
+        if (capacity <= 0 || capacity > MAX_CAPACITY || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Cache capacity must be a power of two not larger than " + MAX_CAPACITY + ": " + capacity);
+        }
+        this.path = path;
+        this.mask = capacity - 1;
+        long fileSize = HEADER_SIZE + (long) capacity * SLOT_SIZE;
+
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean valid = channel.size() == fileSize && hasValidHeader(capacity);
+        if (!valid) {
+            if (channel.size() > 0) {
+                logger.warn("Discarding signature cache " + path + " written with another scheme version or capacity");
+            }
+            channel.truncate(0);
+            // extend the file, the slots are zero-filled (and sparse on most file systems)
+            channel.write(ByteBuffer.allocate(1), fileSize - 1);
+        }
+
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+        this.buffer.order(ByteOrder.nativeOrder());
+        if (!valid) {
+            writeHeader(capacity);
+        }
+        logger.info("Opened signature cache " + path + " with " + capacity + " slots");
+    }
+
+    /**
+     * Opens the cache configured through {@code signatureCachePath}, or returns {@code null} when no cache is configured
+     * or it cannot be opened.
+     */
+    public static ClassSignatureCache fromConfig(ConfigurationLoader config) {
+        String cachePath = config.getSignatureCachePath();
+        if (cachePath == null) {
+            return null;
+        }
+        int capacity = config.getSignatureCacheCapacity() > 0 ? config.getSignatureCacheCapacity() : DEFAULT_CAPACITY;
+        try {
+            return new ClassSignatureCache(Paths.get(cachePath), capacity);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.error("Could not open signature cache " + cachePath + ", continuing without it", e);
+            return null;
+        }
+    }
+
+    private boolean hasValidHeader(int capacity) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        header.flip();
+        return header.getLong() == MAGIC
+                && header.getInt() == SIGNATURE_SCHEME_VERSION
+                && header.getInt() == capacity;
+    }
+
+    private void writeHeader(int capacity) {
+        ByteBuffer header = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        header.putLong(MAGIC);
+        header.putInt(SIGNATURE_SCHEME_VERSION);
+        header.putInt(capacity);
+        buffer.force();
+    }
+
+    /**
+     * Returns the cached signature hash of the class with the given CRC and size, or {@link #MISSING}.
+     */
+    public long get(long crc, long size) {
+        long key = toKey(crc, size);
+        int slot = indexOf(key);
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            int offset = HEADER_SIZE + slot * SLOT_SIZE;
+            long slotKey = (long) LONGS.getAcquire(buffer, offset);
+            if (slotKey == 0) {
+                break;
+            }
+            if (slotKey == key) {
+                long hash = (long) LONGS.getAcquire(buffer, offset + 8);
+                if (hash == MISSING) {
+                    // claimed by a concurrent writer that has not published the hash yet
+                    break;
+                }
+                hits.increment();
+                return hash;
+            }
+            slot = (slot + 1) & mask;
+        }
+        misses.increment();
+        return MISSING;
+    }
+
+    public void put(long crc, long size, long hash) {
+        if (hash == MISSING) {
+            return;
+        }
+        long key = toKey(crc, size);
+        int slot = indexOf(key);
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            int offset = HEADER_SIZE + slot * SLOT_SIZE;
+            long slotKey = (long) LONGS.getAcquire(buffer, offset);
+            if (slotKey == 0 && LONGS.compareAndSet(buffer, offset, 0L, key)) {
+                LONGS.setRelease(buffer, offset + 8, hash);
+                return;
+            }
+            if (slotKey == key || (long) LONGS.getAcquire(buffer, offset) == key) {
+                // another thread cached the same class
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        rejected.increment();
+    }
+
+    private static long toKey(long crc, long size) {
+        // class files are never empty, so a key of 0 cannot occur and marks an empty slot
+        return (crc << 32) | (size & 0xFFFFFFFFL);
+    }
+
+    private int indexOf(long key) {
+        // murmur3 finalizer, spreads the CRC bits over the whole table
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key & mask;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public void logStatistics() {
+        long hitCount = getHits();
+        long lookups = hitCount + getMisses();
+        double hitRatio = lookups == 0 ? 0 : hitCount * 100.0 / lookups;
+        logger.info(String.format("Signature cache %s: %d hits, %d misses (%.2f%% hit ratio), %d entries rejected because the table is full",
+                path, hitCount, getMisses(), hitRatio, rejected.sum()));
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+}
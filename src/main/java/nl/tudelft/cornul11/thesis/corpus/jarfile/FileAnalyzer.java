@@ -1,15 +1,18 @@
 package nl.tudelft.cornul11.thesis.corpus.jarfile;
 
-import net.openhft.hashing.LongHashFunction;
 import nl.tudelft.cornul11.thesis.corpus.database.SignatureDAO;
+import nl.tudelft.cornul11.thesis.corpus.file.ArtifactBundle;
 import nl.tudelft.cornul11.thesis.corpus.file.ClassFileInfo;
 import nl.tudelft.cornul11.thesis.corpus.file.JarAndPomInfoExtractor;
+import nl.tudelft.cornul11.thesis.corpus.file.SignatureSegmentWriter;
+import nl.tudelft.cornul11.thesis.corpus.model.ExtractedLibrary;
 import nl.tudelft.cornul11.thesis.corpus.model.Signature;
 import nl.tudelft.cornul11.thesis.corpus.util.ConfigurationLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -17,12 +20,16 @@ import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 public class FileAnalyzer {
     private final ConcurrentLinkedDeque<String> ignoredUberJars = new ConcurrentLinkedDeque<>();
     private final ConcurrentLinkedDeque<String> insertedLibraries = new ConcurrentLinkedDeque<>();
     private final AtomicInteger insertedUberJars = new AtomicInteger(0);
+    private final AtomicInteger skippedIndexedJars = new AtomicInteger(0);
+    private final AtomicInteger skippedIdenticalJars = new AtomicInteger(0);
     private final SignatureDAO signatureDao;
     private final Logger logger = LoggerFactory.getLogger(FileAnalyzer.class);
     private final ConcurrentHashMap<Long, Boolean> uniqueHashes = new ConcurrentHashMap<>();
@@ -32,6 +39,9 @@ public class FileAnalyzer {
     private final long startTime = System.currentTimeMillis();
     private final String basePath;
     private final Path outputDirectory;
+    private LibrarySink librarySink;
+    private KnownArtifacts knownArtifacts;
+    private IngestionJournal journal;
 
     public FileAnalyzer(SignatureDAO signatureDao, ConfigurationLoader config, String outputDirectory) {
         this.config = config;
@@ -63,10 +73,91 @@ public class FileAnalyzer {
         }
     }
 
+    /**
+     * Appends the class hashes of the JAR to a signature segment, the compact alternative to
+     * {@link #processJarFileToFile(Path, String)}. The segment writer must not be shared with other threads.
+     */
+    public void processJarFileToSegment(Path jarFilePath, String basePath, SignatureSegmentWriter segmentWriter) {
+        JarAndPomInfoExtractor extractor = new JarAndPomInfoExtractor(jarFilePath.toString(), basePath);
+        JarHandler jarHandler = new JarHandler(jarFilePath, ignoredUberJars, insertedLibraries, config);
+        List<ClassFileInfo> classFileInfos = jarHandler.extractSignatures();
+        long[] classHashes = classFileInfos.stream().mapToLong(ClassFileInfo::getHashCode).toArray();
+
+        try {
+            segmentWriter.addLibrary(extractor.getGroupId(), extractor.getArtifactId(), extractor.getVersion(),
+                    JarProcessingUtils.computeJarHash(classFileInfos), classHashes);
+            logger.info("Saved class hashes for " + jarFilePath.getFileName().toString());
+        } catch (IOException e) {
+            logger.error("Error writing to segment: " + segmentWriter.getSegmentFile(), e);
+        }
+    }
+
     public void printIgnoredUberJars() {
         logger.info("Ignored the signatures of " + ignoredUberJars.size() + " uber jars");
         logger.info("Inserted the signatures of " + insertedLibraries.size() + " JARs");
         logger.info("Inserted library information of " + insertedUberJars + " uber JARs");
+        if (knownArtifacts != null) {
+            logger.info("Skipped " + skippedIndexedJars + " JARs that were already indexed and " + skippedIdenticalJars
+                    + " identical copies of indexed JARs");
+        }
+    }
+
+    /**
+     * Loads the artifacts that are already indexed, which are then skipped before their classes are extracted.
+     */
+    public void loadKnownArtifacts() {
+        this.knownArtifacts = KnownArtifacts.load(signatureDao);
+    }
+
+    /**
+     * Hands the extracted libraries over to the given sink (writer stage or bulk-load segments); when unset, the
+     * signatures are committed on the thread that extracted them.
+     */
+    public void setLibrarySink(LibrarySink librarySink) {
+        this.librarySink = librarySink;
+    }
+
+    /**
+     * Records the JARs that are committed, skipped or failed in the given journal; null disables the journal.
+     */
+    public void setJournal(IngestionJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Called by the library sink once a library has been committed.
+     */
+    public void onLibraryCommitted(ExtractedLibrary library) {
+        if (journal != null) {
+            journal.recordCommitted(library.getJarPath());
+        }
+        if (library.hasSignatures() && totalJars > 0) {
+            calculateAndLogElapsedTime();
+        }
+    }
+
+    /**
+     * Called when a JAR could not be processed or committed.
+     */
+    public void onJarFailed(String jarPath, Exception e) {
+        if (journal != null) {
+            journal.recordFailed(jarPath, e.toString());
+        }
+    }
+
+    /**
+     * Called by the library sink when a library could not be committed, its fingerprint is released so that an
+     * identical copy is not skipped because of it.
+     */
+    public void onLibraryFailed(ExtractedLibrary library, Exception e) {
+        releaseFingerprint(library.getFingerprint());
+        onJarFailed(library.getJarPath(), e);
+    }
+
+    private void releaseFingerprint(long fingerprint) {
+        if (knownArtifacts != null) {
+            knownArtifacts.releaseFingerprint(fingerprint);
+        }
     }
 
     public void setProcessedJars(int processedJars) {
@@ -74,34 +165,121 @@ public class FileAnalyzer {
     }
 
     public int processJarFile(Path jarFilePath) {
-        JarHandler jarHandler = new JarHandler(jarFilePath, ignoredUberJars, insertedLibraries, config);
-        List<ClassFileInfo> signatures = jarHandler.extractSignatures();
+        JarAndPomInfoExtractor jarAndPomInfoExtractor = new JarAndPomInfoExtractor(jarFilePath.toString(), basePath);
+        return processJar(jarFilePath.toString(), jarAndPomInfoExtractor, () -> computeFingerprint(jarFilePath),
+                () -> new JarHandler(jarFilePath, ignoredUberJars, insertedLibraries, config));
+    }
 
-        StringBuilder sb = new StringBuilder();
-        for (ClassFileInfo signature : signatures) {
-            sb.append(signature.getHashCode());
+    /**
+     * Processes a JAR read from a bundle, whose GAV is derived from its path relative to the repository root of the
+     * bundle, see {@link ArtifactBundle#getRepositoryPath(String)}; the base path only applies to files on disk.
+     */
+    public int processBundledJar(String jarPath, String repositoryPath, byte[] jarData) {
+        JarAndPomInfoExtractor jarAndPomInfoExtractor = new JarAndPomInfoExtractor(repositoryPath, null);
+        return processJar(jarPath, jarAndPomInfoExtractor, () -> KnownArtifacts.fingerprint(jarData),
+                () -> new JarHandler(jarPath, ByteBuffer.wrap(jarData), ignoredUberJars, insertedLibraries, config));
+    }
+
+    private int processJar(String jarPath, JarAndPomInfoExtractor jarAndPomInfoExtractor, LongSupplier fingerprintSupplier, Supplier<JarHandler> jarHandlerSupplier) {
+        long fingerprint = KnownArtifacts.UNKNOWN_FINGERPRINT;
+        if (knownArtifacts != null) {
+            if (knownArtifacts.isIndexed(jarAndPomInfoExtractor.getGroupId(), jarAndPomInfoExtractor.getArtifactId(), jarAndPomInfoExtractor.getVersion())) {
+                logger.info("Skipping " + jarPath + ", already indexed");
+                skippedIndexedJars.incrementAndGet();
+                recordSkipped(jarPath, "already indexed");
+                return 0;
+            }
+            fingerprint = fingerprintSupplier.getAsLong();
+            if (!knownArtifacts.claimFingerprint(fingerprint)) {
+                logger.info("Skipping " + jarPath + ", identical to an indexed JAR");
+                skippedIdenticalJars.incrementAndGet();
+                recordSkipped(jarPath, "identical to an indexed JAR");
+                return 0;
+            }
         }
-        LongHashFunction xx = LongHashFunction.xx();
-        long jarHash = xx.hashChars(sb.toString());
+
+        JarHandler jarHandler;
+        List<ClassFileInfo> signatures;
+        try {
+            jarHandler = jarHandlerSupplier.get();
+            signatures = jarHandler.extractSignatures();
+        } catch (RuntimeException e) {
+            releaseFingerprint(fingerprint);
+            throw e;
+        }
+
+        long jarHash = JarProcessingUtils.computeJarHash(signatures);
         long jarCrc = jarHandler.getJarCrc();
         long jarCreationDate = jarHandler.getJarCreationDate();
 
-        JarAndPomInfoExtractor jarAndPomInfoExtractor = new JarAndPomInfoExtractor(jarFilePath.toString(), basePath);
-        if (signatures.isEmpty()) { // it's probably an uber-JAR, let's still add it to the db
+        if (librarySink != null) {
+            return submitLibrary(new ExtractedLibrary(jarPath, jarAndPomInfoExtractor.getGroupId(), jarAndPomInfoExtractor.getArtifactId(),
+                    jarAndPomInfoExtractor.getVersion(), jarHash, jarCrc, fingerprint, jarCreationDate, jarHandler.isBrokenJar(), jarHandler.isUberJar(), signatures));
+        }
+
+        int insertedRows;
+        try {
+            if (signatures.isEmpty()) { // it's probably an uber-JAR, let's still add it to the db
+                insertedRows = commitLibrary(jarAndPomInfoExtractor, jarHash, jarCrc, fingerprint, jarHandler.isBrokenJar(), jarCreationDate);
+                insertedUberJars.incrementAndGet();
+            } else {
+                insertedRows = commitSignatures(signatures, jarAndPomInfoExtractor, jarHash, jarCrc, fingerprint, jarHandler.isUberJar(), jarCreationDate);
+            }
+        } catch (RuntimeException e) {
+            // the DAO throws when the transaction was not committed, like the writer stage reports through onFailed
+            logger.error("Failed to commit " + jarPath, e);
+            releaseFingerprint(fingerprint);
+            onJarFailed(jarPath, e);
+            return 0;
+        }
+        if (journal != null) {
+            journal.recordCommitted(jarPath);
+        }
+        return insertedRows;
+    }
+
+    private void recordSkipped(String jarPath, String reason) {
+        if (journal != null) {
+            journal.recordSkipped(jarPath, reason);
+        }
+    }
+
+    private long computeFingerprint(Path jarFilePath) {
+        try {
+            return KnownArtifacts.fingerprint(jarFilePath);
+        } catch (IOException e) {
+            // the JAR handler reports the broken JAR, it is not deduplicated
+            return KnownArtifacts.UNKNOWN_FINGERPRINT;
+        }
+    }
+
+    private int submitLibrary(ExtractedLibrary library) {
+        if (library.hasSignatures()) {
+            logger.info(String.format("Queueing signatures for JAR: %s version: %s", library.getArtifactId(), library.getVersion()));
+            for (ClassFileInfo signature : library.getClassFileInfos()) {
+                uniqueHashes.put(signature.getHashCode(), true);
+            }
+        } else { // it's probably an uber-JAR, let's still add it to the db
             insertedUberJars.incrementAndGet();
-            return commitLibrary(jarAndPomInfoExtractor, jarHash, jarCrc, jarHandler.isBrokenJar(), jarCreationDate);
         }
 
-        // TODO: maybe switch to a thread that does the insertions, and many other threads do the extraction and processing
-        return commitSignatures(signatures, jarAndPomInfoExtractor, jarHash, jarCrc, jarCreationDate);
+        try {
+            librarySink.submit(library);
+        } catch (InterruptedException e) {
+            logger.error("Interrupted while queueing " + library.getGAV() + " for the library sink");
+            onLibraryFailed(library, e);
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+        return library.getClassFileInfos().size();
     }
 
-    public int commitLibrary(JarAndPomInfoExtractor jarAndPomInfoExtractor, long jarHash, long jarCrc, boolean isBrokenJar, long jarCreationDate) {
+    public int commitLibrary(JarAndPomInfoExtractor jarAndPomInfoExtractor, long jarHash, long jarCrc, long fingerprint, boolean isBrokenJar, long jarCreationDate) {
         logger.info("Committing library: " + jarAndPomInfoExtractor.getArtifactId() + " version: " + jarAndPomInfoExtractor.getVersion());
-        return signatureDao.insertLibrary(jarAndPomInfoExtractor, jarHash, jarCrc, isBrokenJar, jarCreationDate);
+        return signatureDao.insertLibrary(jarAndPomInfoExtractor, jarHash, jarCrc, fingerprint, isBrokenJar, jarCreationDate);
     }
 
-    public int commitSignatures(List<ClassFileInfo> signatures, JarAndPomInfoExtractor jarAndPomInfoExtractor, long jarHash, long jarCrc, long jarCreationDate) {
+    public int commitSignatures(List<ClassFileInfo> signatures, JarAndPomInfoExtractor jarAndPomInfoExtractor, long jarHash, long jarCrc, long fingerprint, boolean isUberJar, long jarCreationDate) {
         logJarCommitment(jarAndPomInfoExtractor);
 
         for (ClassFileInfo signature : signatures) {
@@ -109,7 +287,7 @@ public class FileAnalyzer {
         }
 
         List<Signature> signaturesToInsert = getSignaturesToInsert(signatures, jarAndPomInfoExtractor);
-        int insertedRows = signatureDao.insertSignatures(signaturesToInsert, jarHash, jarCrc, jarCreationDate);
+        int insertedRows = signatureDao.insertSignatures(signaturesToInsert, jarHash, jarCrc, fingerprint, isUberJar, jarCreationDate);
 
         if (totalJars > 0) {
             calculateAndLogElapsedTime();
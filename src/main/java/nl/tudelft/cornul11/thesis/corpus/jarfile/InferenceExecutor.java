@@ -0,0 +1,107 @@
+package nl.tudelft.cornul11.thesis.corpus.jarfile;
+
+import nl.tudelft.cornul11.thesis.corpus.util.ConfigurationLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-lived work-stealing pool that extracts the class signatures of the JARs to infer, shared by the server, the
+ * evaluation and the command line instead of a pool per JAR.
+ * <p>
+ * The number of tasks submitted but not yet completed is bounded across all callers: once the limit is reached,
+ * {@link #submit(CompletionService, Callable)} blocks until a task completes, so a burst of large uploads cannot queue
+ * an unbounded number of entries. Callers collect their results through their own {@link CompletionService}.
+ */
+public class InferenceExecutor implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(InferenceExecutor.class);
+    private static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    private static InferenceExecutor instance;
+
+    private final ForkJoinPool pool;
+    private final Semaphore pendingTasks;
+
+    public InferenceExecutor(int numThreads, int queueCapacity) {
+        this.pool = new ForkJoinPool(numThreads);
+        this.pendingTasks = new Semaphore(queueCapacity);
+        logger.info("Inference executor started with " + numThreads + " threads and a queue of " + queueCapacity + " tasks");
+    }
+
+    /**
+     * Returns the shared executor, started with the default settings if {@link #configure(ConfigurationLoader)} was not
+     * called.
+     */
+    public static synchronized InferenceExecutor getInstance() {
+        if (instance == null) {
+            instance = new InferenceExecutor(Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_CAPACITY);
+        }
+        return instance;
+    }
+
+    /**
+     * (Re)starts the shared executor with the settings of the config; a previous executor is shut down.
+     */
+    public static synchronized InferenceExecutor configure(ConfigurationLoader config) {
+        if (instance != null) {
+            instance.close();
+        }
+        instance = new InferenceExecutor(config.getInferenceThreads(), config.getInferenceQueueCapacity());
+        return instance;
+    }
+
+    /**
+     * Shuts the shared executor down, if it was started.
+     */
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.close();
+            instance = null;
+        }
+    }
+
+    public <T> CompletionService<T> newCompletionService() {
+        return new ExecutorCompletionService<>(pool);
+    }
+
+    /**
+     * Submits the task through the completion service of the caller, blocking while the executor is at capacity.
+     */
+    public <T> Future<T> submit(CompletionService<T> completionService, Callable<T> task) throws InterruptedException {
+        pendingTasks.acquire();
+        try {
+            return completionService.submit(() -> {
+                try {
+                    return task.call();
+                } finally {
+                    pendingTasks.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            // rejected, the task will never run
+            pendingTasks.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+        try {
+            if (!pool.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.warn("Inference tasks still running after 30 seconds, interrupting them");
+                pool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package nl.tudelft.cornul11.thesis.corpus.jarfile;
+
+import nl.tudelft.cornul11.thesis.corpus.util.LongHashSet;
+import net.openhft.hashing.LongHashFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only journal of the JARs handled by the corpus generation, used to resume an interrupted run exactly where it
+ * stopped instead of from a single last path.
+ * <p>
+ * Every line is {@code STATUS\tpath[\treason]}: {@code COMMITTED} once the library is in the database, {@code SKIPPED}
+ * when it was deduplicated, {@code FAILED} with the reason otherwise. Records are buffered and written with an fsync
+ * every {@value #SYNC_RECORDS} records or {@value #SYNC_INTERVAL_MILLIS} ms, so a crash loses at most the last batch,
+ * whose JARs are then simply processed again. On startup, the committed and skipped paths are loaded into a set of
+ * path hashes; failed JARs are retried. A torn last line left by a crash is truncated.
+ */
+public class IngestionJournal implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(IngestionJournal.class);
+    private static final int SYNC_RECORDS = 256;
+    private static final long SYNC_INTERVAL_MILLIS = 1000;
+
+    public enum Status {
+        COMMITTED,
+        SKIPPED,
+        FAILED
+    }
+
+    private final Path path;
+    private final LongHashSet donePaths = new LongHashSet();
+    private final FileChannel channel;
+    private final StringBuilder pending = new StringBuilder();
+    private final ScheduledExecutorService syncer;
+    private int pendingRecords = 0;
+    private int failedRecords = 0;
+
+    private IngestionJournal(Path path) throws IOException {
+        this.path = path;
+        load();
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ingestion-journal-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        syncer.scheduleWithFixedDelay(this::syncQuietly, SYNC_INTERVAL_MILLIS, SYNC_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens the journal at the given path, loading the JARs recorded by previous runs.
+     */
+    public static IngestionJournal open(Path path) throws IOException {
+        IngestionJournal journal = new IngestionJournal(path);
+        logger.info("Ingestion journal " + path + " has " + journal.getDoneCount() + " committed or skipped JAR(s) and "
+                + journal.failedRecords + " failure(s)");
+        return journal;
+    }
+
+    private void load() throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        truncateTornTail();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                parse(line);
+            }
+        }
+    }
+
+    /**
+     * Cuts the file after its last complete line, dropping a record that was being written during a crash.
+     */
+    private void truncateTornTail() throws IOException {
+        try (FileChannel writeChannel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long end = writeChannel.size();
+            ByteBuffer chunk = ByteBuffer.allocate(4096);
+            while (end > 0) {
+                long start = Math.max(0, end - chunk.capacity());
+                chunk.clear().limit((int) (end - start));
+                while (chunk.hasRemaining() && writeChannel.read(chunk, start + chunk.position()) >= 0) {
+                    // read the whole chunk
+                }
+                for (int i = (int) (end - start) - 1; i >= 0; i--) {
+                    if (chunk.get(i) == '\n') {
+                        truncate(writeChannel, start + i + 1);
+                        return;
+                    }
+                }
+                end = start;
+            }
+            truncate(writeChannel, 0);
+        }
+    }
+
+    private void truncate(FileChannel writeChannel, long size) throws IOException {
+        if (size < writeChannel.size()) {
+            logger.warn("Dropping the incomplete last record of the ingestion journal " + path);
+            writeChannel.truncate(size);
+            writeChannel.force(true);
+        }
+    }
+
+    private void parse(String line) {
+        String[] fields = line.split("\t", 3);
+        if (fields.length < 2) {
+            return;
+        }
+        if (fields[0].equals(Status.COMMITTED.name()) || fields[0].equals(Status.SKIPPED.name())) {
+            donePaths.add(pathKey(fields[1]));
+        } else if (fields[0].equals(Status.FAILED.name())) {
+            failedRecords++;
+        }
+    }
+
+    /**
+     * Returns true if the JAR was committed or skipped by a previous run.
+     */
+    public synchronized boolean isDone(Path jarPath) {
+        return donePaths.contains(pathKey(jarPath.toString()));
+    }
+
+    public synchronized int getDoneCount() {
+        return donePaths.size();
+    }
+
+    public void recordCommitted(String jarPath) {
+        record(Status.COMMITTED, jarPath, null);
+    }
+
+    public void recordSkipped(String jarPath, String reason) {
+        record(Status.SKIPPED, jarPath, reason);
+    }
+
+    public void recordFailed(String jarPath, String reason) {
+        record(Status.FAILED, jarPath, reason);
+    }
+
+    private synchronized void record(Status status, String jarPath, String reason) {
+        if (jarPath == null) {
+            return;
+        }
+        pending.append(status.name()).append('\t').append(jarPath);
+        if (reason != null) {
+            pending.append('\t').append(reason.replace('\n', ' ').replace('\t', ' '));
+        }
+        pending.append('\n');
+        if (status != Status.FAILED) {
+            donePaths.add(pathKey(jarPath));
+        }
+        if (++pendingRecords >= SYNC_RECORDS) {
+            syncQuietly();
+        }
+    }
+
+    /**
+     * Writes the buffered records and forces them to disk.
+     */
+    public synchronized void sync() throws IOException {
+        if (pending.length() == 0) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(pending.toString().getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+        pending.setLength(0);
+        pendingRecords = 0;
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException e) {
+            logger.error("Error while writing the ingestion journal " + path, e);
+        }
+    }
+
+    private static long pathKey(String jarPath) {
+        return LongHashFunction.xx().hashChars(jarPath);
+    }
+
+    @Override
+    public void close() {
+        syncer.shutdown();
+        syncQuietly();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.error("Error while closing the ingestion journal " + path, e);
+        }
+    }
+}
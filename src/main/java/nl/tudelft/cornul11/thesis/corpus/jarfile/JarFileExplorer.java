@@ -1,7 +1,11 @@
 package nl.tudelft.cornul11.thesis.corpus.jarfile;
 
+import nl.tudelft.cornul11.thesis.corpus.database.DatabaseManager;
 import nl.tudelft.cornul11.thesis.corpus.database.SignatureDAO;
+import nl.tudelft.cornul11.thesis.corpus.file.ArtifactBundle;
 import nl.tudelft.cornul11.thesis.corpus.file.DirectoryExplorer;
+import nl.tudelft.cornul11.thesis.corpus.file.ParallelDirectoryWalker;
+import nl.tudelft.cornul11.thesis.corpus.file.SignatureSegmentWriter;
 import nl.tudelft.cornul11.thesis.corpus.util.ConfigurationLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,23 +16,73 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.sql.SQLException;
 import java.util.List;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class JarFileExplorer {
     private final int numConsumerThreads;
-    private final BlockingQueue<Path> queue = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Path> queue;
     private final Logger logger = LoggerFactory.getLogger(JarFileExplorer.class);
     private final FileAnalyzer fileAnalyzer;
     // Add a Poison Pill Object to signal end of queue processing
     private static final Path POISON_PILL = Paths.get("");
     private final SignatureDAO signatureDao;
+    private final ConfigurationLoader config;
+    private final String outputPath;
+    private static final String SEGMENT_SUFFIX = ".seg";
 
     public JarFileExplorer(SignatureDAO signatureDao, ConfigurationLoader config, String outputPath) {
         this.signatureDao = signatureDao;
+        this.config = config;
+        this.outputPath = outputPath;
         this.fileAnalyzer = new FileAnalyzer(signatureDao, config, outputPath);
         this.numConsumerThreads = config.getNumConsumerThreads();
+        this.queue = new LinkedBlockingQueue<>(config.getWalkerQueueCapacity());
+    }
+
+    private SignatureWriter startSignatureWriter() {
+        int numWriterThreads = config.getNumWriterThreads();
+        if (numWriterThreads <= 0) {
+            return null;
+        }
+        SignatureWriter signatureWriter = new SignatureWriter(signatureDao, numWriterThreads,
+                config.getWriterQueueCapacity(), config.getWriterBatchRows(), fileAnalyzer::onLibraryCommitted,
+                fileAnalyzer::onLibraryFailed);
+        fileAnalyzer.setLibrarySink(signatureWriter);
+        return signatureWriter;
+    }
+
+    private void loadKnownArtifacts() {
+        if (config.getSkipIndexedArtifacts()) {
+            logger.info("Loading the indexed artifacts to skip");
+            fileAnalyzer.loadKnownArtifacts();
+        }
+    }
+
+    /**
+     * Opens the ingestion journal, whose committed and skipped JARs are not processed again.
+     */
+    private IngestionJournal openJournal() throws IOException {
+        IngestionJournal journal = IngestionJournal.open(Paths.get(config.getIngestionJournalPath()));
+        fileAnalyzer.setJournal(journal);
+        return journal;
+    }
+
+    private void closeJournal(IngestionJournal journal) {
+        fileAnalyzer.setJournal(null);
+        journal.close();
+    }
+
+    private void stopSignatureWriter(SignatureWriter signatureWriter) {
+        if (signatureWriter != null) {
+            logger.info("Waiting for the writer threads to commit the remaining libraries");
+            signatureWriter.close();
+            fileAnalyzer.setLibrarySink(null);
+        }
     }
 
     public void processFilesToFiles(List<Path> jarFilePaths, String basePath) {
@@ -49,6 +103,78 @@ public class JarFileExplorer {
         logger.info("All JAR files have been processed");
     }
 
+    /**
+     * Writes the class hashes of the JARs to signature segments in the output directory. Each consumer thread appends
+     * to its own segment, and finalises it and starts a new one once it reaches the configured number of libraries or
+     * bytes, so that a crash only loses the segments being written. Segments of previous runs are kept, the new ones
+     * are numbered after them.
+     */
+    public void processFilesToSegments(List<Path> jarFilePaths, String basePath) {
+        Path segmentDirectory = Paths.get(outputPath);
+        AtomicInteger segmentNumbers;
+        try {
+            Files.createDirectories(segmentDirectory);
+            segmentNumbers = new AtomicInteger(nextSegmentNumber(segmentDirectory));
+        } catch (IOException e) {
+            logger.error("Error while preparing the segment directory: " + segmentDirectory, e);
+            return;
+        }
+        int maxLibraries = config.getSignatureSegmentLibraries();
+        long maxBytes = config.getSignatureSegmentBytes();
+
+        ConcurrentLinkedQueue<Path> pendingPaths = new ConcurrentLinkedQueue<>(jarFilePaths);
+        ExecutorService executor = Executors.newFixedThreadPool(numConsumerThreads);
+        for (int i = 0; i < numConsumerThreads; i++) {
+            executor.submit(() -> {
+                SignatureSegmentWriter segmentWriter = null;
+                try {
+                    segmentWriter = newSegmentWriter(segmentDirectory, segmentNumbers.getAndIncrement());
+                    Path jarFilePath;
+                    while ((jarFilePath = pendingPaths.poll()) != null) {
+                        fileAnalyzer.processJarFileToSegment(jarFilePath, basePath, segmentWriter);
+                        if ((maxLibraries > 0 && segmentWriter.getLibraryCount() >= maxLibraries)
+                                || (maxBytes > 0 && segmentWriter.getSize() >= maxBytes)) {
+                            closeSegmentWriter(segmentWriter);
+                            segmentWriter = newSegmentWriter(segmentDirectory, segmentNumbers.getAndIncrement());
+                        }
+                    }
+                    closeSegmentWriter(segmentWriter);
+                } catch (IOException e) {
+                    logger.error("Error while writing segment: " + (segmentWriter == null ? segmentDirectory : segmentWriter.getSegmentFile()), e);
+                }
+            });
+        }
+        executor.shutdown();
+        while (!executor.isTerminated()) {
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                logger.error("Interrupted while waiting for tasks to complete", e);
+                Thread.currentThread().interrupt();
+            }
+        }
+        logger.info("All JAR files have been processed");
+    }
+
+    private static SignatureSegmentWriter newSegmentWriter(Path segmentDirectory, int segmentNumber) throws IOException {
+        return new SignatureSegmentWriter(segmentDirectory.resolve(String.format("signatures-%05d%s", segmentNumber, SEGMENT_SUFFIX)));
+    }
+
+    private void closeSegmentWriter(SignatureSegmentWriter segmentWriter) throws IOException {
+        segmentWriter.close();
+        logger.info("Wrote " + segmentWriter.getLibraryCount() + " libraries to " + segmentWriter.getSegmentFile());
+    }
+
+    private static int nextSegmentNumber(Path segmentDirectory) throws IOException {
+        try (Stream<Path> files = Files.list(segmentDirectory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith("signatures-") && name.endsWith(SEGMENT_SUFFIX))
+                    .mapToInt(name -> Integer.parseInt(name.substring("signatures-".length(), name.length() - SEGMENT_SUFFIX.length())))
+                    .max().orElse(-1) + 1;
+        }
+    }
+
     public void processFiles(String path, String lastPath) {
         Path rootPath = Paths.get(path);
         Path lastVisitedPath = lastPath != null ? Paths.get(lastPath) : null;
@@ -60,19 +186,36 @@ public class JarFileExplorer {
             // create and start JarProcessor threads
             logger.info("Starting " + numConsumerThreads + " consumer threads");
 
+            IngestionJournal journal = openJournal();
+            loadKnownArtifacts();
+            SignatureWriter signatureWriter = startSignatureWriter();
             ExecutorService executor = Executors.newFixedThreadPool(numConsumerThreads);
             for (int i = 0; i < numConsumerThreads; i++) {
                 executor.execute(new JarProcessor(queue, fileAnalyzer));
             }
 
             logger.info("Processing files in directory: " + rootPath);
-            DirectoryExplorer directoryExplorer = new DirectoryExplorer(queue, rootPath);
-            directoryExplorer.setLastVisitedPath(lastVisitedPath);
-            Files.walkFileTree(rootPath, directoryExplorer);
+            int visitedFiles;
+            int skippedFiles;
+            if (lastVisitedPath == null) {
+                ParallelDirectoryWalker directoryWalker = new ParallelDirectoryWalker(queue, rootPath, config.getWalkerThreads());
+                directoryWalker.setAlreadyProcessed(journal::isDone);
+                directoryWalker.walk();
+                visitedFiles = directoryWalker.getVisitedFilesCount();
+                skippedFiles = directoryWalker.getSkippedFilesCount();
+            } else {
+                // resuming from a path needs the deterministic order of the sequential walk
+                DirectoryExplorer directoryExplorer = new DirectoryExplorer(queue, rootPath);
+                directoryExplorer.setLastVisitedPath(lastVisitedPath);
+                directoryExplorer.setAlreadyProcessed(journal::isDone);
+                Files.walkFileTree(rootPath, directoryExplorer);
+                visitedFiles = directoryExplorer.getVisitedFilesCount();
+                skippedFiles = directoryExplorer.getSkippedFilesCount();
+            }
 
             // add end-of-stream marker to the queue
             for (int i = 0; i < numConsumerThreads; i++) { // 10 consumer threads
-                queue.offer(POISON_PILL);
+                queue.put(POISON_PILL);
             }
 
             // Wait for all tasks to complete
@@ -87,14 +230,81 @@ public class JarFileExplorer {
                     Thread.currentThread().interrupt();
                 }
             }
+            stopSignatureWriter(signatureWriter);
+            closeJournal(journal);
             long endTime = System.currentTimeMillis();
-            logger.info("Processed " + directoryExplorer.getVisitedFilesCount() + " jar file(s) in " + (endTime - startTime) / 1000 + " seconds (" + (endTime - startTime) + " ms)");
+            logger.info("Processed " + visitedFiles + " jar file(s) in " + (endTime - startTime) / 1000 + " seconds (" + (endTime - startTime) + " ms)"
+                    + ", skipped " + skippedFiles + " jar file(s) in the journal");
             fileAnalyzer.printIgnoredUberJars();
             fileAnalyzer.printStats();
             logger.info("Closing database connection");
             signatureDao.closeConnection();
         } catch (IOException e) {
             logger.error("Error while processing files", e);
+        } catch (InterruptedException e) {
+            logger.error("Interrupted while walking " + rootPath, e);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Variant of {@link #processFiles(String, String)} that reads the JARs out of a tar or zip bundle in Maven repository
+     * layout, see {@link ArtifactBundle}. The bundle is read sequentially on the calling thread, and the JARs are
+     * processed by the consumer threads from memory; when they fall behind, the reading thread processes a JAR itself,
+     * which bounds the number of JARs held in memory.
+     */
+    public void processBundle(String path) {
+        Path bundlePath = Paths.get(path);
+        long startTime = System.currentTimeMillis();
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(numConsumerThreads, numConsumerThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(numConsumerThreads * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+        try (ArtifactBundle bundle = new ArtifactBundle(bundlePath)) {
+            IngestionJournal journal = openJournal();
+            loadKnownArtifacts();
+            SignatureWriter signatureWriter = startSignatureWriter();
+
+            logger.info("Processing JAR files in bundle: " + bundlePath);
+            bundle.setRoot(config.getBundleRoot());
+            bundle.setAlreadyProcessed(entryName -> journal.isDone(Paths.get(bundle.getJarPath(entryName))));
+            bundle.forEachJar((entryName, data) -> executor.execute(() -> {
+                String jarPath = bundle.getJarPath(entryName);
+                try {
+                    fileAnalyzer.processBundledJar(jarPath, bundle.getRepositoryPath(entryName), data);
+                } catch (Exception e) {
+                    logger.error("Exception while processing file " + jarPath, e);
+                    fileAnalyzer.onJarFailed(jarPath, e);
+                }
+            }));
+
+            // Wait for all tasks to complete
+            executor.shutdown();
+
+            while (!executor.isTerminated()) {
+                try {
+                    executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    List<Runnable> remainingTasks = executor.shutdownNow(); // Force remaining tasks to terminate
+                    logger.error("Interrupted while waiting for tasks to complete", e);
+                    Thread.currentThread().interrupt();
+                }
+            }
+            stopSignatureWriter(signatureWriter);
+            closeJournal(journal);
+            long endTime = System.currentTimeMillis();
+            logger.info("Processed " + bundle.getJarCount() + " jar file(s) in " + (endTime - startTime) / 1000 + " seconds (" + (endTime - startTime) + " ms)"
+                    + ", skipped " + bundle.getSkippedCount() + " jar file(s) in the journal");
+            fileAnalyzer.printIgnoredUberJars();
+            fileAnalyzer.printStats();
+            logger.info("Closing database connection");
+            signatureDao.closeConnection();
+        } catch (IOException e) {
+            executor.shutdownNow();
+            logger.error("Error while processing bundle " + bundlePath, e);
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            logger.error("Interrupted while reading bundle " + bundlePath, e);
+            Thread.currentThread().interrupt();
         }
     }
 
@@ -105,19 +315,23 @@ public class JarFileExplorer {
 
         ExecutorService executor = Executors.newFixedThreadPool(numConsumerThreads);
         try {
+            IngestionJournal journal = openJournal();
+            loadKnownArtifacts();
+            SignatureWriter signatureWriter = startSignatureWriter();
             List<String> allPaths = Files.readAllLines(Paths.get(pathToFileWithPaths));
             logger.info("Found " + allPaths.size() + " files from file: " + pathToFileWithPaths);
 
-            // Calculate the number of paths to skip
-            int skipCount = (lastVisitedPath != null) ? allPaths.indexOf(lastVisitedPath.toString()) + 1 : 0;
-
-            // due to the concurrent nature of the app, it is difficult to pinpoint to last processed file,
-            // thus, this needs a more robust and resilient methodology
+            // due to the concurrent nature of the app, the last path does not tell which files were committed, the
+            // journal does; the last path is still honoured to start further in the list
             List<Path> pathsToProcess = allPaths.stream()
                     .map(Paths::get)
                     .dropWhile(path -> (lastVisitedPath != null) && !path.equals(lastVisitedPath))
+                    .filter(path -> !journal.isDone(path))
                     .collect(Collectors.toList());
 
+            // Calculate the number of paths to skip
+            int skipCount = allPaths.size() - pathsToProcess.size();
+
             logger.info("Processing " + pathsToProcess.size() + " files, skipping " + skipCount + " files.");
 
             fileAnalyzer.setProcessedJars(skipCount);
@@ -136,6 +350,8 @@ public class JarFileExplorer {
                     Thread.currentThread().interrupt();
                 }
             }
+            stopSignatureWriter(signatureWriter);
+            closeJournal(journal);
             long endTime = System.currentTimeMillis();
             logger.info("Processed " + fileAnalyzer.getProcessedFiles() + " jar file(s) in " + (endTime - startTime) / 1000 + " seconds (" + (endTime - startTime) + " ms)");
             fileAnalyzer.printIgnoredUberJars();
@@ -143,10 +359,76 @@ public class JarFileExplorer {
             logger.info("Closing database connection");
             signatureDao.closeConnection();
         } catch (IOException e) {
+            executor.shutdownNow();
             logger.error("Error while processing files", e);
         }
     }
 
+    /**
+     * Bulk-load variant of {@link #processFilesFromPathListFile(String, String)}: the extracted libraries are written to
+     * segment files in {@code segmentDirectory} and loaded with LOAD DATA, and the indexes are built at the end.
+     * JARs that belong to a segment of a previous, interrupted run are not parsed again.
+     */
+    public void bulkLoadFilesFromPathListFile(String pathToFileWithPaths, Path segmentDirectory, DatabaseManager databaseManager) {
+        long startTime = System.currentTimeMillis();
+
+        ExecutorService executor = Executors.newFixedThreadPool(numConsumerThreads);
+        try {
+            loadKnownArtifacts();
+            SegmentWriter segmentWriter = new SegmentWriter(segmentDirectory, databaseManager.getBulkLoader(),
+                    config.getSegmentRows(), fileAnalyzer::onLibraryCommitted);
+            fileAnalyzer.setLibrarySink(segmentWriter);
+
+            List<String> allPaths = Files.readAllLines(Paths.get(pathToFileWithPaths));
+            List<Path> pathsToProcess = allPaths.stream()
+                    .filter(path -> !segmentWriter.isWritten(path))
+                    .map(Paths::get)
+                    .collect(Collectors.toList());
+            int skipCount = allPaths.size() - pathsToProcess.size();
+            logger.info("Processing " + pathsToProcess.size() + " files, skipping " + skipCount + " files that are already in a segment.");
+
+            fileAnalyzer.setProcessedJars(skipCount);
+            pathsToProcess.forEach(path -> executor.submit(new JarFromPathProcessor(path, fileAnalyzer)));
+
+            // Wait for all tasks to complete
+            executor.shutdown();
+
+            while (!executor.isTerminated()) {
+                try {
+                    executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    List<Runnable> remainingTasks = executor.shutdownNow(); // Force remaining tasks to terminate
+                    logger.error("Interrupted while waiting for tasks to complete", e);
+                    Thread.currentThread().interrupt();
+                }
+            }
+            logger.info("Waiting for the remaining segments to be loaded");
+            segmentWriter.close();
+            fileAnalyzer.setLibrarySink(null);
+
+            logger.info("Building the indexes");
+            databaseManager.addIndexes();
+            if ("dictionary".equals(config.getDatabaseMode())) {
+                // the segments bypass the inserts that maintain the dictionary, which also counts the libraries
+                logger.info("Adding the loaded libraries to the class dictionary");
+                databaseManager.migrateClassDictionary(config.getClassDictionaryMigrationChunk());
+            } else if (config.getMaxHashLibraries() > 0 || config.getIdfWeighting()) {
+                logger.info("Counting the libraries of the class hashes");
+                databaseManager.rebuildHashFrequencies();
+            }
+
+            long endTime = System.currentTimeMillis();
+            logger.info("Processed " + fileAnalyzer.getProcessedFiles() + " jar file(s) in " + (endTime - startTime) / 1000 + " seconds (" + (endTime - startTime) + " ms)");
+            fileAnalyzer.printIgnoredUberJars();
+            fileAnalyzer.printStats();
+            logger.info("Closing database connection");
+            signatureDao.closeConnection();
+        } catch (IOException | SQLException e) {
+            executor.shutdownNow();
+            logger.error("Error while bulk loading files", e);
+        }
+    }
+
     private static boolean isJavaClass(Path file) {
         // 0xCAFEBABE is the magic number for Java class files
         try (DataInputStream input = new DataInputStream(new FileInputStream(file.toFile()))) {
@@ -23,6 +23,7 @@ public class JarFromPathProcessor implements Runnable {
             logger.info("Finished processing file: " + path);
         } catch (Exception e) {
             logger.error("Exception while processing file", e);
+            fileAnalyzer.onJarFailed(path.toString(), e);
         }
     }
 }
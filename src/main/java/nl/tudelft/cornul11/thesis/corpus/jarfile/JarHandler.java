@@ -7,138 +7,125 @@ import org.slf4j.LoggerFactory;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
+import java.nio.ByteBuffer;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
-import java.util.zip.CRC32;
 
 
 public class JarHandler {
-    private static final int MAX_SUBMODULES = 1;
-
     private final Path jarFilePath;
+    // set instead of the path for JARs read from a bundle
+    private final ByteBuffer jarData;
+    private final String jarName;
     private final ConcurrentLinkedDeque<String> ignoredUberJars;
     private final ConcurrentLinkedDeque<String> insertedLibraries;
-    private final Set<String> mavenSubmodules = new HashSet<>();
     private final Logger logger = LoggerFactory.getLogger(JarHandler.class);
     private final boolean ignoreUberJarSignatures;
-    private final CRC32 jarCrc = new CRC32();
     private long jarCreationDate = -1;
-    private final long crcValue;
+    private long crcValue = -1;
     private boolean brokenJar = false;
+    private boolean uberJar = false;
 
     public JarHandler(Path jarFilePath, ConcurrentLinkedDeque<String> ignoredUberJars, ConcurrentLinkedDeque<String> insertedLibraries, ConfigurationLoader config) {
         this.jarFilePath = jarFilePath;
+        this.jarData = null;
+        this.jarName = jarFilePath.toString();
+        this.ignoredUberJars = ignoredUberJars;
+        this.insertedLibraries = insertedLibraries;
+        this.ignoreUberJarSignatures = config.getIgnoreUberJarSignatures();
+    }
+
+    /**
+     * Handler of a JAR held in memory, reported under the given name.
+     */
+    public JarHandler(String jarName, ByteBuffer jarData, ConcurrentLinkedDeque<String> ignoredUberJars, ConcurrentLinkedDeque<String> insertedLibraries, ConfigurationLoader config) {
+        this.jarFilePath = null;
+        this.jarData = jarData;
+        this.jarName = jarName;
         this.ignoredUberJars = ignoredUberJars;
         this.insertedLibraries = insertedLibraries;
         this.ignoreUberJarSignatures = config.getIgnoreUberJarSignatures();
-        this.crcValue = this.generateCrc();
     }
 
     public boolean isBrokenJar() {
         return brokenJar;
     }
 
-    private long generateCrc() {
-        jarCrc.reset();
-
-        try (FileChannel channel = FileChannel.open(jarFilePath)) {
-            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
-            byte[] bytes = new byte[8192];
+    /**
+     * Returns whether the JAR bundles other libraries (nested JARs or several Maven submodules), also when its
+     * signatures were extracted.
+     */
+    public boolean isUberJar() {
+        return uberJar;
+    }
 
-            while (buffer.hasRemaining()) {
-                int length = Math.min(buffer.remaining(), bytes.length);
-                buffer.get(bytes, 0, length);
-                jarCrc.update(bytes, 0, length);
-            }
+    private long generateCrc() {
+        if (jarData != null) {
+            return JarProcessingUtils.computeCrc(jarData.duplicate());
+        }
+        try {
+            return JarProcessingUtils.computeFileCrc(jarFilePath);
         } catch (IOException e) {
             logger.error("Failed to generate CRC for " + jarFilePath, e);
+            return 0;
         }
+    }
 
-        return jarCrc.getValue();
+    private MappedZipFile openJar() throws IOException {
+        return jarData != null ? new MappedZipFile(jarData.duplicate(), jarName) : new MappedZipFile(jarFilePath);
     }
 
     public List<ClassFileInfo> extractSignatures() {
-        mavenSubmodules.clear();
-
-        logger.info("Attempting to process " + jarFilePath);
-        try (JarFile jarFile = new JarFile(jarFilePath.toFile())) {
-            Enumeration<JarEntry> entries = jarFile.entries();
-            List<ClassFileInfo> classFileInfos = new ArrayList<>();
-            logger.info("Processing " + jarFilePath + " with " + jarFile.size() + " entries");
-            while (entries.hasMoreElements()) {
-                JarEntry entry = entries.nextElement();
-                String entryName = entry.getName();
-
-                if (entryName.equals("META-INF/MANIFEST.MF")) {
-                    jarCreationDate = entry.getTime();
-                }
-
-                if (isMavenSubmodule(entry) && shouldSkipDueToSubmoduleCount() && jarCreationDate != -1) {
-                    if (ignoreUberJarSignatures) {
-                        ignoredUberJars.add(jarFilePath.toString());
-                        return new ArrayList<>();
-                    }
+        logger.info("Attempting to process " + jarName);
+        try (MappedZipFile jarFile = openJar()) {
+            // decide from the central directory whether the classes are worth reading at all
+            JarProfile profile = JarProfile.of(jarFile);
+            jarCreationDate = profile.getCreationDate();
+            uberJar = profile.isUberJar();
+            logger.info("Processing " + jarName + " with " + jarFile.size() + " entries: " + profile);
+
+            if (profile.decide(ignoreUberJarSignatures) == JarProfile.Decision.LIBRARY_ONLY && profile.isUberJar()) {
+                if (profile.hasTooManySubmodules()) {
+                    logger.warn("JAR file " + jarName + " contains more than one maven submodule, skipping");
+                } else {
+                    logger.warn("Found nested JAR file in " + jarName + ", skipping");
                 }
+                ignoredUberJars.add(jarName);
+                return new ArrayList<>();
+            }
 
+            List<ClassFileInfo> classFileInfos = new ArrayList<>(profile.getClassCount());
+            for (MappedZipFile.Entry entry : jarFile.entries()) {
                 if (JarProcessingUtils.shouldSkip(entry)) {
                     continue;
                 }
 
-                if (JarProcessingUtils.isJarFile(entry, entryName)) {
-                    if (ignoreUberJarSignatures) {
-                        logger.warn("Found nested JAR file in " + jarFilePath + ", skipping");
-                        ignoredUberJars.add(jarFilePath.toString());
-                        return new ArrayList<>();
-                    }
-                }
-
-                if (JarProcessingUtils.isClassFile(entry, entryName)) {
-                    ClassFileInfo classFileInfo = JarProcessingUtils.processClassFile(entry, jarFile.getInputStream(entry));
+                if (JarProcessingUtils.isClassFile(entry)) {
+                    ClassFileInfo classFileInfo = JarProcessingUtils.processClassFile(jarFile, entry, null);
 
                     if (classFileInfo != null) {
                         classFileInfos.add(classFileInfo);
                     }
                 }
             }
-            logger.info("Finished processing " + jarFilePath);
-            insertedLibraries.add(jarFilePath.toString());
+            logger.info("Finished processing " + jarName);
+            insertedLibraries.add(jarName);
             return classFileInfos;
-        } catch (FileNotFoundException e) {
+        } catch (FileNotFoundException | NoSuchFileException e) {
             // silenced, this is because of the POISON PILL
             brokenJar = true;
             return new ArrayList<>();
         } catch (Exception e) { // goddamn broken JARs
-            ignoredUberJars.add(jarFilePath.toString());
+            ignoredUberJars.add(jarName);
             brokenJar = true;
-            logger.error("Error while processing JAR file " + jarFilePath, e);
+            logger.error("Error while processing JAR file " + jarName, e);
             return new ArrayList<>();
         }
     }
 
-    private boolean isMavenSubmodule(JarEntry entry) {
-        if (entry.isDirectory() && entry.getName().startsWith("META-INF/maven/")) {
-            String[] parts = entry.getName().split("/");
-            if (parts.length >= 4) { // length must be at least 4 to include a group ID and artifact ID
-                String submodule = parts[2] + "/" + parts[3];
-                return mavenSubmodules.add(submodule);
-            }
-        }
-        return false;
-    }
-
-    private boolean shouldSkipDueToSubmoduleCount() {
-        if (mavenSubmodules.size() > MAX_SUBMODULES) {
-            logger.warn("JAR file " + jarFilePath + " contains more than " + MAX_SUBMODULES + " maven submodules, skipping");
-            return true;
-        }
-        return false;
-    }
-
     private String getClassPrefix(JarEntry entry) {
         return entry.getName().substring(0, entry.getName().indexOf('/') + 1);
     }
@@ -160,7 +147,13 @@ public class JarHandler {
         return false;
     }
 
+    /**
+     * Returns the CRC32 of the whole file, computed on the first call.
+     */
     public long getJarCrc() {
+        if (crcValue == -1) {
+            crcValue = generateCrc();
+        }
         return crcValue;
     }
 
@@ -1,39 +1,66 @@
 package nl.tudelft.cornul11.thesis.corpus.jarfile;
 
-import nl.tudelft.cornul11.thesis.corpus.extractor.bytecode.BytecodeDetails;
 import nl.tudelft.cornul11.thesis.corpus.extractor.bytecode.BytecodeParser;
 import nl.tudelft.cornul11.thesis.corpus.extractor.bytecode.BytecodeUtils;
 import nl.tudelft.cornul11.thesis.corpus.file.ClassFileInfo;
+import net.openhft.hashing.LongHashFunction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Set;
 import java.util.jar.JarEntry;
+import java.util.zip.CRC32;
 
 public class JarProcessingUtils {
     private static final Logger logger = LoggerFactory.getLogger(JarProcessingUtils.class);
     private static final Set<String> PREFIX_EXCEPTIONS = Set.of("META-INF/", "META-INF/versions/", "test/");
     private static final Set<String> FILENAME_EXCEPTIONS = Set.of("module-info.class", "package-info.class");
+    private static volatile ClassSignatureCache signatureCache;
 
-    private static boolean matchesPrefixExceptions(JarEntry entry) {
+    public static void setSignatureCache(ClassSignatureCache cache) {
+        signatureCache = cache;
+    }
+
+    public static ClassSignatureCache getSignatureCache() {
+        return signatureCache;
+    }
+
+    private static boolean matchesPrefixExceptions(String entryName) {
         return PREFIX_EXCEPTIONS.stream()
-                .anyMatch(prefix -> entry.getName().startsWith(prefix));
+                .anyMatch(entryName::startsWith);
     }
 
-    private static boolean matchesFilenameExceptions(JarEntry entry) {
+    private static boolean matchesFilenameExceptions(String entryName) {
         return FILENAME_EXCEPTIONS.stream()
-                .anyMatch(filename -> entry.getName().contains(filename));
+                .anyMatch(entryName::contains);
     }
 
     public static boolean shouldSkip(JarEntry entry) {
-        return matchesPrefixExceptions(entry) || matchesFilenameExceptions(entry);
+        return shouldSkip(entry.getName());
+    }
+
+    public static boolean shouldSkip(MappedZipFile.Entry entry) {
+        return shouldSkip(entry.getName());
+    }
+
+    private static boolean shouldSkip(String entryName) {
+        return matchesPrefixExceptions(entryName) || matchesFilenameExceptions(entryName);
     }
 
     public static boolean isClassFile(JarEntry entry, String entryName) {
         return !entry.isDirectory() && entryName.endsWith(".class");
     }
 
+    public static boolean isClassFile(MappedZipFile.Entry entry) {
+        return !entry.isDirectory() && entry.getName().endsWith(".class");
+    }
+
     public static boolean isInnerClassFile(String entryName) {
         return entryName.contains("$");
     }
@@ -42,15 +69,111 @@ public class JarProcessingUtils {
         return !entry.isDirectory() && entryName.endsWith(".jar");
     }
 
+    public static boolean isJarFile(MappedZipFile.Entry entry) {
+        return !entry.isDirectory() && entry.getName().endsWith(".jar");
+    }
+
     public static ClassFileInfo processClassFile(JarEntry entry, InputStream inputStream) {
+        return processClassFile(entry, inputStream, null);
+    }
+
+    /**
+     * Returns the signature of the class, recording the nested JAR it comes from (null for the outer JAR).
+     */
+    public static ClassFileInfo processClassFile(JarEntry entry, InputStream inputStream, String nestedPath) {
+        ClassSignatureCache cache = signatureCache;
         try {
+            // entries read from the central directory already carry their CRC and size, so a hit avoids reading them
+            boolean keyKnown = entry.getCrc() != -1 && entry.getSize() != -1;
+            if (cache != null && keyKnown) {
+                long cachedHash = cache.get(entry.getCrc(), entry.getSize());
+                if (cachedHash != ClassSignatureCache.MISSING) {
+                    return new ClassFileInfo(entry.getName(), cachedHash, entry.getCrc(), nestedPath);
+                }
+            }
+
             byte[] bytecode = BytecodeUtils.readBytecodeAndCalculateCRCWhenNotAvailable(entry, inputStream);
 
-            BytecodeDetails bytecodeDetails = BytecodeParser.extractSignature(bytecode);
-            return new ClassFileInfo(entry.getName(), BytecodeUtils.getSignatureHash(bytecodeDetails), entry.getCrc());
+            if (cache != null && !keyKnown) {
+                long cachedHash = cache.get(entry.getCrc(), bytecode.length);
+                if (cachedHash != ClassSignatureCache.MISSING) {
+                    return new ClassFileInfo(entry.getName(), cachedHash, entry.getCrc(), nestedPath);
+                }
+            }
+
+            long signatureHash = BytecodeParser.extractSignatureHash(bytecode);
+            if (cache != null) {
+                cache.put(entry.getCrc(), bytecode.length, signatureHash);
+            }
+            return new ClassFileInfo(entry.getName(), signatureHash, entry.getCrc(), nestedPath);
         } catch (Exception e) {
             logger.error("Error while processing class file: " + entry.getName(), e);
             return null;
         }
     }
+
+    /**
+     * Same as {@link #processClassFile(JarEntry, InputStream, String)} for an entry of a {@link MappedZipFile}, whose CRC and
+     * size always come from the central directory; the class is only inflated on a cache miss.
+     */
+    public static ClassFileInfo processClassFile(MappedZipFile zipFile, MappedZipFile.Entry entry, String nestedPath) {
+        ClassSignatureCache cache = signatureCache;
+        try {
+            if (cache != null) {
+                long cachedHash = cache.get(entry.getCrc(), entry.getSize());
+                if (cachedHash != ClassSignatureCache.MISSING) {
+                    return new ClassFileInfo(entry.getName(), cachedHash, entry.getCrc(), nestedPath);
+                }
+            }
+
+            ByteBuffer bytecode = zipFile.getHeapData(entry);
+            long signatureHash = BytecodeParser.extractSignatureHash(bytecode.array(),
+                    bytecode.arrayOffset() + bytecode.position(), bytecode.remaining());
+            // unlike JarInputStream, the inflation does not check the CRC of the central directory, which must not
+            // key the signature of other bytes in the shared cache
+            if (cache != null && computeCrc(bytecode.duplicate()) == entry.getCrc()) {
+                cache.put(entry.getCrc(), bytecode.remaining(), signatureHash);
+            }
+            return new ClassFileInfo(entry.getName(), signatureHash, entry.getCrc(), nestedPath);
+        } catch (Exception e) {
+            logger.error("Error while processing class file: " + entry.getName(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the hash identifying the content of a JAR, as stored in the jar_hash column of the libraries table. It
+     * depends on the order of the signatures, which is the order of the entries in the JAR.
+     */
+    public static long computeJarHash(List<ClassFileInfo> signatures) {
+        StringBuilder sb = new StringBuilder();
+        for (ClassFileInfo signature : signatures) {
+            sb.append(signature.getHashCode());
+        }
+        return LongHashFunction.xx().hashChars(sb.toString());
+    }
+
+    /**
+     * Returns the CRC32 of the remaining bytes of the buffer, the in-memory counterpart of {@link #computeFileCrc(Path)}.
+     */
+    public static long computeCrc(ByteBuffer data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+
+    /**
+     * Returns the CRC32 of the whole file, as stored in the jar_crc column of the libraries table.
+     */
+    public static long computeFileCrc(Path path) throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(path)) {
+            // mapped in chunks, files larger than 2 GB cannot be mapped at once
+            for (long position = 0; position < channel.size(); position += Integer.MAX_VALUE) {
+                long length = Math.min(Integer.MAX_VALUE, channel.size() - position);
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+            }
+        }
+        return crc.getValue();
+    }
 }
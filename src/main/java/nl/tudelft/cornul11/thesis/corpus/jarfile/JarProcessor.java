@@ -31,14 +31,19 @@ public class JarProcessor implements Runnable {
                     break;
                 }
                 logger.info("Processing file: " + file);
-                fileAnalyzer.processJarFile(file);
+                try {
+                    fileAnalyzer.processJarFile(file);
+                } catch (Exception e) {
+                    // keep consuming, the failure is recorded in the journal so the JAR is retried on the next run
+                    logger.error("Exception while processing file", e);
+                    fileAnalyzer.onJarFailed(file.toString(), e);
+                    continue;
+                }
                 logger.info("Finished processing file: " + file);
             }
         } catch (InterruptedException e) {
             logger.error("Thread interrupted while waiting for file in the queue");
             Thread.currentThread().interrupt();
-        } catch (Exception e) {
-            logger.error("Exception while processing file", e);
         }
     }
 }
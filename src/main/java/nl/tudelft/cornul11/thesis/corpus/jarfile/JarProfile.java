@@ -0,0 +1,122 @@
+package nl.tudelft.cornul11.thesis.corpus.jarfile;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Summary of a JAR computed from its central directory only, before any entry is inflated, to decide how much work
+ * the JAR deserves.
+ */
+public class JarProfile {
+    private static final int MAX_SUBMODULES = 1;
+
+    /**
+     * What to do with the JAR during corpus creation.
+     */
+    public enum Decision {
+        // only the library row is inserted (uber JARs when ignoreUberJarSignatures is set, JARs without classes)
+        LIBRARY_ONLY,
+        // the signatures of all classes are extracted
+        EXTRACT
+    }
+
+    private int classCount = 0;
+    private int nestedJarCount = 0;
+    private boolean multiRelease = false;
+    private long totalUncompressedSize = 0;
+    private long creationDate = -1;
+    private final Set<String> mavenSubmodules = new HashSet<>();
+    private boolean tooManySubmodules = false;
+
+    private JarProfile() {
+    }
+
+    public static JarProfile of(MappedZipFile jarFile) {
+        JarProfile profile = new JarProfile();
+        for (MappedZipFile.Entry entry : jarFile.entries()) {
+            String entryName = entry.getName();
+            profile.totalUncompressedSize += entry.getSize();
+
+            if (entryName.equals("META-INF/MANIFEST.MF")) {
+                profile.creationDate = entry.getTime();
+            }
+            if (entryName.startsWith("META-INF/versions/")) {
+                profile.multiRelease = true;
+            }
+
+            // same rule as the sequential walk did: a second submodule only counts once the manifest has been seen
+            if (profile.isNewMavenSubmodule(entry) && profile.mavenSubmodules.size() > MAX_SUBMODULES
+                    && profile.creationDate != -1) {
+                profile.tooManySubmodules = true;
+            }
+
+            if (JarProcessingUtils.shouldSkip(entry)) {
+                continue;
+            }
+            if (JarProcessingUtils.isJarFile(entry)) {
+                profile.nestedJarCount++;
+            } else if (JarProcessingUtils.isClassFile(entry)) {
+                profile.classCount++;
+            }
+        }
+        return profile;
+    }
+
+    private boolean isNewMavenSubmodule(MappedZipFile.Entry entry) {
+        if (entry.isDirectory() && entry.getName().startsWith("META-INF/maven/")) {
+            String[] parts = entry.getName().split("/");
+            if (parts.length >= 4) { // length must be at least 4 to include a group ID and artifact ID
+                return mavenSubmodules.add(parts[2] + "/" + parts[3]);
+            }
+        }
+        return false;
+    }
+
+    public Decision decide(boolean ignoreUberJarSignatures) {
+        if (ignoreUberJarSignatures && isUberJar()) {
+            return Decision.LIBRARY_ONLY;
+        }
+        return classCount == 0 ? Decision.LIBRARY_ONLY : Decision.EXTRACT;
+    }
+
+    public boolean isUberJar() {
+        return tooManySubmodules || nestedJarCount > 0;
+    }
+
+    public boolean hasTooManySubmodules() {
+        return tooManySubmodules;
+    }
+
+    public int getClassCount() {
+        return classCount;
+    }
+
+    public int getSubmoduleCount() {
+        return mavenSubmodules.size();
+    }
+
+    public int getNestedJarCount() {
+        return nestedJarCount;
+    }
+
+    public boolean isMultiRelease() {
+        return multiRelease;
+    }
+
+    public long getTotalUncompressedSize() {
+        return totalUncompressedSize;
+    }
+
+    /**
+     * Returns the modification time of the manifest, or -1 when there is none.
+     */
+    public long getCreationDate() {
+        return creationDate;
+    }
+
+    @Override
+    public String toString() {
+        return classCount + " classes, " + getSubmoduleCount() + " maven submodules, " + nestedJarCount + " nested JARs, "
+                + (multiRelease ? "multi-release, " : "") + totalUncompressedSize + " bytes uncompressed";
+    }
+}
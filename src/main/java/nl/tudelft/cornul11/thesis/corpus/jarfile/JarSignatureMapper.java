@@ -3,20 +3,28 @@ package nl.tudelft.cornul11.thesis.corpus.jarfile;
 import nl.tudelft.cornul11.thesis.corpus.database.SignatureDAO;
 import nl.tudelft.cornul11.thesis.corpus.database.SignatureDAOImpl.LibraryCandidate;
 import nl.tudelft.cornul11.thesis.corpus.file.ClassFileInfo;
+import nl.tudelft.cornul11.thesis.corpus.file.SignaturePayload;
+import nl.tudelft.cornul11.thesis.corpus.util.SortedArrays;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
 import java.util.jar.JarInputStream;
 import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
 
 public class JarSignatureMapper {
     private int totalClassCount = 0;
@@ -27,10 +35,6 @@ public class JarSignatureMapper {
         this.signatureDao = signatureDao;
     }
 
-    // Create a thread pool with a fixed number of threads, which is equal to the number of available processors
-    static int numThreads = Runtime.getRuntime().availableProcessors();
-
-
     public List<LibraryCandidate> inferJarFileMultithreadedProcess(Path jarFilePath) {
         totalClassCount = 0;
         logger.info("Processing the signatures of " + jarFilePath);
@@ -42,94 +46,189 @@ public class JarSignatureMapper {
         }
         totalClassCount = classFileInfos.size();
         logger.info("Processed the signatures of " + classFileInfos.size() + " class files");
+
+        try {
+            List<LibraryCandidate> knownArtifact = findKnownArtifact(classFileInfos, JarProcessingUtils.computeFileCrc(jarFilePath));
+            if (knownArtifact != null) {
+                return knownArtifact;
+            }
+        } catch (IOException e) {
+            logger.error("Error while computing the CRC of " + jarFilePath, e);
+        }
         return signatureDao.returnTopLibraryMatches(classFileInfos);
     }
 
-    public static List<ClassFileInfo> inferStandaloneJar(Path jarFilePath) {
-        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    /**
+     * Returns the result of a JAR that is itself an indexed artifact (same jar hash and CRC as computed when the
+     * corpus was created), or null when the JAR has to be matched class by class. The artifact is its own perfect
+     * match, and the other artifacts published with the same bytes are its alternative versions. Indexed uber JARs are
+     * not returned by the lookup, as the libraries they bundle would be lost.
+     */
+    private List<LibraryCandidate> findKnownArtifact(List<ClassFileInfo> signatures, long jarCrc) {
+        long jarHash = JarProcessingUtils.computeJarHash(signatures);
+        List<LibraryCandidate> libraries = signatureDao.findLibrariesByJarHash(jarHash, jarCrc);
+        if (libraries.isEmpty()) {
+            return null;
+        }
 
-        // Create a list to hold the futures of each class file processing task
-        List<Future<List<ClassFileInfo>>> futures = new ArrayList<>();
-        List<ClassFileInfo> classFileInfos = new ArrayList<>();
-        AtomicInteger counter = new AtomicInteger(0);
+        long[] hashes = new long[signatures.size()];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = signatures.get(i).getHashCode();
+        }
+        int numUniqueHashes = SortedArrays.sortUnique(hashes, hashes.length);
 
-        try (JarFile jarFile = new JarFile(jarFilePath.toFile())) {
-            Enumeration<JarEntry> entries = jarFile.entries();
-            while (entries.hasMoreElements()) {
-                JarEntry entry = entries.nextElement();
-                String entryName = entry.getName();
+        LibraryCandidate artifact = libraries.get(0)
+                .setHashes(Arrays.copyOf(hashes, numUniqueHashes))
+                .setSelf(true)
+                .setPerfectMatch(true);
+        for (LibraryCandidate sameArtifact : libraries.subList(1, libraries.size())) {
+            artifact.addAlternativeVersion(sameArtifact);
+            artifact.addAlternative(sameArtifact);
+        }
+        logger.info("JAR is the known artifact " + artifact.getGAV() + ", skipping the class matching");
 
-                if (JarProcessingUtils.shouldSkip(entry)) {
-                    continue;
-                }
+        List<LibraryCandidate> result = new ArrayList<>();
+        result.add(artifact);
+        return result;
+    }
 
-                if (JarProcessingUtils.isClassFile(entry, entryName)) {
-                    Callable<List<ClassFileInfo>> task = () -> {
-                        try {
-                            return processEntry(jarFile.getInputStream(entry), entry);
-                        } catch (IOException e) {
-                            logger.error("Error while processing entry: " + entry.getName(), e);
-                            return Collections.emptyList();
-                        }
-                    };
-                    futures.add(executor.submit(task));
-                    counter.incrementAndGet();
-                } else if (JarProcessingUtils.isJarFile(entry, entryName)) {
-                    logger.info("Processing nested JAR file: " + entryName);
-                    Callable<List<ClassFileInfo>> task = () -> {
-                        try {
-                            return getFileSignatures(jarFile.getInputStream(entry));
-                        } catch (IOException | SecurityException e) {
-                            logger.error("Error while processing nested JAR file: " + entry.getName(), e);
-                            return Collections.emptyList();
-                        }
-                    };
-                    futures.add(executor.submit(task));
-                    counter.incrementAndGet();
-                }
-            }
+    public static List<ClassFileInfo> inferStandaloneJar(Path jarFilePath) {
+        InferenceExecutor executor = InferenceExecutor.getInstance();
+        CompletionService<List<ClassFileInfo>> completionService = executor.newCompletionService();
+
+        // position of the entry of each task, the results are put back in the order of the entries as the jar hash
+        // depends on it
+        Map<Future<List<ClassFileInfo>>, Integer> positions = new HashMap<>();
+        List<List<ClassFileInfo>> results = new ArrayList<>();
 
-            // Wait for all the tasks to complete
-            while (counter.get() > 0) {
-                for (Iterator<Future<List<ClassFileInfo>>> iterator = futures.iterator(); iterator.hasNext(); ) {
-                    Future<List<ClassFileInfo>> future = iterator.next();
+        try (MappedZipFile jarFile = new MappedZipFile(jarFilePath)) {
+            try {
+                submitEntries(jarFile, null, executor, completionService, positions, results);
+            } finally {
+                // the tasks must have read all of their entries before the JAR is closed
+                for (int completed = 0; completed < positions.size(); completed++) {
+                    Future<List<ClassFileInfo>> future = takeUninterruptibly(completionService);
                     try {
-                        if (future.isDone()) {
-                            // Retrieve the result from the completed future
-                            List<ClassFileInfo> classFileInfo = future.get();
-                            iterator.remove();
-                            counter.decrementAndGet();
-
-                            if (classFileInfo != null) {
-                                classFileInfos.addAll(classFileInfo);
-                            }
-                        }
+                        results.set(positions.get(future), future.get());
                     } catch (ExecutionException e) {
                         logger.error("Error while processing JAR file: " + jarFilePath, e);
-                        iterator.remove();
-                        counter.decrementAndGet();
-                    } catch (InterruptedException e) {
-                        logger.error("Error while processing JAR file: " + jarFilePath, e);
-                        Thread.currentThread().interrupt();
                     }
                 }
             }
         } catch (IOException e) {
             logger.error("Error while processing JAR file: " + jarFilePath, e);
             return null;
+        } catch (InterruptedException e) {
+            logger.error("Interrupted while processing JAR file: " + jarFilePath, e);
+            Thread.currentThread().interrupt();
+            return null;
+        }
+
+        List<ClassFileInfo> classFileInfos = new ArrayList<>();
+        for (List<ClassFileInfo> result : results) {
+            if (result != null) {
+                classFileInfos.addAll(result);
+            }
         }
-        executor.shutdown();
         return classFileInfos;
     }
 
+    /**
+     * Submits a task per class of the JAR, in the order of its entries. The classes of nested JARs are submitted in
+     * place of the nested JAR, so that they are processed in parallel as well: STORED nested JARs (e.g. Spring Boot
+     * BOOT-INF/lib, WEB-INF/lib) are read as slices of the outer JAR, compressed ones are inflated once.
+     */
+    private static void submitEntries(MappedZipFile jarFile, String nestedPath, InferenceExecutor executor,
+                                      CompletionService<List<ClassFileInfo>> completionService,
+                                      Map<Future<List<ClassFileInfo>>, Integer> positions,
+                                      List<List<ClassFileInfo>> results) throws InterruptedException {
+        for (MappedZipFile.Entry entry : jarFile.entries()) {
+            if (JarProcessingUtils.shouldSkip(entry)) {
+                continue;
+            }
+
+            if (JarProcessingUtils.isClassFile(entry)) {
+                Callable<List<ClassFileInfo>> task = () -> {
+                    ClassFileInfo classFileInfo = JarProcessingUtils.processClassFile(jarFile, entry, nestedPath);
+                    return classFileInfo == null ? Collections.emptyList() : List.of(classFileInfo);
+                };
+                positions.put(executor.submit(completionService, task), results.size());
+                results.add(null);
+            } else if (JarProcessingUtils.isJarFile(entry)) {
+                String nestedJarPath = nestedPath == null ? entry.getName() : nestedPath + "!/" + entry.getName();
+                logger.info("Processing nested JAR file: " + nestedJarPath);
+                try {
+                    MappedZipFile nestedJarFile = new MappedZipFile(entry.getMethod() == MappedZipFile.STORED
+                            ? jarFile.getRawData(entry)
+                            : ByteBuffer.wrap(jarFile.getInputStream(entry).readAllBytes()), nestedJarPath);
+                    submitEntries(nestedJarFile, nestedJarPath, executor, completionService, positions, results);
+                } catch (IOException e) {
+                    logger.error("Error while processing nested JAR file: " + nestedJarPath, e);
+                }
+            }
+        }
+    }
+
+    private static <T> Future<T> takeUninterruptibly(CompletionService<T> completionService) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return completionService.take();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
     public List<LibraryCandidate> inferJarFile(InputStream jarInputStream) throws IOException {
         this.totalClassCount = 0;
-        List<ClassFileInfo> signatures = getFileSignatures(jarInputStream);
+        CheckedInputStream checkedInputStream = new CheckedInputStream(jarInputStream, new CRC32());
+        List<ClassFileInfo> signatures = getFileSignatures(checkedInputStream, true);
+        totalClassCount = signatures.size();
+
+        List<LibraryCandidate> knownArtifact = findKnownArtifact(signatures, checkedInputStream.getChecksum().getValue());
+        if (knownArtifact != null) {
+            return knownArtifact;
+        }
+        return signatureDao.returnTopLibraryMatches(signatures);
+    }
+
+    /**
+     * Infers the libraries of a JAR whose signatures were extracted by the client. The known artifact lookup is
+     * skipped when the client did not send the CRC of the JAR.
+     */
+    public List<LibraryCandidate> inferSignatures(SignaturePayload payload) {
+        List<ClassFileInfo> signatures = payload.getClassFileInfos();
         totalClassCount = signatures.size();
+
+        if (payload.getJarCrc() != SignaturePayload.UNKNOWN_CRC) {
+            List<LibraryCandidate> knownArtifact = findKnownArtifact(signatures, payload.getJarCrc());
+            if (knownArtifact != null) {
+                return knownArtifact;
+            }
+        }
         return signatureDao.returnTopLibraryMatches(signatures);
     }
 
     public static List<ClassFileInfo> getFileSignatures(InputStream jarInputStream) {
+        return getFileSignatures(jarInputStream, false);
+    }
+
+    /**
+     * When readToEnd is set, the bytes after the last entry (the central directory) are consumed as well, so that a
+     * checksum computed on the stream covers the whole file.
+     */
+    public static List<ClassFileInfo> getFileSignatures(InputStream jarInputStream, boolean readToEnd) {
+        return getFileSignatures(jarInputStream, readToEnd, null);
+    }
+
+    private static List<ClassFileInfo> getFileSignatures(InputStream jarInputStream, boolean readToEnd, String nestedPath) {
         List<ClassFileInfo> classFileInfos = new ArrayList<>();
         try (JarInputStream s = new JarInputStream(jarInputStream)) {
             JarEntry entry;
@@ -138,11 +237,14 @@ public class JarSignatureMapper {
                     continue;
                 }
                 try {
-                    classFileInfos.addAll(processEntry(s, entry));
+                    classFileInfos.addAll(processEntry(s, entry, nestedPath));
                 } catch (IOException | SecurityException e) {
                     logger.error("Error while processing entry: " + entry.getName(), e);
                 }
             }
+            if (readToEnd) {
+                jarInputStream.transferTo(OutputStream.nullOutputStream());
+            }
             logger.info("Processed the signatures of " + classFileInfos.size() + " class files");
         } catch (IOException e) {
             logger.error("Error while processing JAR file", e);
@@ -150,17 +252,24 @@ public class JarSignatureMapper {
         return classFileInfos;
     }
 
-    private static List<ClassFileInfo> processEntry(InputStream jarInputStream, JarEntry entry) throws IOException {
+    private static List<ClassFileInfo> processEntry(InputStream jarInputStream, JarEntry entry, String nestedPath) throws IOException {
         List<ClassFileInfo> classFileInfos = new ArrayList<>();
         String entryName = entry.getName();
         if (JarProcessingUtils.isClassFile(entry, entryName)) {
-            ClassFileInfo classFileInfo = JarProcessingUtils.processClassFile(entry, jarInputStream);
+            ClassFileInfo classFileInfo = JarProcessingUtils.processClassFile(entry, jarInputStream, nestedPath);
             if (classFileInfo != null) {
                 classFileInfos.add(classFileInfo);
             }
         } else if (JarProcessingUtils.isJarFile(entry, entryName)) {
-            logger.info("Processing nested JAR file: " + entryName);
-            return getFileSignatures(jarInputStream);
+            String nestedJarPath = nestedPath == null ? entryName : nestedPath + "!/" + entryName;
+            logger.info("Processing nested JAR file: " + nestedJarPath);
+            // the nested stream must not close the outer one, which still has entries to read
+            InputStream nestedJarInputStream = new FilterInputStream(jarInputStream) {
+                @Override
+                public void close() {
+                }
+            };
+            return getFileSignatures(nestedJarInputStream, false, nestedJarPath);
         }
         return classFileInfos;
     }
@@ -183,7 +292,7 @@ public class JarSignatureMapper {
                             match -> match.getGroupId() + ":" + match.getArtifactId(), // key
                             match -> match, // value
                             // merge function, in case of key collision, keep the version with maximum count
-                            (existing, newOne) -> existing.getHashes().size() > newOne.getHashes().size() ? existing
+                            (existing, newOne) -> existing.getHashCount() > newOne.getHashCount() ? existing
                                     : newOne));
         }
 
@@ -191,7 +300,7 @@ public class JarSignatureMapper {
         Map<String, Map<String, Object>> libraryVersionCountMap = libraryVersionMap.entrySet().stream()
                 .collect(Collectors.toMap(
                         entry -> entry.getKey() + ":" + entry.getValue().getVersion(),
-                        entry -> Map.of("count", (long) entry.getValue().getHashes().size(),
+                        entry -> Map.of("count", (long) entry.getValue().getHashCount(),
                                 "total", (long) entry.getValue().getExpectedNumberOfClasses(),
                                 "ratio", entry.getValue().getIncludedRatio())));
 
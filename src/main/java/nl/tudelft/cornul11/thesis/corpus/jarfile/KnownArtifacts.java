@@ -0,0 +1,143 @@
+package nl.tudelft.cornul11.thesis.corpus.jarfile;
+
+import nl.tudelft.cornul11.thesis.corpus.database.SignatureDAO;
+import nl.tudelft.cornul11.thesis.corpus.util.LongHashSet;
+import net.openhft.hashing.LongHashFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Dedup stage of the corpus creation: the artifacts that are already indexed are skipped before their classes are
+ * extracted, so that refreshing the corpus costs time proportional to the new artifacts only.
+ * <p>
+ * An artifact is known when its coordinates are already in the libraries table, or when its fingerprint is, which
+ * also catches identical copies published under other coordinates. The fingerprint is read from the Maven
+ * {@code .sha1} sidecar file when there is one, otherwise it is a digest of the central directory (entry names, CRCs
+ * and sizes), so the JAR is never inflated. Both kinds of keys are kept in the same in-memory set.
+ */
+public class KnownArtifacts {
+    private static final Logger logger = LoggerFactory.getLogger(KnownArtifacts.class);
+    // fingerprint of the rows inserted before fingerprints were recorded
+    public static final long UNKNOWN_FINGERPRINT = 0;
+
+    private final LongHashSet keys;
+
+    public KnownArtifacts(int expectedSize) {
+        this.keys = new LongHashSet(expectedSize);
+    }
+
+    /**
+     * Loads the coordinates and fingerprints of all indexed artifacts.
+     */
+    public static KnownArtifacts load(SignatureDAO signatureDao) {
+        long startTime = System.currentTimeMillis();
+        KnownArtifacts knownArtifacts = new KnownArtifacts(1 << 16);
+        int[] rows = {0};
+        signatureDao.forEachIndexedArtifact((groupId, artifactId, version, fingerprint) -> {
+            knownArtifacts.keys.add(coordinatesKey(groupId, artifactId, version));
+            if (fingerprint != UNKNOWN_FINGERPRINT) {
+                knownArtifacts.keys.add(fingerprint);
+            }
+            rows[0]++;
+        });
+        logger.info("Loaded " + rows[0] + " indexed artifact(s) in " + (System.currentTimeMillis() - startTime) + " ms");
+        return knownArtifacts;
+    }
+
+    /**
+     * Returns whether the coordinates were indexed by a previous run. They are not registered while processing, as
+     * the classifier JARs of a version share its coordinates.
+     */
+    public synchronized boolean isIndexed(String groupId, String artifactId, String version) {
+        return keys.contains(coordinatesKey(groupId, artifactId, version));
+    }
+
+    /**
+     * Registers the fingerprint, returns false when it is already known. The unknown fingerprint is never known.
+     */
+    public synchronized boolean claimFingerprint(long fingerprint) {
+        return fingerprint == UNKNOWN_FINGERPRINT || keys.add(fingerprint);
+    }
+
+    /**
+     * Releases a fingerprint claimed by a JAR that could not be extracted or committed, so that an identical copy is
+     * not skipped because of it.
+     */
+    public synchronized void releaseFingerprint(long fingerprint) {
+        if (fingerprint != UNKNOWN_FINGERPRINT) {
+            keys.remove(fingerprint);
+        }
+    }
+
+    public synchronized int size() {
+        return keys.size();
+    }
+
+    /**
+     * Returns the fingerprint of the JAR: the first 64 bits of the SHA-1 in the sidecar file, or else the digest of
+     * the central directory.
+     */
+    public static long fingerprint(Path jarFilePath) throws IOException {
+        Path sidecar = jarFilePath.resolveSibling(jarFilePath.getFileName() + ".sha1");
+        if (Files.isRegularFile(sidecar)) {
+            long fingerprint = parseSha1(Files.readString(sidecar, StandardCharsets.ISO_8859_1));
+            if (fingerprint != UNKNOWN_FINGERPRINT) {
+                return fingerprint;
+            }
+            logger.warn("Ignoring malformed checksum file " + sidecar);
+        }
+        try (MappedZipFile jarFile = new MappedZipFile(jarFilePath)) {
+            return fingerprint(jarFile);
+        }
+    }
+
+    /**
+     * Returns the fingerprint of a JAR held in memory: the first 64 bits of its SHA-1, the same value as the sidecar
+     * file of a copy on disk.
+     */
+    public static long fingerprint(byte[] jarData) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(jarData);
+            return nonZero(ByteBuffer.wrap(digest).getLong());
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform supports SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static long fingerprint(MappedZipFile jarFile) {
+        StringBuilder sb = new StringBuilder();
+        for (MappedZipFile.Entry entry : jarFile.entries()) {
+            sb.append(entry.getName()).append('\t').append(entry.getCrc()).append('\t').append(entry.getSize()).append('\n');
+        }
+        return nonZero(LongHashFunction.xx().hashChars(sb.toString()));
+    }
+
+    /**
+     * Parses a checksum file, which holds the hex digest optionally followed by the file name. Returns
+     * {@link #UNKNOWN_FINGERPRINT} when it does not start with a SHA-1 digest.
+     */
+    static long parseSha1(String content) {
+        String digest = content.trim().split("\\s+", 2)[0];
+        if (!digest.matches("[0-9a-fA-F]{40}")) {
+            return UNKNOWN_FINGERPRINT;
+        }
+        return nonZero(Long.parseUnsignedLong(digest.substring(0, 16), 16));
+    }
+
+    static long coordinatesKey(String groupId, String artifactId, String version) {
+        return LongHashFunction.xx().hashChars(groupId + ":" + artifactId + ":" + version);
+    }
+
+    private static long nonZero(long fingerprint) {
+        return fingerprint == UNKNOWN_FINGERPRINT ? 1 : fingerprint;
+    }
+}
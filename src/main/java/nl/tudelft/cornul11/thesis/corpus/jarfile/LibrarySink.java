@@ -0,0 +1,18 @@
+package nl.tudelft.cornul11.thesis.corpus.jarfile;
+
+import nl.tudelft.cornul11.thesis.corpus.model.ExtractedLibrary;
+
+/**
+ * Destination of the libraries extracted during corpus generation.
+ */
+public interface LibrarySink {
+    /**
+     * Hands over an extracted library, blocking while the sink cannot accept more work.
+     */
+    void submit(ExtractedLibrary library) throws InterruptedException;
+
+    /**
+     * Waits until every submitted library has been persisted and releases the resources of the sink.
+     */
+    void close();
+}
@@ -0,0 +1,373 @@
+package nl.tudelft.cornul11.thesis.corpus.jarfile;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Read-only ZIP/JAR reader over a memory-mapped file (or any buffer, e.g. a nested JAR), used instead of
+ * {@link java.util.jar.JarFile} for class extraction.
+ * <p>
+ * The central directory is parsed once into {@link Entry} objects, in the order of the archive. STORED entries are
+ * returned as slices of the mapping, and DEFLATED entries are inflated with an {@link Inflater} and an output buffer
+ * that are reused by each thread. The archive can be read from several threads at once. JAR signatures are not
+ * verified, they do not matter for the class signatures.
+ */
+public class MappedZipFile implements Closeable {
+    public static final int STORED = 0;
+    public static final int DEFLATED = 8;
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_SIZE = 22;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final int ZIP64_EXTRA = 0x0001;
+    private static final int EXTENDED_TIMESTAMP_EXTRA = 0x5455;
+
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(() -> new Inflater(true));
+    private static final ThreadLocal<byte[][]> BUFFERS = ThreadLocal.withInitial(() -> new byte[][]{new byte[64 * 1024]});
+
+    private final String name;
+    private final ByteBuffer buffer;
+    private final List<Entry> entries;
+
+    public MappedZipFile(Path path) throws IOException {
+        this(map(path), path.toString());
+    }
+
+    /**
+     * Reads the archive contained in the given buffer, from its position to its limit.
+     */
+    public MappedZipFile(ByteBuffer data, String name) throws IOException {
+        this.name = name;
+        this.buffer = data.slice().order(ByteOrder.LITTLE_ENDIAN);
+        this.entries = Collections.unmodifiableList(readCentralDirectory());
+    }
+
+    private static ByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new ZipException("Archive larger than 2 GB: " + path);
+            }
+            // the mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the entries in the order of the central directory, which is the order of {@link java.util.jar.JarFile#entries()}.
+     */
+    public List<Entry> entries() {
+        return entries;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the uncompressed content of the entry. STORED entries are slices of the archive; DEFLATED entries are
+     * inflated into a buffer of the calling thread, which is only valid until its next call on this or another archive.
+     */
+    public ByteBuffer getData(Entry entry) throws IOException {
+        if (entry.method == STORED) {
+            return getRawData(entry);
+        }
+        return inflate(entry);
+    }
+
+    /**
+     * Same as {@link #getData(Entry)}, but the returned buffer is always backed by an array (e.g. for ASM), copying
+     * STORED entries into the buffer of the calling thread.
+     */
+    public ByteBuffer getHeapData(Entry entry) throws IOException {
+        if (entry.method != STORED) {
+            return getData(entry);
+        }
+        ByteBuffer data = getRawData(entry);
+        byte[] output = threadBuffer(data.remaining());
+        int length = data.remaining();
+        data.get(output, 0, length);
+        return ByteBuffer.wrap(output, 0, length);
+    }
+
+    /**
+     * Returns a stream over the uncompressed content of the entry that does not use the buffers of the calling thread,
+     * e.g. to read a nested JAR.
+     */
+    public InputStream getInputStream(Entry entry) throws IOException {
+        ByteBuffer data = getRawData(entry);
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        if (entry.method == STORED) {
+            return new ByteArrayInputStream(bytes);
+        }
+        return new InflaterInputStream(new ByteArrayInputStream(bytes), new Inflater(true), 8192) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                inf.end();
+            }
+        };
+    }
+
+    /**
+     * Returns the bytes of the entry as they are stored in the archive, without copying them.
+     */
+    public ByteBuffer getRawData(Entry entry) throws IOException {
+        long headerOffset = entry.localHeaderOffset;
+        if (headerOffset < 0 || headerOffset + LOCAL_HEADER_SIZE > buffer.limit()
+                || buffer.getInt((int) headerOffset) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("Invalid local header for " + entry.name + " in " + name);
+        }
+        long dataOffset = headerOffset + LOCAL_HEADER_SIZE
+                + Short.toUnsignedInt(buffer.getShort((int) headerOffset + 26))
+                + Short.toUnsignedInt(buffer.getShort((int) headerOffset + 28));
+        if (dataOffset + entry.compressedSize > buffer.limit()) {
+            throw new ZipException("Truncated entry " + entry.name + " in " + name);
+        }
+        if (entry.method != STORED && entry.method != DEFLATED) {
+            throw new ZipException("Unsupported compression method " + entry.method + " for " + entry.name + " in " + name);
+        }
+        ByteBuffer data = buffer.duplicate();
+        data.position((int) dataOffset).limit((int) (dataOffset + entry.compressedSize));
+        return data.slice();
+    }
+
+    private ByteBuffer inflate(Entry entry) throws IOException {
+        ByteBuffer input = getRawData(entry);
+        if (entry.size > Integer.MAX_VALUE - 8) {
+            throw new ZipException("Entry too large: " + entry.name + " in " + name);
+        }
+        Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        inflater.setInput(input);
+
+        // the size of the central directory is trusted for the first allocation only
+        byte[] output = threadBuffer((int) entry.size + 1);
+        int length = 0;
+        try {
+            while (!inflater.finished()) {
+                if (length == output.length) {
+                    output = threadBuffer(output.length * 2);
+                }
+                int inflated = inflater.inflate(output, length, output.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new ZipException("Truncated deflated entry " + entry.name + " in " + name);
+                }
+                length += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("Invalid deflated entry " + entry.name + " in " + name + ": " + e.getMessage());
+        }
+        return ByteBuffer.wrap(output, 0, length);
+    }
+
+    /**
+     * Returns the buffer of the calling thread, grown to at least the given size and keeping its content.
+     */
+    private static byte[] threadBuffer(int minSize) {
+        byte[][] holder = BUFFERS.get();
+        if (holder[0].length < minSize) {
+            int size = Math.max(minSize, (int) Math.min(Integer.MAX_VALUE - 8, holder[0].length * 2L));
+            byte[] grown = new byte[size];
+            System.arraycopy(holder[0], 0, grown, 0, holder[0].length);
+            holder[0] = grown;
+        }
+        return holder[0];
+    }
+
+    private List<Entry> readCentralDirectory() throws IOException {
+        int endOffset = findEndOfCentralDirectory();
+        long numEntries = Short.toUnsignedInt(buffer.getShort(endOffset + 10));
+        long centralDirectorySize = Integer.toUnsignedLong(buffer.getInt(endOffset + 12));
+        long centralDirectoryOffset = Integer.toUnsignedLong(buffer.getInt(endOffset + 16));
+
+        int locatorOffset = endOffset - ZIP64_LOCATOR_SIZE;
+        boolean zip64 = locatorOffset >= 0 && buffer.getInt(locatorOffset) == ZIP64_LOCATOR_SIGNATURE;
+        if (zip64) {
+            long zip64EndOffset = buffer.getLong(locatorOffset + 8);
+            if (zip64EndOffset < 0 || zip64EndOffset + 56 > buffer.limit()
+                    || buffer.getInt((int) zip64EndOffset) != ZIP64_END_SIGNATURE) {
+                throw new ZipException("Invalid zip64 end of central directory in " + name);
+            }
+            numEntries = buffer.getLong((int) zip64EndOffset + 32);
+            centralDirectorySize = buffer.getLong((int) zip64EndOffset + 40);
+            centralDirectoryOffset = buffer.getLong((int) zip64EndOffset + 48);
+        }
+
+        // archives with a prefix (e.g. a launcher script) have offsets relative to the start of the ZIP
+        long prefix = zip64 ? 0 : endOffset - centralDirectorySize - centralDirectoryOffset;
+        if (prefix < 0 || centralDirectoryOffset + prefix + centralDirectorySize > buffer.limit()) {
+            throw new ZipException("Invalid central directory in " + name);
+        }
+
+        List<Entry> entries = new ArrayList<>((int) Math.min(numEntries, 1 << 16));
+        int offset = (int) (centralDirectoryOffset + prefix);
+        int end = (int) (offset + centralDirectorySize);
+        while (offset + CENTRAL_HEADER_SIZE <= end && buffer.getInt(offset) == CENTRAL_HEADER_SIGNATURE) {
+            Entry entry = new Entry();
+            int flags = Short.toUnsignedInt(buffer.getShort(offset + 8));
+            entry.method = Short.toUnsignedInt(buffer.getShort(offset + 10));
+            int dosTime = Short.toUnsignedInt(buffer.getShort(offset + 12));
+            int dosDate = Short.toUnsignedInt(buffer.getShort(offset + 14));
+            entry.crc = Integer.toUnsignedLong(buffer.getInt(offset + 16));
+            entry.compressedSize = Integer.toUnsignedLong(buffer.getInt(offset + 20));
+            entry.size = Integer.toUnsignedLong(buffer.getInt(offset + 24));
+            int nameLength = Short.toUnsignedInt(buffer.getShort(offset + 28));
+            int extraLength = Short.toUnsignedInt(buffer.getShort(offset + 30));
+            int commentLength = Short.toUnsignedInt(buffer.getShort(offset + 32));
+            entry.localHeaderOffset = Integer.toUnsignedLong(buffer.getInt(offset + 42));
+
+            int nameOffset = offset + CENTRAL_HEADER_SIZE;
+            if (nameOffset + nameLength + extraLength > end) {
+                throw new ZipException("Invalid central directory entry in " + name);
+            }
+            byte[] nameBytes = new byte[nameLength];
+            ByteBuffer nameBuffer = buffer.duplicate();
+            nameBuffer.position(nameOffset);
+            nameBuffer.get(nameBytes);
+            // JarFile decodes the names as UTF-8 whatever the language encoding flag (bit 11) says
+            entry.name = new String(nameBytes, StandardCharsets.UTF_8);
+            entry.time = dosToJavaTime(dosDate, dosTime);
+            readExtraFields(entry, nameOffset + nameLength, extraLength);
+            entry.localHeaderOffset += prefix;
+            entry.encrypted = (flags & 1) != 0;
+
+            entries.add(entry);
+            offset = nameOffset + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    private void readExtraFields(Entry entry, int offset, int length) {
+        int end = offset + length;
+        while (offset + 4 <= end) {
+            int tag = Short.toUnsignedInt(buffer.getShort(offset));
+            int size = Short.toUnsignedInt(buffer.getShort(offset + 2));
+            int data = offset + 4;
+            if (data + size > end) {
+                break;
+            }
+            if (tag == ZIP64_EXTRA) {
+                // only the values that overflowed are present, in this order
+                int position = data;
+                if (entry.size == 0xFFFFFFFFL && position + 8 <= data + size) {
+                    entry.size = buffer.getLong(position);
+                    position += 8;
+                }
+                if (entry.compressedSize == 0xFFFFFFFFL && position + 8 <= data + size) {
+                    entry.compressedSize = buffer.getLong(position);
+                    position += 8;
+                }
+                if (entry.localHeaderOffset == 0xFFFFFFFFL && position + 8 <= data + size) {
+                    entry.localHeaderOffset = buffer.getLong(position);
+                }
+            } else if (tag == EXTENDED_TIMESTAMP_EXTRA && size >= 5 && (buffer.get(data) & 1) != 0) {
+                // same precedence as ZipEntry.getTime(): the modification time of the extended timestamp wins
+                entry.time = Integer.toUnsignedLong(buffer.getInt(data + 1)) * 1000;
+            }
+            offset = data + size;
+        }
+    }
+
+    private int findEndOfCentralDirectory() throws IOException {
+        int minOffset = Math.max(0, buffer.limit() - END_SIZE - MAX_COMMENT_SIZE);
+        for (int offset = buffer.limit() - END_SIZE; offset >= minOffset; offset--) {
+            if (buffer.getInt(offset) == END_SIGNATURE) {
+                return offset;
+            }
+        }
+        throw new ZipException("No end of central directory found in " + name);
+    }
+
+    private static long dosToJavaTime(int dosDate, int dosTime) {
+        try {
+            LocalDateTime dateTime = LocalDateTime.of(((dosDate >> 9) & 0x7f) + 1980, (dosDate >> 5) & 0x0f, dosDate & 0x1f,
+                    (dosTime >> 11) & 0x1f, (dosTime >> 5) & 0x3f, (dosTime << 1) & 0x3e);
+            return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public void close() {
+        // the mapping is released by the garbage collector
+    }
+
+    /**
+     * An entry of the central directory.
+     */
+    public static class Entry {
+        private String name;
+        private int method;
+        private long crc;
+        private long size;
+        private long compressedSize;
+        private long localHeaderOffset;
+        private long time;
+        private boolean encrypted;
+
+        public String getName() {
+            return name;
+        }
+
+        public int getMethod() {
+            return method;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        /**
+         * Returns the modification time in milliseconds, as {@link java.util.zip.ZipEntry#getTime()} does.
+         */
+        public long getTime() {
+            return time;
+        }
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        public boolean isEncrypted() {
+            return encrypted;
+        }
+    }
+}
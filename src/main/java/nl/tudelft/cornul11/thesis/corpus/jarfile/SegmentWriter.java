@@ -0,0 +1,273 @@
+package nl.tudelft.cornul11.thesis.corpus.jarfile;
+
+import nl.tudelft.cornul11.thesis.corpus.database.BulkLoader;
+import nl.tudelft.cornul11.thesis.corpus.file.ClassFileInfo;
+import nl.tudelft.cornul11.thesis.corpus.model.ExtractedLibrary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.*;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Library sink of the bulk-load corpus mode. Library ids are assigned client-side, and libraries are grouped into
+ * segments of roughly {@code segmentRows} signature rows. Each segment is written as a libraries TSV, a signatures TSV
+ * (sorted by library id, then class hash) and a {@code .paths} file listing its JARs, and is then loaded with
+ * {@link BulkLoader}. A {@code .loaded} marker is created once the segment is committed.
+ * <p>
+ * The {@code .paths} file is renamed into place last, so its presence means that the segment is complete. On startup,
+ * complete segments that have not been loaded yet are loaded, and their JARs are reported by {@link #isWritten(String)}
+ * so that they are not parsed again.
+ */
+public class SegmentWriter implements LibrarySink {
+    private static final String LIBRARIES_SUFFIX = ".libraries.tsv";
+    private static final String SIGNATURES_SUFFIX = ".signatures.tsv";
+    private static final String PATHS_SUFFIX = ".paths";
+    private static final String LOADED_SUFFIX = ".loaded";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final String IDS_HEADER = "#libraries ";
+
+    private final Logger logger = LoggerFactory.getLogger(SegmentWriter.class);
+    private final Path segmentDirectory;
+    private final BulkLoader bulkLoader;
+    private final int segmentRows;
+    private final Consumer<ExtractedLibrary> onCommitted;
+    private final Set<String> writtenJarPaths = new HashSet<>();
+    // a single loader thread with a short queue, the extraction threads write the segments themselves when it is full
+    private final ThreadPoolExecutor loader = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(2), new ThreadPoolExecutor.CallerRunsPolicy());
+
+    private List<ExtractedLibrary> currentSegment = new ArrayList<>();
+    private int currentSegmentRows = 0;
+    private int currentSegmentFirstId;
+    private int nextLibraryId;
+    private int nextSegmentNumber;
+
+    public SegmentWriter(Path segmentDirectory, BulkLoader bulkLoader, int segmentRows, Consumer<ExtractedLibrary> onCommitted) throws IOException, SQLException {
+        this.segmentDirectory = segmentDirectory;
+        this.bulkLoader = bulkLoader;
+        this.segmentRows = segmentRows;
+        this.onCommitted = onCommitted;
+
+        Files.createDirectories(segmentDirectory);
+        int maxSegmentLibraryId = recoverSegments();
+        this.nextLibraryId = Math.max(bulkLoader.getMaxLibraryId(), maxSegmentLibraryId) + 1;
+        this.currentSegmentFirstId = nextLibraryId;
+        logger.info("Writing segments to " + segmentDirectory + ", next library id: " + nextLibraryId);
+    }
+
+    /**
+     * Returns true if the given JAR is part of a complete segment, which means it does not need to be parsed again.
+     */
+    public boolean isWritten(String jarPath) {
+        return writtenJarPaths.contains(jarPath);
+    }
+
+    private int recoverSegments() throws IOException {
+        List<Path> pathFiles;
+        try (Stream<Path> files = Files.list(segmentDirectory)) {
+            pathFiles = files.filter(file -> file.getFileName().toString().endsWith(PATHS_SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+
+        int maxLibraryId = 0;
+        int pendingSegments = 0;
+        for (Path pathFile : pathFiles) {
+            String segmentName = getSegmentName(pathFile);
+            List<String> lines = Files.readAllLines(pathFile);
+            String[] ids = lines.get(0).substring(IDS_HEADER.length()).split(" ");
+            int firstId = Integer.parseInt(ids[0]);
+            int lastId = Integer.parseInt(ids[1]);
+            writtenJarPaths.addAll(lines.subList(1, lines.size()));
+            maxLibraryId = Math.max(maxLibraryId, lastId);
+            nextSegmentNumber = Math.max(nextSegmentNumber, Integer.parseInt(segmentName.substring("segment-".length())) + 1);
+
+            if (!Files.exists(segmentDirectory.resolve(segmentName + LOADED_SUFFIX))) {
+                pendingSegments++;
+                loadSegment(segmentName, firstId, lastId, true);
+            }
+        }
+        logger.info("Found " + pathFiles.size() + " complete segment(s) covering " + writtenJarPaths.size()
+                + " JAR(s), reloaded " + pendingSegments + " segment(s) that were not loaded yet");
+        return maxLibraryId;
+    }
+
+    @Override
+    public void submit(ExtractedLibrary library) {
+        List<ExtractedLibrary> fullSegment = null;
+        int firstId = 0;
+        int segmentNumber = 0;
+        synchronized (this) {
+            // ids are consecutive within a segment, in the order of the list
+            nextLibraryId++;
+            currentSegment.add(library);
+            currentSegmentRows += library.getClassFileInfos().size() + 1;
+            if (currentSegmentRows >= segmentRows) {
+                fullSegment = currentSegment;
+                firstId = currentSegmentFirstId;
+                segmentNumber = nextSegmentNumber++;
+                currentSegment = new ArrayList<>();
+                currentSegmentRows = 0;
+                currentSegmentFirstId = nextLibraryId;
+            }
+        }
+        if (fullSegment != null) {
+            scheduleSegment(segmentNumber, firstId, fullSegment);
+        }
+    }
+
+    private void scheduleSegment(int segmentNumber, int firstId, List<ExtractedLibrary> libraries) {
+        loader.execute(() -> {
+            String segmentName = String.format("segment-%06d", segmentNumber);
+            try {
+                writeSegment(segmentName, firstId, libraries);
+                if (loadSegment(segmentName, firstId, firstId + libraries.size() - 1, false)) {
+                    libraries.forEach(onCommitted);
+                }
+            } catch (IOException e) {
+                logger.error("Error while writing segment " + segmentName + ", its JARs will be parsed again on the next run", e);
+            }
+        });
+    }
+
+    private void writeSegment(String segmentName, int firstId, List<ExtractedLibrary> libraries) throws IOException {
+        Path librariesFile = segmentDirectory.resolve(segmentName + LIBRARIES_SUFFIX);
+        Path signaturesFile = segmentDirectory.resolve(segmentName + SIGNATURES_SUFFIX);
+        Path pathsFile = segmentDirectory.resolve(segmentName + PATHS_SUFFIX);
+
+        Path librariesTmp = segmentDirectory.resolve(segmentName + LIBRARIES_SUFFIX + TMP_SUFFIX);
+        Path signaturesTmp = segmentDirectory.resolve(segmentName + SIGNATURES_SUFFIX + TMP_SUFFIX);
+        Path pathsTmp = segmentDirectory.resolve(segmentName + PATHS_SUFFIX + TMP_SUFFIX);
+
+        try (BufferedWriter librariesWriter = Files.newBufferedWriter(librariesTmp);
+             BufferedWriter signaturesWriter = Files.newBufferedWriter(signaturesTmp);
+             BufferedWriter pathsWriter = Files.newBufferedWriter(pathsTmp)) {
+            pathsWriter.write(IDS_HEADER + firstId + " " + (firstId + libraries.size() - 1));
+            pathsWriter.newLine();
+
+            int libraryId = firstId;
+            for (ExtractedLibrary library : libraries) {
+                writeLibraryRow(librariesWriter, libraryId, library);
+                writeSignatureRows(signaturesWriter, libraryId, library.getClassFileInfos());
+                if (library.getJarPath() != null) {
+                    pathsWriter.write(library.getJarPath());
+                    pathsWriter.newLine();
+                }
+                libraryId++;
+            }
+        }
+
+        Files.move(librariesTmp, librariesFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(signaturesTmp, signaturesFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // the segment is complete once the paths file exists
+        Files.move(pathsTmp, pathsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void writeLibraryRow(BufferedWriter writer, int libraryId, ExtractedLibrary library) throws IOException {
+        List<ClassFileInfo> classFileInfos = library.getClassFileInfos();
+        boolean isUberJar;
+        int totalClassFiles;
+        int uniqueSignatures;
+        if (library.hasSignatures()) {
+            isUberJar = library.isUberJar();
+            totalClassFiles = classFileInfos.size();
+            uniqueSignatures = (int) classFileInfos.stream().mapToLong(ClassFileInfo::getHashCode).distinct().count();
+        } else {
+            // same values as SignatureDAO.insertLibrary
+            isUberJar = !library.isBrokenJar();
+            totalClassFiles = -1;
+            uniqueSignatures = 0;
+        }
+
+        writer.write(libraryId + "\t"
+                + escape(library.getGroupId()) + "\t"
+                + escape(library.getArtifactId()) + "\t"
+                + escape(library.getVersion()) + "\t"
+                + library.getJarHash() + "\t"
+                + library.getJarCrc() + "\t"
+                + (isUberJar ? 1 : 0) + "\t"
+                + totalClassFiles + "\t"
+                + 0 + "\t" // disk_size
+                + uniqueSignatures + "\t"
+                + new Date(library.getJarCreationDate()) + "\t"
+                + library.getFingerprint());
+        writer.newLine();
+    }
+
+    private void writeSignatureRows(BufferedWriter writer, int libraryId, List<ClassFileInfo> classFileInfos) throws IOException {
+        List<ClassFileInfo> sorted = new ArrayList<>(classFileInfos);
+        sorted.sort(Comparator.comparingLong(ClassFileInfo::getHashCode));
+        for (ClassFileInfo classFileInfo : sorted) {
+            writer.write(libraryId + "\t" + classFileInfo.getHashCode() + "\t" + classFileInfo.getCrc());
+            writer.newLine();
+        }
+    }
+
+    private boolean loadSegment(String segmentName, int firstId, int lastId, boolean reload) {
+        Path librariesFile = segmentDirectory.resolve(segmentName + LIBRARIES_SUFFIX);
+        Path signaturesFile = segmentDirectory.resolve(segmentName + SIGNATURES_SUFFIX);
+        try {
+            bulkLoader.loadSegment(librariesFile, signaturesFile, firstId, lastId, reload);
+            Files.createFile(segmentDirectory.resolve(segmentName + LOADED_SUFFIX));
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            // loaded twice, harmless as loading is idempotent
+            return true;
+        } catch (SQLException | IOException e) {
+            logger.error("Error while loading segment " + segmentName + ", it will be loaded again on the next run", e);
+            return false;
+        }
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "\\N";
+        }
+        return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n");
+    }
+
+    private static String getSegmentName(Path pathFile) {
+        String fileName = pathFile.getFileName().toString();
+        return fileName.substring(0, fileName.length() - PATHS_SUFFIX.length());
+    }
+
+    @Override
+    public void close() {
+        List<ExtractedLibrary> lastSegment;
+        int firstId;
+        int segmentNumber;
+        synchronized (this) {
+            lastSegment = currentSegment;
+            firstId = currentSegmentFirstId;
+            segmentNumber = nextSegmentNumber++;
+            currentSegment = new ArrayList<>();
+            currentSegmentRows = 0;
+            currentSegmentFirstId = nextLibraryId;
+        }
+        if (!lastSegment.isEmpty()) {
+            scheduleSegment(segmentNumber, firstId, lastSegment);
+        }
+
+        loader.shutdown();
+        while (!loader.isTerminated()) {
+            try {
+                loader.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                loader.shutdownNow(); // Force remaining tasks to terminate
+                logger.error("Interrupted while waiting for the segments to be loaded", e);
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package nl.tudelft.cornul11.thesis.corpus.jarfile;
+
+import nl.tudelft.cornul11.thesis.corpus.database.SignatureDAO;
+import nl.tudelft.cornul11.thesis.corpus.model.ExtractedLibrary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Database writer stage of the corpus generation pipeline. Extraction threads hand finished libraries to a bounded
+ * queue, and a configurable number of writer threads coalesce them into multi-library transactions, so that
+ * CPU-bound parsing and I/O-bound inserts overlap.
+ */
+public class SignatureWriter implements LibrarySink {
+    // Add a Poison Pill Object to signal end of queue processing
+    private static final ExtractedLibrary POISON_PILL = new ExtractedLibrary(null, null, null, null, 0, 0, 0, false, List.of());
+
+    private final Logger logger = LoggerFactory.getLogger(SignatureWriter.class);
+    private final BlockingQueue<ExtractedLibrary> queue;
+    private final SignatureDAO signatureDao;
+    private final int numWriterThreads;
+    private final int maxBatchRows;
+    private final ExecutorService executor;
+    private final Consumer<ExtractedLibrary> onCommitted;
+    private final BiConsumer<ExtractedLibrary, Exception> onFailed;
+
+    public SignatureWriter(SignatureDAO signatureDao, int numWriterThreads, int queueCapacity, int maxBatchRows, Consumer<ExtractedLibrary> onCommitted) {
+        this(signatureDao, numWriterThreads, queueCapacity, maxBatchRows, onCommitted, (library, e) -> {
+        });
+    }
+
+    public SignatureWriter(SignatureDAO signatureDao, int numWriterThreads, int queueCapacity, int maxBatchRows,
+                           Consumer<ExtractedLibrary> onCommitted, BiConsumer<ExtractedLibrary, Exception> onFailed) {
+        this.signatureDao = signatureDao;
+        this.numWriterThreads = numWriterThreads;
+        this.maxBatchRows = maxBatchRows;
+        this.onCommitted = onCommitted;
+        this.onFailed = onFailed;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.executor = Executors.newFixedThreadPool(numWriterThreads);
+
+        logger.info("Starting " + numWriterThreads + " writer threads");
+        for (int i = 0; i < numWriterThreads; i++) {
+            executor.execute(this::writeBatches);
+        }
+    }
+
+    /**
+     * Hands a library over to the writer threads, blocking while the queue is full.
+     */
+    @Override
+    public void submit(ExtractedLibrary library) throws InterruptedException {
+        queue.put(library);
+    }
+
+    private void writeBatches() {
+        try {
+            boolean finished = false;
+            while (!finished) {
+                ExtractedLibrary first = queue.take(); // this will block if the queue is empty
+                if (first == POISON_PILL) {
+                    break;
+                }
+
+                List<ExtractedLibrary> batch = new ArrayList<>();
+                batch.add(first);
+                int batchRows = first.getClassFileInfos().size() + 1;
+
+                // coalesce whatever is already waiting, without waiting for more
+                while (batchRows < maxBatchRows) {
+                    ExtractedLibrary next = queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    if (next == POISON_PILL) {
+                        // every writer consumes exactly one pill, write the current batch and stop afterwards
+                        finished = true;
+                        break;
+                    }
+                    batch.add(next);
+                    batchRows += next.getClassFileInfos().size() + 1;
+                }
+
+                writeBatch(batch);
+            }
+        } catch (InterruptedException e) {
+            logger.error("Writer thread interrupted while waiting for libraries in the queue");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeBatch(List<ExtractedLibrary> batch) {
+        try {
+            int insertedRows = signatureDao.insertLibraries(batch);
+            logger.info("Committed " + batch.size() + " libraries with " + insertedRows + " signature row(s) in one transaction");
+            batch.forEach(onCommitted);
+        } catch (Exception e) {
+            if (batch.size() == 1) {
+                logger.error("Failed to commit library " + batch.get(0).getGAV(), e);
+                onFailed.accept(batch.get(0), e);
+                return;
+            }
+            // the batch was rolled back, retry its libraries one at a time so that only the failing ones are lost
+            logger.error("Exception while writing a batch of " + batch.size() + " libraries, retrying them one by one", e);
+            for (ExtractedLibrary library : batch) {
+                writeBatch(List.of(library));
+            }
+        }
+    }
+
+    /**
+     * Waits until every submitted library has been written, then stops the writer threads.
+     */
+    @Override
+    public void close() {
+        try {
+            for (int i = 0; i < numWriterThreads; i++) {
+                queue.put(POISON_PILL);
+            }
+        } catch (InterruptedException e) {
+            logger.error("Interrupted while stopping the writer threads", e);
+            Thread.currentThread().interrupt();
+        }
+        executor.shutdown();
+
+        while (!executor.isTerminated()) {
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                executor.shutdownNow(); // Force remaining tasks to terminate
+                logger.error("Interrupted while waiting for the writer threads to complete", e);
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
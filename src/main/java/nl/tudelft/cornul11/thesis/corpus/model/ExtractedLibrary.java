@@ -0,0 +1,99 @@
+package nl.tudelft.cornul11.thesis.corpus.model;
+
+import nl.tudelft.cornul11.thesis.corpus.file.ClassFileInfo;
+
+import java.util.List;
+
+/**
+ * A library whose signatures have been extracted but not yet written to the database.
+ * An empty list of class files means that only the library row is stored (uber-JARs and broken JARs).
+ */
+public class ExtractedLibrary {
+    private final String jarPath;
+    private final String groupId;
+    private final String artifactId;
+    private final String version;
+    private final long jarHash;
+    private final long jarCrc;
+    private final long fingerprint;
+    private final long jarCreationDate;
+    private final boolean brokenJar;
+    private final boolean uberJar;
+    private final List<ClassFileInfo> classFileInfos;
+
+    public ExtractedLibrary(String jarPath, String groupId, String artifactId, String version, long jarHash, long jarCrc, long jarCreationDate, boolean brokenJar, List<ClassFileInfo> classFileInfos) {
+        this(jarPath, groupId, artifactId, version, jarHash, jarCrc, 0, jarCreationDate, brokenJar, false, classFileInfos);
+    }
+
+    public ExtractedLibrary(String jarPath, String groupId, String artifactId, String version, long jarHash, long jarCrc, long fingerprint, long jarCreationDate, boolean brokenJar, boolean uberJar, List<ClassFileInfo> classFileInfos) {
+        this.jarPath = jarPath;
+        this.groupId = groupId;
+        this.artifactId = artifactId;
+        this.version = version;
+        this.jarHash = jarHash;
+        this.jarCrc = jarCrc;
+        this.fingerprint = fingerprint;
+        this.jarCreationDate = jarCreationDate;
+        this.brokenJar = brokenJar;
+        this.uberJar = uberJar;
+        this.classFileInfos = classFileInfos;
+    }
+
+    public String getJarPath() {
+        return jarPath;
+    }
+
+    public String getGroupId() {
+        return groupId;
+    }
+
+    public String getArtifactId() {
+        return artifactId;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public String getGAV() {
+        return groupId + ":" + artifactId + ":" + version;
+    }
+
+    public long getJarHash() {
+        return jarHash;
+    }
+
+    public long getJarCrc() {
+        return jarCrc;
+    }
+
+    /**
+     * Returns the artifact fingerprint used to skip identical copies, 0 when unknown.
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    public long getJarCreationDate() {
+        return jarCreationDate;
+    }
+
+    public boolean isBrokenJar() {
+        return brokenJar;
+    }
+
+    /**
+     * Returns whether the JAR bundles other libraries, also when its signatures were extracted.
+     */
+    public boolean isUberJar() {
+        return uberJar;
+    }
+
+    public List<ClassFileInfo> getClassFileInfos() {
+        return classFileInfos;
+    }
+
+    public boolean hasSignatures() {
+        return !classFileInfos.isEmpty();
+    }
+}
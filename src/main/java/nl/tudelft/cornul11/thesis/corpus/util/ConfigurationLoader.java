@@ -35,6 +35,10 @@ public class ConfigurationLoader {
         return Boolean.parseBoolean(config.getProperty("ignoreUberJarSignatures"));
     }
 
+    public boolean getSkipIndexedArtifacts() {
+        return config.getProperty("skipIndexedArtifacts") == null || Boolean.parseBoolean(config.getProperty("skipIndexedArtifacts"));
+    }
+
     public DatabaseConfig getDatabaseConfig() {
         return new DatabaseConfig(
                 config.getProperty("database.url"),
@@ -51,7 +55,8 @@ public class ConfigurationLoader {
                 config.getProperty("dataSource.elideSetAutoCommits"),
                 config.getProperty("dataSource.maintainTimeStats"),
                 config.getProperty("dataSource.maximumPoolSize"),
-                config.getProperty("dataSource.connectionTimeout")
+                config.getProperty("dataSource.connectionTimeout"),
+                config.getProperty("dataSource.allowLocalInfile", "false")
         );
     }
 
@@ -59,6 +64,38 @@ public class ConfigurationLoader {
         return config.getProperty("numConsumerThreads") == null ? 10 : Integer.parseInt(config.getProperty("numConsumerThreads"));
     }
 
+    public int getNumWriterThreads() {
+        return config.getProperty("numWriterThreads") == null ? 2 : Integer.parseInt(config.getProperty("numWriterThreads"));
+    }
+
+    public int getWalkerThreads() {
+        return config.getProperty("walkerThreads") == null ? 16 : Integer.parseInt(config.getProperty("walkerThreads"));
+    }
+
+    public int getWalkerQueueCapacity() {
+        return config.getProperty("walkerQueueCapacity") == null ? 10000 : Integer.parseInt(config.getProperty("walkerQueueCapacity"));
+    }
+
+    public int getWriterQueueCapacity() {
+        return config.getProperty("writerQueueCapacity") == null ? 64 : Integer.parseInt(config.getProperty("writerQueueCapacity"));
+    }
+
+    public int getWriterBatchRows() {
+        return config.getProperty("writerBatchRows") == null ? 50000 : Integer.parseInt(config.getProperty("writerBatchRows"));
+    }
+
+    public int getSegmentRows() {
+        return config.getProperty("segmentRows") == null ? 1000000 : Integer.parseInt(config.getProperty("segmentRows"));
+    }
+
+    public int getInferenceThreads() {
+        return config.getProperty("inferenceThreads") == null ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(config.getProperty("inferenceThreads"));
+    }
+
+    public int getInferenceQueueCapacity() {
+        return config.getProperty("inferenceQueueCapacity") == null ? 1024 : Integer.parseInt(config.getProperty("inferenceQueueCapacity"));
+    }
+
     public int getTotalJars() {
         return config.getProperty("totalJars") == null ? -1 : Integer.parseInt(config.getProperty("totalJars"));
     }
@@ -67,6 +104,10 @@ public class ConfigurationLoader {
         return config.getProperty("basePath") == null ? null : config.getProperty("basePath");
     }
 
+    public String getBundleRoot() {
+        return config.getProperty("bundleRoot");
+    }
+
     public String getMongoDbDatabase() {
         return config.getProperty("mongoDbDatabase");
     }
@@ -82,4 +123,64 @@ public class ConfigurationLoader {
     public String getDatabaseMode() {
         return config.getProperty("databaseMode");
     }
+
+    public String getSignatureIndexPath() {
+        return config.getProperty("signatureIndexPath");
+    }
+
+    public String getSignatureOutputFormat() {
+        return config.getProperty("signatureOutputFormat") == null ? "text" : config.getProperty("signatureOutputFormat");
+    }
+
+    public int getSignatureSegmentLibraries() {
+        return config.getProperty("signatureSegmentLibraries") == null ? 10000 : Integer.parseInt(config.getProperty("signatureSegmentLibraries"));
+    }
+
+    public long getSignatureSegmentBytes() {
+        return config.getProperty("signatureSegmentBytes") == null ? 1L << 28 : Long.parseLong(config.getProperty("signatureSegmentBytes"));
+    }
+
+    public int getIndexBuilderRunPairs() {
+        return config.getProperty("indexBuilderRunPairs") == null ? 1 << 22 : Integer.parseInt(config.getProperty("indexBuilderRunPairs"));
+    }
+
+    public int getClassHashFilterBitsPerKey() {
+        return config.getProperty("classHashFilterBitsPerKey") == null ? 0 : Integer.parseInt(config.getProperty("classHashFilterBitsPerKey"));
+    }
+
+    public long getClassHashFilterRefreshMinutes() {
+        return config.getProperty("classHashFilterRefreshMinutes") == null ? 60 : Long.parseLong(config.getProperty("classHashFilterRefreshMinutes"));
+    }
+
+    public int getMaxHashLibraries() {
+        return config.getProperty("maxHashLibraries") == null ? 0 : Integer.parseInt(config.getProperty("maxHashLibraries"));
+    }
+
+    public boolean getIdfWeighting() {
+        return Boolean.parseBoolean(config.getProperty("idfWeighting"));
+    }
+
+    public boolean getUseLibraryGraph() {
+        return Boolean.parseBoolean(config.getProperty("useLibraryGraph"));
+    }
+
+    public double getSignatureDeltaMaxRatio() {
+        return config.getProperty("signatureDeltaMaxRatio") == null ? 0.5 : Double.parseDouble(config.getProperty("signatureDeltaMaxRatio"));
+    }
+
+    public int getClassDictionaryMigrationChunk() {
+        return config.getProperty("classDictionaryMigrationChunk") == null ? 10000 : Integer.parseInt(config.getProperty("classDictionaryMigrationChunk"));
+    }
+
+    public String getIngestionJournalPath() {
+        return config.getProperty("ingestionJournalPath") == null ? "ingestion-journal.log" : config.getProperty("ingestionJournalPath");
+    }
+
+    public String getSignatureCachePath() {
+        return config.getProperty("signatureCachePath");
+    }
+
+    public int getSignatureCacheCapacity() {
+        return config.getProperty("signatureCacheCapacity") == null ? -1 : Integer.parseInt(config.getProperty("signatureCacheCapacity"));
+    }
 }
\ No newline at end of file
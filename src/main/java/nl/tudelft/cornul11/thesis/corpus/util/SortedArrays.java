@@ -0,0 +1,97 @@
+package nl.tudelft.cornul11.thesis.corpus.util;
+
+import java.util.Arrays;
+
+/**
+ * Set operations on sorted arrays without duplicates, done as merge-scans.
+ */
+public final class SortedArrays {
+    private SortedArrays() {
+    }
+
+    /**
+     * Sorts the first {@code length} values and removes the duplicates, returns the number of unique values.
+     */
+    public static int sortUnique(int[] values, int length) {
+        Arrays.sort(values, 0, length);
+        return unique(values, length);
+    }
+
+    public static int sortUnique(long[] values, int length) {
+        Arrays.sort(values, 0, length);
+        int unique = 0;
+        for (int i = 0; i < length; i++) {
+            if (unique == 0 || values[unique - 1] != values[i]) {
+                values[unique++] = values[i];
+            }
+        }
+        return unique;
+    }
+
+    private static int unique(int[] values, int length) {
+        int unique = 0;
+        for (int i = 0; i < length; i++) {
+            if (unique == 0 || values[unique - 1] != values[i]) {
+                values[unique++] = values[i];
+            }
+        }
+        return unique;
+    }
+
+    /**
+     * Returns true if the first {@code length} values of {@code set} contain all the first {@code subsetLength} values
+     * of {@code subset}.
+     */
+    public static boolean containsAll(int[] set, int length, int[] subset, int subsetLength) {
+        if (subsetLength > length) {
+            return false;
+        }
+        int i = 0;
+        for (int j = 0; j < subsetLength; j++) {
+            int value = subset[j];
+            while (i < length && set[i] < value) {
+                i++;
+            }
+            if (i == length || set[i] != value) {
+                return false;
+            }
+            i++;
+        }
+        return true;
+    }
+
+    public static boolean containsAll(long[] set, long[] subset) {
+        if (subset.length > set.length) {
+            return false;
+        }
+        int i = 0;
+        for (long value : subset) {
+            while (i < set.length && set[i] < value) {
+                i++;
+            }
+            if (i == set.length || set[i] != value) {
+                return false;
+            }
+            i++;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the values of {@code set} that are not in {@code other}.
+     */
+    public static long[] difference(long[] set, long[] other) {
+        long[] result = new long[set.length];
+        int length = 0;
+        int j = 0;
+        for (long value : set) {
+            while (j < other.length && other[j] < value) {
+                j++;
+            }
+            if (j == other.length || other[j] != value) {
+                result[length++] = value;
+            }
+        }
+        return length == result.length ? result : Arrays.copyOf(result, length);
+    }
+}
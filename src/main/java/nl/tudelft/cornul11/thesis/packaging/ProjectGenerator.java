@@ -4,6 +4,7 @@ import freemarker.template.Configuration;
 import freemarker.template.Template;
 import nl.tudelft.cornul11.thesis.corpus.database.SignatureDAO;
 import nl.tudelft.cornul11.thesis.corpus.jarfile.JarProcessingUtils;
+import nl.tudelft.cornul11.thesis.corpus.jarfile.MappedZipFile;
 import nl.tudelft.cornul11.thesis.corpus.model.Dependency;
 import nl.tudelft.cornul11.thesis.corpus.model.LibraryInfo;
 import nl.tudelft.cornul11.thesis.packaging.util.HostNameUtility;
@@ -16,13 +17,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.util.*;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
 import java.util.regex.Pattern;
 
 public class ProjectGenerator {
@@ -116,7 +116,7 @@ public class ProjectGenerator {
 
     private Result getClassName(Dependency library) {
         String jarLocation = getJarLocation(library);
-        try (JarFile jarFile = new JarFile(jarLocation)) {
+        try (MappedZipFile jarFile = new MappedZipFile(Path.of(jarLocation))) {
             return processJarFile(jarFile);
         } catch (IOException e) {
             e.printStackTrace();
@@ -124,16 +124,14 @@ public class ProjectGenerator {
         return new Result(null, Collections.emptySet());
     }
 
-    private Result processJarFile(JarFile jarFile) {
+    private Result processJarFile(MappedZipFile jarFile) {
         Set<String> packagePrefixes = new HashSet<>();
         String className = null;
 
-        Enumeration<JarEntry> entries = jarFile.entries();
-        while (entries.hasMoreElements()) {
-            JarEntry entry = entries.nextElement();
+        for (MappedZipFile.Entry entry : jarFile.entries()) {
             String name = entry.getName();
             if (!JarProcessingUtils.shouldSkip(entry)) {
-                if (JarProcessingUtils.isClassFile(entry, entry.getName()) &&
+                if (JarProcessingUtils.isClassFile(entry) &&
                         !JarProcessingUtils.isInnerClassFile(entry.getName())) {
                     // add package prefix to set
                     String classFullName = name.replace("/", ".").replace(".class", "");
@@ -152,9 +150,10 @@ public class ProjectGenerator {
     }
 
 
-    private String getValidClassName(JarFile jarFile, JarEntry entry) {
+    private String getValidClassName(MappedZipFile jarFile, MappedZipFile.Entry entry) {
         try {
-            ClassReader classReader = new ClassReader(jarFile.getInputStream(entry));
+            ByteBuffer bytecode = jarFile.getHeapData(entry);
+            ClassReader classReader = new ClassReader(bytecode.array(), bytecode.arrayOffset() + bytecode.position(), bytecode.remaining());
             ClassNode classNode = new ClassNode();
             classReader.accept(classNode, 0);
 
@@ -0,0 +1,192 @@
+import nl.tudelft.cornul11.thesis.corpus.database.SignatureDAO;
+import nl.tudelft.cornul11.thesis.corpus.file.ArtifactBundle;
+import nl.tudelft.cornul11.thesis.corpus.jarfile.FileAnalyzer;
+import nl.tudelft.cornul11.thesis.corpus.jarfile.JarProcessingUtils;
+import nl.tudelft.cornul11.thesis.corpus.jarfile.KnownArtifacts;
+import nl.tudelft.cornul11.thesis.corpus.model.Signature;
+import nl.tudelft.cornul11.thesis.corpus.util.ConfigurationLoader;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ArtifactBundleTest {
+    private static final String JAR_ENTRY = "com/google/code/findbugs/jsr305/2.0.1/jsr305-2.0.1.jar";
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Test that the JARs of tar, gzip and zstd compressed tar and zip bundles are read in archive order, without the
+     * hidden entries and the other files
+     */
+    @Test
+    public void testReadBundles() throws Exception {
+        Map<String, byte[]> entries = bundleEntries();
+        for (String bundleName : List.of("corpus.tar", "corpus.tar.gz", "corpus.tar.zst", "corpus.zip")) {
+            Path bundlePath = bundleName.endsWith(".zip") ? writeZip(bundleName, entries) : writeTar(bundleName, entries);
+            List<String> jarNames = new ArrayList<>();
+            try (ArtifactBundle bundle = new ArtifactBundle(bundlePath)) {
+                bundle.setAlreadyProcessed(entryName -> entryName.startsWith("org/processed/"));
+                bundle.forEachJar((entryName, data) -> {
+                    jarNames.add(entryName);
+                    assertArrayEquals(entries.get("./" + entryName), data);
+                });
+                assertEquals(1, bundle.getSkippedCount());
+            }
+            assertEquals(List.of(JAR_ENTRY, "org/example/other/1.0/other-1.0.jar"), jarNames, bundleName);
+        }
+    }
+
+    /**
+     * Test that a bundled JAR is stored with the GAV of its path in the bundle, and the CRC and fingerprint of a copy
+     * on disk
+     */
+    @Test
+    public void testProcessBundledJar() throws Exception {
+        SignatureDAO signatureDao = Mockito.mock(SignatureDAO.class);
+        ConfigurationLoader config = Mockito.mock(ConfigurationLoader.class);
+        Mockito.doAnswer(invocation -> null).when(signatureDao).forEachIndexedArtifact(Mockito.any());
+        FileAnalyzer fileAnalyzer = new FileAnalyzer(signatureDao, config, null);
+        fileAnalyzer.loadKnownArtifacts();
+
+        byte[] jarData = Files.readAllBytes(jarPath());
+        fileAnalyzer.processBundledJar("corpus.tar!/" + JAR_ENTRY, JAR_ENTRY, jarData);
+
+        ArgumentCaptor<List<Signature>> signatures = signaturesCaptor();
+        long sha1Prefix = ByteBuffer.wrap(MessageDigest.getInstance("SHA-1").digest(jarData)).getLong();
+        Mockito.verify(signatureDao).insertSignatures(signatures.capture(), Mockito.anyLong(),
+                Mockito.eq(JarProcessingUtils.computeFileCrc(jarPath())), Mockito.eq(sha1Prefix), Mockito.eq(false), Mockito.anyLong());
+        Signature signature = signatures.getValue().get(0);
+        assertEquals("com.google.code.findbugs", signature.getGroupID());
+        assertEquals("jsr305", signature.getArtifactId());
+        assertEquals("2.0.1", signature.getVersion());
+        assertEquals(sha1Prefix, KnownArtifacts.fingerprint(jarData));
+    }
+
+    /**
+     * Test that the repository root of a bundle is stripped before the GAV is derived, whether it is detected or
+     * configured
+     */
+    @Test
+    public void testProcessPrefixedBundle() throws Exception {
+        byte[] jarData = Files.readAllBytes(jarPath());
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("home/ci/.m2/repository/" + JAR_ENTRY, jarData);
+        entries.put("nexus/storage/repository/" + JAR_ENTRY, jarData);
+        entries.put("maven-snapshot/" + JAR_ENTRY, jarData);
+        Path bundlePath = writeTar("prefixed.tar", entries);
+
+        try (ArtifactBundle bundle = new ArtifactBundle(bundlePath)) {
+            assertEquals(JAR_ENTRY, bundle.getRepositoryPath("home/ci/.m2/repository/" + JAR_ENTRY));
+            assertEquals(JAR_ENTRY, bundle.getRepositoryPath("repository/" + JAR_ENTRY));
+            // too short to have a root, the repository directory is part of the group id
+            assertEquals("org/repository/a/1.0/a-1.0.jar", bundle.getRepositoryPath("org/repository/a/1.0/a-1.0.jar"));
+            assertEquals("maven-snapshot/" + JAR_ENTRY, bundle.getRepositoryPath("maven-snapshot/" + JAR_ENTRY));
+            bundle.setRoot("./maven-snapshot");
+            assertEquals(JAR_ENTRY, bundle.getRepositoryPath("maven-snapshot/" + JAR_ENTRY));
+        }
+
+        for (String root : new String[]{null, "maven-snapshot/"}) {
+            SignatureDAO signatureDao = Mockito.mock(SignatureDAO.class);
+            FileAnalyzer fileAnalyzer = new FileAnalyzer(signatureDao, Mockito.mock(ConfigurationLoader.class), null);
+            try (ArtifactBundle bundle = new ArtifactBundle(bundlePath)) {
+                bundle.setRoot(root);
+                bundle.forEachJar((entryName, data) -> {
+                    if (root == null || entryName.startsWith(root)) {
+                        fileAnalyzer.processBundledJar(bundle.getJarPath(entryName), bundle.getRepositoryPath(entryName), data);
+                    }
+                });
+            }
+
+            ArgumentCaptor<List<Signature>> signatures = signaturesCaptor();
+            Mockito.verify(signatureDao, Mockito.atLeastOnce()).insertSignatures(signatures.capture(), Mockito.anyLong(),
+                    Mockito.anyLong(), Mockito.anyLong(), Mockito.anyBoolean(), Mockito.anyLong());
+            // the detected roots, or the configured one
+            assertEquals(root == null ? 3 : 1, signatures.getAllValues().size());
+            for (int i = 0; i < signatures.getAllValues().size(); i++) {
+                Signature signature = signatures.getAllValues().get(i).get(0);
+                if (root == null && i == 2) {
+                    assertEquals("maven-snapshot.com.google.code.findbugs", signature.getGroupID(), "Without a repository directory, the root must be configured");
+                } else {
+                    assertEquals("com.google.code.findbugs", signature.getGroupID());
+                }
+                assertEquals("jsr305", signature.getArtifactId());
+                assertEquals("2.0.1", signature.getVersion());
+            }
+        }
+    }
+
+    private Map<String, byte[]> bundleEntries() throws Exception {
+        byte[] jarData = Files.readAllBytes(jarPath());
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("./" + JAR_ENTRY, jarData);
+        entries.put("./" + JAR_ENTRY + ".sha1", "0000".getBytes());
+        entries.put("./.cache/org/hidden/1.0/hidden-1.0.jar", jarData);
+        entries.put("./org/processed/1.0/processed-1.0.jar", jarData);
+        entries.put("./org/example/other/1.0/other-1.0.jar", new byte[]{1, 2, 3});
+        return entries;
+    }
+
+    private Path writeTar(String bundleName, Map<String, byte[]> entries) throws Exception {
+        Path bundlePath = directory.resolve(bundleName);
+        OutputStream output = Files.newOutputStream(bundlePath);
+        if (bundleName.endsWith(".gz")) {
+            output = new GzipCompressorOutputStream(output);
+        } else if (bundleName.endsWith(".zst")) {
+            output = new ZstdCompressorOutputStream(output);
+        }
+        try (TarArchiveOutputStream tar = new TarArchiveOutputStream(output)) {
+            tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                TarArchiveEntry tarEntry = new TarArchiveEntry(entry.getKey());
+                tarEntry.setSize(entry.getValue().length);
+                tar.putArchiveEntry(tarEntry);
+                tar.write(entry.getValue());
+                tar.closeArchiveEntry();
+            }
+        }
+        return bundlePath;
+    }
+
+    private Path writeZip(String bundleName, Map<String, byte[]> entries) throws Exception {
+        Path bundlePath = directory.resolve(bundleName);
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(bundlePath))) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                zip.putNextEntry(new ZipEntry(entry.getKey()));
+                zip.write(entry.getValue());
+                zip.closeEntry();
+            }
+        }
+        return bundlePath;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<List<Signature>> signaturesCaptor() {
+        return ArgumentCaptor.forClass((Class<List<Signature>>) (Class<?>) List.class);
+    }
+
+    private Path jarPath() {
+        return Paths.get(getClass().getClassLoader().getResource("jars/jsr305-2.0.1.jar").getPath());
+    }
+}
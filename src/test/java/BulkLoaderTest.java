@@ -0,0 +1,58 @@
+import nl.tudelft.cornul11.thesis.corpus.database.BulkLoader;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class BulkLoaderTest {
+    private static final Path LIBRARIES_FILE = Path.of("segments", "segment-000000.libraries.tsv");
+    private static final Path SIGNATURES_FILE = Path.of("segments", "segment-000000.signatures.tsv");
+
+    /**
+     * Test that a fresh segment is loaded without scanning the signatures of its ids, and that a reloaded one first
+     * deletes the signature rows of its id range, in the same transaction as the loads
+     */
+    @Test
+    public void testReloadDeletesSignaturesOfRange() throws Exception {
+        Connection connection = Mockito.mock(Connection.class);
+        Statement statement = Mockito.mock(Statement.class);
+        Mockito.when(connection.createStatement()).thenReturn(statement);
+        BulkLoader bulkLoader = new BulkLoader(JdbcMocks.mockDataSource(connection));
+
+        bulkLoader.loadSegment(LIBRARIES_FILE, SIGNATURES_FILE, 11, 20, false);
+        Mockito.verify(statement, Mockito.never()).executeUpdate(Mockito.startsWith("DELETE"));
+        Mockito.verify(statement, Mockito.times(2)).executeUpdate(Mockito.startsWith("LOAD DATA LOCAL INFILE"));
+
+        bulkLoader.loadSegment(LIBRARIES_FILE, SIGNATURES_FILE, 11, 20, true);
+        InOrder inOrder = Mockito.inOrder(connection, statement);
+        inOrder.verify(connection).setAutoCommit(false);
+        inOrder.verify(statement).executeUpdate("DELETE FROM signatures WHERE library_id BETWEEN 11 AND 20");
+        inOrder.verify(statement).executeUpdate(Mockito.contains("REPLACE INTO TABLE libraries"));
+        inOrder.verify(statement).executeUpdate(Mockito.contains("INTO TABLE signatures"));
+        inOrder.verify(connection).commit();
+    }
+
+    /**
+     * Test that a failing load rolls back the whole segment, so that it can be reloaded on the next run
+     */
+    @Test
+    public void testFailedLoadIsRolledBack() throws Exception {
+        Connection connection = Mockito.mock(Connection.class);
+        Statement statement = Mockito.mock(Statement.class);
+        Mockito.when(connection.createStatement()).thenReturn(statement);
+        Mockito.when(statement.executeUpdate(Mockito.contains("INTO TABLE signatures")))
+                .thenThrow(new SQLException("Lock wait timeout exceeded", "HY000", 1205));
+        BulkLoader bulkLoader = new BulkLoader(JdbcMocks.mockDataSource(connection));
+
+        assertThrows(SQLException.class, () -> bulkLoader.loadSegment(LIBRARIES_FILE, SIGNATURES_FILE, 11, 20, true));
+        Mockito.verify(connection).rollback();
+        Mockito.verify(connection, Mockito.never()).commit();
+        Mockito.verify(connection).setAutoCommit(true);
+    }
+}
@@ -129,8 +129,27 @@ public class BytecodeDetailsUberJarDetectionTest {
         assertEquals(0, totalClassFilesProcessed, "No classes should be processed");
     }
 
+    /**
+     * Test that an uber JAR whose signatures are kept is still flagged as one, so that it is not returned as a known
+     * artifact instead of the libraries it bundles
+     */
+    @Test
+    public void testUberJarWithSignaturesIsFlagged() {
+        Mockito.when(config.getIgnoreUberJarSignatures()).thenReturn(false);
+        fileAnalyzer = new FileAnalyzer(signatureDao, config, null);
+        prepareSignatureDaoMock();
+
+        assertNotEquals(0, fileAnalyzer.processJarFile(getJarPath(JAR_WITH_MULTIPLE_SUBPROJECTS)));
+        Mockito.verify(signatureDao).insertSignatures(Mockito.anyList(), Mockito.anyLong(), Mockito.anyLong(),
+                Mockito.anyLong(), Mockito.eq(true), Mockito.anyLong());
+
+        assertNotEquals(0, fileAnalyzer.processJarFile(getJarPath(JAR_WITH_NORMAL_FEATURES)));
+        Mockito.verify(signatureDao).insertSignatures(Mockito.anyList(), Mockito.anyLong(), Mockito.anyLong(),
+                Mockito.anyLong(), Mockito.eq(false), Mockito.anyLong());
+    }
+
     private void prepareSignatureDaoMock() {
-        Mockito.when(signatureDao.insertSignatures(Mockito.anyList(), Mockito.anyLong(), Mockito.anyLong(), Mockito.anyLong()))
+        Mockito.when(signatureDao.insertSignatures(Mockito.anyList(), Mockito.anyLong(), Mockito.anyLong(), Mockito.anyLong(), Mockito.anyBoolean(), Mockito.anyLong()))
                 .thenAnswer(invocation -> {
                     List<Signature> signatures = invocation.getArgument(0);
                     return signatures.size();
@@ -0,0 +1,168 @@
+import nl.tudelft.cornul11.thesis.corpus.database.ClassDictionary;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ClassDictionaryTest {
+    /**
+     * Test that only the missing hashes get a class id, that every library counts each of its classes once, and that
+     * the library classes reference the ids of both the existing and the new classes
+     */
+    @Test
+    public void testAddLibraries() throws Exception {
+        // the classes table, class hash to class id
+        Map<Long, Integer> classes = new TreeMap<>(Map.of(1L, 10, 2L, 11));
+        Map<String, List<long[]>> batches = new HashMap<>();
+        Connection connection = mockConnection(classes, batches);
+
+        ClassDictionary.addLibraries(connection, List.of(100, 101), List.of(new long[]{3, 1, 1, 2}, new long[]{2, 4}));
+
+        assertRows(batches.get("INSERT IGNORE INTO classes"), new long[][]{{3}, {4}});
+        assertEquals(Map.of(1L, 10, 2L, 11, 3L, 12, 4L, 13), classes);
+        // in hash order, the duplicate of the first library is only counted once
+        assertRows(batches.get("UPDATE classes"), new long[][]{{1, 10}, {2, 11}, {1, 12}, {1, 13}});
+        assertRows(batches.get("INSERT IGNORE INTO library_classes"),
+                new long[][]{{10, 100}, {11, 100}, {12, 100}, {11, 101}, {13, 101}});
+    }
+
+    /**
+     * Test that adding libraries whose classes are all known does not insert classes
+     */
+    @Test
+    public void testAddLibrariesWithKnownClasses() throws Exception {
+        Map<Long, Integer> classes = new TreeMap<>(Map.of(1L, 10, 2L, 11));
+        Map<String, List<long[]>> batches = new HashMap<>();
+        Connection connection = mockConnection(classes, batches);
+
+        ClassDictionary.addLibraries(connection, List.of(100), List.of(new long[]{2, 1}));
+
+        assertFalse(batches.containsKey("INSERT IGNORE INTO classes"));
+        assertRows(batches.get("UPDATE classes"), new long[][]{{1, 10}, {1, 11}});
+        assertRows(batches.get("INSERT IGNORE INTO library_classes"), new long[][]{{10, 100}, {11, 100}});
+    }
+
+    /**
+     * Test that the signatures are migrated in chunks of library ids, each in its own transaction, and that a failing
+     * chunk is rolled back and stops the migration before the library counts are recomputed
+     */
+    @Test
+    public void testMigrateInChunks() throws Exception {
+        Map<String, List<long[]>> ranges = new HashMap<>();
+        Connection connection = mockMigrationConnection(ranges, -1);
+        ClassDictionary.migrate(JdbcMocks.mockDataSource(connection), 10);
+
+        long[][] expectedRanges = {{1, 10}, {11, 20}, {21, 25}};
+        assertRows(ranges.get("INSERT IGNORE INTO classes"), expectedRanges);
+        assertRows(ranges.get("INSERT IGNORE INTO library_classes"), expectedRanges);
+        Mockito.verify(connection, Mockito.times(3)).commit();
+        Mockito.verify(connection.createStatement()).executeUpdate(Mockito.startsWith("UPDATE classes"));
+
+        ranges.clear();
+        connection = mockMigrationConnection(ranges, 11);
+        ClassDictionary.migrate(JdbcMocks.mockDataSource(connection), 10);
+
+        assertRows(ranges.get("INSERT IGNORE INTO library_classes"), new long[][]{{1, 10}, {11, 20}});
+        Mockito.verify(connection, Mockito.times(1)).commit();
+        Mockito.verify(connection, Mockito.times(1)).rollback();
+        Mockito.verify(connection.createStatement(), Mockito.never()).executeUpdate(Mockito.startsWith("UPDATE classes"));
+    }
+
+    @Test
+    public void testMatchesQuery() {
+        String query = ClassDictionary.matchesQuery("temp_hashes", false);
+        assertTrue(query.startsWith("SELECT c.class_hash, lc.library_id FROM temp_hashes "));
+        assertFalse(query.contains("temp_candidates"));
+
+        // temporary tables cannot be opened twice in a query
+        query = ClassDictionary.matchesQuery("temp_common_hashes", true);
+        assertEquals(query.indexOf("temp_common_hashes"), query.lastIndexOf("temp_common_hashes"));
+        assertTrue(query.contains("JOIN temp_candidates tc ON tc.library_id = lc.library_id"));
+    }
+
+    private static void assertRows(List<long[]> rows, long[][] expected) {
+        assertEquals(expected.length, rows.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(Arrays.toString(expected[i]), Arrays.toString(rows.get(i)), "Row " + i);
+        }
+    }
+
+    /**
+     * Returns a connection backed by the given classes table, on which the rows of the batched statements are recorded
+     * by the start of their query. The class ids are assigned in insertion order after the largest one.
+     */
+    private static Connection mockConnection(Map<Long, Integer> classes, Map<String, List<long[]>> batches) throws SQLException {
+        Connection connection = Mockito.mock(Connection.class);
+        Statement statement = Mockito.mock(Statement.class);
+        Mockito.when(connection.createStatement()).thenReturn(statement);
+        Mockito.when(statement.executeQuery(Mockito.anyString())).thenAnswer(invocation -> {
+            String query = invocation.getArgument(0);
+            String hashList = query.substring(query.indexOf('(') + 1, query.lastIndexOf(')'));
+            List<Object[]> rows = new ArrayList<>();
+            for (String hash : hashList.split(", ")) {
+                Integer classId = classes.get(Long.parseLong(hash));
+                if (classId != null) {
+                    rows.add(new Object[]{Long.parseLong(hash), classId});
+                }
+            }
+            return JdbcMocks.mockResultSet(rows);
+        });
+
+        Mockito.when(connection.prepareStatement(Mockito.anyString())).thenAnswer(invocation -> {
+            String query = invocation.<String>getArgument(0);
+            String key = query.startsWith("UPDATE") ? "UPDATE classes" : query.substring(0, query.indexOf(" ("));
+            return JdbcMocks.mockBatchStatement(rows -> {
+                batches.computeIfAbsent(key, k -> new ArrayList<>()).addAll(rows);
+                if (key.equals("INSERT IGNORE INTO classes")) {
+                    for (long[] row : rows) {
+                        classes.putIfAbsent(row[0], classes.values().stream().max(Integer::compare).orElse(0) + 1);
+                    }
+                }
+            });
+        });
+        return connection;
+    }
+
+    /**
+     * Returns a connection with signatures of the library ids 1 to 25, on which the library id ranges of the chunk
+     * statements are recorded, and the library classes insert of the chunk starting at {@code failingChunk} fails.
+     */
+    private static Connection mockMigrationConnection(Map<String, List<long[]>> ranges, int failingChunk) throws SQLException {
+        Connection connection = Mockito.mock(Connection.class);
+        Statement statement = Mockito.mock(Statement.class);
+        Mockito.when(connection.createStatement()).thenReturn(statement);
+        Mockito.when(statement.executeQuery(Mockito.anyString())).thenAnswer(invocation -> JdbcMocks.mockResultSet(List.<Object[]>of(new Object[]{1, 25})));
+
+        Mockito.when(connection.prepareStatement(Mockito.anyString())).thenAnswer(invocation -> {
+            String query = invocation.<String>getArgument(0);
+            String key = query.substring(0, query.indexOf(" ("));
+            long[] range = new long[2];
+            PreparedStatement chunkStatement = Mockito.mock(PreparedStatement.class);
+            Mockito.doAnswer(set -> range[set.<Integer>getArgument(0) - 1] = set.<Integer>getArgument(1))
+                    .when(chunkStatement).setInt(Mockito.anyInt(), Mockito.anyInt());
+            Mockito.when(chunkStatement.executeUpdate()).thenAnswer(update -> {
+                ranges.computeIfAbsent(key, k -> new ArrayList<>()).add(range.clone());
+                if (key.equals("INSERT IGNORE INTO library_classes") && range[0] == failingChunk) {
+                    throw new SQLException("Lock wait timeout exceeded", "HY000", 1205);
+                }
+                return (int) (range[1] - range[0] + 1);
+            });
+            return chunkStatement;
+        });
+        return connection;
+    }
+}
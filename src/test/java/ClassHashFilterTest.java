@@ -0,0 +1,33 @@
+import nl.tudelft.cornul11.thesis.corpus.database.ClassHashFilter;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ClassHashFilterTest {
+    /**
+     * Test that every added hash passes and that few other hashes do
+     */
+    @Test
+    public void testNoFalseNegatives() {
+        Random random = new Random(3);
+        long[] keys = random.longs(100000).toArray();
+        ClassHashFilter filter = new ClassHashFilter(keys.length, 10);
+        for (long key : keys) {
+            filter.add(key);
+        }
+        for (long key : keys) {
+            assertTrue(filter.mightContain(key));
+        }
+
+        int falsePositives = 0;
+        int probes = 100000;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain(random.nextLong())) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < probes * 0.02, falsePositives + " false positives");
+    }
+}
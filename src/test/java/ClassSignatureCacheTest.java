@@ -0,0 +1,101 @@
+import nl.tudelft.cornul11.thesis.corpus.file.ClassFileInfo;
+import nl.tudelft.cornul11.thesis.corpus.jarfile.ClassSignatureCache;
+import nl.tudelft.cornul11.thesis.corpus.jarfile.JarProcessingUtils;
+import nl.tudelft.cornul11.thesis.corpus.jarfile.MappedZipFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+public class ClassSignatureCacheTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testCachedHashesSurviveReopening() throws IOException {
+        Path cachePath = tempDir.resolve("cache.bin");
+        try (ClassSignatureCache cache = new ClassSignatureCache(cachePath, 1024)) {
+            assertEquals(ClassSignatureCache.MISSING, cache.get(0xCAFEBABEL, 1234));
+            cache.put(0xCAFEBABEL, 1234, 42L);
+            cache.put(0xCAFEBABEL, 1235, -7L);
+            assertEquals(42L, cache.get(0xCAFEBABEL, 1234));
+            assertEquals(1, cache.getHits());
+            assertEquals(1, cache.getMisses());
+        }
+
+        try (ClassSignatureCache cache = new ClassSignatureCache(cachePath, 1024)) {
+            assertEquals(42L, cache.get(0xCAFEBABEL, 1234));
+            assertEquals(-7L, cache.get(0xCAFEBABEL, 1235));
+        }
+
+        // a different layout invalidates the previous content
+        try (ClassSignatureCache cache = new ClassSignatureCache(cachePath, 2048)) {
+            assertEquals(ClassSignatureCache.MISSING, cache.get(0xCAFEBABEL, 1234));
+        }
+    }
+
+    /**
+     * Test that a class whose content does not match the CRC of the central directory is not cached under that CRC,
+     * so that a crafted JAR cannot poison the cache shared with the other JARs
+     */
+    @Test
+    public void testMismatchingCrcIsNotCached() throws Exception {
+        byte[] bytecode;
+        try (InputStream inputStream = getClass().getResourceAsStream("ClassSignatureCacheTest.class")) {
+            bytecode = inputStream.readAllBytes();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytecode);
+        long forgedCrc = crc.getValue() ^ 1;
+
+        try (ClassSignatureCache cache = new ClassSignatureCache(tempDir.resolve("cache.bin"), 1024)) {
+            JarProcessingUtils.setSignatureCache(cache);
+
+            Path forgedJar = writeJar(tempDir.resolve("forged.jar"), bytecode, forgedCrc);
+            try (MappedZipFile zipFile = new MappedZipFile(forgedJar)) {
+                ClassFileInfo classFileInfo = JarProcessingUtils.processClassFile(zipFile, zipFile.entries().get(0), null);
+                assertNotEquals(ClassSignatureCache.MISSING, classFileInfo.getHashCode());
+                assertEquals(ClassSignatureCache.MISSING, cache.get(forgedCrc, bytecode.length));
+            }
+
+            Path jar = writeJar(tempDir.resolve("valid.jar"), bytecode, crc.getValue());
+            try (MappedZipFile zipFile = new MappedZipFile(jar)) {
+                ClassFileInfo classFileInfo = JarProcessingUtils.processClassFile(zipFile, zipFile.entries().get(0), null);
+                assertEquals(classFileInfo.getHashCode(), cache.get(crc.getValue(), bytecode.length));
+            }
+        } finally {
+            JarProcessingUtils.setSignatureCache(null);
+        }
+    }
+
+    /**
+     * Writes a JAR with the class as its only entry, with {@code crc} as the CRC of its central directory record.
+     */
+    private static Path writeJar(Path path, byte[] bytecode, long crc) throws IOException {
+        ByteArrayOutputStream jar = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(jar)) {
+            out.putNextEntry(new ZipEntry("a/B.class"));
+            out.write(bytecode);
+            out.closeEntry();
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(jar.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < buffer.limit() - 4; i++) {
+            if (buffer.getInt(i) == 0x02014b50) {
+                buffer.putInt(i + 16, (int) crc);
+            }
+        }
+        return Files.write(path, buffer.array());
+    }
+}
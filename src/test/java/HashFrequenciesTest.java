@@ -0,0 +1,36 @@
+import nl.tudelft.cornul11.thesis.corpus.database.HashFrequencies;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+public class HashFrequenciesTest {
+    /**
+     * Test that the counts are rebuilt into a new table that replaces the previous one in a single rename, and that
+     * the previous table is kept when the counting fails
+     */
+    @Test
+    public void testRebuildSwapsTables() throws Exception {
+        Connection connection = Mockito.mock(Connection.class);
+        Statement statement = Mockito.mock(Statement.class);
+        Mockito.when(connection.createStatement()).thenReturn(statement);
+
+        HashFrequencies.rebuild(JdbcMocks.mockDataSource(connection));
+        InOrder inOrder = Mockito.inOrder(statement);
+        inOrder.verify(statement).executeUpdate("CREATE TABLE class_hash_frequency_new LIKE class_hash_frequency");
+        inOrder.verify(statement).executeUpdate(Mockito.startsWith("INSERT INTO class_hash_frequency_new "));
+        inOrder.verify(statement).executeUpdate("RENAME TABLE class_hash_frequency TO class_hash_frequency_old, "
+                + "class_hash_frequency_new TO class_hash_frequency");
+        inOrder.verify(statement).executeUpdate("DROP TABLE class_hash_frequency_old");
+        Mockito.verify(statement, Mockito.never()).executeUpdate(Mockito.startsWith("TRUNCATE"));
+
+        Mockito.reset(statement);
+        Mockito.when(statement.executeUpdate(Mockito.startsWith("INSERT INTO class_hash_frequency_new ")))
+                .thenThrow(new SQLException("The table is full", "HY000", 1114));
+        HashFrequencies.rebuild(JdbcMocks.mockDataSource(connection));
+        Mockito.verify(statement, Mockito.never()).executeUpdate(Mockito.startsWith("RENAME TABLE"));
+    }
+}
@@ -0,0 +1,128 @@
+import nl.tudelft.cornul11.thesis.corpus.jarfile.InferenceExecutor;
+import nl.tudelft.cornul11.thesis.corpus.util.ConfigurationLoader;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class InferenceExecutorTest {
+    /**
+     * Test that submitting more tasks than the queue capacity blocks until tasks complete, and that every task still
+     * completes
+     */
+    @Test
+    public void testSubmitBlocksAtCapacity() throws Exception {
+        try (InferenceExecutor executor = new InferenceExecutor(2, 2)) {
+            CompletionService<Integer> completionService = executor.newCompletionService();
+            CountDownLatch release = new CountDownLatch(1);
+            AtomicInteger submitted = new AtomicInteger();
+
+            Thread submitter = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 10; i++) {
+                        int value = i;
+                        executor.submit(completionService, () -> {
+                            release.await();
+                            return value;
+                        });
+                        submitted.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            submitter.start();
+
+            // the two permits are taken by tasks waiting on the latch, the third submission cannot get one
+            long deadline = System.currentTimeMillis() + 5000;
+            while (submitter.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(Thread.State.WAITING, submitter.getState(), "The submitter should block at capacity");
+            assertEquals(2, submitted.get(), "Only as many tasks as the capacity should be submitted");
+
+            release.countDown();
+            int sum = 0;
+            for (int i = 0; i < 10; i++) {
+                Future<Integer> future = completionService.poll(10, TimeUnit.SECONDS);
+                assertTrue(future != null, "Every task should complete");
+                sum += future.get();
+            }
+            submitter.join(10000);
+            assertEquals(10, submitted.get());
+            assertEquals(45, sum);
+        }
+    }
+
+    /**
+     * Test that results completing out of order can be put back in the order of submission, as JarSignatureMapper does
+     */
+    @Test
+    public void testResultsMappedBackToSubmissionOrder() throws Exception {
+        try (InferenceExecutor executor = new InferenceExecutor(4, 3)) {
+            CompletionService<Integer> completionService = executor.newCompletionService();
+            Map<Future<Integer>, Integer> positions = new HashMap<>();
+            List<Integer> results = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                int value = i;
+                // the first tasks take the longest, so they complete last
+                positions.put(executor.submit(completionService, () -> {
+                    Thread.sleep((20 - value) % 5);
+                    return value * value;
+                }), i);
+                results.add(null);
+            }
+            for (int i = 0; i < positions.size(); i++) {
+                Future<Integer> future = completionService.take();
+                results.set(positions.get(future), future.get());
+            }
+            for (int i = 0; i < 20; i++) {
+                assertEquals(i * i, results.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testConfigureAndShutdown() throws Exception {
+        ConfigurationLoader config = Mockito.mock(ConfigurationLoader.class);
+        Mockito.when(config.getInferenceThreads()).thenReturn(2);
+        Mockito.when(config.getInferenceQueueCapacity()).thenReturn(4);
+
+        try {
+            InferenceExecutor configured = InferenceExecutor.configure(config);
+            assertSame(configured, InferenceExecutor.getInstance(), "The configured executor should be the shared one");
+
+            InferenceExecutor reconfigured = InferenceExecutor.configure(config);
+            assertNotSame(configured, reconfigured);
+            assertSame(reconfigured, InferenceExecutor.getInstance());
+            CompletionService<Integer> previousService = configured.newCompletionService();
+            assertThrows(RejectedExecutionException.class, () -> configured.submit(previousService, () -> 1),
+                    "The previous executor should be shut down");
+
+            CompletionService<Integer> completionService = reconfigured.newCompletionService();
+            reconfigured.submit(completionService, () -> 1);
+            assertEquals(1, completionService.take().get());
+
+            InferenceExecutor.shutdown();
+            assertThrows(RejectedExecutionException.class, () -> reconfigured.submit(completionService, () -> 1));
+            assertNotSame(reconfigured, InferenceExecutor.getInstance(), "A new executor should be started after a shutdown");
+        } finally {
+            InferenceExecutor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+import nl.tudelft.cornul11.thesis.corpus.database.SignatureDAO;
+import nl.tudelft.cornul11.thesis.corpus.jarfile.FileAnalyzer;
+import nl.tudelft.cornul11.thesis.corpus.jarfile.IngestionJournal;
+import nl.tudelft.cornul11.thesis.corpus.util.ConfigurationLoader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IngestionJournalTest {
+    @TempDir
+    Path directory;
+
+    /**
+     * Test that a restarted run skips the committed and skipped JARs and retries the failed ones
+     */
+    @Test
+    public void testResume() throws Exception {
+        Path journalPath = directory.resolve("journal.log");
+        try (IngestionJournal journal = IngestionJournal.open(journalPath)) {
+            journal.recordCommitted("/m2/a/1.0/a-1.0.jar");
+            journal.recordSkipped("/m2/b/1.0/b-1.0.jar", "already indexed");
+            journal.recordFailed("/m2/c/1.0/c-1.0.jar", "java.io.IOException: broken\ttab");
+            assertTrue(journal.isDone(Paths.get("/m2/a/1.0/a-1.0.jar")));
+        }
+
+        try (IngestionJournal journal = IngestionJournal.open(journalPath)) {
+            assertTrue(journal.isDone(Paths.get("/m2/a/1.0/a-1.0.jar")));
+            assertTrue(journal.isDone(Paths.get("/m2/b/1.0/b-1.0.jar")));
+            assertFalse(journal.isDone(Paths.get("/m2/c/1.0/c-1.0.jar")));
+            assertEquals(2, journal.getDoneCount());
+        }
+    }
+
+    /**
+     * Test that a line torn by a crash is ignored and does not corrupt the next record
+     */
+    @Test
+    public void testTornTail() throws Exception {
+        Path journalPath = directory.resolve("journal.log");
+        Files.writeString(journalPath, "COMMITTED\t/m2/a/1.0/a-1.0.jar\nCOMMITTED\t/m2/b/1.0/b-1.0", StandardCharsets.UTF_8);
+
+        try (IngestionJournal journal = IngestionJournal.open(journalPath)) {
+            assertTrue(journal.isDone(Paths.get("/m2/a/1.0/a-1.0.jar")));
+            assertFalse(journal.isDone(Paths.get("/m2/b/1.0/b-1.0")));
+            journal.recordCommitted("/m2/b/1.0/b-1.0.jar");
+        }
+
+        try (IngestionJournal journal = IngestionJournal.open(journalPath)) {
+            assertTrue(journal.isDone(Paths.get("/m2/b/1.0/b-1.0.jar")));
+            assertFalse(journal.isDone(Paths.get("/m2/b/1.0/b-1.0")));
+            assertEquals(2, journal.getDoneCount());
+        }
+        // the torn record was cut off
+        assertEquals(2, Files.readAllLines(journalPath).size());
+    }
+
+    /**
+     * Test that a JAR whose transaction fails is journaled as failed, and thus retried, instead of committed
+     */
+    @Test
+    public void testFailedCommitIsNotJournaledAsCommitted() throws Exception {
+        SignatureDAO signatureDao = Mockito.mock(SignatureDAO.class);
+        ConfigurationLoader config = Mockito.mock(ConfigurationLoader.class);
+        Mockito.when(config.getBasePath()).thenReturn(directory.toString());
+        Mockito.when(signatureDao.insertSignatures(Mockito.anyList(), Mockito.anyLong(), Mockito.anyLong(), Mockito.anyLong(), Mockito.anyBoolean(), Mockito.anyLong()))
+                .thenThrow(new RuntimeException("Lock wait timeout exceeded"))
+                .thenReturn(1);
+
+        Path jar = directory.resolve("org/example/a/1.0/a-1.0.jar");
+        Files.createDirectories(jar.getParent());
+        Files.copy(Paths.get(getClass().getClassLoader().getResource("jars/jsr305-2.0.1.jar").getPath()), jar);
+        Path journalPath = directory.resolve("journal.log");
+
+        FileAnalyzer fileAnalyzer = new FileAnalyzer(signatureDao, config, null);
+        try (IngestionJournal journal = IngestionJournal.open(journalPath)) {
+            fileAnalyzer.setJournal(journal);
+            assertEquals(0, fileAnalyzer.processJarFile(jar));
+            assertFalse(journal.isDone(jar));
+        }
+        assertTrue(Files.readString(journalPath).startsWith("FAILED\t" + jar));
+
+        try (IngestionJournal journal = IngestionJournal.open(journalPath)) {
+            fileAnalyzer.setJournal(journal);
+            assertEquals(1, fileAnalyzer.processJarFile(jar));
+        }
+        try (IngestionJournal journal = IngestionJournal.open(journalPath)) {
+            assertTrue(journal.isDone(jar));
+        }
+    }
+}
@@ -0,0 +1,41 @@
+import nl.tudelft.cornul11.thesis.corpus.jarfile.JarProfile;
+import nl.tudelft.cornul11.thesis.corpus.jarfile.MappedZipFile;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class JarProfileTest {
+    /**
+     * Test that uber JARs are recognised from the central directory alone
+     */
+    @Test
+    public void testProfileFromCentralDirectory() throws Exception {
+        JarProfile uberJar = profile("jars/ikasan-uber-spec-3.2.3.jar");
+        assertTrue(uberJar.isUberJar());
+        assertTrue(uberJar.getSubmoduleCount() > 1);
+        assertEquals(JarProfile.Decision.LIBRARY_ONLY, uberJar.decide(true));
+        assertEquals(JarProfile.Decision.EXTRACT, uberJar.decide(false));
+
+        JarProfile multiRelease = profile("jars/junit-platform-commons-1.9.3.jar");
+        assertTrue(multiRelease.isMultiRelease());
+        assertFalse(multiRelease.isUberJar());
+
+        JarProfile library = profile("jars/jsr305-2.0.1.jar");
+        assertFalse(library.isUberJar());
+        assertTrue(library.getClassCount() > 0);
+        assertTrue(library.getCreationDate() > 0);
+        assertEquals(JarProfile.Decision.EXTRACT, library.decide(true));
+    }
+
+    private JarProfile profile(String path) throws Exception {
+        Path jarPath = Paths.get(getClass().getClassLoader().getResource(path).getPath());
+        try (MappedZipFile jarFile = new MappedZipFile(jarPath)) {
+            return JarProfile.of(jarFile);
+        }
+    }
+}
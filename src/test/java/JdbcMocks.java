@@ -0,0 +1,79 @@
+import com.zaxxer.hikari.HikariDataSource;
+import org.mockito.Mockito;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Mocks of the JDBC objects shared by the tests of the DAOs.
+ */
+public class JdbcMocks {
+    public interface BatchConsumer {
+        void accept(List<long[]> rows);
+    }
+
+    private JdbcMocks() {
+    }
+
+    public static HikariDataSource mockDataSource(Connection connection) throws SQLException {
+        HikariDataSource ds = Mockito.mock(HikariDataSource.class);
+        Mockito.when(ds.getConnection()).thenReturn(connection);
+        return ds;
+    }
+
+    /**
+     * Returns a result set over the rows, whose values are read by position (from 1) or by the given column labels.
+     */
+    public static ResultSet mockResultSet(List<Object[]> rows, String... labels) throws SQLException {
+        ResultSet resultSet = Mockito.mock(ResultSet.class);
+        int[] row = {-1};
+        List<String> columns = List.of(labels);
+        Mockito.when(resultSet.next()).thenAnswer(invocation -> ++row[0] < rows.size());
+        Mockito.when(resultSet.getLong(Mockito.anyInt())).thenAnswer(invocation ->
+                ((Number) rows.get(row[0])[invocation.<Integer>getArgument(0) - 1]).longValue());
+        Mockito.when(resultSet.getInt(Mockito.anyInt())).thenAnswer(invocation ->
+                ((Number) rows.get(row[0])[invocation.<Integer>getArgument(0) - 1]).intValue());
+        Mockito.when(resultSet.getLong(Mockito.anyString())).thenAnswer(invocation ->
+                ((Number) rows.get(row[0])[columns.indexOf(invocation.<String>getArgument(0))]).longValue());
+        Mockito.when(resultSet.getInt(Mockito.anyString())).thenAnswer(invocation ->
+                ((Number) rows.get(row[0])[columns.indexOf(invocation.<String>getArgument(0))]).intValue());
+        Mockito.when(resultSet.getString(Mockito.anyString())).thenAnswer(invocation ->
+                (String) rows.get(row[0])[columns.indexOf(invocation.<String>getArgument(0))]);
+        return resultSet;
+    }
+
+    /**
+     * Returns a prepared statement whose parameters, numbered from 1, are collected in a row on addBatch, and whose
+     * pending rows are passed to the consumer on executeBatch.
+     */
+    public static PreparedStatement mockBatchStatement(BatchConsumer consumer) throws SQLException {
+        PreparedStatement statement = Mockito.mock(PreparedStatement.class);
+        long[] parameters = new long[3];
+        int[] numParameters = {0};
+        List<long[]> pendingRows = new ArrayList<>();
+        Mockito.doAnswer(invocation -> {
+            numParameters[0] = Math.max(numParameters[0], invocation.<Integer>getArgument(0));
+            parameters[invocation.<Integer>getArgument(0) - 1] = invocation.<Long>getArgument(1);
+            return null;
+        }).when(statement).setLong(Mockito.anyInt(), Mockito.anyLong());
+        Mockito.doAnswer(invocation -> {
+            numParameters[0] = Math.max(numParameters[0], invocation.<Integer>getArgument(0));
+            parameters[invocation.<Integer>getArgument(0) - 1] = invocation.<Integer>getArgument(1);
+            return null;
+        }).when(statement).setInt(Mockito.anyInt(), Mockito.anyInt());
+        Mockito.doAnswer(invocation -> pendingRows.add(Arrays.copyOf(parameters, numParameters[0])))
+                .when(statement).addBatch();
+        Mockito.when(statement.executeBatch()).thenAnswer(invocation -> {
+            consumer.accept(new ArrayList<>(pendingRows));
+            int[] updateCounts = new int[pendingRows.size()];
+            pendingRows.clear();
+            return updateCounts;
+        });
+        return statement;
+    }
+}
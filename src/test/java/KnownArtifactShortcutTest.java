@@ -0,0 +1,59 @@
+import nl.tudelft.cornul11.thesis.corpus.database.SignatureDAO;
+import nl.tudelft.cornul11.thesis.corpus.database.SignatureDAOImpl.LibraryCandidate;
+import nl.tudelft.cornul11.thesis.corpus.file.ClassFileInfo;
+import nl.tudelft.cornul11.thesis.corpus.jarfile.JarHandler;
+import nl.tudelft.cornul11.thesis.corpus.jarfile.JarProcessingUtils;
+import nl.tudelft.cornul11.thesis.corpus.jarfile.JarSignatureMapper;
+import nl.tudelft.cornul11.thesis.corpus.util.ConfigurationLoader;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class KnownArtifactShortcutTest {
+    private static final String JAR_FILE_PATH = "jars/jsr305-2.0.1.jar";
+
+    /**
+     * Test that a JAR indexed in the corpus is recognised by its jar hash and CRC, both when it is read from a file
+     * and from a stream, without matching its classes
+     */
+    @Test
+    public void testKnownArtifactSkipsClassMatching() throws Exception {
+        Path jarFilePath = Paths.get(getClass().getClassLoader().getResource(JAR_FILE_PATH).getPath());
+        JarHandler jarHandler = new JarHandler(jarFilePath, new ConcurrentLinkedDeque<>(), new ConcurrentLinkedDeque<>(),
+                mock(ConfigurationLoader.class));
+        List<ClassFileInfo> signatures = jarHandler.extractSignatures();
+        long jarHash = JarProcessingUtils.computeJarHash(signatures);
+        int uniqueSignatures = (int) signatures.stream().mapToLong(ClassFileInfo::getHashCode).distinct().count();
+
+        SignatureDAO signatureDao = mock(SignatureDAO.class);
+        when(signatureDao.findLibrariesByJarHash(jarHash, jarHandler.getJarCrc())).thenAnswer(invocation -> List.of(
+                new LibraryCandidate().setLibraryId(1).setGroupId("com.google.code.findbugs").setArtifactId("jsr305")
+                        .setVersion("2.0.1").setExpectedNumberOfTotalClasses(uniqueSignatures),
+                new LibraryCandidate().setLibraryId(2).setGroupId("com.google.code.findbugs").setArtifactId("jsr305")
+                        .setVersion("2.0.1-copy").setExpectedNumberOfTotalClasses(uniqueSignatures)));
+        JarSignatureMapper jarSignatureMapper = new JarSignatureMapper(signatureDao);
+
+        for (List<LibraryCandidate> candidates : List.of(jarSignatureMapper.inferJarFile(jarFilePath),
+                jarSignatureMapper.inferJarFileMultithreadedProcess(jarFilePath))) {
+            assertEquals(1, candidates.size());
+            LibraryCandidate artifact = candidates.get(0);
+            assertEquals("com.google.code.findbugs:jsr305:2.0.1", artifact.getGAV());
+            assertTrue(artifact.isSelf());
+            assertTrue(artifact.isPerfectMatch());
+            assertEquals(1.0, artifact.getIncludedRatio());
+            assertEquals(List.of("com.google.code.findbugs:jsr305:2.0.1-copy"), artifact.getAlternativeVersions());
+        }
+        verify(signatureDao, never()).returnTopLibraryMatches(any());
+    }
+}
@@ -0,0 +1,156 @@
+import nl.tudelft.cornul11.thesis.corpus.database.SignatureDAO;
+import nl.tudelft.cornul11.thesis.corpus.jarfile.FileAnalyzer;
+import nl.tudelft.cornul11.thesis.corpus.jarfile.KnownArtifacts;
+import nl.tudelft.cornul11.thesis.corpus.jarfile.MappedZipFile;
+import nl.tudelft.cornul11.thesis.corpus.util.ConfigurationLoader;
+import nl.tudelft.cornul11.thesis.corpus.util.LongHashSet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class KnownArtifactsTest {
+    private static final String SHA1 = "2ef7e17b6eb50a2fc5d5bc5de0ab5a5d2a4d5c3e";
+
+    @TempDir
+    Path repository;
+
+    /**
+     * Test that the sidecar checksum is preferred and that the central directory digest is used without one
+     */
+    @Test
+    public void testFingerprint() throws Exception {
+        Path jar = copyTo("com/google/code/findbugs/jsr305/2.0.1/jsr305-2.0.1.jar");
+        long digest;
+        try (MappedZipFile jarFile = new MappedZipFile(jar)) {
+            digest = KnownArtifacts.fingerprint(jarFile);
+        }
+        assertEquals(digest, KnownArtifacts.fingerprint(jar));
+        assertEquals(digest, KnownArtifacts.fingerprint(copyTo("org/example/jsr305-copy/1.0/jsr305-copy-1.0.jar")));
+
+        Files.writeString(jar.resolveSibling("jsr305-2.0.1.jar.sha1"), SHA1 + "  jsr305-2.0.1.jar\n");
+        assertEquals(Long.parseUnsignedLong(SHA1.substring(0, 16), 16), KnownArtifacts.fingerprint(jar));
+
+        Files.writeString(jar.resolveSibling("jsr305-2.0.1.jar.sha1"), "<html>not found</html>");
+        assertEquals(digest, KnownArtifacts.fingerprint(jar));
+    }
+
+    /**
+     * Test that indexed coordinates and identical copies are skipped before extraction
+     */
+    @Test
+    public void testSkipIndexedArtifacts() throws Exception {
+        SignatureDAO signatureDao = Mockito.mock(SignatureDAO.class);
+        ConfigurationLoader config = Mockito.mock(ConfigurationLoader.class);
+        Mockito.when(config.getBasePath()).thenReturn(repository.toString());
+        Mockito.doAnswer(invocation -> {
+            SignatureDAO.IndexedArtifactConsumer consumer = invocation.getArgument(0);
+            consumer.accept("org.example", "indexed", "1.0", KnownArtifacts.UNKNOWN_FINGERPRINT);
+            return null;
+        }).when(signatureDao).forEachIndexedArtifact(Mockito.any());
+        Mockito.when(signatureDao.insertSignatures(Mockito.anyList(), Mockito.anyLong(), Mockito.anyLong(), Mockito.anyLong(), Mockito.anyBoolean(), Mockito.anyLong()))
+                .thenReturn(1);
+
+        FileAnalyzer fileAnalyzer = new FileAnalyzer(signatureDao, config, null);
+        fileAnalyzer.loadKnownArtifacts();
+
+        Path original = copyTo("com/google/code/findbugs/jsr305/2.0.1/jsr305-2.0.1.jar");
+        Path relocated = copyTo("org/example/jsr305-copy/1.0/jsr305-copy-1.0.jar");
+        Path indexed = copyTo("org/example/indexed/1.0/indexed-1.0.jar");
+
+        assertNotEquals(0, fileAnalyzer.processJarFile(original));
+        assertEquals(0, fileAnalyzer.processJarFile(relocated));
+        assertEquals(0, fileAnalyzer.processJarFile(indexed));
+
+        long fingerprint = KnownArtifacts.fingerprint(original);
+        Mockito.verify(signatureDao, Mockito.times(1)).insertSignatures(Mockito.anyList(), Mockito.anyLong(),
+                Mockito.anyLong(), Mockito.eq(fingerprint), Mockito.anyBoolean(), Mockito.anyLong());
+        Mockito.verify(signatureDao, Mockito.never()).insertLibrary(Mockito.any(), Mockito.anyLong(), Mockito.anyLong(),
+                Mockito.anyLong(), Mockito.anyBoolean(), Mockito.anyLong());
+    }
+
+    @Test
+    public void testClaimFingerprint() {
+        KnownArtifacts knownArtifacts = new KnownArtifacts(4);
+        assertTrue(knownArtifacts.claimFingerprint(42));
+        assertFalse(knownArtifacts.claimFingerprint(42));
+        // rows without fingerprint are never deduplicated
+        assertTrue(knownArtifacts.claimFingerprint(KnownArtifacts.UNKNOWN_FINGERPRINT));
+        assertTrue(knownArtifacts.claimFingerprint(KnownArtifacts.UNKNOWN_FINGERPRINT));
+        assertFalse(knownArtifacts.isIndexed("org.example", "indexed", "1.0"));
+    }
+
+    /**
+     * Test that the fingerprint of a JAR that failed to commit is released, so that an identical copy is indexed
+     */
+    @Test
+    public void testFailedCommitReleasesFingerprint() throws Exception {
+        SignatureDAO signatureDao = Mockito.mock(SignatureDAO.class);
+        ConfigurationLoader config = Mockito.mock(ConfigurationLoader.class);
+        Mockito.when(config.getBasePath()).thenReturn(repository.toString());
+        Mockito.when(signatureDao.insertSignatures(Mockito.anyList(), Mockito.anyLong(), Mockito.anyLong(), Mockito.anyLong(), Mockito.anyBoolean(), Mockito.anyLong()))
+                .thenThrow(new RuntimeException("Connection reset"))
+                .thenReturn(1);
+
+        FileAnalyzer fileAnalyzer = new FileAnalyzer(signatureDao, config, null);
+        fileAnalyzer.loadKnownArtifacts();
+
+        Path original = copyTo("com/google/code/findbugs/jsr305/2.0.1/jsr305-2.0.1.jar");
+        Path relocated = copyTo("org/example/jsr305-copy/1.0/jsr305-copy-1.0.jar");
+
+        assertEquals(0, fileAnalyzer.processJarFile(original));
+        assertNotEquals(0, fileAnalyzer.processJarFile(relocated));
+        Mockito.verify(signatureDao, Mockito.times(2)).insertSignatures(Mockito.anyList(), Mockito.anyLong(),
+                Mockito.anyLong(), Mockito.anyLong(), Mockito.anyBoolean(), Mockito.anyLong());
+    }
+
+    @Test
+    public void testReleaseFingerprint() {
+        KnownArtifacts knownArtifacts = new KnownArtifacts(4);
+        assertTrue(knownArtifacts.claimFingerprint(42));
+        knownArtifacts.releaseFingerprint(42);
+        assertTrue(knownArtifacts.claimFingerprint(42));
+        assertFalse(knownArtifacts.claimFingerprint(42));
+    }
+
+    /**
+     * Test that the keys colliding with a removed key are still found
+     */
+    @Test
+    public void testLongHashSetRemove() {
+        Random random = new Random(42);
+        LongHashSet set = new LongHashSet(16);
+        Set<Long> expected = new HashSet<>();
+        for (int i = 0; i < 20000; i++) {
+            // a small key range, so that most operations hit present keys and long probe sequences
+            long key = random.nextInt(512) - 8;
+            if (random.nextBoolean()) {
+                assertEquals(expected.add(key), set.add(key));
+            } else {
+                assertEquals(expected.remove(key), set.remove(key));
+            }
+            assertEquals(expected.size(), set.size());
+        }
+        for (long key = -8; key < 504; key++) {
+            assertEquals(expected.contains(key), set.contains(key));
+        }
+    }
+
+    private Path copyTo(String relativePath) throws Exception {
+        Path source = Paths.get(getClass().getClassLoader().getResource("jars/jsr305-2.0.1.jar").getPath());
+        Path target = repository.resolve(relativePath);
+        Files.createDirectories(target.getParent());
+        return Files.copy(source, target);
+    }
+}
@@ -0,0 +1,159 @@
+import nl.tudelft.cornul11.thesis.corpus.database.LibraryGraph;
+import nl.tudelft.cornul11.thesis.corpus.database.LibraryMatcher;
+import nl.tudelft.cornul11.thesis.corpus.database.SignatureDAOImpl.LibraryCandidate;
+import nl.tudelft.cornul11.thesis.corpus.file.ClassFileInfo;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LibraryMatcherTest {
+    private static final List<ClassFileInfo> CLASSES = List.of(
+            new ClassFileInfo("com/app/Main", 1L, 0),
+            new ClassFileInfo("com/app/Util", 2L, 0),
+            new ClassFileInfo("com/app/Config", 3L, 0),
+            new ClassFileInfo("com/app/Service", 4L, 0),
+            new ClassFileInfo("com/app/Model", 5L, 0),
+            new ClassFileInfo("shaded/json/Parser", 10L, 0),
+            new ClassFileInfo("shaded/json/Writer", 11L, 0));
+
+    @Test
+    public void testShadedPackageIsPerfectMatch() {
+        LibraryMatcher matcher = new LibraryMatcher(CLASSES);
+        matcher.addMatch(10L, 1);
+        matcher.addMatch(11L, 1);
+        matcher.addMatch(11L, 1);
+        matcher.addMatch(99L, 1); // not a class of the JAR
+        matcher.addMatch(1L, 2); // a single class is not enough
+
+        List<LibraryCandidate> candidates = rank(matcher);
+
+        assertEquals(1, candidates.size());
+        LibraryCandidate json = candidates.get(0);
+        assertEquals("org.json:json:1", json.getGAV());
+        assertArrayEquals(new long[]{10L, 11L}, json.getHashes());
+        assertFalse(json.isSelf());
+        assertTrue(json.isPerfectMatch());
+    }
+
+    @Test
+    public void testSharedPackageIsNotPerfectMatch() {
+        LibraryMatcher matcher = new LibraryMatcher(CLASSES);
+        matcher.addMatch(10L, 1);
+        matcher.addMatch(11L, 1);
+        for (int packageId = 0; packageId < matcher.getPackageCount(); packageId++) {
+            if (matcher.getPackageHashes(packageId)[0] == 10L) {
+                matcher.addSharedPackage(packageId);
+            }
+        }
+
+        List<LibraryCandidate> candidates = rank(matcher);
+
+        assertEquals(1, candidates.size());
+        assertFalse(candidates.get(0).isPerfectMatch());
+    }
+
+    @Test
+    public void testIdenticalVersionsAreGroupedAsAlternatives() {
+        LibraryMatcher matcher = new LibraryMatcher(CLASSES);
+        for (int libraryId = 1; libraryId <= 3; libraryId++) {
+            matcher.addMatch(10L, libraryId);
+            matcher.addMatch(11L, libraryId);
+        }
+
+        List<LibraryCandidate> candidates = rank(matcher);
+
+        assertEquals(1, candidates.size());
+        assertEquals("org.json:json:1", candidates.get(0).getGAV());
+        assertEquals(List.of("org.json:json:2", "org.json:json:3"), candidates.get(0).getAlternativeVersions());
+        assertTrue(candidates.get(0).isPerfectMatch());
+    }
+
+    /**
+     * Test that the candidates with the same ratio are ranked by the IDF of their matched classes
+     */
+    @Test
+    public void testRarerMatchesRankFirst() {
+        List<ClassFileInfo> classes = List.of(
+                new ClassFileInfo("shaded/common/A", 1L, 0),
+                new ClassFileInfo("shaded/common/B", 2L, 0),
+                new ClassFileInfo("shaded/rare/C", 3L, 0),
+                new ClassFileInfo("shaded/rare/D", 4L, 0));
+        for (boolean weighted : new boolean[]{false, true}) {
+            LibraryMatcher matcher = new LibraryMatcher(classes);
+            if (weighted) {
+                matcher.setHashWeights(new double[]{0.1, 0.1, 5, 5});
+            }
+            matcher.addMatch(1L, 1);
+            matcher.addMatch(2L, 1);
+            matcher.addMatch(3L, 2);
+            matcher.addMatch(4L, 2);
+
+            List<LibraryCandidate> candidates = matcher.selectCandidates();
+            for (LibraryCandidate candidate : candidates) {
+                candidate.setGroupId("org.example")
+                        .setArtifactId("lib" + candidate.getLibraryId())
+                        .setVersion("1")
+                        .setExpectedNumberOfTotalClasses(2);
+            }
+            candidates = matcher.rankCandidates(candidates);
+
+            assertEquals(2, candidates.size());
+            assertEquals(weighted ? "org.example:lib2:1" : "org.example:lib1:1", candidates.get(0).getGAV());
+        }
+    }
+
+    /**
+     * Test that an equivalent library gets the matches of its representative, and that the containment of the class
+     * sets is reported between the ranked candidates
+     */
+    @Test
+    public void testLibraryGraphGroupsEquivalentAndContainedLibraries() {
+        long fullSet = LibraryGraph.classSetHash(new long[]{10L, 11L, 1L, 2L});
+        long jsonSet = LibraryGraph.classSetHash(new long[]{11L, 10L, 11L});
+        assertEquals(fullSet, LibraryGraph.classSetHash(new long[]{1L, 2L, 10L, 11L, 2L}));
+
+        LibraryMatcher matcher = new LibraryMatcher(CLASSES);
+        for (long hash : new long[]{1L, 2L, 10L, 11L}) {
+            matcher.addMatch(hash, 1);
+        }
+        matcher.addMatch(10L, 3);
+        matcher.addMatch(11L, 3);
+        matcher.addEquivalentLibrary(2, 1);
+        matcher.addEquivalentLibrary(4, 5); // the representative has no matches
+
+        List<LibraryCandidate> candidates = matcher.selectCandidates();
+        assertEquals(3, candidates.size());
+        for (LibraryCandidate candidate : candidates) {
+            int libraryId = candidate.getLibraryId();
+            candidate.setGroupId("org.example")
+                    .setArtifactId("lib" + libraryId)
+                    .setVersion("1")
+                    .setExpectedNumberOfTotalClasses(candidate.getHashCount())
+                    .setClassSetHash(libraryId == 3 ? jsonSet : fullSet);
+        }
+        matcher.setContainment(List.of(new long[]{fullSet, jsonSet}));
+        candidates = matcher.rankCandidates(candidates);
+
+        assertEquals(2, candidates.size());
+        assertEquals("org.example:lib1:1", candidates.get(0).getGAV());
+        assertEquals(List.of("org.example:lib2:1"), candidates.get(0).getAlternativeVersions());
+        assertTrue(candidates.get(0).toJSON().contains("\"includes\": [\"org.example:lib3:1\"]"));
+        assertTrue(candidates.get(1).toJSON().contains("\"includedIn\": [\"org.example:lib1:1\"]"));
+    }
+
+    private static List<LibraryCandidate> rank(LibraryMatcher matcher) {
+        List<LibraryCandidate> candidates = matcher.selectCandidates();
+        for (LibraryCandidate candidate : candidates) {
+            candidate.setGroupId("org.json")
+                    .setArtifactId("json")
+                    .setVersion("" + candidate.getLibraryId())
+                    .setExpectedNumberOfTotalClasses(2);
+        }
+        return matcher.rankCandidates(candidates);
+    }
+}
@@ -0,0 +1,99 @@
+import nl.tudelft.cornul11.thesis.corpus.jarfile.MappedZipFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class MappedZipFileTest {
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Test that the entries and their content are the same as read by JarFile
+     */
+    @Test
+    public void testSameEntriesAsJarFile() throws Exception {
+        Path jarFilePath = Paths.get(getClass().getClassLoader().getResource("jars/slf4j-api-2.0.4.jar").getPath());
+        try (JarFile jarFile = new JarFile(jarFilePath.toFile());
+             MappedZipFile zipFile = new MappedZipFile(jarFilePath)) {
+            List<JarEntry> jarEntries = Collections.list(jarFile.entries());
+            assertEquals(jarEntries.size(), zipFile.size());
+            for (int i = 0; i < jarEntries.size(); i++) {
+                JarEntry expected = jarEntries.get(i);
+                MappedZipFile.Entry entry = zipFile.entries().get(i);
+                assertEquals(expected.getName(), entry.getName());
+                assertEquals(expected.getCrc(), entry.getCrc());
+                assertEquals(expected.getSize(), entry.getSize());
+                assertEquals(expected.getTime(), entry.getTime());
+                assertEquals(expected.isDirectory(), entry.isDirectory());
+                try (InputStream inputStream = jarFile.getInputStream(expected)) {
+                    assertArrayEquals(inputStream.readAllBytes(), toBytes(zipFile.getData(entry)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testStoredEntriesAndPrefix() throws Exception {
+        byte[] stored = "stored content".getBytes(StandardCharsets.UTF_8);
+        byte[] deflated = "deflated content, deflated content, deflated content".getBytes(StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(zip)) {
+            ZipEntry storedEntry = new ZipEntry("a/Stored.class");
+            storedEntry.setMethod(ZipEntry.STORED);
+            storedEntry.setSize(stored.length);
+            CRC32 crc = new CRC32();
+            crc.update(stored);
+            storedEntry.setCrc(crc.getValue());
+            out.putNextEntry(storedEntry);
+            out.write(stored);
+            out.putNextEntry(new ZipEntry("a/Deflated.class"));
+            out.write(deflated);
+            out.setComment("archive comment");
+        }
+        // a launcher script in front of the archive, as in executable JARs
+        Path path = tempDir.resolve("prefixed.jar");
+        try (OutputStream out = Files.newOutputStream(path)) {
+            out.write("#!/bin/sh\nexec java -jar \"$0\"\n".getBytes(StandardCharsets.UTF_8));
+            out.write(zip.toByteArray());
+        }
+
+        try (MappedZipFile zipFile = new MappedZipFile(path)) {
+            assertEquals(2, zipFile.size());
+            MappedZipFile.Entry storedEntry = zipFile.entries().get(0);
+            assertEquals(MappedZipFile.STORED, storedEntry.getMethod());
+            assertArrayEquals(stored, toBytes(zipFile.getData(storedEntry)));
+            assertArrayEquals(stored, toBytes(zipFile.getHeapData(storedEntry)));
+            MappedZipFile.Entry deflatedEntry = zipFile.entries().get(1);
+            assertEquals(MappedZipFile.DEFLATED, deflatedEntry.getMethod());
+            assertArrayEquals(deflated, toBytes(zipFile.getData(deflatedEntry)));
+            try (InputStream inputStream = zipFile.getInputStream(deflatedEntry)) {
+                assertArrayEquals(deflated, inputStream.readAllBytes());
+            }
+        }
+    }
+
+    private static byte[] toBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,69 @@
+import nl.tudelft.cornul11.thesis.corpus.file.ClassFileInfo;
+import nl.tudelft.cornul11.thesis.corpus.jarfile.JarSignatureMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class NestedJarTest {
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Test that the classes of STORED and DEFLATED nested JARs are found with their provenance, the same way when the
+     * JAR is read from a file and from a stream
+     */
+    @Test
+    public void testNestedJarsWithProvenance() throws Exception {
+        Path outerJar = tempDir.resolve("app.jar");
+        byte[] jsr305 = Files.readAllBytes(getJarPath("jars/jsr305-2.0.1.jar"));
+        byte[] slf4j = Files.readAllBytes(getJarPath("jars/slf4j-api-2.0.4.jar"));
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(outerJar))) {
+            ZipEntry stored = new ZipEntry("BOOT-INF/lib/jsr305-2.0.1.jar");
+            stored.setMethod(ZipEntry.STORED);
+            stored.setSize(jsr305.length);
+            CRC32 crc = new CRC32();
+            crc.update(jsr305);
+            stored.setCrc(crc.getValue());
+            out.putNextEntry(stored);
+            out.write(jsr305);
+            out.putNextEntry(new ZipEntry("WEB-INF/lib/slf4j-api-2.0.4.jar"));
+            out.write(slf4j);
+        }
+
+        List<ClassFileInfo> mapped = JarSignatureMapper.inferStandaloneJar(outerJar);
+        List<ClassFileInfo> streamed;
+        try (InputStream inputStream = Files.newInputStream(outerJar)) {
+            streamed = JarSignatureMapper.getFileSignatures(inputStream);
+        }
+
+        long jsr305Classes = JarSignatureMapper.inferStandaloneJar(getJarPath("jars/jsr305-2.0.1.jar")).size();
+        long slf4jClasses = JarSignatureMapper.inferStandaloneJar(getJarPath("jars/slf4j-api-2.0.4.jar")).size();
+        assertEquals(jsr305Classes, mapped.stream().filter(c -> "BOOT-INF/lib/jsr305-2.0.1.jar".equals(c.getNestedPath())).count());
+        assertEquals(slf4jClasses, mapped.stream().filter(c -> "WEB-INF/lib/slf4j-api-2.0.4.jar".equals(c.getNestedPath())).count());
+        assertEquals(jsr305Classes + slf4jClasses, mapped.size());
+
+        assertEquals(mapped.size(), streamed.size());
+        for (int i = 0; i < mapped.size(); i++) {
+            assertEquals(mapped.get(i).getClassName(), streamed.get(i).getClassName());
+            assertEquals(mapped.get(i).getHashCode(), streamed.get(i).getHashCode());
+            assertEquals(mapped.get(i).getNestedPath(), streamed.get(i).getNestedPath());
+        }
+
+        assertNull(JarSignatureMapper.inferStandaloneJar(getJarPath("jars/jsr305-2.0.1.jar")).get(0).getNestedPath());
+    }
+
+    private Path getJarPath(String path) {
+        return Paths.get(getClass().getClassLoader().getResource(path).getPath());
+    }
+}
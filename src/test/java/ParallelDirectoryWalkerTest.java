@@ -0,0 +1,71 @@
+import nl.tudelft.cornul11.thesis.corpus.file.ParallelDirectoryWalker;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ParallelDirectoryWalkerTest {
+    private static final Path END = Paths.get("");
+
+    @TempDir
+    Path repository;
+
+    /**
+     * Test that all JARs of the tree are queued through a queue much smaller than the tree, except hidden ones and the
+     * ones processed before
+     */
+    @Test
+    public void testWalk() throws Exception {
+        Set<Path> expected = new HashSet<>();
+        for (int group = 0; group < 20; group++) {
+            for (int version = 0; version < 5; version++) {
+                Path directory = repository.resolve("org/example" + group + "/artifact/1." + version);
+                Files.createDirectories(directory);
+                Path jar = Files.createFile(directory.resolve("artifact-1." + version + ".jar"));
+                Files.createFile(directory.resolve("artifact-1." + version + ".jar.sha1"));
+                Files.createFile(directory.resolve("artifact-1." + version + ".pom"));
+                expected.add(jar);
+            }
+            Files.createFile(repository.resolve("org/example" + group + "/artifact/maven-metadata.xml"));
+        }
+        // artifact directories may look like file names
+        Path dottedDirectory = Files.createDirectories(repository.resolve("org/glassfish/jakarta.json/2.0.1"));
+        expected.add(Files.createFile(dottedDirectory.resolve("jakarta.json-2.0.1.jar")));
+        Path hiddenDirectory = Files.createDirectories(repository.resolve(".cache/org/hidden/1.0"));
+        Files.createFile(hiddenDirectory.resolve("hidden-1.0.jar"));
+        Path processed = Files.createDirectories(repository.resolve("org/processed/1.0")).resolve("processed-1.0.jar");
+        Files.createFile(processed);
+
+        BlockingQueue<Path> queue = new ArrayBlockingQueue<>(2);
+        Set<Path> queued = new HashSet<>();
+        Thread consumer = new Thread(() -> {
+            try {
+                Path file;
+                while (!(file = queue.take()).equals(END)) {
+                    queued.add(file);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        consumer.start();
+
+        ParallelDirectoryWalker walker = new ParallelDirectoryWalker(queue, repository, 4);
+        walker.setAlreadyProcessed(processed::equals);
+        walker.walk();
+        queue.put(END);
+        consumer.join();
+
+        assertEquals(expected, queued);
+        assertEquals(expected.size(), walker.getVisitedFilesCount());
+        assertEquals(1, walker.getSkippedFilesCount());
+    }
+}
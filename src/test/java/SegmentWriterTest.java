@@ -0,0 +1,107 @@
+import nl.tudelft.cornul11.thesis.corpus.database.BulkLoader;
+import nl.tudelft.cornul11.thesis.corpus.file.ClassFileInfo;
+import nl.tudelft.cornul11.thesis.corpus.jarfile.SegmentWriter;
+import nl.tudelft.cornul11.thesis.corpus.model.ExtractedLibrary;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SegmentWriterTest {
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Test that the libraries are grouped into segments of at least the given number of rows, with consecutive ids
+     * after the largest one in the database, and that each loaded segment is marked and its libraries committed
+     */
+    @Test
+    public void testSegmentsAreWrittenAndLoaded() throws Exception {
+        BulkLoader bulkLoader = mockBulkLoader(10);
+        List<String> committed = new ArrayList<>();
+        SegmentWriter segmentWriter = new SegmentWriter(tempDir, bulkLoader, 5, library -> committed.add(library.getJarPath()));
+        for (int i = 1; i <= 3; i++) {
+            segmentWriter.submit(library(i));
+        }
+        segmentWriter.close();
+
+        assertEquals(List.of("/repo/library-1.jar", "/repo/library-2.jar", "/repo/library-3.jar"), committed);
+        Mockito.verify(bulkLoader).loadSegment(tempDir.resolve("segment-000000.libraries.tsv"),
+                tempDir.resolve("segment-000000.signatures.tsv"), 11, 12, false);
+        Mockito.verify(bulkLoader).loadSegment(tempDir.resolve("segment-000001.libraries.tsv"),
+                tempDir.resolve("segment-000001.signatures.tsv"), 13, 13, false);
+
+        assertEquals(List.of("#libraries 11 12", "/repo/library-1.jar", "/repo/library-2.jar"),
+                Files.readAllLines(tempDir.resolve("segment-000000.paths")));
+        List<String> libraryRows = Files.readAllLines(tempDir.resolve("segment-000000.libraries.tsv"));
+        assertEquals(2, libraryRows.size());
+        assertTrue(libraryRows.get(0).startsWith("11\torg.example\tlibrary\t1\t"));
+        // sorted by class hash within each library
+        assertEquals(List.of("11\t1\t1", "11\t100\t1", "12\t2\t2", "12\t200\t2"),
+                Files.readAllLines(tempDir.resolve("segment-000000.signatures.tsv")));
+        assertTrue(Files.exists(tempDir.resolve("segment-000000.loaded")));
+        assertTrue(Files.exists(tempDir.resolve("segment-000001.loaded")));
+    }
+
+    /**
+     * Test that on startup a complete segment that failed to load is reloaded, its JARs are not parsed again, and the
+     * ids and segment numbers continue after it, while the JARs of a partially written segment are parsed again
+     */
+    @Test
+    public void testRecoverSegments() throws Exception {
+        BulkLoader failingLoader = mockBulkLoader(0);
+        Mockito.doThrow(new SQLException("Lock wait timeout exceeded", "HY000", 1205)).when(failingLoader)
+                .loadSegment(Mockito.any(), Mockito.any(), Mockito.anyInt(), Mockito.anyInt(), Mockito.anyBoolean());
+        List<String> committed = new ArrayList<>();
+        SegmentWriter segmentWriter = new SegmentWriter(tempDir, failingLoader, 5, library -> committed.add(library.getJarPath()));
+        segmentWriter.submit(library(1));
+        segmentWriter.submit(library(2));
+        segmentWriter.close();
+        assertTrue(committed.isEmpty());
+        assertFalse(Files.exists(tempDir.resolve("segment-000000.loaded")));
+
+        // a run interrupted while writing the next segment, before its paths file was renamed into place
+        Files.writeString(tempDir.resolve("segment-000001.libraries.tsv"), "3\torg.example\tlibrary\t3\n");
+        Files.writeString(tempDir.resolve("segment-000001.paths.tmp"), "#libraries 3 3\n/repo/library-3.jar\n");
+
+        BulkLoader bulkLoader = mockBulkLoader(0);
+        segmentWriter = new SegmentWriter(tempDir, bulkLoader, 5, library -> committed.add(library.getJarPath()));
+        Mockito.verify(bulkLoader).loadSegment(tempDir.resolve("segment-000000.libraries.tsv"),
+                tempDir.resolve("segment-000000.signatures.tsv"), 1, 2, true);
+        assertTrue(Files.exists(tempDir.resolve("segment-000000.loaded")));
+        assertTrue(segmentWriter.isWritten("/repo/library-1.jar"));
+        assertTrue(segmentWriter.isWritten("/repo/library-2.jar"));
+        assertFalse(segmentWriter.isWritten("/repo/library-3.jar"));
+
+        segmentWriter.submit(library(3));
+        segmentWriter.close();
+        Mockito.verify(bulkLoader).loadSegment(tempDir.resolve("segment-000001.libraries.tsv"),
+                tempDir.resolve("segment-000001.signatures.tsv"), 3, 3, false);
+        assertEquals(List.of("#libraries 3 3", "/repo/library-3.jar"),
+                Files.readAllLines(tempDir.resolve("segment-000001.paths")));
+        assertEquals(List.of("/repo/library-3.jar"), committed);
+    }
+
+    private static BulkLoader mockBulkLoader(int maxLibraryId) throws SQLException {
+        BulkLoader bulkLoader = Mockito.mock(BulkLoader.class);
+        Mockito.when(bulkLoader.getMaxLibraryId()).thenReturn(maxLibraryId);
+        return bulkLoader;
+    }
+
+    /**
+     * Returns a library with two classes, three rows with its library row.
+     */
+    private static ExtractedLibrary library(int i) {
+        List<ClassFileInfo> classFileInfos = List.of(new ClassFileInfo("a/B.class", 100L * i, i), new ClassFileInfo("a/C.class", i, i));
+        return new ExtractedLibrary("/repo/library-" + i + ".jar", "org.example", "library", Integer.toString(i), i, i, 0, false, classFileInfos);
+    }
+}
@@ -0,0 +1,241 @@
+import nl.tudelft.cornul11.thesis.corpus.database.HashFrequencies;
+import nl.tudelft.cornul11.thesis.corpus.database.LibraryGraph;
+import nl.tudelft.cornul11.thesis.corpus.database.SignatureDAOImpl;
+import nl.tudelft.cornul11.thesis.corpus.database.SignatureDAOImpl.LibraryCandidate;
+import nl.tudelft.cornul11.thesis.corpus.file.ClassFileInfo;
+import nl.tudelft.cornul11.thesis.corpus.model.Signature;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SignatureDAOImplTest {
+    private static final List<Signature> SIGNATURES = List.of(
+            new Signature(0, "a/B.class", 1, 10, "org.example", "library", "1.0"),
+            new Signature(0, "a/C.class", 2, 20, "org.example", "library", "1.0"));
+
+    /**
+     * Test that a deadlock in the signature inserts reaches the retry loop, and that the transaction is then committed
+     */
+    @Test
+    public void testDeadlockIsRetried() throws Exception {
+        AtomicInteger signatureBatches = new AtomicInteger();
+        Connection connection = mockConnection(statement -> {
+            if (signatureBatches.getAndIncrement() == 0) {
+                throw new SQLTransactionRollbackException("Deadlock found when trying to get lock", "40001", 1213);
+            }
+            return new int[]{1, 1};
+        });
+        SignatureDAOImpl signatureDao = new SignatureDAOImpl(JdbcMocks.mockDataSource(connection), "file", () -> null,
+                new HashFrequencies(), new LibraryGraph());
+
+        assertEquals(4, signatureDao.insertSignatures(SIGNATURES, 1, 2, 3, false, 0));
+        Mockito.verify(connection, Mockito.times(1)).commit();
+        assertEquals(2, signatureBatches.get());
+    }
+
+    /**
+     * Test that an error other than a deadlock is not swallowed, so that the caller does not report the JAR as committed
+     */
+    @Test
+    public void testFailedInsertThrows() throws Exception {
+        Connection connection = mockConnection(statement -> {
+            throw new SQLException("Data too long for column", "22001", 1406);
+        });
+        SignatureDAOImpl signatureDao = new SignatureDAOImpl(JdbcMocks.mockDataSource(connection), "file", () -> null,
+                new HashFrequencies(), new LibraryGraph());
+
+        assertThrows(RuntimeException.class, () -> signatureDao.insertSignatures(SIGNATURES, 1, 2, 3, false, 0));
+        Mockito.verify(connection, Mockito.never()).commit();
+    }
+
+    /**
+     * Test that the class hash frequencies are only upserted when the top matches query uses them
+     */
+    @Test
+    public void testHashFrequenciesOnlyUpdatedWhenEnabled() throws Exception {
+        HashFrequencies hashFrequencies = new HashFrequencies();
+        Connection connection = mockConnection(statement -> new int[]{1, 1});
+        SignatureDAOImpl signatureDao = new SignatureDAOImpl(JdbcMocks.mockDataSource(connection), "file", () -> null,
+                hashFrequencies, new LibraryGraph());
+
+        signatureDao.insertSignatures(SIGNATURES, 1, 2, 3, false, 0);
+        Mockito.verify(connection, Mockito.never()).prepareStatement(Mockito.contains("class_hash_frequency"));
+
+        hashFrequencies.configure(0, true);
+        signatureDao.insertSignatures(SIGNATURES, 1, 2, 3, false, 0);
+        Mockito.verify(connection, Mockito.times(1)).prepareStatement(Mockito.contains("class_hash_frequency"));
+    }
+
+    /**
+     * Test that a deadlock in the class dictionary upserts of the "dictionary" mode is retried too
+     */
+    @Test
+    public void testDictionaryDeadlockIsRetried() throws Exception {
+        Connection connection = mockConnection(statement -> new int[]{1, 1});
+        Statement statement = Mockito.mock(Statement.class);
+        ResultSet noClasses = Mockito.mock(ResultSet.class);
+        Mockito.when(connection.createStatement()).thenReturn(statement);
+        Mockito.when(statement.executeQuery(Mockito.anyString())).thenReturn(noClasses);
+        AtomicInteger classInserts = new AtomicInteger();
+        PreparedStatement classesStatement = Mockito.mock(PreparedStatement.class);
+        Mockito.when(classesStatement.executeBatch()).thenAnswer(invocation -> {
+            if (classInserts.getAndIncrement() == 0) {
+                throw new SQLTransactionRollbackException("Deadlock found when trying to get lock", "40001", 1213);
+            }
+            return new int[]{1, 1};
+        });
+        Mockito.doReturn(classesStatement).when(connection).prepareStatement(Mockito.startsWith("INSERT IGNORE INTO classes"));
+        SignatureDAOImpl signatureDao = new SignatureDAOImpl(JdbcMocks.mockDataSource(connection), "dictionary", () -> null,
+                new HashFrequencies(), new LibraryGraph());
+
+        signatureDao.insertSignatures(SIGNATURES, 1, 2, 3, false, 0);
+        Mockito.verify(connection, Mockito.times(1)).commit();
+        assertEquals(2, classInserts.get());
+    }
+
+    /**
+     * Test that a library is still a candidate when it only contains more than half of the JAR thanks to the classes
+     * of too many libraries, which are left out of the aggregation
+     */
+    @Test
+    public void testCommonHashesCountTowardsMajority() throws Exception {
+        List<ClassFileInfo> signatures = new ArrayList<>();
+        for (long hash = 1; hash <= 10; hash++) {
+            signatures.add(new ClassFileInfo("com/google/common/C" + hash + ".class", hash, hash));
+        }
+        // the shaded library has 2 rare classes and 6 common ones, the other library only 3 rare classes
+        Map<Integer, Set<Long>> libraries = Map.of(
+                1, Set.of(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L),
+                2, Set.of(1L, 2L, 9L));
+        Map<Long, Integer> libraryCounts = Map.of(3L, 5, 4L, 5, 5L, 5, 6L, 5, 7L, 5, 8L, 5);
+        HashFrequencies hashFrequencies = new HashFrequencies();
+        hashFrequencies.configure(4, false);
+        Connection connection = mockSignaturesConnection(libraries, libraryCounts);
+        SignatureDAOImpl signatureDao = new SignatureDAOImpl(JdbcMocks.mockDataSource(connection), "file", () -> null,
+                hashFrequencies, new LibraryGraph());
+
+        List<LibraryCandidate> candidates = signatureDao.returnTopLibraryMatches(signatures);
+
+        assertEquals(List.of(1), candidates.stream().map(LibraryCandidate::getLibraryId).collect(Collectors.toList()));
+        assertEquals(8, candidates.get(0).getHashCount());
+    }
+
+    private interface BatchAnswer {
+        int[] executeBatch(PreparedStatement statement) throws SQLException;
+    }
+
+    /**
+     * Returns a connection on which the library insert generates the id 7 and the batches of the signature inserts
+     * are answered by {@code signatureBatch}.
+     */
+    private static Connection mockConnection(BatchAnswer signatureBatch) throws SQLException {
+        Connection connection = Mockito.mock(Connection.class);
+        PreparedStatement libraryStatement = Mockito.mock(PreparedStatement.class);
+        ResultSet generatedKeys = Mockito.mock(ResultSet.class);
+        Mockito.when(generatedKeys.next()).thenReturn(true);
+        Mockito.when(generatedKeys.getInt(1)).thenReturn(7);
+        Mockito.when(libraryStatement.getGeneratedKeys()).thenReturn(generatedKeys);
+        Mockito.when(connection.prepareStatement(Mockito.anyString(), Mockito.anyInt())).thenReturn(libraryStatement);
+
+        Mockito.when(connection.prepareStatement(Mockito.anyString())).thenAnswer(invocation -> {
+            PreparedStatement statement = Mockito.mock(PreparedStatement.class);
+            if (invocation.<String>getArgument(0).startsWith("INSERT INTO signatures")) {
+                Mockito.when(statement.executeBatch()).thenAnswer(batch -> signatureBatch.executeBatch(statement));
+            } else {
+                Mockito.when(statement.executeBatch()).thenReturn(new int[0]);
+            }
+            return statement;
+        });
+        return connection;
+    }
+
+    /**
+     * Returns a connection that answers the queries of the top matches in the "file" mode from the given signatures of
+     * each library and library counts of the class hashes. No package of the JAR is complete in any library.
+     */
+    private static Connection mockSignaturesConnection(Map<Integer, Set<Long>> libraries, Map<Long, Integer> libraryCounts)
+            throws SQLException {
+        Set<Long> tempHashes = new HashSet<>();
+        Set<Long> commonHashes = new HashSet<>();
+        Set<Long> candidates = new HashSet<>();
+        Map<String, Set<Long>> tempTables = Map.of("INSERT INTO temp_hashes", tempHashes,
+                "INSERT INTO temp_common_hashes", commonHashes, "INSERT INTO temp_candidates", candidates);
+
+        Connection connection = Mockito.mock(Connection.class);
+        Statement statement = Mockito.mock(Statement.class);
+        Mockito.when(connection.createStatement()).thenReturn(statement);
+        Mockito.when(statement.executeQuery(Mockito.startsWith("SELECT f.class_hash, f.library_count"))).thenAnswer(invocation ->
+                JdbcMocks.mockResultSet(tempHashes.stream().filter(libraryCounts::containsKey)
+                        .map(hash -> new Object[]{hash, libraryCounts.get(hash)}).collect(Collectors.toList())));
+        Mockito.when(statement.executeUpdate(Mockito.startsWith("DELETE t FROM temp_hashes"))).thenAnswer(invocation -> {
+            tempHashes.removeAll(commonHashes);
+            return commonHashes.size();
+        });
+
+        Mockito.when(connection.prepareStatement(Mockito.anyString())).thenAnswer(invocation -> {
+            String query = invocation.getArgument(0);
+            Set<Long> tempTable = tempTables.get(query.substring(0, Math.max(0, query.indexOf(" ("))));
+            if (tempTable != null) {
+                return JdbcMocks.mockBatchStatement(batch -> batch.forEach(row -> tempTable.add(row[0])));
+            }
+            PreparedStatement preparedStatement = Mockito.mock(PreparedStatement.class);
+            long[] parameter = new long[1];
+            Mockito.doAnswer(set -> parameter[0] = set.<Integer>getArgument(1))
+                    .when(preparedStatement).setInt(Mockito.eq(1), Mockito.anyInt());
+
+            List<Object[]> rows = new ArrayList<>();
+            if (query.startsWith("SELECT s.library_id, COUNT")) {
+                // HAVING matched >= ?
+                Mockito.when(preparedStatement.executeQuery()).thenAnswer(execute -> {
+                    for (Map.Entry<Integer, Set<Long>> library : new TreeMap<>(libraries).entrySet()) {
+                        long matched = library.getValue().stream().filter(tempHashes::contains).count();
+                        if (matched > 0 && matched >= parameter[0]) {
+                            rows.add(new Object[]{library.getKey(), matched});
+                        }
+                    }
+                    return JdbcMocks.mockResultSet(rows, "library_id", "matched");
+                });
+            } else if (query.startsWith("SELECT s.class_hash, s.library_id")) {
+                Set<Long> hashTable = query.contains("temp_common_hashes") ? commonHashes : tempHashes;
+                Mockito.when(preparedStatement.executeQuery()).thenAnswer(execute -> {
+                    for (Map.Entry<Integer, Set<Long>> library : new TreeMap<>(libraries).entrySet()) {
+                        if (candidates.contains((long) library.getKey())) {
+                            library.getValue().stream().filter(hashTable::contains).sorted()
+                                    .forEach(hash -> rows.add(new Object[]{hash, library.getKey()}));
+                        }
+                    }
+                    return JdbcMocks.mockResultSet(rows, "class_hash", "library_id");
+                });
+            } else if (query.startsWith("SELECT id, group_id")) {
+                new TreeMap<>(libraries).descendingMap().forEach((libraryId, hashes) -> {
+                    if (query.matches(".*\\b" + libraryId + "\\b.*")) {
+                        rows.add(new Object[]{libraryId, "org.example", "library-" + libraryId, "1.0", hashes.size()});
+                    }
+                });
+                ResultSet resultSet = JdbcMocks.mockResultSet(rows, "id", "group_id", "artifact_id", "version", "unique_signatures");
+                Mockito.when(preparedStatement.getResultSet()).thenReturn(resultSet);
+            } else {
+                Mockito.when(preparedStatement.executeQuery()).thenAnswer(execute -> JdbcMocks.mockResultSet(rows));
+            }
+            return preparedStatement;
+        });
+        return connection;
+    }
+}
@@ -0,0 +1,37 @@
+import nl.tudelft.cornul11.thesis.corpus.database.SignatureDeltas;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SignatureDeltasTest {
+    /**
+     * Test that a version is encoded against the closest base, and becomes a base when it changed too many classes
+     */
+    @Test
+    public void testEncodeAgainstClosestBase() {
+        long[] first = {1, 2, 3, 4, 5, 6, 7, 8};
+        long[] second = {1, 2, 3, 4, 5, 6, 7, 8, 20, 21, 22, 23, 24, 25, 26, 27};
+        List<long[]> bases = List.of(first, second);
+
+        SignatureDeltas.Encoding encoding = SignatureDeltas.encode(new long[]{-1, 1, 2, 3, 4, 5, 6, 7}, bases, 0.5);
+        assertEquals(0, encoding.getBase());
+        assertArrayEquals(new long[]{-1}, encoding.getAdded());
+        assertArrayEquals(new long[]{8}, encoding.getRemoved());
+
+        encoding = SignatureDeltas.encode(new long[]{1, 2, 3, 4, 5, 6, 7, 8, 20, 21, 22, 23, 24, 25, 26}, bases, 0.5);
+        assertEquals(1, encoding.getBase());
+        assertArrayEquals(new long[0], encoding.getAdded());
+        assertArrayEquals(new long[]{27}, encoding.getRemoved());
+
+        long[] rewritten = {1, 30, 31, 32, 33, 34, 35, 36};
+        encoding = SignatureDeltas.encode(rewritten, bases, 0.5);
+        assertEquals(-1, encoding.getBase());
+        assertArrayEquals(rewritten, encoding.getAdded());
+
+        // the first version of an artifact is always a base
+        assertEquals(-1, SignatureDeltas.encode(first, List.of(), 0.5).getBase());
+    }
+}
@@ -0,0 +1,57 @@
+import nl.tudelft.cornul11.thesis.corpus.extractor.bytecode.BytecodeParser;
+import nl.tudelft.cornul11.thesis.corpus.extractor.bytecode.BytecodeUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Enumeration;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SignatureHasherTest {
+    private static final String[] JAR_FILE_PATHS = {
+            "jars/jsr305-2.0.1.jar",
+            "jars/javaparser-core-3.18.0.jar",
+            "jars/junit-platform-commons-1.9.3.jar",
+            "jars/aspectjweaver-1.9.19.jar"
+    };
+
+    /**
+     * Test that the streaming hasher produces exactly the hashes of the BytecodeDetails based extraction,
+     * as the hashes already stored in the corpus were computed with the latter
+     */
+    @Test
+    public void testStreamingHashEqualsDetailsHash() throws IOException {
+        int comparedClasses = 0;
+        for (String jarFilePath : JAR_FILE_PATHS) {
+            try (JarFile jarFile = new JarFile(getJarPath(jarFilePath).toFile())) {
+                Enumeration<JarEntry> entries = jarFile.entries();
+                while (entries.hasMoreElements()) {
+                    JarEntry entry = entries.nextElement();
+                    if (entry.isDirectory() || !entry.getName().endsWith(".class") || entry.getName().contains("module-info")) {
+                        continue;
+                    }
+                    byte[] bytecode;
+                    try (InputStream inputStream = jarFile.getInputStream(entry)) {
+                        bytecode = inputStream.readAllBytes();
+                    }
+
+                    long expected = BytecodeUtils.getSignatureHash(BytecodeParser.extractSignature(bytecode));
+                    long actual = BytecodeParser.extractSignatureHash(bytecode);
+                    assertEquals(expected, actual, "Hash mismatch for " + jarFilePath + "!" + entry.getName());
+                    comparedClasses++;
+                }
+            }
+        }
+        assertTrue(comparedClasses > 0, "At least one class should have been compared");
+    }
+
+    private Path getJarPath(String jarName) {
+        return Paths.get(getClass().getClassLoader().getResource(jarName).getPath());
+    }
+}
@@ -0,0 +1,95 @@
+import nl.tudelft.cornul11.thesis.corpus.database.SignatureIndex;
+import nl.tudelft.cornul11.thesis.corpus.database.SignatureIndexBuilder;
+import nl.tudelft.cornul11.thesis.corpus.file.SignatureSegmentWriter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SignatureIndexBuilderTest {
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Test that an index built from text and segment dumps, with many spilled runs, has the postings of the libraries
+     */
+    @Test
+    public void testBuildIndexFromDumps() throws Exception {
+        Random random = new Random(7);
+        long[] pool = random.longs(300).toArray();
+        pool[0] = Long.MIN_VALUE;
+        pool[1] = Long.MAX_VALUE;
+        Map<String, long[]> libraries = new HashMap<>();
+        for (int i = 0; i < 40; i++) {
+            long[] classHashes = new long[1 + random.nextInt(60)];
+            for (int j = 0; j < classHashes.length; j++) {
+                classHashes[j] = pool[random.nextInt(pool.length)];
+            }
+            libraries.put("org.example.group" + (i % 3) + ":lib" + i + ":1." + i, classHashes);
+        }
+
+        Path dumps = tempDir.resolve("dumps");
+        Files.createDirectories(dumps);
+        try (SignatureSegmentWriter writer = new SignatureSegmentWriter(dumps.resolve("signatures-00000.seg"))) {
+            for (Map.Entry<String, long[]> library : libraries.entrySet()) {
+                String[] gav = library.getKey().split(":");
+                if (gav[1].hashCode() % 2 == 0) {
+                    writer.addLibrary(gav[0], gav[1], gav[2], 0, library.getValue());
+                } else {
+                    Path textDump = dumps.resolve(gav[0].replace('.', '/')).resolve(gav[1]).resolve(gav[2])
+                            .resolve(gav[1] + "-" + gav[2] + ".jar.txt");
+                    Files.createDirectories(textDump.getParent());
+                    Files.write(textDump, Arrays.stream(library.getValue()).mapToObj(Long::toString).collect(Collectors.toList()));
+                }
+            }
+            // a library without classes is left out
+            writer.addLibrary("org.example", "empty", "1.0", 0, new long[0]);
+        }
+
+        Path indexPath = tempDir.resolve("index.bin");
+        try (SignatureIndexBuilder builder = new SignatureIndexBuilder(indexPath, 37)) {
+            builder.addDumps(dumps);
+            builder.finish();
+        }
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(List.of(indexPath), files.filter(Files::isRegularFile).collect(Collectors.toList()));
+        }
+
+        try (SignatureIndex index = new SignatureIndex(indexPath)) {
+            assertEquals(libraries.size(), index.getNumLibraries());
+            Map<Integer, String> gavs = new HashMap<>();
+            for (int i = 0; i < index.getNumLibraries(); i++) {
+                String gav = String.join(":", index.getGAV(i));
+                gavs.put(i, gav);
+                assertEquals(Arrays.stream(libraries.get(gav)).distinct().count(), index.getUniqueSignatures(i));
+            }
+
+            for (long classHash : pool) {
+                Set<String> expected = new TreeSet<>();
+                libraries.forEach((gav, classHashes) -> {
+                    if (Arrays.stream(classHashes).anyMatch(hash -> hash == classHash)) {
+                        expected.add(gav);
+                    }
+                });
+                List<String> actual = new ArrayList<>();
+                index.forEachLibrary(classHash, libraryIndex -> actual.add(gavs.get(libraryIndex)));
+                assertEquals(expected.size(), actual.size());
+                assertTrue(expected.containsAll(actual));
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+import nl.tudelft.cornul11.thesis.corpus.database.IndexedSignatureDAO;
+import nl.tudelft.cornul11.thesis.corpus.database.SignatureDAOImpl.LibraryCandidate;
+import nl.tudelft.cornul11.thesis.corpus.database.SignatureIndex;
+import nl.tudelft.cornul11.thesis.corpus.database.SignatureIndexWriter;
+import nl.tudelft.cornul11.thesis.corpus.file.ClassFileInfo;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SignatureIndexTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testTopLibraryMatchesFromIndex() throws IOException {
+        Path indexPath = tempDir.resolve("index.bin");
+        try (SignatureIndexWriter writer = new SignatureIndexWriter(indexPath)) {
+            writer.addLibrary(7, "org.example", "lib", "1.0", 3);
+            writer.addLibrary(12, "org.example", "lib", "2.0", 4);
+            writer.addLibrary(30, "org.other", "tool", "0.1", 2);
+            // ordered by class hash, the last class of 2.0 is new
+            writer.addSignature(-5L, 7);
+            writer.addSignature(-5L, 12);
+            writer.addSignature(1L, 7);
+            writer.addSignature(1L, 12);
+            writer.addSignature(1L, 12);
+            writer.addSignature(2L, 7);
+            writer.addSignature(2L, 12);
+            writer.addSignature(3L, 12);
+            writer.addSignature(100L, 30);
+            writer.addSignature(101L, 30);
+            writer.addSignature(102L, 99); // unknown library
+            writer.finish();
+        }
+        assertFalse(Files.exists(tempDir.resolve("index.bin.postings.tmp")));
+
+        try (SignatureIndex index = new SignatureIndex(indexPath)) {
+            assertEquals(3, index.getNumLibraries());
+            assertEquals(12, index.getLibraryId(1));
+            assertArrayEquals(new String[]{"org.other", "tool", "0.1"}, index.getGAV(2));
+
+            List<Integer> libraries = new ArrayList<>();
+            index.forEachLibrary(1L, libraries::add);
+            assertEquals(List.of(0, 1), libraries);
+            libraries.clear();
+            index.forEachLibrary(102L, libraries::add);
+            index.forEachLibrary(42L, libraries::add);
+            assertTrue(libraries.isEmpty());
+
+            List<ClassFileInfo> classes = List.of(
+                    new ClassFileInfo("org/example/A", -5L, 0),
+                    new ClassFileInfo("org/example/B", 1L, 0),
+                    new ClassFileInfo("org/example/C", 2L, 0),
+                    new ClassFileInfo("org/example/D", 3L, 0));
+            List<LibraryCandidate> candidates = new IndexedSignatureDAO(index, null).returnTopLibraryMatches(classes);
+
+            assertEquals(1, candidates.size());
+            LibraryCandidate best = candidates.get(0);
+            assertEquals("org.example:lib:2.0", best.getGAV());
+            assertEquals(12, best.getLibraryId());
+            assertTrue(best.isSelf());
+            assertEquals(1, best.getAlternatives().size());
+            assertEquals(7, best.getAlternatives().get(0).getLibraryId());
+        }
+    }
+}
@@ -0,0 +1,77 @@
+import nl.tudelft.cornul11.thesis.client.SignatureClient;
+import nl.tudelft.cornul11.thesis.corpus.file.ClassFileInfo;
+import nl.tudelft.cornul11.thesis.corpus.file.SignaturePayload;
+import nl.tudelft.cornul11.thesis.corpus.jarfile.JarHandler;
+import nl.tudelft.cornul11.thesis.corpus.util.ConfigurationLoader;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+
+public class SignaturePayloadTest {
+    private static final String JAR_FILE_PATH = "jars/jsr305-2.0.1.jar";
+
+    /**
+     * Test that the signatures extracted by the client survive the binary format and are the ones of the corpus
+     */
+    @Test
+    public void testClientPayloadRoundTrip() throws Exception {
+        Path jarFilePath = Paths.get(getClass().getClassLoader().getResource(JAR_FILE_PATH).getPath());
+        SignaturePayload payload = SignatureClient.extract(jarFilePath);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        payload.write(out);
+        SignaturePayload read = SignaturePayload.read(new ByteArrayInputStream(out.toByteArray()));
+
+        JarHandler jarHandler = new JarHandler(jarFilePath, new ConcurrentLinkedDeque<>(), new ConcurrentLinkedDeque<>(),
+                mock(ConfigurationLoader.class));
+        List<ClassFileInfo> handlerSignatures = jarHandler.extractSignatures();
+
+        assertEquals(jarHandler.getJarCrc(), read.getJarCrc());
+        assertEquals(handlerSignatures.size(), read.getClassFileInfos().size());
+        for (int i = 0; i < handlerSignatures.size(); i++) {
+            assertEquals(handlerSignatures.get(i).getClassName(), read.getClassFileInfos().get(i).getClassName());
+            assertEquals(handlerSignatures.get(i).getHashCode(), read.getClassFileInfos().get(i).getHashCode());
+        }
+    }
+
+    @Test
+    public void testNdjsonPayload() throws Exception {
+        String ndjson = "{\"jarCrc\": 42}\n"
+                + "{\"path\": \"org/example/A.class\", \"hash\": -7}\n"
+                + "\n"
+                + "{\"path\": \"org/example/B.class\", \"hash\": 9}\n";
+        SignaturePayload payload = SignaturePayload.readNdjson(new BufferedReader(new StringReader(ndjson)));
+
+        assertEquals(42, payload.getJarCrc());
+        assertEquals(2, payload.getClassFileInfos().size());
+        assertEquals("org/example/B.class", payload.getClassFileInfos().get(1).getClassName());
+        assertEquals(-7, payload.getClassFileInfos().get(0).getHashCode());
+    }
+
+    @Test
+    public void testNdjsonPayloadRejectsInvalidNumbers() {
+        String[] invalidPayloads = {
+                "{\"path\": \"org/example/A.class\", \"hash\": \"abc\"}\n",
+                "{\"path\": \"org/example/A.class\", \"hash\": 1.5}\n",
+                "{\"path\": \"org/example/A.class\", \"hash\": 99999999999999999999}\n",
+                "{\"path\": \"org/example/A.class\"}\n",
+                "{\"jarCrc\": null}\n{\"path\": \"org/example/A.class\", \"hash\": 1}\n",
+                "{\"jarCrc\": \"42\"}\n{\"path\": \"org/example/A.class\", \"hash\": 1}\n"
+        };
+        for (String ndjson : invalidPayloads) {
+            assertThrows(IOException.class, () -> SignaturePayload.readNdjson(new BufferedReader(new StringReader(ndjson))), ndjson);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+import nl.tudelft.cornul11.thesis.corpus.file.SignatureSegment;
+import nl.tudelft.cornul11.thesis.corpus.file.SignatureSegmentWriter;
+import nl.tudelft.cornul11.thesis.corpus.jarfile.JarFileExplorer;
+import nl.tudelft.cornul11.thesis.corpus.util.ConfigurationLoader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SignatureSegmentTest {
+    @TempDir
+    Path directory;
+
+    /**
+     * Test that the libraries are read back sorted, both sequentially and by position
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        Random random = new Random(42);
+        List<long[]> classHashes = new ArrayList<>();
+        classHashes.add(new long[]{Long.MAX_VALUE, Long.MIN_VALUE, 0, -1, 1, 1});
+        classHashes.add(new long[0]);
+        for (int i = 0; i < 100; i++) {
+            classHashes.add(random.longs(random.nextInt(500)).toArray());
+        }
+
+        Path segmentFile = directory.resolve("signatures-00000.seg");
+        try (SignatureSegmentWriter writer = new SignatureSegmentWriter(segmentFile)) {
+            for (int i = 0; i < classHashes.size(); i++) {
+                writer.addLibrary("org.example", "library-" + i, "1." + i, i * 31L, classHashes.get(i));
+            }
+            // the segment only becomes visible once the footer is written
+            assertFalse(Files.exists(segmentFile));
+        }
+
+        try (SignatureSegment segment = new SignatureSegment(segmentFile)) {
+            assertEquals(classHashes.size(), segment.getLibraryCount());
+            int[] index = {0};
+            segment.forEach(library -> {
+                assertLibrary(classHashes, index[0], library);
+                index[0]++;
+            });
+            assertEquals(classHashes.size(), index[0]);
+
+            for (int i = classHashes.size() - 1; i >= 0; i -= 7) {
+                assertLibrary(classHashes, i, segment.getLibrary(i));
+            }
+        }
+    }
+
+    @Test
+    public void testTruncatedSegment() throws Exception {
+        Path segmentFile = directory.resolve("signatures-00000.seg");
+        try (SignatureSegmentWriter writer = new SignatureSegmentWriter(segmentFile)) {
+            writer.addLibrary("org.example", "library", "1.0", 1, new long[]{1, 2, 3});
+        }
+        byte[] bytes = Files.readAllBytes(segmentFile);
+        Files.write(segmentFile, Arrays.copyOf(bytes, bytes.length - 1));
+        assertThrows(IOException.class, () -> new SignatureSegment(segmentFile));
+    }
+
+    /**
+     * Test that EXTRACT_SIGNATURES writes one segment per thread with the GAVs derived from the repository layout
+     */
+    @Test
+    public void testExtractSignaturesToSegments() throws Exception {
+        Path repository = directory.resolve("repository");
+        Path jar = repository.resolve("com/google/code/findbugs/jsr305/2.0.1/jsr305-2.0.1.jar");
+        Files.createDirectories(jar.getParent());
+        Files.copy(Paths.get(getClass().getClassLoader().getResource("jars/jsr305-2.0.1.jar").getPath()), jar);
+
+        ConfigurationLoader config = Mockito.mock(ConfigurationLoader.class);
+        Mockito.when(config.getNumConsumerThreads()).thenReturn(2);
+        Mockito.when(config.getWalkerQueueCapacity()).thenReturn(16);
+        Path output = directory.resolve("segments");
+        JarFileExplorer explorer = new JarFileExplorer(null, config, output.toString());
+        explorer.processFilesToSegments(List.of(jar), repository.toString());
+        explorer.processFilesToSegments(List.of(jar), repository.toString());
+
+        int libraries = 0;
+        for (int i = 0; i < 4; i++) {
+            Path segmentFile = output.resolve(String.format("signatures-%05d.seg", i));
+            assertTrue(Files.exists(segmentFile));
+            try (SignatureSegment segment = new SignatureSegment(segmentFile)) {
+                for (int j = 0; j < segment.getLibraryCount(); j++) {
+                    SignatureSegment.Library library = segment.getLibrary(j);
+                    assertEquals("com.google.code.findbugs", library.getGroupId());
+                    assertEquals("jsr305", library.getArtifactId());
+                    assertEquals("2.0.1", library.getVersion());
+                    assertTrue(library.getClassHashes().length > 0);
+                    libraries++;
+                }
+            }
+        }
+        assertEquals(2, libraries);
+    }
+
+    /**
+     * Test that a thread finalises its segment and starts a new one once it holds the configured number of libraries
+     */
+    @Test
+    public void testSegmentsRollOver() throws Exception {
+        Path repository = directory.resolve("repository");
+        List<Path> jars = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Path jar = repository.resolve("org/example/library/1." + i + "/library-1." + i + ".jar");
+            Files.createDirectories(jar.getParent());
+            jars.add(Files.copy(Paths.get(getClass().getClassLoader().getResource("jars/jsr305-2.0.1.jar").getPath()), jar));
+        }
+
+        ConfigurationLoader config = Mockito.mock(ConfigurationLoader.class);
+        Mockito.when(config.getNumConsumerThreads()).thenReturn(1);
+        Mockito.when(config.getWalkerQueueCapacity()).thenReturn(16);
+        Mockito.when(config.getSignatureSegmentLibraries()).thenReturn(2);
+        Path output = directory.resolve("segments");
+        JarFileExplorer explorer = new JarFileExplorer(null, config, output.toString());
+        explorer.processFilesToSegments(jars, repository.toString());
+
+        List<String> versions = new ArrayList<>();
+        int[] expectedCounts = {2, 2, 1};
+        for (int i = 0; i < expectedCounts.length; i++) {
+            try (SignatureSegment segment = new SignatureSegment(output.resolve(String.format("signatures-%05d.seg", i)))) {
+                assertEquals(expectedCounts[i], segment.getLibraryCount());
+                segment.forEach(library -> versions.add(library.getVersion()));
+            }
+        }
+        assertEquals(List.of("1.0", "1.1", "1.2", "1.3", "1.4"), versions);
+        try (Stream<Path> files = Files.list(output)) {
+            assertEquals(3, files.count(), "Every segment should be finalised, without a temporary file left");
+        }
+    }
+
+    private static void assertLibrary(List<long[]> classHashes, int index, SignatureSegment.Library library) {
+        long[] expected = classHashes.get(index).clone();
+        Arrays.sort(expected);
+        assertEquals("library-" + index, library.getArtifactId());
+        assertEquals("1." + index, library.getVersion());
+        assertEquals(index * 31L, library.getJarHash());
+        assertArrayEquals(expected, library.getClassHashes());
+    }
+}
@@ -0,0 +1,69 @@
+import nl.tudelft.cornul11.thesis.corpus.database.SignatureDAO;
+import nl.tudelft.cornul11.thesis.corpus.file.ClassFileInfo;
+import nl.tudelft.cornul11.thesis.corpus.jarfile.SignatureWriter;
+import nl.tudelft.cornul11.thesis.corpus.model.ExtractedLibrary;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class SignatureWriterTest {
+    @Test
+    public void testAllSubmittedLibrariesAreCommitted() throws InterruptedException {
+        SignatureDAO signatureDao = Mockito.mock(SignatureDAO.class);
+        AtomicInteger insertedRows = new AtomicInteger();
+        Mockito.when(signatureDao.insertLibraries(Mockito.anyList())).thenAnswer(invocation -> {
+            List<ExtractedLibrary> libraries = invocation.getArgument(0);
+            int rows = libraries.stream().mapToInt(library -> library.getClassFileInfos().size()).sum();
+            insertedRows.addAndGet(rows);
+            return rows;
+        });
+
+        Set<String> committed = ConcurrentHashMap.newKeySet();
+        SignatureWriter signatureWriter = new SignatureWriter(signatureDao, 3, 4, 10, library -> committed.add(library.getGAV()));
+        for (int i = 0; i < 50; i++) {
+            List<ClassFileInfo> classFileInfos = i % 5 == 0 ? List.of() : List.of(new ClassFileInfo("a/B.class", i, i), new ClassFileInfo("a/C.class", -i, i));
+            signatureWriter.submit(new ExtractedLibrary(null, "group", "artifact", Integer.toString(i), i, i, 0, false, classFileInfos));
+        }
+        signatureWriter.close();
+
+        assertEquals(50, committed.size(), "Every library should be committed exactly once");
+        assertEquals(80, insertedRows.get(), "Every signature row should be written");
+    }
+
+    /**
+     * Test that a failing library only fails itself, and not the other libraries of its batch
+     */
+    @Test
+    public void testFailedBatchIsRetriedLibraryByLibrary() throws InterruptedException {
+        SignatureDAO signatureDao = Mockito.mock(SignatureDAO.class);
+        Mockito.when(signatureDao.insertLibraries(Mockito.anyList())).thenAnswer(invocation -> {
+            List<ExtractedLibrary> libraries = invocation.getArgument(0);
+            if (libraries.stream().anyMatch(library -> library.getVersion().equals("7"))) {
+                throw new RuntimeException("Bad row");
+            }
+            return libraries.size();
+        });
+
+        Set<String> committed = ConcurrentHashMap.newKeySet();
+        Map<String, Exception> failed = new ConcurrentHashMap<>();
+        SignatureWriter signatureWriter = new SignatureWriter(signatureDao, 1, 32, 1000, library -> committed.add(library.getVersion()),
+                (library, e) -> failed.put(library.getVersion(), e));
+        for (int i = 0; i < 20; i++) {
+            signatureWriter.submit(new ExtractedLibrary(null, "group", "artifact", Integer.toString(i), i, i, 0, false,
+                    List.of(new ClassFileInfo("a/B.class", i, i))));
+        }
+        signatureWriter.close();
+
+        assertEquals(Set.of("7"), failed.keySet());
+        assertEquals(19, committed.size());
+        assertFalse(committed.contains("7"));
+    }
+}